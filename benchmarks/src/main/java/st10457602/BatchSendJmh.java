@@ -0,0 +1,100 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sending and storing {@code batch} new messages one at a time against sendAll() and
+ * storeAll(). Each call creates its own batch, as a message can only be sent once, so the
+ * scores are per batch and include creating the messages on both sides.
+ *
+ * @author Angela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchSendJmh {
+
+    private static final int RECIPIENTS = 1_000;
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    public int batch;
+
+    private String[] recipients;
+    private File dataDirectory;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+        dataDirectory = Dataset.useTemporaryDataDirectory();
+        recipients = new String[RECIPIENTS];
+        for (int i = 0; i < RECIPIENTS; i++) {
+            recipients[i] = "+27" + (600_000_000 + i);
+        }
+    }
+
+    // Also deletes the files the store benchmarks wrote
+    @Setup(Level.Iteration)
+    public void clearStore() {
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @TearDown(Level.Trial)
+    public void clear() {
+        Dataset.deleteDataDirectory(dataDirectory);
+    }
+
+    private List<MessageFeature> newBatch() {
+        List<MessageFeature> messages = new ArrayList<>(batch);
+        for (int i = 0; i < batch; i++) {
+            messages.add(new MessageFeature(recipients[i % RECIPIENTS], Dataset.PAYLOADS[i % Dataset.PAYLOADS.length]));
+        }
+        return messages;
+    }
+
+    @Benchmark
+    public int sendLoop() {
+        int sent = 0;
+        for (MessageFeature msg : newBatch()) {
+            sent += msg.send().isSuccess() ? 1 : 0;
+        }
+        return sent;
+    }
+
+    @Benchmark
+    public List<MessageOutcome> sendAll() {
+        return MessageFeature.sendAll(newBatch());
+    }
+
+    @Benchmark
+    public int storeLoop() {
+        int stored = 0;
+        for (MessageFeature msg : newBatch()) {
+            stored += msg.store().isSuccess() ? 1 : 0;
+        }
+        return stored;
+    }
+
+    @Benchmark
+    public List<MessageOutcome> storeAll() {
+        return MessageFeature.storeAll(newBatch());
+    }
+}
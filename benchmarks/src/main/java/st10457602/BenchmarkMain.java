@@ -0,0 +1,46 @@
+package st10457602;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Runs the QuickChat JMH benchmarks once for each thread count and writes one JSON result
+ * file per run, so results can be compared between releases with any JMH result viewer.
+ *
+ * Usage: {@code java [-Dquickchat.bench.threads=1,2,4,8] [-Dquickchat.bench.results=dir]
+ * -jar benchmarks.jar [JMH options]}. JMH options such as a benchmark name regex,
+ * {@code -p size=1000} or {@code -f 1} are passed through; the thread count comes from the
+ * property. The default thread counts are 1 and 4 and the default directory is jmh-results.
+ *
+ * @author Angela
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        String[] threadCounts = System.getProperty("quickchat.bench.threads", "1,4").split(",");
+        Path resultDir = Paths.get(System.getProperty("quickchat.bench.results", "jmh-results"));
+        Files.createDirectories(resultDir);
+
+        for (String threadCount : threadCounts) {
+            int threads = Integer.parseInt(threadCount.trim());
+            Options options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(resultDir.resolve("quickchat-threads-" + threads + ".json").toString())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A BulkImporter run over a generated CSV file of {@code rows} messages, into an empty store
+ * and without writing message files. Each run is timed once. For the peak heap of a run, see
+ * the summary BulkImporter's main method prints.
+ *
+ * @author Angela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BulkImportJmh {
+
+    private static final String[] STATUSES = {"Sent", "Sent", "Sent", "Sent", "Sent", "Sent", "Sent", "Stored", "Stored", "Disregarded"};
+
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    private Path file;
+    private File dataDirectory;
+
+    @Setup(Level.Trial)
+    public void writeFile() throws IOException {
+        dataDirectory = Dataset.useTemporaryDataDirectory();
+        file = dataDirectory.toPath().resolve("history.csv");
+        SplittableRandom random = new SplittableRandom(42);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("recipient,payload,status\n");
+            for (int i = 0; i < rows; i++) {
+                writer.write("+27" + (600_000_000 + random.nextInt(100_000)));
+                writer.write(",\"Historical message number " + i + ", replayed\",");
+                writer.write(STATUSES[random.nextInt(STATUSES.length)]);
+                writer.write('\n');
+            }
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void clearStore() {
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @TearDown(Level.Trial)
+    public void clear() {
+        Dataset.deleteDataDirectory(dataDirectory);
+    }
+
+    @Benchmark
+    public BulkImporter.Summary importFile() throws IOException {
+        return new BulkImporter().writeFiles(false).importFile(file);
+    }
+}
@@ -0,0 +1,83 @@
+package st10457602;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fills the message store with a reproducible dataset for the benchmarks.
+ *
+ * @author Angela
+ */
+final class Dataset {
+
+    static final String[] PAYLOADS = {
+        "Hi Mike, can you join us for dinner tonight",
+        "Where are you? You are late! I have asked you to be on time.",
+        "Yohoooo, I am at your gate.",
+        "It is dinner time !",
+        "Ok, I am leaving without you."
+    };
+
+    private Dataset() {
+    }
+
+    /**
+     * Points MessageFeature at a new temporary data directory, so that the files the benchmarks
+     * write, and the ones populate() clears away, are never those in the working directory.
+     * @return The directory, to hand to {@link #deleteDataDirectory} after the trial.
+     */
+    static File useTemporaryDataDirectory() {
+        try {
+            File directory = Files.createTempDirectory("quickchat-jmh").toFile();
+            MessageFeature.setDataDirectory(directory);
+            return directory;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Clears the store and deletes a directory from useTemporaryDataDirectory() with its files.
+     * @param directory The directory.
+     */
+    static void deleteDataDirectory(File directory) {
+        MessageFeature.resetMessageCounterForTesting();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /** @return The recipient used for message number n, with ten messages per recipient. */
+    static String recipient(int n, int size) {
+        return "+27" + (100_000_000 + n % Math.max(1, size / 10));
+    }
+
+    /**
+     * Clears the store, and the message files in the data directory, and sends {@code size}
+     * messages, storing every tenth as a draft instead.
+     * @param size The number of messages.
+     * @return The messages, in the order they were created.
+     */
+    static List<MessageFeature> populate(int size) {
+        MessageFeature.resetMessageCounterForTesting();
+        List<MessageFeature> messages = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            MessageFeature msg = new MessageFeature(recipient(i, size), PAYLOADS[i % PAYLOADS.length] + " #" + i);
+            if (i % 10 == 9) {
+                msg.store(); // Drafts also exercise the stored lists and their JSON files
+            } else {
+                msg.send();
+            }
+            messages.add(msg);
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,96 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exporting a history of a million messages in each format to a file, next to writing 128 MB
+ * to a file with no per-record work at all, which is the ceiling an export should approach.
+ *
+ * @author Angela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExportJmh {
+
+    private static final int MESSAGES = 1_000_000;
+    private static final long RAW_BYTES = 128L << 20;
+
+    @Param({"NDJSON", "CSV"})
+    public ExportFormat format;
+
+    private File dataDirectory;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void populate() {
+        dataDirectory = Dataset.useTemporaryDataDirectory();
+        file = dataDirectory.toPath().resolve("export.out");
+        for (int i = 0; i < MESSAGES; i++) {
+            MessageFeature msg = new MessageFeature("+27" + (600_000_000 + i % 10_000), "Exported benchmark message number " + i);
+            if (i % 10 < 7) {
+                msg.send();
+            } else if (i % 10 < 9) {
+                MessageFeature.addAllStoredInMemory(List.of(msg));
+            } else {
+                msg.disregardMessage();
+            }
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteExport() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void clear() {
+        Dataset.deleteDataDirectory(dataDirectory);
+    }
+
+    @Benchmark
+    public long export() throws IOException {
+        return MessageFeature.exportAllMessages(file, format);
+    }
+
+    @Benchmark
+    public long rawWrite() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (written < RAW_BYTES) {
+                buffer.clear();
+                while (buffer.hasRemaining()) {
+                    written += channel.write(buffer);
+                }
+            }
+        }
+        return written;
+    }
+}
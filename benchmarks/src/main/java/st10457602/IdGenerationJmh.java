@@ -0,0 +1,84 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Message ID generation with each MessageIdGenerator, against the one shared Random and
+ * String.format that MessageFeature used before them. Run with several threads (see
+ * BenchmarkMain) to see the shared Random contend.
+ *
+ * A benchmark asks for far more than the 128 IDs a minute a time-ordered worker may sustain,
+ * so the time-ordered generator reads a clock that skips ahead whenever the generator would
+ * wait for it; what is measured is the cost of making an ID, not the wait.
+ *
+ * @author Angela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdGenerationJmh {
+
+    private final Random sharedRandom = new Random();
+    private final MessageIdGenerator random = MessageIdGenerator.threadLocalRandom();
+    private final MessageIdGenerator timeOrdered = MessageIdGenerator.timeOrdered();
+
+    @Setup(Level.Trial)
+    public void skipWaits() {
+        AtomicLong skipped = new AtomicLong();
+        TimeOrderedMessageIdGenerator.setClock(new TimeOrderedMessageIdGenerator.Clock() {
+            @Override
+            public long millis() {
+                return System.currentTimeMillis() + skipped.get();
+            }
+
+            @Override
+            public void sleep(long millis) {
+                skipped.addAndGet(Math.max(1, millis));
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void restoreClock() {
+        TimeOrderedMessageIdGenerator.setClock(null);
+        TimeOrderedMessageIdGenerator.resetForTesting();
+    }
+
+    @Benchmark
+    public String sharedRandom() {
+        return String.format("%010d", Math.abs(sharedRandom.nextLong() % 10000000000L));
+    }
+
+    @Benchmark
+    public String threadLocalRandom() {
+        return random.nextMessageId();
+    }
+
+    @Benchmark
+    public String timeOrdered() {
+        return timeOrdered.nextMessageId();
+    }
+
+    @Benchmark
+    public MessageFeature constructMessage() {
+        return new MessageFeature("+27718693002", "Hi Mike, can you join us for dinner tonight");
+    }
+}
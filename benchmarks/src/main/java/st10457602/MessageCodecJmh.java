@@ -0,0 +1,95 @@
+package st10457602;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding a message as the JSON document that storeMessage() writes and as a
+ * MessageCodec record. Run with {@code -prof gc} to see the bytes each allocates.
+ *
+ * @author Angela
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecJmh {
+
+    private static final MessageFeature[] MESSAGES = {
+        MessageFeature.restore("0012345678", "+27718693002", "Hi Mike, can you join us for dinner tonight", 1, null, MessageStatus.SENT),
+        MessageFeature.restore("0087654321", "+27838884567", "Where are you? You are late! I have asked you to be on time.", 0, null, MessageStatus.STORED),
+        MessageFeature.restore("1234567890", "+27834484567", "Yohoooo, I am at your gate.", 0, "", MessageStatus.DISREGARDED),
+        MessageFeature.restore("0838884567", "+27838884567", "It is dinner time !", 4, null, MessageStatus.SENT),
+    };
+
+    private final JSONParser parser = new JSONParser();
+    private final MessageCodec codec = new MessageCodec();
+    private final ByteBuffer buffer = ByteBuffer.allocate(1024);
+    private final byte[][] json = new byte[MESSAGES.length][];
+    private final ByteBuffer[] binary = new ByteBuffer[MESSAGES.length];
+    private int next;
+
+    public MessageCodecJmh() {
+        for (int i = 0; i < MESSAGES.length; i++) {
+            json[i] = toJson(MESSAGES[i]);
+            binary[i] = ByteBuffer.allocate(1024);
+            codec.encode(MESSAGES[i], binary[i]);
+            binary[i].flip();
+        }
+    }
+
+    // Builds the same document storeMessage() does and encodes it as UTF-8
+    @SuppressWarnings("unchecked")
+    private static byte[] toJson(MessageFeature msg) {
+        JSONObject document = new JSONObject();
+        document.put("MESSAGE_ID", msg.getMessageID());
+        document.put("MESSAGE_RECIPIENT", msg.getMessageRecipient());
+        document.put("MESSAGE_PAYLOAD", msg.getMessagePayload());
+        document.put("MESSAGE_INDEX", msg.getMessageIndex());
+        document.put("MESSAGE_HASH", msg.getMessageHash());
+        document.put("MESSAGE_STATUS", msg.getMessageStatus());
+        return document.toJSONString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() {
+        return toJson(MESSAGES[++next & 3]);
+    }
+
+    @Benchmark
+    public MessageFeature jsonDecode() throws ParseException {
+        JSONObject document = (JSONObject) parser.parse(new String(json[++next & 3], StandardCharsets.UTF_8));
+        return MessageFeature.restore((String) document.get("MESSAGE_ID"), (String) document.get("MESSAGE_RECIPIENT"),
+                (String) document.get("MESSAGE_PAYLOAD"), ((Long) document.get("MESSAGE_INDEX")).intValue(),
+                (String) document.get("MESSAGE_HASH"), MessageStatus.of((String) document.get("MESSAGE_STATUS")));
+    }
+
+    @Benchmark
+    public int binaryEncode() {
+        buffer.clear();
+        return codec.encode(MESSAGES[++next & 3], buffer);
+    }
+
+    @Benchmark
+    public MessageFeature binaryDecode() {
+        ByteBuffer record = binary[++next & 3];
+        record.rewind();
+        return codec.decode(record);
+    }
+}
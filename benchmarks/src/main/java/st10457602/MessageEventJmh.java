@@ -0,0 +1,99 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Send latency, as a distribution, with {@code subscribers} slow event subscribers attached.
+ * Each subscriber spends 200 microseconds per event, far slower than sending, so it falls
+ * behind and events are dropped for it; the send path should not slow down as subscribers
+ * are added.
+ *
+ * @author Angela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageEventJmh {
+
+    @Param({"0", "1", "8"})
+    public int subscribers;
+
+    private MessageEventPublisher publisher;
+    private File dataDirectory;
+
+    @Setup(Level.Trial)
+    public void subscribe() {
+        dataDirectory = Dataset.useTemporaryDataDirectory();
+        publisher = new MessageEventPublisher();
+        MessageFeature.setEventPublisher(publisher);
+        for (int i = 0; i < subscribers; i++) {
+            publisher.subscribe(new SlowSubscriber());
+        }
+        while (publisher.getSubscriberCount() < subscribers) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void clearStore() {
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @TearDown(Level.Trial)
+    public void unsubscribe() {
+        publisher.close();
+        MessageFeature.setEventPublisher(new MessageEventPublisher());
+        Dataset.deleteDataDirectory(dataDirectory);
+    }
+
+    @Benchmark
+    public MessageOutcome send() {
+        int n = ThreadLocalRandom.current().nextInt(10_000);
+        return new MessageFeature("+27" + (100_000_000 + n), Dataset.PAYLOADS[n % Dataset.PAYLOADS.length]).send();
+    }
+
+    private static final class SlowSubscriber implements Flow.Subscriber<MessageEvent> {
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(MessageEvent item) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
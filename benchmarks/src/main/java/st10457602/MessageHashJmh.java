@@ -0,0 +1,58 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message hashes built by MessageHashBuilder against the trim/split/replaceAll implementation
+ * it replaced. Run with {@code -prof gc} to see the bytes each allocates per hash.
+ *
+ * @author Angela
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageHashJmh {
+
+    private int index;
+
+    private String payload() {
+        return Dataset.PAYLOADS[++index % Dataset.PAYLOADS.length];
+    }
+
+    @Benchmark
+    public String builder() {
+        return MessageHashBuilder.build("0012345678", index, payload());
+    }
+
+    @Benchmark
+    public String legacy() {
+        return legacyHash("0012345678", index, payload());
+    }
+
+    private static String legacyHash(String id, int index, String payload) {
+        String idStart = id.substring(0, 2);
+        String content = payload.trim();
+        if (content.isEmpty()) {
+            return (idStart + ":" + index + ":").toUpperCase();
+        }
+        String[] words = content.split("\\s+");
+        String firstWord = words[0];
+        String lastWord = words.length > 1 ? words[words.length - 1] : firstWord;
+        firstWord = firstWord.replaceAll("[^a-zA-Z0-9]", "");
+        lastWord = lastWord.replaceAll("[^a-zA-Z0-9]", "");
+        return (idStart + ":" + index + ":" + firstWord + lastWord).toUpperCase();
+    }
+}
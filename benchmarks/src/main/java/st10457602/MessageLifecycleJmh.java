@@ -0,0 +1,79 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sending, storing and deleting against a store that already holds {@code size} messages.
+ * The store is rebuilt before every iteration so that it does not grow across iterations.
+ * Storing writes a JSON file to a temporary data directory, which is deleted afterwards.
+ *
+ * @author Angela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageLifecycleJmh {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private File dataDirectory;
+
+    @Setup(Level.Trial)
+    public void useTemporaryDataDirectory() {
+        dataDirectory = Dataset.useTemporaryDataDirectory();
+    }
+
+    @Setup(Level.Iteration)
+    public void populate() {
+        Dataset.populate(size);
+    }
+
+    @TearDown(Level.Trial)
+    public void clear() {
+        Dataset.deleteDataDirectory(dataDirectory);
+    }
+
+    private MessageFeature newMessage() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new MessageFeature(Dataset.recipient(random.nextInt(size), size),
+                Dataset.PAYLOADS[random.nextInt(Dataset.PAYLOADS.length)]);
+    }
+
+    @Benchmark
+    public String sentMessage() {
+        return newMessage().sentMessage();
+    }
+
+    @Benchmark
+    public String storeMessage() {
+        return newMessage().storeMessage();
+    }
+
+    /** Sends a message and deletes it again, so the store stays at its dataset size. */
+    @Benchmark
+    public String sendThenDeleteMessageByHash() {
+        MessageFeature msg = newMessage();
+        msg.sentMessage();
+        return MessageFeature.deleteMessageByHash(msg.getMessageHash());
+    }
+}
@@ -0,0 +1,88 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading {@code size} message JSON files back into the store, with payloads read eagerly or
+ * left in their files ({@code lazy}), and reading a payload back afterwards. Every message in
+ * the dataset is written to a file before the trial and the files are removed after it. The
+ * heap the loaded messages retain is printed, per message, with the output of the run.
+ *
+ * @author Angela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageLoadJmh {
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean lazy;
+
+    private File dataDirectory;
+    private List<MessageFeature> sent;
+
+    @Setup(Level.Trial)
+    public void writeFiles() {
+        dataDirectory = Dataset.useTemporaryDataDirectory();
+        for (MessageFeature msg : Dataset.populate(size)) {
+            msg.storeMessage(); // Sent messages get a file too
+        }
+        MessageFeature.setLazyPayloadLoading(lazy);
+        MessageFeature.useStore(new MessageStore(MessageStore.defaultShardCount()));
+        long before = usedAfterGc();
+        MessageFeature.loadAllMessagesFromJsonFiles();
+        long retained = usedAfterGc() - before;
+        System.out.printf("%d messages loaded %s retain %d MB, %.0f bytes per message%n",
+                size, lazy ? "lazily" : "eagerly", retained >> 20, (double) retained / size);
+        sent = MessageFeature.getSentMessagesForTesting();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() {
+        MessageFeature.setLazyPayloadLoading(false);
+        Dataset.deleteDataDirectory(dataDirectory);
+    }
+
+    private static long usedAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @Benchmark
+    public int loadAllMessagesFromJsonFiles() {
+        MessageFeature.loadAllMessagesFromJsonFiles();
+        return MessageFeature.returnTotalMessages();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String readPayload() {
+        return sent.get(ThreadLocalRandom.current().nextInt(sent.size())).getMessagePayload();
+    }
+}
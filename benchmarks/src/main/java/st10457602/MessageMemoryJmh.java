@@ -0,0 +1,96 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filling the store with 500,000 messages, 70% sent, 20% stored and 10% disregarded, to 10,000
+ * recipients whose numbers arrive as fresh strings, as they do from the screen or an import.
+ * After each iteration the heap the messages retain is printed, per message, with the output
+ * of the run.
+ *
+ * @author Angela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MessageMemoryJmh {
+
+    private static final int MESSAGES = 500_000;
+    private static final int BATCH = 10_000;
+
+    private File dataDirectory;
+    private long usedBefore;
+
+    @Setup(Level.Trial)
+    public void useDataDirectory() {
+        dataDirectory = Dataset.useTemporaryDataDirectory();
+    }
+
+    @Setup(Level.Iteration)
+    public void clearStore() {
+        MessageFeature.resetMessageCounterForTesting();
+        usedBefore = usedAfterGc();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printRetainedHeap() {
+        long retained = usedAfterGc() - usedBefore;
+        System.out.printf("%d messages retain %d MB, %.0f bytes per message%n",
+                MESSAGES, retained >> 20, (double) retained / MESSAGES);
+    }
+
+    @TearDown(Level.Trial)
+    public void clear() {
+        Dataset.deleteDataDirectory(dataDirectory);
+    }
+
+    @Benchmark
+    public void fill() {
+        for (int i = 0; i < MESSAGES; i += BATCH) {
+            addBatch(i);
+        }
+    }
+
+    private static void addBatch(int first) {
+        List<MessageFeature> sent = new ArrayList<>(BATCH);
+        List<MessageFeature> stored = new ArrayList<>(BATCH);
+        List<MessageFeature> disregarded = new ArrayList<>(BATCH);
+        for (int i = first; i < first + BATCH; i++) {
+            // A fresh string per message, as parsing or typing a number gives
+            String recipient = new StringBuilder("+27").append(600_000_000 + i % 10_000).toString();
+            MessageFeature msg = new MessageFeature(recipient, Dataset.PAYLOADS[i % Dataset.PAYLOADS.length] + " #" + i);
+            int kind = i % 10;
+            (kind < 7 ? sent : kind < 9 ? stored : disregarded).add(msg);
+        }
+        MessageFeature.sendAll(sent);
+        MessageFeature.addAllStoredInMemory(stored);
+        MessageFeature.addAllDisregarded(disregarded);
+    }
+
+    private static long usedAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
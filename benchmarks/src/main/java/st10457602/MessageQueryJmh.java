@@ -0,0 +1,95 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every search and report method over a store of {@code size} messages.
+ *
+ * @author Angela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageQueryJmh {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private MessageFeature[] messages;
+
+    private File dataDirectory;
+
+    @Setup(Level.Trial)
+    public void populate() {
+        dataDirectory = Dataset.useTemporaryDataDirectory();
+        List<MessageFeature> created = Dataset.populate(size);
+        messages = created.toArray(new MessageFeature[0]);
+        MessageFeature.setLoggedInUsername("bench");
+    }
+
+    @TearDown(Level.Trial)
+    public void clear() {
+        Dataset.deleteDataDirectory(dataDirectory);
+    }
+
+    private MessageFeature randomMessage() {
+        return messages[ThreadLocalRandom.current().nextInt(messages.length)];
+    }
+
+    @Benchmark
+    public String searchMessageByID() {
+        return MessageFeature.searchMessageByID(randomMessage().getMessageID());
+    }
+
+    @Benchmark
+    public String searchMessagesByRecipient() {
+        return MessageFeature.searchMessagesByRecipient(randomMessage().getMessageRecipient());
+    }
+
+    @Benchmark
+    public String findLongestSentMessage() {
+        return MessageFeature.findLongestSentMessage();
+    }
+
+    @Benchmark
+    public String displayAllSentMessagesInfo() {
+        return MessageFeature.displayAllSentMessagesInfo();
+    }
+
+    @Benchmark
+    public String generateSentMessagesReport() {
+        return MessageFeature.generateSentMessagesReport();
+    }
+
+    @Benchmark
+    public long writeSentMessagesReportNdjson() throws IOException {
+        return MessageFeature.writeSentMessagesReport(Writer.nullWriter(), ReportFormat.NDJSON);
+    }
+
+    @Benchmark
+    public int getAllMessageHashes() {
+        return MessageFeature.getAllMessageHashes().size();
+    }
+}
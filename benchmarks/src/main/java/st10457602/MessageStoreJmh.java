@@ -0,0 +1,78 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sending and searching by recipient as the MessageStore's shard count grows. Each iteration
+ * starts from a new store holding 100,000 messages to 10,000 recipients; run with several
+ * threads (see BenchmarkMain) to see the shards take contention off the store.
+ *
+ * @author Angela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageStoreJmh {
+
+    private static final int MESSAGES = 100_000;
+    private static final int RECIPIENTS = 10_000;
+
+    @Param({"1", "4", "16", "64"})
+    public int shards;
+
+    private File dataDirectory;
+
+    @Setup(Level.Trial)
+    public void useDataDirectory() {
+        dataDirectory = Dataset.useTemporaryDataDirectory();
+    }
+
+    @Setup(Level.Iteration)
+    public void populate() {
+        MessageFeature.resetMessageCounterForTesting();
+        MessageFeature.useStore(new MessageStore(shards));
+        for (int i = 0; i < MESSAGES; i++) {
+            new MessageFeature(recipient(i % RECIPIENTS), Dataset.PAYLOADS[i % Dataset.PAYLOADS.length]).send();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void clear() {
+        MessageFeature.useStore(new MessageStore(MessageStore.defaultShardCount()));
+        Dataset.deleteDataDirectory(dataDirectory);
+    }
+
+    private static String recipient(int n) {
+        return "+27" + (100_000_000 + n);
+    }
+
+    @Benchmark
+    public MessageOutcome send() {
+        int n = ThreadLocalRandom.current().nextInt(RECIPIENTS);
+        return new MessageFeature(recipient(n), Dataset.PAYLOADS[n % Dataset.PAYLOADS.length]).send();
+    }
+
+    @Benchmark
+    public String searchMessagesByRecipient() {
+        return MessageFeature.searchMessagesByRecipient(recipient(ThreadLocalRandom.current().nextInt(RECIPIENTS)));
+    }
+}
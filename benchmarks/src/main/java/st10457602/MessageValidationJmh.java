@@ -0,0 +1,56 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recipient and payload validation and hash creation on a single message.
+ *
+ * @author Angela
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageValidationJmh {
+
+    private final MessageFeature message = new MessageFeature("+27718693002", "Hi Mike, can you join us for dinner tonight");
+    private final String longPayload = "A".repeat(300);
+    private int index;
+
+    @Benchmark
+    public String validateRecipientNumber() {
+        return message.validateRecipientNumber("+27718693002");
+    }
+
+    @Benchmark
+    public String validateRecipientNumberInvalid() {
+        return message.validateRecipientNumber("08575975889");
+    }
+
+    @Benchmark
+    public String validatePayloadLength() {
+        return message.validatePayloadLength(message.getMessagePayload());
+    }
+
+    @Benchmark
+    public String validatePayloadLengthTooLong() {
+        return message.validatePayloadLength(longPayload);
+    }
+
+    @Benchmark
+    public String createMessageHash() {
+        return message.createMessageHash(message.getMessageID(), ++index, message.getMessagePayload());
+    }
+}
@@ -0,0 +1,74 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cheapest instrumented operations with QuickChatMetrics on and off; the difference between
+ * the two {@code metrics} values is the cost of the instrumentation.
+ *
+ * @author Angela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class MetricsOverheadJmh {
+
+    @Param({"true", "false"})
+    public boolean metrics;
+
+    private MessageFeature[] messages;
+
+    private File dataDirectory;
+
+    @Setup(Level.Trial)
+    public void populate() {
+        dataDirectory = Dataset.useTemporaryDataDirectory();
+        List<MessageFeature> created = Dataset.populate(10_000);
+        messages = created.toArray(new MessageFeature[0]);
+        QuickChatMetrics.getInstance().setEnabled(metrics);
+    }
+
+    @TearDown(Level.Trial)
+    public void clear() {
+        Dataset.deleteDataDirectory(dataDirectory);
+    }
+
+    private MessageFeature randomMessage() {
+        return messages[ThreadLocalRandom.current().nextInt(messages.length)];
+    }
+
+    @Benchmark
+    public String searchMessageByID() {
+        return MessageFeature.searchMessageByID(randomMessage().getMessageID());
+    }
+
+    @Benchmark
+    public MessageFeature deleteMissingHash() {
+        return MessageFeature.removeMessageByHash(randomMessage().getMessageHash() + "x");
+    }
+
+    @Benchmark
+    public MessageOutcome sendRejected() {
+        return new MessageFeature("0800000000", "Rejected before it reaches the store").send();
+    }
+}
@@ -0,0 +1,52 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of hashing and checking one password at the iteration count new accounts get
+ * (quickchat.password.iterations, 600,000 by default). This is most of what a registration or
+ * a login costs; RegistrationJmh leaves it out to measure the directory.
+ *
+ * @author Angela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class PasswordHashJmh {
+
+    private static final String PASSWORD = "Ch&&sec@ke99!";
+
+    private UserAccount account;
+
+    @Setup(Level.Trial)
+    public void createAccount() {
+        account = UserAccount.create("kyl_1", PASSWORD, "+27838968976", "Kyle", "Smith");
+    }
+
+    /** Salts and hashes a new password, as registration does. */
+    @Benchmark
+    public UserAccount hashPassword() {
+        return UserAccount.create("kyl_1", PASSWORD, "+27838968976", "Kyle", "Smith");
+    }
+
+    /** Hashes a password against a stored salt and compares, as login does. */
+    @Benchmark
+    public boolean checkPassword() {
+        return account.passwordMatches(PASSWORD);
+    }
+}
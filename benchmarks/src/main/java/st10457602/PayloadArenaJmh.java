@@ -0,0 +1,111 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A history of 2,000,000 messages with payloads on the heap and in the off-heap arena: filling
+ * the store with it, a full collection with it in place, and a scan that reads every payload.
+ * Run with {@code -prof gc} to compare the collections each layout causes while filling.
+ *
+ * @author Angela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-XX:MaxDirectMemorySize=2g"})
+public class PayloadArenaJmh {
+
+    private static final int MESSAGES = 2_000_000;
+    private static final int BATCH = 10_000;
+    private static final String[] PAYLOADS = {
+        "Hi Mike, can you join us for dinner tonight? Bring the salad and the cake, we start at seven. Number ",
+        "Where are you? You are late! I have asked you to be on time. The others are waiting. Number ",
+        "Yohoooo, I am at your gate. Open up, it is cold out here and the pizza is getting cold. Number ",
+        "It is dinner time ! Everyone is at the table already, please come down now. Number "
+    };
+
+    @Param({"false", "true"})
+    public boolean offHeap;
+
+    private File dataDirectory;
+
+    @Setup(Level.Trial)
+    public void useLayout() {
+        dataDirectory = Dataset.useTemporaryDataDirectory();
+        MessageFeature.setOffHeapPayloads(offHeap);
+    }
+
+    @TearDown(Level.Trial)
+    public void clear() {
+        MessageFeature.setOffHeapPayloads(false);
+        Dataset.deleteDataDirectory(dataDirectory);
+    }
+
+    /** An empty store at the start of each iteration, for filling. */
+    @State(Scope.Benchmark)
+    public static class EmptyStore {
+        @Setup(Level.Iteration)
+        public void clearStore() {
+            MessageFeature.resetMessageCounterForTesting();
+            System.gc();
+        }
+    }
+
+    /** The store holding the whole history, in the layout of the benchmark it is given to. */
+    @State(Scope.Benchmark)
+    public static class FullStore {
+        @Setup(Level.Trial)
+        public void fill(PayloadArenaJmh layout) {
+            MessageFeature.resetMessageCounterForTesting();
+            addHistory();
+        }
+    }
+
+    @Benchmark
+    public void fill(EmptyStore store) {
+        addHistory();
+    }
+
+    @Benchmark
+    public long fullGc(FullStore store) {
+        System.gc();
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    }
+
+    @Benchmark
+    public String findLongestSentMessage(FullStore store) {
+        return MessageFeature.findLongestSentMessage();
+    }
+
+    private static void addHistory() {
+        for (int first = 0; first < MESSAGES; first += BATCH) {
+            List<MessageFeature> sent = new ArrayList<>(BATCH);
+            List<MessageFeature> stored = new ArrayList<>(BATCH);
+            for (int i = first; i < first + BATCH; i++) {
+                MessageFeature msg = new MessageFeature("+27" + (600_000_000 + i % 10_000), PAYLOADS[i & 3] + i);
+                (i % 10 < 8 ? sent : stored).add(msg);
+            }
+            MessageFeature.sendAll(sent);
+            MessageFeature.addAllStoredInMemory(stored);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups in the W-TinyLFU payload cache against a plain synchronized LRU map of the same size,
+ * for Zipf-distributed keys over 1,000,000 messages. A miss costs 50 us, roughly a small file
+ * read. The cache holds 2% of the payloads; with {@code scan}, every fourth lookup also reads
+ * the next message of a full scan of the history, as a report would. The {@code hits} and
+ * {@code misses} counters give the hit rate.
+ *
+ * @author Angela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadCacheJmh {
+
+    private static final int KEYS = 1_000_000;
+    private static final int LOOKUPS = 1 << 21;
+    private static final long MISS_NANOS = 50_000;
+    private static final int PAYLOAD_CHARS = 120;
+    private static final long WEIGHT = 56 + 2L * PAYLOAD_CHARS;
+    private static final long CACHE_BYTES = KEYS / 50 * WEIGHT;
+    private static final double SKEW = 0.99;
+
+    @Param({"tinylfu", "lru"})
+    public String cache;
+
+    @Param({"false", "true"})
+    public boolean scan;
+
+    private int[] zipf;
+    private Cache lookups;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+        zipf = zipfKeys(LOOKUPS, new SplittableRandom(42));
+        lookups = "lru".equals(cache) ? new Lru() : new TinyLfu();
+    }
+
+    /** Where one thread is in the lookup sequence and the scan, and its hits and misses. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Cursor {
+        public long hits;
+        public long misses;
+        private int next = ThreadLocalRandom.current().nextInt(LOOKUPS);
+        private int scanned = ThreadLocalRandom.current().nextInt(KEYS);
+    }
+
+    @Benchmark
+    public boolean lookup(Cursor cursor) {
+        int i = cursor.next++ & (LOOKUPS - 1);
+        boolean hit = lookups.get(zipf[i]);
+        if (hit) {
+            cursor.hits++;
+        } else {
+            cursor.misses++;
+        }
+        if (scan && (i & 3) == 0) {
+            lookups.get(cursor.scanned);
+            cursor.scanned = (cursor.scanned + 1) % KEYS;
+        }
+        return hit;
+    }
+
+    private static String load(int key) {
+        long end = System.nanoTime() + MISS_NANOS;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+        return "x".repeat(PAYLOAD_CHARS - 7) + String.format("%07d", key % 10_000_000);
+    }
+
+    // Keys from 0 to KEYS - 1 where key k is looked up in proportion to 1 / (k + 1)^SKEW, shuffled
+    // so that popularity has nothing to do with the key's hash
+    private static int[] zipfKeys(int count, SplittableRandom random) {
+        double[] cumulative = new double[KEYS];
+        double total = 0;
+        for (int k = 0; k < KEYS; k++) {
+            total += 1 / Math.pow(k + 1, SKEW);
+            cumulative[k] = total;
+        }
+        int[] shuffled = new int[KEYS];
+        for (int k = 0; k < KEYS; k++) {
+            int j = random.nextInt(k + 1);
+            shuffled[k] = shuffled[j];
+            shuffled[j] = k;
+        }
+        int[] keys = new int[count];
+        for (int i = 0; i < count; i++) {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+            keys[i] = shuffled[Math.min(KEYS - 1, rank < 0 ? -rank - 1 : rank)];
+        }
+        return keys;
+    }
+
+    private interface Cache {
+        /** @return true on a hit. */
+        boolean get(int key);
+    }
+
+    private static final class TinyLfu implements Cache {
+        private final PayloadCache<Integer, String> cache = new PayloadCache<>(CACHE_BYTES, payload -> WEIGHT);
+
+        @Override
+        public boolean get(int key) {
+            if (cache.getIfPresent(key) != null) {
+                return true;
+            }
+            cache.put(key, load(key));
+            return false;
+        }
+    }
+
+    private static final class Lru implements Cache {
+        private final Map<Integer, String> map = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                return size() * WEIGHT > CACHE_BYTES;
+            }
+        };
+
+        @Override
+        public boolean get(int key) {
+            synchronized (map) {
+                if (map.get(key) != null) {
+                    return true;
+                }
+            }
+            String payload = load(key);
+            synchronized (map) {
+                map.put(key, payload);
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RegistrationFeature.registerUser into a directory that already holds {@code size} users.
+ * Usernames may be at most five characters, so new ones cycle through the 36^4 names of the
+ * form "abcd_"; once a name repeats, the call measures the duplicate-username path instead.
+ * Passwords are hashed with a single PBKDF2 iteration, as the real count would make this a
+ * benchmark of the hash alone; PasswordHashJmh measures the hash.
+ *
+ * @author Angela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistrationJmh {
+
+    private static final int NAME_SPACE = 36 * 36 * 36 * 36;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private RegistrationFeature registration;
+    private final AtomicInteger next = new AtomicInteger();
+    private int hashIterations;
+
+    @Setup(Level.Trial)
+    public void useOneHashIteration() {
+        hashIterations = UserAccount.getHashIterations();
+        UserAccount.setHashIterations(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void restoreHashIterations() {
+        UserAccount.setHashIterations(hashIterations);
+    }
+
+    @Setup(Level.Iteration)
+    public void populate() {
+        registration = new RegistrationFeature(new UserDirectory(size * 2));
+        for (int i = 0; i < size; i++) {
+            registration.registerUser(username(i), "Ch&&sec@ke99!", "+27838968976", "Kyle", "Smith");
+        }
+        next.set(size);
+    }
+
+    private static String username(int n) {
+        String name = Integer.toString(n % NAME_SPACE, 36);
+        return "0000".substring(name.length()) + name + "_";
+    }
+
+    @Benchmark
+    public String registerUser() {
+        return registration.registerUser(username(next.getAndIncrement()), "Ch&&sec@ke99!", "+27838968976", "Kyle", "Smith");
+    }
+
+    @Benchmark
+    public String registerUserInvalid() {
+        return registration.registerUser("kyle!!!!!!!", "password", "08966553", "K1", "");
+    }
+}
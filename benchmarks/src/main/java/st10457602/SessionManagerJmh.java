@@ -0,0 +1,113 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token validation with {@code sessions} live sessions, issuing them all, and the time the timer
+ * wheel needs to expire them all. Sessions are issued over ten simulated minutes, so they expire
+ * across many slots of the wheel; the clock is moved by the benchmark rather than waited for.
+ *
+ * @author Angela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SessionManagerJmh {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final UserAccount ACCOUNT =
+            new UserAccount("kyl_1", new byte[16], 1, new byte[32], "+27838968976", "Kyle", "Smith");
+
+    @Param({"100000", "2000000"})
+    public int sessions;
+
+    /** A manager, its clock and the tokens it has issued. */
+    public static class Sessions {
+        final AtomicLong clock = new AtomicLong(System.nanoTime());
+        SessionManager manager;
+        String[] tokens;
+
+        void create(int count) {
+            manager = new SessionManager(30 * 60 * SECOND, count, clock::get);
+            tokens = new String[count];
+        }
+
+        void issueAll() {
+            for (int i = 0; i < tokens.length; i++) {
+                tokens[i] = manager.issue(ACCOUNT);
+                if (i % (tokens.length / 600 + 1) == 0) {
+                    clock.addAndGet(SECOND);
+                }
+            }
+        }
+    }
+
+    /** Every session issued, for the whole trial. */
+    @State(Scope.Benchmark)
+    public static class LiveSessions extends Sessions {
+        @Setup(Level.Trial)
+        public void issue(SessionManagerJmh benchmark) {
+            create(benchmark.sessions);
+            issueAll();
+        }
+    }
+
+    /** An empty manager at the start of each iteration. */
+    @State(Scope.Benchmark)
+    public static class NoSessions extends Sessions {
+        @Setup(Level.Iteration)
+        public void clear(SessionManagerJmh benchmark) {
+            create(benchmark.sessions);
+        }
+    }
+
+    /** Every session issued, afresh for each iteration. */
+    @State(Scope.Benchmark)
+    public static class ExpiringSessions extends Sessions {
+        @Setup(Level.Iteration)
+        public void issue(SessionManagerJmh benchmark) {
+            create(benchmark.sessions);
+            issueAll();
+        }
+    }
+
+    @Benchmark
+    public UserAccount validate(LiveSessions live) {
+        return live.manager.validate(live.tokens[ThreadLocalRandom.current().nextInt(live.tokens.length)]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int issueAll(NoSessions empty) {
+        empty.issueAll();
+        return empty.manager.size();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int expireAll(ExpiringSessions expiring) {
+        expiring.clock.addAndGet(31 * 60 * SECOND);
+        expiring.manager.expire();
+        return expiring.manager.size();
+    }
+}
@@ -0,0 +1,85 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logging in to a file-backed UserDirectory of {@code size} users, and opening its file again,
+ * which reads every record back. Passwords are hashed with a single PBKDF2 iteration, as the
+ * real count would make this a benchmark of the hash alone; PasswordHashJmh measures the hash.
+ *
+ * @author Angela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserDirectoryJmh {
+
+    private static final String PASSWORD = "Ch&&sec@ke99!";
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private Path file;
+    private UserDirectory directory;
+    private int hashIterations;
+
+    @Setup(Level.Trial)
+    public void populate() throws IOException {
+        hashIterations = UserAccount.getHashIterations();
+        UserAccount.setHashIterations(1);
+        file = Files.createTempFile("quickchat-jmh", ".dat");
+        Files.delete(file); // open() creates it
+        directory = UserDirectory.open(file);
+        RegistrationFeature registration = new RegistrationFeature(directory);
+        for (int i = 0; i < size; i++) {
+            registration.registerUser(username(i), PASSWORD, "+27838968976", "Kyle", "Smith");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void clear() throws IOException {
+        directory.close();
+        Files.deleteIfExists(file);
+        UserAccount.setHashIterations(hashIterations);
+    }
+
+    // Usernames must contain an underscore and be at most five characters
+    private static String username(int n) {
+        String name = Integer.toString(n, 36);
+        return "0000".substring(name.length()) + name + "_";
+    }
+
+    @Benchmark
+    public UserAccount authenticate() {
+        return directory.authenticate(username(ThreadLocalRandom.current().nextInt(size)), PASSWORD);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int open() throws IOException {
+        try (UserDirectory reloaded = UserDirectory.open(file)) {
+            return reloaded.size();
+        }
+    }
+}
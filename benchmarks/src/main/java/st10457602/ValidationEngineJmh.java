@@ -0,0 +1,82 @@
+package st10457602;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Each ValidationEngine rule against the regular expression it replaced, over a mix of valid
+ * and invalid inputs.
+ *
+ * @author Angela
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationEngineJmh {
+
+    private static final String[] IDS = {"0123456789", "9876543210", "012345678a", "12345"};
+    private static final String[] NUMBERS = {"+27718693002", "+27838884567", "08575975889", "+2771869300"};
+    private static final String[] PASSWORDS = {"Ch&&sec@ke99!", "password", "Passw0rd!", "PASSWORD12345"};
+    private static final String[] NAMES = {"Angela", "Kyle", "Angela Smith", "O'Neil"};
+
+    private int next;
+
+    private String input(String[] inputs) {
+        return inputs[++next & 3];
+    }
+
+    @Benchmark
+    public boolean messageIdRegex() {
+        return input(IDS).matches("\\d{10}");
+    }
+
+    @Benchmark
+    public boolean messageIdEngine() {
+        return ValidationEngine.isValidMessageId(input(IDS));
+    }
+
+    @Benchmark
+    public boolean cellNumberRegex() {
+        return Pattern.matches("^\\+27[0-9]{9}$", input(NUMBERS));
+    }
+
+    @Benchmark
+    public boolean cellNumberEngine() {
+        return ValidationEngine.isValidCellNumber(input(NUMBERS));
+    }
+
+    @Benchmark
+    public boolean passwordRegex() {
+        String s = input(PASSWORDS);
+        return s.length() >= 8 && s.matches(".*[A-Z].*") && s.matches(".*[0-9].*") && s.matches(".*[!@#$%^&*()].*");
+    }
+
+    @Benchmark
+    public boolean passwordEngine() {
+        return ValidationEngine.isValidPassword(input(PASSWORDS));
+    }
+
+    @Benchmark
+    public boolean nameRegex() {
+        String s = input(NAMES);
+        return !s.trim().isEmpty() && s.matches("^[a-zA-Z]+$");
+    }
+
+    @Benchmark
+    public boolean nameEngine() {
+        return ValidationEngine.isValidName(input(NAMES));
+    }
+}
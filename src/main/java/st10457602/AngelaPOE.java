@@ -1,10 +1,13 @@
 package st10457602;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import javax.swing.JFrame;
 
 /**
  * Main class for the QuickChat application.
  * Initializes and manages the flow between registration, login, and messaging screens.
+ * Started with arguments, it runs a single command headlessly instead; see QuickChatCli.
  *
  * @author Angela
  */
@@ -12,8 +15,21 @@ public class AngelaPOE {
 
     public static void main(String[] args)
     {
+        // Any arguments select the headless command-line mode, which must not load Swing at all
+        if (args.length > 0) {
+            QuickChatCli.main(args);
+            return;
+        }
+        startGui();
+    }
+
+    private static void startGui()
+    {
+        // Publish the metrics over JMX from the start, so JConsole can attach before the first message
+        QuickChatMetrics.getInstance();
+
         // Create a new RegistrationFeature object to manage user registration data
-        RegistrationFeature registrationFeature = new RegistrationFeature();
+        RegistrationFeature registrationFeature = new RegistrationFeature(openUserDirectory());
         
         // Create a new LoginFeature object, linking it to the registration data
         // This allows the LoginFeature to validate credentials against registered users
@@ -31,5 +47,24 @@ public class AngelaPOE {
         // Make the registration window visible to the user
         registrationScreen.setVisible(true);
     }
+
+    /**
+     * Opens the user directory. Accounts are kept in memory unless the
+     * quickchat.users.file system property names a file to persist them in.
+     * @return The user directory for this run.
+     */
+    private static UserDirectory openUserDirectory()
+    {
+        String usersFile = System.getProperty("quickchat.users.file");
+        if (usersFile == null || usersFile.isBlank()) {
+            return new UserDirectory();
+        }
+        try {
+            return UserDirectory.open(Path.of(usersFile));
+        } catch (IOException e) {
+            // Fall back to an in-memory directory rather than refusing to start
+            return new UserDirectory();
+        }
+    }
 }
 
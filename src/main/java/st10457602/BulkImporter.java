@@ -0,0 +1,486 @@
+package st10457602;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Streams a CSV or NDJSON file of historical messages into the message store.
+ *
+ * CSV rows are {@code recipient,payload,status}, optionally under a header row, with fields
+ * quoted as in RFC 4180 so that payloads can hold commas, quotes and line breaks. Rows written
+ * by MessageExporter add id, index and hash columns, and a valid ID is kept. NDJSON rows
+ * are JSON objects with the keys storeMessage() writes: MESSAGE_RECIPIENT, MESSAGE_PAYLOAD,
+ * MESSAGE_STATUS and optionally MESSAGE_ID, which is kept if it is valid. A missing status
+ * means Sent.
+ *
+ * The input is read in chunks. Chunks are parsed, validated and hashed in parallel on a
+ * fork-join pool and then committed in file order: sent rows get consecutive indexes in row
+ * order, and each chunk is added to the store with every shard locked once. Rows are validated
+ * as send() validates them, and rejected rows are counted and skipped. Stored rows are written
+ * to their JSON files through storeAll() unless {@link #writeFiles(boolean)} turns that off.
+ * Only a few chunks are in flight at a time, so the heap holds the imported messages and little
+ * else, however large the file is. Rows committed before an error stay in the store.
+ *
+ * Run from the command line with: {@code BulkImporter <file> [--no-files]}.
+ *
+ * @author Angela
+ */
+public class BulkImporter {
+
+    /** The supported input formats. */
+    public enum Format {
+        /** Comma-separated recipient, payload and status. */
+        CSV,
+        /** One JSON object per line. */
+        NDJSON;
+
+        /**
+         * Picks the format from a file name: .csv is CSV, .ndjson and .jsonl are NDJSON.
+         * @param file The input file.
+         * @return The format.
+         * @throws IllegalArgumentException If the extension is not recognised.
+         */
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+                return NDJSON;
+            }
+            throw new IllegalArgumentException("Cannot tell the format of " + file + "; use .csv, .ndjson or .jsonl");
+        }
+    }
+
+    /** A row that was not imported, by the line it starts on. */
+    public record Rejection(long line, MessageOutcome reason) {}
+
+    /**
+     * What an import did.
+     * @param rows            The data rows read, not counting a CSV header.
+     * @param sent            Rows imported as sent messages.
+     * @param stored          Rows imported as stored messages.
+     * @param disregarded     Rows imported as disregarded messages.
+     * @param rejected        Rows skipped because they were invalid.
+     * @param storeFailures   Stored rows whose JSON file could not be written.
+     * @param firstRejections The first rejected rows, at most 100 of them.
+     * @param elapsedNanos    How long the import took.
+     * @param peakHeapBytes   The sum of the heap pools' peak usage during the import.
+     */
+    public record Summary(long rows, int sent, int stored, int disregarded, long rejected, int storeFailures,
+                          List<Rejection> firstRejections, long elapsedNanos, long peakHeapBytes) {
+        /** @return The rows read per second. */
+        public double rowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rows * 1e9 / elapsedNanos;
+        }
+    }
+
+    private static final int DEFAULT_CHUNK_SIZE = 8_192;
+    private static final int MAX_REJECTIONS_KEPT = 100;
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private boolean writeFiles = true;
+
+    /**
+     * Sets how many rows are parsed and committed together.
+     * @param rows The chunk size.
+     * @return This importer.
+     */
+    public BulkImporter chunkSize(int rows) {
+        if (rows < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = rows;
+        return this;
+    }
+
+    /**
+     * Sets how many threads parse and hash chunks. Defaults to the number of processors.
+     * @param threads The number of threads.
+     * @return This importer.
+     */
+    public BulkImporter parallelism(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = threads;
+        return this;
+    }
+
+    /**
+     * Sets whether stored rows are written to their JSON files, as storeMessage() would. When
+     * off, they are only added to the store, the way loaded messages are.
+     * @param write Whether to write files; on by default.
+     * @return This importer.
+     */
+    public BulkImporter writeFiles(boolean write) {
+        this.writeFiles = write;
+        return this;
+    }
+
+    /**
+     * Imports a file, choosing the format from its extension.
+     * @param file The CSV or NDJSON file, in UTF-8.
+     * @return What the import did.
+     * @throws IOException If the file cannot be read.
+     */
+    public Summary importFile(Path file) throws IOException {
+        Format format = Format.of(file);
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importFrom(reader, format);
+        }
+    }
+
+    /**
+     * Imports rows from a reader.
+     * @param input  The rows.
+     * @param format The format of the rows.
+     * @return What the import did.
+     * @throws IOException If the input cannot be read.
+     */
+    public Summary importFrom(Reader input, Format format) throws IOException {
+        long start = QuickChatMetrics.start(QuickChatMetrics.Operation.IMPORT);
+        long startNanos = System.nanoTime();
+        List<MemoryPoolMXBean> heapPools = heapPools();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        RowReader rows = new RowReader(input instanceof BufferedReader buffered ? buffered : new BufferedReader(input), format);
+        Totals totals = new Totals();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        // Bounds the chunks read but not yet committed, and with them the heap the import needs
+        Semaphore inFlight = new Semaphore(parallelism * 2 + 1);
+        CompletableFuture<Chunk> reserved = CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> committed = CompletableFuture.completedFuture(null);
+        try {
+            Chunk chunk;
+            // Stops reading once a chunk has failed, since nothing after it can be committed
+            while (!committed.isCompletedExceptionally() && (chunk = rows.nextChunk(chunkSize)) != null) {
+                acquire(inFlight);
+                CompletableFuture<Chunk> parsed = CompletableFuture.supplyAsync(chunk::parse, pool);
+                // Indexes are reserved in file order, so each chunk's sent rows follow the previous chunk's
+                reserved = parsed.thenCombine(reserved, (current, previous) -> current.reserveIndexes());
+                CompletableFuture<Chunk> hashed = reserved.thenApplyAsync(Chunk::hashSent, pool);
+                committed = hashed.thenCombine(committed, (current, previous) -> {
+                    commit(current, totals);
+                    return (Void) null;
+                });
+                committed.whenComplete((result, failure) -> inFlight.release());
+            }
+            committed.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean heapPool : heapPools) {
+            peakHeap += heapPool.getPeakUsage().getUsed();
+        }
+        Summary summary = new Summary(rows.rows, totals.sent, totals.stored, totals.disregarded, totals.rejected,
+                totals.storeFailures, Collections.unmodifiableList(totals.rejections), System.nanoTime() - startNanos, peakHeap);
+        QuickChatMetrics.record(QuickChatMetrics.Operation.IMPORT, start, summary.rejected() == 0 && summary.storeFailures() == 0);
+        return summary;
+    }
+
+    // Runs on one chunk at a time, in file order
+    private void commit(Chunk chunk, Totals totals) {
+        MessageFeature.addAllSent(chunk.sent);
+        if (writeFiles) {
+            for (MessageOutcome outcome : MessageFeature.storeAll(chunk.stored)) {
+                if (!outcome.isSuccess()) {
+                    totals.storeFailures++;
+                }
+            }
+        } else {
+            MessageFeature.addAllStoredInMemory(chunk.stored);
+        }
+        MessageFeature.addAllDisregarded(chunk.disregarded);
+
+        totals.sent += chunk.sent.size();
+        totals.stored += chunk.stored.size();
+        totals.disregarded += chunk.disregarded.size();
+        totals.rejected += chunk.rejections.size();
+        for (Rejection rejection : chunk.rejections) {
+            if (totals.rejections.size() < MAX_REJECTIONS_KEPT) {
+                totals.rejections.add(rejection);
+            }
+        }
+    }
+
+    private static void acquire(Semaphore semaphore) throws InterruptedIOException {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        }
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> heap = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                heap.add(pool);
+            }
+        }
+        return heap;
+    }
+
+    // Only touched by the commit step, which runs on one chunk at a time
+    private static final class Totals {
+        int sent;
+        int stored;
+        int disregarded;
+        long rejected;
+        int storeFailures;
+        final List<Rejection> rejections = new ArrayList<>();
+    }
+
+    // Splits the input into raw rows; only this step is sequential
+    private static final class RowReader {
+        private final BufferedReader reader;
+        private final Format format;
+        private long line;
+        private long rows;
+        private boolean headerChecked;
+
+        RowReader(BufferedReader reader, Format format) {
+            this.reader = reader;
+            this.format = format;
+        }
+
+        Chunk nextChunk(int size) throws IOException {
+            List<String> raw = new ArrayList<>(size);
+            List<Long> lines = new ArrayList<>(size);
+            String row;
+            while (raw.size() < size && (row = nextRow()) != null) {
+                if (row.isBlank()) {
+                    continue;
+                }
+                if (!headerChecked) {
+                    headerChecked = true;
+                    if (format == Format.CSV && row.regionMatches(true, 0, "recipient", 0, "recipient".length())) {
+                        continue; // A header row
+                    }
+                }
+                raw.add(row);
+                lines.add(line);
+            }
+            if (raw.isEmpty()) {
+                return null;
+            }
+            rows += raw.size();
+            return new Chunk(raw.toArray(new String[0]), lines.stream().mapToLong(Long::longValue).toArray(), format);
+        }
+
+        // A CSV row continues onto the next line while it has an unclosed quote
+        private String nextRow() throws IOException {
+            String first = reader.readLine();
+            if (first == null) {
+                return null;
+            }
+            line++;
+            if (format != Format.CSV || quoteCount(first) % 2 == 0) {
+                return first;
+            }
+            StringBuilder row = new StringBuilder(first);
+            int quotes = quoteCount(first);
+            String next;
+            while (quotes % 2 != 0 && (next = reader.readLine()) != null) {
+                line++;
+                row.append('\n').append(next);
+                quotes += quoteCount(next);
+            }
+            return row.toString();
+        }
+
+        private static int quoteCount(String s) {
+            int count = 0;
+            for (int i = 0; i < s.length(); i++) {
+                if (s.charAt(i) == '"') {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    // A run of rows that is parsed and hashed on the pool, then committed as one batch
+    private static final class Chunk {
+        private String[] raw;
+        private final long[] lines;
+        private final Format format;
+        final List<MessageFeature> sent = new ArrayList<>();
+        final List<MessageFeature> stored = new ArrayList<>();
+        final List<MessageFeature> disregarded = new ArrayList<>();
+        final List<Rejection> rejections = new ArrayList<>();
+        private int indexBefore;
+
+        Chunk(String[] raw, long[] lines, Format format) {
+            this.raw = raw;
+            this.lines = lines;
+            this.format = format;
+        }
+
+        Chunk parse() {
+            JSONParser parser = format == Format.NDJSON ? new JSONParser() : null;
+            for (int i = 0; i < raw.length; i++) {
+                String[] fields = format == Format.CSV ? csvFields(raw[i]) : jsonFields(raw[i], parser);
+                if (fields == null) {
+                    rejections.add(new Rejection(lines[i], MessageOutcome.IMPORT_MALFORMED));
+                    continue;
+                }
+                String status = fields[3] == null || fields[3].isEmpty() ? "Sent" : fields[3];
+                List<MessageFeature> target = status.equalsIgnoreCase("Sent") ? sent
+                        : status.equalsIgnoreCase("Stored") ? stored
+                        : status.equalsIgnoreCase("Disregarded") ? disregarded
+                        : null;
+                if (target == null) {
+                    rejections.add(new Rejection(lines[i], MessageOutcome.IMPORT_MALFORMED));
+                    continue;
+                }
+                MessageFeature msg = MessageFeature.withId(fields[0], fields[1], fields[2]);
+                MessageOutcome rejection = msg.validateForSend();
+                if (rejection != null) {
+                    rejections.add(new Rejection(lines[i], rejection));
+                    continue;
+                }
+                if (target == stored) {
+                    msg.markStored(); // Drafts are hashed with index 0, so this can happen here
+                }
+                target.add(msg);
+            }
+            raw = null; // The rows are no longer needed
+            return this;
+        }
+
+        Chunk reserveIndexes() {
+            indexBefore = MessageFeature.reserveMessageIndexes(sent.size());
+            return this;
+        }
+
+        Chunk hashSent() {
+            int index = indexBefore;
+            for (MessageFeature msg : sent) {
+                msg.assignSentIndex(++index);
+            }
+            return this;
+        }
+
+        // Returns {id, recipient, payload, status}, or null if the row is not valid CSV
+        private static String[] csvFields(String row) {
+            List<String> fields = new ArrayList<>(3);
+            StringBuilder field = new StringBuilder();
+            int i = 0;
+            while (true) {
+                if (i < row.length() && row.charAt(i) == '"') {
+                    field.setLength(0);
+                    i++;
+                    while (true) {
+                        if (i >= row.length()) {
+                            return null; // Unclosed quote
+                        }
+                        char c = row.charAt(i++);
+                        if (c == '"') {
+                            if (i < row.length() && row.charAt(i) == '"') {
+                                field.append('"');
+                                i++;
+                            } else {
+                                break;
+                            }
+                        } else {
+                            field.append(c);
+                        }
+                    }
+                    if (i < row.length() && row.charAt(i) != ',') {
+                        return null; // Text after a closing quote
+                    }
+                    fields.add(field.toString());
+                } else {
+                    int comma = row.indexOf(',', i);
+                    int end = comma < 0 ? row.length() : comma;
+                    fields.add(row.substring(i, end));
+                    i = end;
+                }
+                if (i >= row.length()) {
+                    break;
+                }
+                i++; // Skip the comma
+            }
+            if (fields.size() < 2 || fields.size() > 6) {
+                return null;
+            }
+            // Exported files add id, index and hash columns; only the ID is kept
+            return new String[] {fields.size() > 3 ? fields.get(3) : null, fields.get(0), fields.get(1),
+                    fields.size() > 2 ? fields.get(2).trim() : null};
+        }
+
+        private static String[] jsonFields(String row, JSONParser parser) {
+            try {
+                if (!(parser.parse(row) instanceof JSONObject json)) {
+                    return null;
+                }
+                Object id = json.get("MESSAGE_ID");
+                Object recipient = json.get("MESSAGE_RECIPIENT");
+                Object payload = json.get("MESSAGE_PAYLOAD");
+                Object status = json.get("MESSAGE_STATUS");
+                if (!(recipient instanceof String) || !(payload instanceof String)
+                        || (id != null && !(id instanceof String)) || (status != null && !(status instanceof String))) {
+                    return null;
+                }
+                return new String[] {(String) id, (String) recipient, (String) payload, (String) status};
+            } catch (ParseException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Imports a file from the command line.
+     * @param args The file, then optionally --no-files to keep stored rows in memory only.
+     * @throws IOException If the file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: BulkImporter <file> [--no-files]");
+            System.exit(2);
+        }
+        boolean files = !(args.length > 1 && args[1].equals("--no-files"));
+        Summary summary = new BulkImporter().writeFiles(files).importFile(Paths.get(args[0]));
+        System.out.printf("Imported %d rows in %.1f s (%.0f rows/s, peak heap %d MB): %d sent, %d stored, %d disregarded, %d rejected%n",
+                summary.rows(), summary.elapsedNanos() / 1e9, summary.rowsPerSecond(), summary.peakHeapBytes() >> 20,
+                summary.sent(), summary.stored(), summary.disregarded(), summary.rejected());
+        for (Rejection rejection : summary.firstRejections()) {
+            System.out.println("  line " + rejection.line() + ": " + rejection.reason().describe());
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package st10457602;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for a delete by hash that took longer than its threshold.
+ *
+ * @author Angela
+ */
+@Name("st10457602.DeleteMessage")
+@Label("Delete Message")
+@Category({"QuickChat", "Persistence"})
+@Description("A message deleted by its hash, with its JSON file if it had one")
+@Threshold("1 ms")
+final class DeleteMessageEvent extends Event {
+
+    @Label("Hash")
+    String hash;
+
+    @Label("Found")
+    boolean found;
+
+    @Label("File")
+    @Description("The JSON file deleted with the message, or null")
+    String file;
+}
@@ -0,0 +1,15 @@
+package st10457602;
+
+/**
+ * The formats MessageExporter can write the full message history in.
+ *
+ * @author Angela
+ */
+public enum ExportFormat {
+    /** One JSON object per line, with the keys storeMessage() writes. */
+    NDJSON,
+    /** Comma-separated values with a header row, quoted as in RFC 4180. */
+    CSV,
+    /** Length-prefixed binary records after a short header; see MessageExporter. */
+    BINARY
+}
@@ -0,0 +1,115 @@
+package st10457602;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with log-linear buckets, in the style of HdrHistogram.
+ *
+ * Each power of two is split into 32 equal buckets, so any recorded value is reported to within
+ * about 3% at every scale from nanoseconds to hours, in a fixed array of 1,888 counters.
+ * Recording only increments array slots and adders, so it allocates nothing.
+ *
+ * @author Angela
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records one value.
+     * @param nanos The latency in nanoseconds; negative values count as 0.
+     */
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketOf(nanos));
+        totalNanos.add(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Clears every bucket. Values recorded while the reset runs may or may not survive it.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        totalNanos.reset();
+        maxNanos.set(0);
+    }
+
+    /**
+     * Takes a snapshot of the histogram.
+     * @param calls    The number of calls to report, of which the recorded values may be a sample.
+     * @param failures The number of those calls that failed.
+     * @return The snapshot.
+     */
+    LatencySnapshot snapshot(long calls, long failures) {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        long max = maxNanos.get();
+        double mean = count == 0 ? 0 : (double) totalNanos.sum() / count;
+        return new LatencySnapshot(calls, failures, count, mean / 1000,
+                valueAt(copy, count, 0.50, max) / 1000.0, valueAt(copy, count, 0.90, max) / 1000.0,
+                valueAt(copy, count, 0.99, max) / 1000.0, valueAt(copy, count, 0.999, max) / 1000.0,
+                max / 1000.0);
+    }
+
+    // The highest value in the bucket holding the value at that quantile
+    private static long valueAt(long[] counts, long count, double quantile, long max) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, highestValueIn(i));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the bucket a value falls in: values below 32 have a bucket each, and every
+     * power of two above that is split into 32 buckets.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /** Returns the smallest value that falls in a bucket. */
+    static long lowestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        return (long) (bucket - (shift << SUB_BUCKET_BITS)) << shift;
+    }
+
+    /** Returns the largest value that falls in a bucket. */
+    static long highestValueIn(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowestValueIn(bucket + 1) - 1;
+    }
+}
@@ -0,0 +1,70 @@
+package st10457602;
+
+import javax.management.ConstructorParameters;
+
+/**
+ * The call count, failures and latency percentiles of one operation at a point in time,
+ * as reported by QuickChatMetrics. Latencies are in microseconds, and are taken from the
+ * timed sample of calls.
+ *
+ * @author Angela
+ */
+public final class LatencySnapshot {
+
+    private final long count;
+    private final long failures;
+    private final long samples;
+    private final double meanMicros;
+    private final double p50Micros;
+    private final double p90Micros;
+    private final double p99Micros;
+    private final double p999Micros;
+    private final double maxMicros;
+
+    @ConstructorParameters({"count", "failures", "samples", "meanMicros", "p50Micros", "p90Micros", "p99Micros", "p999Micros", "maxMicros"})
+    public LatencySnapshot(long count, long failures, long samples, double meanMicros, double p50Micros, double p90Micros,
+                           double p99Micros, double p999Micros, double maxMicros) {
+        this.count = count;
+        this.failures = failures;
+        this.samples = samples;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p90Micros = p90Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    /** @return The number of calls recorded. */
+    public long getCount() { return count; }
+
+    /** @return How many of those calls failed. */
+    public long getFailures() { return failures; }
+
+    /** @return How many of those calls were timed. */
+    public long getSamples() { return samples; }
+
+    /** @return The mean latency. */
+    public double getMeanMicros() { return meanMicros; }
+
+    /** @return The median latency. */
+    public double getP50Micros() { return p50Micros; }
+
+    /** @return The 90th percentile latency. */
+    public double getP90Micros() { return p90Micros; }
+
+    /** @return The 99th percentile latency. */
+    public double getP99Micros() { return p99Micros; }
+
+    /** @return The 99.9th percentile latency. */
+    public double getP999Micros() { return p999Micros; }
+
+    /** @return The slowest call. */
+    public double getMaxMicros() { return maxMicros; }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d failures=%d samples=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                count, failures, samples, meanMicros, p50Micros, p90Micros, p99Micros, p999Micros, maxMicros);
+    }
+}
@@ -0,0 +1,94 @@
+package st10457602;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Reads the payloads of messages that were loaded without them. With lazy loading on, startup
+ * keeps only each message's metadata; its payload is read back from the JSON file it was
+ * loaded from the first time it is asked for, and kept in a {@link PayloadCache} so that
+ * messages that are searched for again and again are not read from disk each time. The cache
+ * holds {@code quickchat.payload.cache.bytes} bytes of payloads (32 MB by default).
+ *
+ * A message only refers to its file by its ID and the index it was loaded with, so this
+ * remembers the directory of the last lazy load. A message whose file is later deleted or
+ * moved reads back a null payload.
+ *
+ * @author Angela
+ */
+final class LazyPayloads {
+
+    private static final long CACHE_BYTES = Long.getLong("quickchat.payload.cache.bytes", 32L << 20);
+
+    private static volatile File directory = new File(".");
+
+    // Keyed by message; a payload weighs about what its String takes on the heap
+    private static final PayloadCache<MessageFeature, String> CACHE =
+            new PayloadCache<>(CACHE_BYTES, payload -> 56 + 2L * payload.length());
+
+    private LazyPayloads() {
+    }
+
+    /**
+     * Starts a lazy load: payloads are read from this directory from now on.
+     * @param dataDirectory The directory the messages are being loaded from.
+     */
+    static void loadingFrom(File dataDirectory) {
+        directory = dataDirectory;
+        CACHE.clear();
+    }
+
+    /**
+     * The name of the file a message with this ID and index is stored to, as storeMessage()
+     * names it.
+     * @param id    The message ID.
+     * @param index The message index; 0 for a draft.
+     * @return The file name.
+     */
+    static String fileName(String id, int index) {
+        return index == 0 ? "message_draft_" + id + ".json" : "message_" + index + ".json";
+    }
+
+    /**
+     * Returns a message's payload, from the cache or from its file.
+     * @param message The message the payload belongs to.
+     * @param id      Its ID.
+     * @param index   The index it was loaded with.
+     * @return The payload, or null if the file can no longer be read.
+     */
+    static String get(MessageFeature message, String id, int index) {
+        return CACHE.get(message, m -> read(new File(directory, fileName(id, index))));
+    }
+
+    /**
+     * Stops caching a message's payload, e.g. once the message holds it itself.
+     * @param message The message.
+     */
+    static void forget(MessageFeature message) {
+        CACHE.invalidate(message);
+    }
+
+    /** @return The number of payloads in the cache. */
+    static int cachedCount() {
+        return CACHE.size();
+    }
+
+    /** @return The cache payloads are read through, for its counters. */
+    static PayloadCache<MessageFeature, String> cache() {
+        return CACHE;
+    }
+
+    private static String read(File file) {
+        try (FileReader reader = new FileReader(file)) {
+            JSONObject json = (JSONObject) new JSONParser().parse(reader);
+            return (String) json.get("MESSAGE_PAYLOAD");
+        } catch (IOException | ParseException | ClassCastException e) {
+            return null; // No console output
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package st10457602;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for one message file that took longer than its threshold to read and
+ * parse during loadAllMessagesFromJsonFiles().
+ *
+ * @author Angela
+ */
+@Name("st10457602.LoadMessageFile")
+@Label("Load Message File")
+@Category({"QuickChat", "Persistence"})
+@Description("One message JSON file read and parsed while loading")
+@Threshold("1 ms")
+@StackTrace(false)
+final class LoadMessageFileEvent extends Event {
+
+    @Label("File")
+    String file;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Status")
+    @Description("The message status read from the file, or null if it could not be parsed")
+    String status;
+}
@@ -0,0 +1,35 @@
+package st10457602;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for a whole loadAllMessagesFromJsonFiles() call that took longer than
+ * its threshold, usually at startup.
+ *
+ * @author Angela
+ */
+@Name("st10457602.LoadMessages")
+@Label("Load Messages")
+@Category({"QuickChat", "Persistence"})
+@Description("Every message file in the data directory loaded into the store")
+@Threshold("20 ms")
+final class LoadMessagesEvent extends Event {
+
+    @Label("Directory")
+    String directory;
+
+    @Label("Files")
+    int files;
+
+    @Label("Loaded")
+    int loaded;
+
+    @Label("Failed")
+    @Description("Files that could not be read or parsed")
+    int failed;
+}
@@ -11,32 +11,90 @@ public class LoginFeature {
     // Tracks whether the user is currently logged in
     private boolean isLoggedIn;
 
-    // Constructor connects Login to a specific Registration instance
-    public LoginFeature(RegistrationFeature registrationFeature) 
+    // The account that last logged in successfully, or null
+    private UserAccount loggedInAccount;
+
+    // Issues a token for each successful login, so later requests need not re-check the password
+    private final SessionManager sessions;
+
+    // The token of the current login, or null
+    private String sessionToken;
+
+    // Constructor connects Login to a specific Registration instance, sharing the application's sessions
+    public LoginFeature(RegistrationFeature registrationFeature)
+    {
+        this(registrationFeature, SessionManager.shared());
+    }
+
+    // Constructor for a Login with its own set of sessions, e.g. for a headless server or a test
+    public LoginFeature(RegistrationFeature registrationFeature, SessionManager sessions)
     {
         this.registrationFeature = registrationFeature;
+        this.sessions = sessions;
         this.isLoggedIn = false; // User starts off as not logged in
     }
 
     // Attempts to log in using provided username and password
-    public boolean loginUser(String username, String password) 
+    public boolean loginUser(String username, String password)
     {
-        // Validates the credentials against the registered details
-        isLoggedIn = username != null && password != null &&
-                     username.equals(registrationFeature.getUsername()) &&
-                     password.equals(registrationFeature.getPassword());
+        // Validates the credentials against every registered user with one directory lookup
+        long start = QuickChatMetrics.start(QuickChatMetrics.Operation.LOGIN);
+        loggedInAccount = username != null && password != null
+                ? registrationFeature.getUserDirectory().authenticate(username, password)
+                : null;
+        isLoggedIn = loggedInAccount != null;
+        // A new login replaces the session of the previous one
+        sessions.logout(sessionToken);
+        sessionToken = isLoggedIn ? sessions.issue(loggedInAccount) : null;
+        QuickChatMetrics.record(QuickChatMetrics.Operation.LOGIN, start, isLoggedIn);
         return isLoggedIn;
     }
 
+    // Returns the session token issued by the last successful login, or null if nobody is logged in
+    public String getSessionToken()
+    {
+        return isLoggedIn ? sessionToken : null;
+    }
+
+    // Returns the account a session token belongs to, or null if it is unknown, logged out or expired
+    public UserAccount validateSession(String token)
+    {
+        return sessions.validate(token);
+    }
+
+    // Ends a session, e.g. one issued to another caller; returns true if it was live
+    public boolean logout(String token)
+    {
+        boolean loggedOut = sessions.logout(token);
+        if (token != null && token.equals(sessionToken)) {
+            isLoggedIn = false;
+            sessionToken = null;
+        }
+        return loggedOut;
+    }
+
+    // Logs the current user out and ends their session
+    public void logout()
+    {
+        logout(sessionToken);
+        isLoggedIn = false;
+    }
+
+    // Returns the account of the logged-in user, or null if nobody is logged in
+    public UserAccount getLoggedInAccount()
+    {
+        return isLoggedIn ? loggedInAccount : null;
+    }
+
     // Returns a message based on whether the user is logged in
-    public String returnLoginStatus() 
+    public String returnLoginStatus()
     {
         if (isLoggedIn) {
-            return "Welcome back " + registrationFeature.getFirstName() + " " + 
-                   registrationFeature.getLastName() + "!\nit is great to see you.";
+            return "Welcome back " + loggedInAccount.getFirstName() + " " +
+                   loggedInAccount.getLastName() + "!\nit is great to see you.";
         } else {
             return "Username or password incorrect, please try again!";
         }
     }
-    
+
 }
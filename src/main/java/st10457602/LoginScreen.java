@@ -147,8 +147,9 @@ public class LoginScreen extends javax.swing.JFrame {
             JOptionPane.showMessageDialog(this, loginFeedback, "Access Granted", JOptionPane.INFORMATION_MESSAGE);
             
             // Set the logged-in username in MessageFeature for sender identification
-            // The RegistrationFeature object holds the first and last name for display
-            MessageFeature.setLoggedInUsername(loginFeature.registrationFeature.getFirstName() + " " + loginFeature.registrationFeature.getLastName());
+            // The logged-in account holds the first and last name for display
+            UserAccount account = loginFeature.getLoggedInAccount();
+            MessageFeature.setLoggedInUsername(account.getFirstName() + " " + account.getLastName());
             
             // Load existing messages from JSON files when entering the message screen
             MessageFeature.loadAllMessagesFromJsonFiles();
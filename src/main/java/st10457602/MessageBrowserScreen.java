@@ -0,0 +1,99 @@
+package st10457602;
+
+import javax.swing.*;
+import javax.swing.table.JTableHeader;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+/**
+ * A window listing every message in a table, for browsing stores too large to show as a report.
+ *
+ * Rows have a fixed height and columns fixed widths, so the table never measures rows it is not
+ * showing; together with MessageTableModel, only the visible rows are ever rendered.
+ * Clicking the Index, Recipient, Length or Status header sorts by that column in the background;
+ * the summary below the table says when the sorted rows are in place.
+ *
+ * @author Angela
+ */
+public class MessageBrowserScreen extends JFrame {
+
+    private static final int ROW_HEIGHT = 22;
+    private static final int[] COLUMN_WIDTHS = {70, 120, 60, 90, 180, 400};
+
+    private final MessageTableModel model;
+    private JTable table;
+    private JLabel summaryLabel;
+
+    /**
+     * Creates a browser over the current messages.
+     */
+    public MessageBrowserScreen() {
+        this.model = MessageTableModel.fromStore();
+        initComponents();
+        model.addTableModelListener(e -> updateSummary());
+        updateSummary();
+    }
+
+    /**
+     * Initializes and lays out the GUI components.
+     */
+    private void initComponents() {
+        setTitle("QuickChat Message Browser");
+        setSize(1000, 600);
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        setLocationRelativeTo(null);
+
+        JPanel mainPanel = new JPanel(new BorderLayout(10, 10));
+        mainPanel.setBackground(new Color(237, 192, 207)); // Pink background, as in MessageScreen
+        mainPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        table = new JTable(model);
+        table.setRowHeight(ROW_HEIGHT); // Fixed height, so row positions are computed rather than measured
+        table.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        table.setAutoResizeMode(JTable.AUTO_RESIZE_LAST_COLUMN);
+        table.setFillsViewportHeight(true);
+        table.getTableHeader().setReorderingAllowed(false);
+        for (int i = 0; i < COLUMN_WIDTHS.length; i++) {
+            table.getColumnModel().getColumn(i).setPreferredWidth(COLUMN_WIDTHS[i]);
+        }
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                JTableHeader header = (JTableHeader) e.getSource();
+                int column = table.convertColumnIndexToModel(header.columnAtPoint(e.getPoint()));
+                if (model.isSortable(column)) {
+                    model.sortBy(column);
+                    summaryLabel.setText("Sorting " + model.getRowCount() + " messages...");
+                }
+            }
+        });
+
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
+        scrollPane.getVerticalScrollBar().setUnitIncrement(ROW_HEIGHT);
+
+        summaryLabel = new JLabel();
+        summaryLabel.setFont(new Font("Cascadia Code", Font.PLAIN, 14));
+        JButton refreshButton = new JButton("Refresh");
+        refreshButton.addActionListener(e -> model.refresh());
+
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        bottomPanel.setOpaque(false);
+        bottomPanel.add(summaryLabel, BorderLayout.CENTER);
+        bottomPanel.add(refreshButton, BorderLayout.EAST);
+
+        mainPanel.add(scrollPane, BorderLayout.CENTER);
+        mainPanel.add(bottomPanel, BorderLayout.SOUTH);
+        add(mainPanel);
+    }
+
+    /**
+     * Shows the row count and the current sort below the table.
+     */
+    private void updateSummary() {
+        String sort = model.getSortColumn() < 0 ? "store order"
+                : model.getColumnName(model.getSortColumn()) + (model.isAscending() ? " ascending" : " descending");
+        summaryLabel.setText(model.getRowCount() + " messages, sorted by " + sort);
+    }
+}
@@ -0,0 +1,339 @@
+package st10457602;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The binary form of a message, shared by anything that persists, replicates or sends messages
+ * as bytes. A record is:
+ * <pre>
+ * byte    version (2)
+ * byte    status in the low three bits (0 New, 1 Sent, 2 Stored, 3 Disregarded), 0x10 if
+ *         the ID and recipient are packed, and 0x20 if the hash is rebuilt from the ID,
+ *         index and payload
+ * long    packed: ID * 10^9 + the nine digits after +27, read as an unsigned number
+ *   or    string ID, string recipient, when either is not in its usual form
+ * varint  index
+ * string  hash, unless it is rebuilt
+ * string  payload
+ * </pre>
+ * Varints are unsigned LEB128. A string is a varint of its UTF-8 length plus one (0 for null)
+ * followed by the UTF-8 bytes, with an unpaired surrogate written as '?' as String.getBytes
+ * does. The long is big-endian, whatever the buffer's byte order. Version 1 records, which
+ * always carry the hash, are still read.
+ *
+ * A codec keeps scratch space between calls, so encoding and decoding the same codec again
+ * allocates nothing beyond the decoded message's own strings. A codec is not thread-safe.
+ *
+ * @author Angela
+ */
+public final class MessageCodec {
+
+    /** The record version this codec writes. */
+    public static final byte VERSION = 2;
+    private static final byte VERSION_WITH_HASH = 1;
+
+    // Listed rather than taken from values(), so the codes stay put if the enum changes
+    private static final MessageStatus[] STATUSES = {
+        MessageStatus.NEW, MessageStatus.SENT, MessageStatus.STORED, MessageStatus.DISREGARDED
+    };
+    private static final int STATUS_MASK = 0x07;
+    private static final int PACKED = 0x10;
+    private static final int DERIVED_HASH = 0x20;
+    private static final long RECIPIENT_DIGITS = 1_000_000_000L;
+    private static final int ID_LENGTH = 10;
+    private static final int RECIPIENT_PREFIX = 3; // "+27"
+    private static final int MAX_VARINT_BYTES = 5;
+    // The most bytes one char can take in UTF-8 (a surrogate pair takes four for two chars)
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    private byte[] bytes = new byte[256];
+    private char[] chars = new char[ID_LENGTH + RECIPIENT_PREFIX];
+
+    /**
+     * Writes a message at the buffer's position.
+     * @param msg The message.
+     * @param out Where to write. Its position is left after the record.
+     * @return The number of bytes written.
+     * @throws BufferOverflowException If the record does not fit; nothing is written.
+     */
+    public int encode(MessageFeature msg, ByteBuffer out) {
+        return encode(msg.getMessageID(), msg.getMessageRecipient(), msg.getMessagePayload(),
+                msg.getMessageIndex(), msg.fixedHash(), msg.getStatus(), out);
+    }
+
+    // A null hash is one that is rebuilt from the ID, index and payload, so it is not written
+    int encode(String id, String recipient, String payload, int index, String hash, MessageStatus status, ByteBuffer out) {
+        int statusCode = statusCode(status);
+        if (statusCode < 0) {
+            throw new IllegalArgumentException("No status code for " + status);
+        }
+        boolean derivedHash = hash == null;
+        boolean packed = ValidationEngine.isValidMessageId(id) && ValidationEngine.isValidCellNumber(recipient);
+        int hashLength = utf8Length(hash);
+        int payloadLength = utf8Length(payload);
+        int size = 2 + varintLength(index) + (derivedHash ? 0 : stringLength(hashLength)) + stringLength(payloadLength);
+        int idLength = 0;
+        int recipientLength = 0;
+        if (packed) {
+            size += Long.BYTES;
+        } else {
+            idLength = utf8Length(id);
+            recipientLength = utf8Length(recipient);
+            size += stringLength(idLength) + stringLength(recipientLength);
+        }
+        if (out.remaining() < size) {
+            throw new BufferOverflowException();
+        }
+
+        out.put(VERSION).put((byte) (statusCode | (packed ? PACKED : 0) | (derivedHash ? DERIVED_HASH : 0)));
+        if (packed) {
+            long value = digits(id, 0) * RECIPIENT_DIGITS + digits(recipient, RECIPIENT_PREFIX);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.put((byte) (value >>> shift));
+            }
+        } else {
+            putString(id, idLength, out);
+            putString(recipient, recipientLength, out);
+        }
+        putVarint(index, out);
+        if (!derivedHash) {
+            putString(hash, hashLength, out);
+        }
+        putString(payload, payloadLength, out);
+        return size;
+    }
+
+    /**
+     * Reads a message from the buffer's position. The message is not added to the store.
+     * @param in The record.
+     * @return The message, with the ID, index, hash and status it was encoded with.
+     * @throws BufferUnderflowException If the record is cut short; the position is unchanged.
+     * @throws IllegalArgumentException If the record is from another version or is malformed;
+     *                                  the position is unchanged.
+     */
+    public MessageFeature decode(ByteBuffer in) {
+        int start = in.position();
+        try {
+            byte version = in.get();
+            if (version != VERSION && version != VERSION_WITH_HASH) {
+                throw new IllegalArgumentException("Unsupported message record version " + version);
+            }
+            int flags = in.get();
+            int statusCode = flags & STATUS_MASK;
+            int known = version == VERSION ? STATUS_MASK | PACKED | DERIVED_HASH : STATUS_MASK | PACKED;
+            if (statusCode >= STATUSES.length || (flags & ~known) != 0) {
+                throw new IllegalArgumentException("Malformed message record flags " + flags);
+            }
+            String id;
+            String recipient;
+            if ((flags & PACKED) != 0) {
+                long value = 0;
+                for (int i = 0; i < Long.BYTES; i++) {
+                    value = (value << 8) | (in.get() & 0xFF);
+                }
+                id = digitsToString(Long.divideUnsigned(value, RECIPIENT_DIGITS), null);
+                recipient = digitsToString(Long.remainderUnsigned(value, RECIPIENT_DIGITS), "+27");
+            } else {
+                id = getString(in);
+                recipient = getString(in);
+            }
+            int index = getVarint(in);
+            String hash = (flags & DERIVED_HASH) != 0 ? null : getString(in);
+            String payload = getString(in);
+            return MessageFeature.restore(id, recipient, payload, index, hash, STATUSES[statusCode]);
+        } catch (RuntimeException e) {
+            in.position(start);
+            throw e;
+        }
+    }
+
+    /**
+     * The most bytes a message's record can take, without measuring its strings.
+     * @param msg The message.
+     * @return An upper bound on what encode() writes.
+     */
+    public static int maxEncodedLength(MessageFeature msg) {
+        return maxEncodedLength(msg.getMessageID(), msg.getMessageRecipient(), msg.getMessagePayload(), msg.fixedHash());
+    }
+
+    static int maxEncodedLength(String id, String recipient, String payload, String hash) {
+        long max = 2 + MAX_VARINT_BYTES + maxStringLength(id) + maxStringLength(recipient)
+                + maxStringLength(hash) + maxStringLength(payload);
+        return (int) Math.min(max, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The status code a record stores for a status.
+     * @param status The status.
+     * @return The code, or -1 for null.
+     */
+    static int statusCode(MessageStatus status) {
+        for (int i = 0; i < STATUSES.length; i++) {
+            if (STATUSES[i] == status) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes a string as UTF-8, with an unpaired surrogate written as '?' as String.getBytes
+     * does. The array must have room for three bytes per char.
+     * @return The position after the last byte written.
+     */
+    static int encodeUtf8(String value, byte[] out, int at) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out[at++] = (byte) c;
+            } else if (c < 0x800) {
+                out[at++] = (byte) (0xC0 | (c >> 6));
+                out[at++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    out[at++] = (byte) (0xF0 | (cp >> 18));
+                    out[at++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    out[at++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    out[at++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    out[at++] = '?';
+                }
+            } else {
+                out[at++] = (byte) (0xE0 | (c >> 12));
+                out[at++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[at++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return at;
+    }
+
+    // The number of bytes encodeUtf8 writes for a string, or -1 for null
+    static int utf8Length(String value) {
+        if (value == null) {
+            return -1;
+        }
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else {
+                    length++;
+                }
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void putString(String value, int utf8Length, ByteBuffer out) {
+        putVarint(utf8Length + 1, out);
+        if (utf8Length <= 0) {
+            return;
+        }
+        if (out.hasArray()) {
+            int at = out.arrayOffset() + out.position();
+            encodeUtf8(value, out.array(), at);
+            out.position(out.position() + utf8Length);
+        } else {
+            // Direct buffers are filled from the scratch array in one put
+            if (bytes.length < value.length() * MAX_BYTES_PER_CHAR) {
+                bytes = new byte[value.length() * MAX_BYTES_PER_CHAR];
+            }
+            out.put(bytes, 0, encodeUtf8(value, bytes, 0));
+        }
+    }
+
+    private String getString(ByteBuffer in) {
+        int n = getVarint(in);
+        if (n == 0) {
+            return null;
+        }
+        int length = n - 1;
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            in.get(bytes, 0, length);
+            value = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private static void putVarint(int value, ByteBuffer out) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 7 * MAX_VARINT_BYTES; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in message record");
+    }
+
+    private static int varintLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    private static int stringLength(int utf8Length) {
+        return utf8Length < 0 ? 1 : varintLength(utf8Length + 1) + utf8Length;
+    }
+
+    private static long maxStringLength(String value) {
+        return value == null ? 1 : MAX_VARINT_BYTES + (long) value.length() * MAX_BYTES_PER_CHAR;
+    }
+
+    private static long digits(String value, int from) {
+        long result = 0;
+        for (int i = from; i < value.length(); i++) {
+            result = result * 10 + (value.charAt(i) - '0');
+        }
+        return result;
+    }
+
+    // Zero-pads an ID to ten digits, or a recipient to nine after its prefix
+    private String digitsToString(long value, String prefix) {
+        int width = prefix == null ? ID_LENGTH : ID_LENGTH - 1;
+        int start = prefix == null ? 0 : prefix.length();
+        if (prefix != null) {
+            prefix.getChars(0, start, chars, 0);
+        }
+        for (int i = start + width - 1; i >= start; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(chars, 0, start + width);
+    }
+}
@@ -0,0 +1,56 @@
+package st10457602;
+
+/**
+ * Something that happened to a message, as published by MessageEventPublisher.
+ * The message's index, hash and status are copied when the event is created, because
+ * the message itself may change again before a subscriber gets to the event.
+ *
+ * @author Angela
+ */
+public final class MessageEvent {
+
+    /** The kinds of lifecycle event. */
+    public enum Type {
+        /** The message was sent and given an index. */
+        SENT,
+        /** The message was stored to a JSON file. */
+        STORED,
+        /** The message was disregarded. */
+        DISREGARDED,
+        /** The message was deleted by its hash. */
+        DELETED,
+        /** The message was loaded from a JSON file, or bulk imported without writing one. */
+        LOADED
+    }
+
+    private final Type type;
+    private final MessageFeature message;
+    private final int messageIndex;
+    private final String messageHash;
+    private final String messageStatus;
+    private final long timestampMillis;
+
+    MessageEvent(Type type, MessageFeature message) {
+        this.type = type;
+        this.message = message;
+        this.messageIndex = message.getMessageIndex();
+        this.messageHash = message.getMessageHash();
+        this.messageStatus = message.getMessageStatus();
+        this.timestampMillis = System.currentTimeMillis();
+    }
+
+    // --- Getters ---
+    public Type getType() { return type; }
+    public MessageFeature getMessage() { return message; }
+    public String getMessageID() { return message.getMessageID(); }
+    public String getMessageRecipient() { return message.getMessageRecipient(); }
+    public int getMessageIndex() { return messageIndex; }
+    public String getMessageHash() { return messageHash; }
+    public String getMessageStatus() { return messageStatus; }
+    public long getTimestampMillis() { return timestampMillis; }
+
+    @Override
+    public String toString() {
+        return type + " " + getMessageID() + " (" + messageStatus + ")";
+    }
+}
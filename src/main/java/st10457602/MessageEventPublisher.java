@@ -0,0 +1,90 @@
+package st10457602;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publishes MessageEvents to any number of asynchronous subscribers, such as indexers,
+ * metrics and exporters.
+ *
+ * Each subscriber has its own bounded buffer and receives only as many events as it has
+ * requested through its Flow.Subscription. Publishing never waits: if a subscriber's buffer
+ * is full because it has fallen behind, the event is dropped for that subscriber and counted,
+ * so a slow subscriber cannot slow down sending. With no subscribers, publishing does nothing.
+ *
+ * @author Angela
+ */
+public class MessageEventPublisher implements Flow.Publisher<MessageEvent>, AutoCloseable {
+
+    /** The default number of events buffered for each subscriber. */
+    public static final int DEFAULT_BUFFER_CAPACITY = Flow.defaultBufferSize();
+
+    private final ExecutorService executor;
+    private final SubmissionPublisher<MessageEvent> publisher;
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Creates a publisher with the default buffer for each subscriber.
+     */
+    public MessageEventPublisher() {
+        this(DEFAULT_BUFFER_CAPACITY);
+    }
+
+    /**
+     * Creates a publisher.
+     * @param bufferCapacity The most events buffered for each subscriber before events are dropped.
+     */
+    public MessageEventPublisher(int bufferCapacity) {
+        // Subscribers are served by daemon threads so they never keep the application running
+        this.executor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "quickchat-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.publisher = new SubmissionPublisher<>(executor, bufferCapacity);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super MessageEvent> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * Publishes an event for a message to every current subscriber without blocking.
+     * @param type    What happened to the message.
+     * @param message The message it happened to.
+     */
+    void publish(MessageEvent.Type type, MessageFeature message) {
+        // Checked first so the send path does not even create the event when nobody listens
+        if (!publisher.hasSubscribers()) {
+            return;
+        }
+        published.increment();
+        publisher.offer(new MessageEvent(type, message), (subscriber, event) -> {
+            dropped.increment();
+            return false; // Do not retry; the subscriber simply misses this event
+        });
+    }
+
+    /** @return The number of current subscribers. */
+    public int getSubscriberCount() { return publisher.getNumberOfSubscribers(); }
+
+    /** @return The number of events published while there were subscribers. */
+    public long getPublishedCount() { return published.sum(); }
+
+    /** @return The number of deliveries dropped because a subscriber's buffer was full. */
+    public long getDroppedCount() { return dropped.sum(); }
+
+    /**
+     * Completes every subscription and stops the subscriber threads once they finish.
+     */
+    @Override
+    public void close() {
+        publisher.close();
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,176 @@
+package st10457602;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams every sent, stored and disregarded message, with its ID, index, hash and status, to
+ * a byte channel. Records are written one at a time through a single fixed buffer, so the
+ * memory an export needs beyond the store snapshot does not grow with the number of messages.
+ *
+ * NDJSON rows use the keys storeMessage() writes, and CSV rows are
+ * {@code recipient,payload,status,id,index,hash}, so both can be read back with BulkImporter.
+ * The BINARY format is the bytes {@code QCMX}, a version byte (2), and then one MessageCodec
+ * record per message, back to back. Version 1 files used fixed-width fields and are no longer
+ * written.
+ *
+ * @author Angela
+ */
+public final class MessageExporter {
+
+    static final byte[] MAGIC = {'Q', 'C', 'M', 'X'};
+    static final byte VERSION = 2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int TEXT_BATCH_CHARS = 32 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ExportFormat format;
+    private ByteBuffer buffer;
+    private CharsetEncoder encoder;
+    private char[] scratch = new char[0];
+
+    /**
+     * Creates an exporter. The channel is not closed by the exporter.
+     * @param channel Where to write.
+     * @param format  The output format.
+     */
+    public MessageExporter(WritableByteChannel channel, ExportFormat format) {
+        if (channel == null || format == null) {
+            throw new IllegalArgumentException("Channel and format are required");
+        }
+        this.channel = channel;
+        this.format = format;
+    }
+
+    /**
+     * Writes every message in a store snapshot.
+     * @param snapshot The messages to write.
+     * @return The number of messages written.
+     * @throws IOException If the channel cannot be written.
+     */
+    long export(MessageStore.Snapshot snapshot) throws IOException {
+        return format == ExportFormat.BINARY ? exportBinary(snapshot) : exportText(snapshot);
+    }
+
+    private long exportText(MessageStore.Snapshot snapshot) throws IOException {
+        // A heap buffer, since the encoder's fast path works on arrays
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        // Unpaired surrogates become '?', as they do in the binary format
+        encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        // Records are gathered into one builder and encoded a batch at a time, since handing
+        // each small field to a Writer costs more than writing it
+        StringBuilder out = new StringBuilder(TEXT_BATCH_CHARS + 1024);
+        long count = 0;
+        if (format == ExportFormat.CSV) {
+            out.append("recipient,payload,status,id,index,hash\n");
+        }
+        for (MessageStore.Snapshot.Row row : snapshot) {
+            MessageFeature msg = row.message();
+            if (format == ExportFormat.CSV) {
+                ReportWriter.appendCsv(out, msg.getMessageRecipient());
+                out.append(',');
+                ReportWriter.appendCsv(out, msg.getMessagePayload());
+                out.append(',');
+                ReportWriter.appendCsv(out, row.status().label());
+                out.append(',').append(msg.getMessageID()).append(',').append(Integer.toString(row.index())).append(',');
+                ReportWriter.appendCsv(out, row.hash());
+            } else {
+                out.append("{\"MESSAGE_ID\":");
+                ReportWriter.appendJson(out, msg.getMessageID());
+                out.append(",\"MESSAGE_RECIPIENT\":");
+                ReportWriter.appendJson(out, msg.getMessageRecipient());
+                out.append(",\"MESSAGE_PAYLOAD\":");
+                ReportWriter.appendJson(out, msg.getMessagePayload());
+                out.append(",\"MESSAGE_INDEX\":").append(Integer.toString(row.index())).append(",\"MESSAGE_HASH\":");
+                ReportWriter.appendJson(out, row.hash());
+                out.append(",\"MESSAGE_STATUS\":");
+                ReportWriter.appendJson(out, row.status().label());
+                out.append('}');
+            }
+            out.append('\n');
+            count++;
+            if (out.length() >= TEXT_BATCH_CHARS) {
+                writeText(out);
+            }
+        }
+        writeText(out);
+        drain();
+        return count;
+    }
+
+    private void writeText(StringBuilder text) throws IOException {
+        // Copied into an array so the encoder can take its array-to-array path
+        if (scratch.length < text.length()) {
+            scratch = new char[text.length()];
+        }
+        text.getChars(0, text.length(), scratch, 0);
+        CharBuffer chars = CharBuffer.wrap(scratch, 0, text.length());
+        encoder.reset();
+        CoderResult result;
+        do {
+            result = encoder.encode(chars, buffer, true);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (result.isOverflow()) {
+                drain();
+            }
+        } while (result.isOverflow());
+        while (encoder.flush(buffer).isOverflow()) {
+            drain();
+        }
+        text.setLength(0);
+    }
+
+    private long exportBinary(MessageStore.Snapshot snapshot) throws IOException {
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.put(MAGIC).put(VERSION);
+        MessageCodec codec = new MessageCodec();
+        long count = 0;
+        for (MessageStore.Snapshot.Row row : snapshot) {
+            MessageFeature msg = row.message();
+            String id = msg.getMessageID();
+            String recipient = msg.getMessageRecipient();
+            String payload = msg.getMessagePayload();
+            int max = MessageCodec.maxEncodedLength(id, recipient, payload, row.fixedHash());
+            if (max > BUFFER_SIZE) {
+                // Too long to be sure of fitting; only very long payloads from old files get here
+                drain();
+                ByteBuffer large = ByteBuffer.allocate(max);
+                codec.encode(id, recipient, payload, row.index(), row.fixedHash(), row.status(), large);
+                large.flip();
+                while (large.hasRemaining()) {
+                    channel.write(large);
+                }
+            } else {
+                ensure(max);
+                codec.encode(id, recipient, payload, row.index(), row.fixedHash(), row.status(), buffer);
+            }
+            count++;
+        }
+        drain();
+        return count;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -7,43 +7,78 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.Random;
-import java.util.regex.Pattern;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Represents a single message in the QuickChat application.
  * Handles message creation, validation, hashing, sending, and storage.
  * This class also manages collections of all sent, stored, and disregarded messages
- * for reporting and management purposes as per Part 3 requirements.
+ * for reporting and management purposes as per Part 3 requirements; they are kept in a
+ * recipient-sharded MessageStore so that concurrent sends scale across cores.
  *
  * @author Angela
  */
 public class MessageFeature {
     private final String MESSAGE_ID;
     private final String MESSAGE_RECIPIENT;
-    private final String MESSAGE_PAYLOAD;
+    // Null when the payload is kept in the PayloadArena or was left in its file
+    private String MESSAGE_PAYLOAD;
+    // Where the payload is in the PayloadArena; -1 if it is on the heap; for a payload left in its
+    // file, the top bit set with the payload's length and the index it was loaded with packed below.
+    // Volatile so that a thread still holding a deleted message sees the payload keepPayload moved
+    private volatile long payloadAddress;
     private int MESSAGE_INDEX;
+    // Only set for a hash loaded from a file that does not match the one createMessageHash gives;
+    // otherwise the hash is rebuilt from the ID, index and payload when it is asked for
     private String MESSAGE_HASH;
-    // Tracks if the message was sent (true), stored (false), or disregarded (false)
-    private String messageStatus; // Added to track status for reporting (Sent, Stored, Disregarded)
+    private boolean hashed; // Whether the message has a hash yet
+    private MessageStatus messageStatus; // Tracks status for reporting (New, Sent, Stored, Disregarded)
 
     // Static counter for unique indexing of sent messages
-    private static int messageDispatchCounter = 0;
+    private static final AtomicInteger messageDispatchCounter = new AtomicInteger();
 
-    private static final int MAX_PAYLOAD_LENGTH = 250;
-    private static final Random idGeneratorRandom = new Random();
+    // Source of 10-digit message IDs; per-thread random by default
+    private static volatile MessageIdGenerator idGenerator = MessageIdGenerator.threadLocalRandom();
 
-    // --- Static ArrayLists for Part 3: Storing all messages ---
-    // These lists hold MessageFeature objects to keep all details together
-    private static ArrayList<MessageFeature> allSentMessages = new ArrayList<>();
-    private static ArrayList<MessageFeature> allDisregardedMessages = new ArrayList<>();
-    private static ArrayList<MessageFeature> allStoredMessages = new ArrayList<>(); // For messages explicitly stored
+    // Whether new messages keep their payloads off the heap; the quickchat.payload.offheap property by default
+    private static volatile boolean offHeapPayloads = Boolean.getBoolean("quickchat.payload.offheap");
 
-    // As per POE, also keeping separate lists for IDs and Hashes (can be redundant but required)
-    private static ArrayList<String> allMessageHashes = new ArrayList<>();
-    private static ArrayList<String> allMessageIDs = new ArrayList<>();
+    // Whether loading leaves payloads in their files until they are read; the quickchat.payload.lazy property by default
+    private static volatile boolean lazyPayloadLoading = Boolean.getBoolean("quickchat.payload.lazy");
+
+    // Whether Flight Recorder events are created at all; the quickchat.jfr.disabled property turns them off.
+    // The first event class to load starts Flight Recorder, which takes longer than a short command-line run
+    private static volatile boolean flightRecorderEvents = !Boolean.getBoolean("quickchat.jfr.disabled");
+
+    private static final long ON_HEAP = -1;
+    private static final long IN_FILE = Long.MIN_VALUE;
+
+    // --- Part 3: Storing all messages ---
+    // Sent, stored and disregarded messages, sharded by recipient. The ID and hash lists
+    // required by the POE are derived from the sent and stored messages held here.
+    private static volatile MessageStore store = new MessageStore(MessageStore.defaultShardCount());
+
+    // Optional outbound stage that sent messages are queued on for delivery; null means none
+    private static volatile OutboundDispatcher outboundDispatcher;
+
+    // Lifecycle events for asynchronous subscribers; publishing is a no-op with none subscribed
+    private static volatile MessageEventPublisher eventPublisher = new MessageEventPublisher();
+
+    // Directory the message JSON files are written to and loaded from; the working directory by default
+    private static volatile File dataDirectory = new File(System.getProperty("quickchat.data.dir", "."));
 
     // Stores the username of the currently logged-in user for sender identification
     private static String loggedInUsername = "";
@@ -57,6 +92,118 @@ public class MessageFeature {
         MessageFeature.loggedInUsername = username;
     }
 
+    /**
+     * Sets the directory that message JSON files are stored to, loaded from and deleted from.
+     * It defaults to the quickchat.data.dir system property, or the working directory.
+     * @param directory The data directory.
+     */
+    public static void setDataDirectory(File directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException("Data directory cannot be null");
+        }
+        MessageFeature.dataDirectory = directory;
+    }
+
+    /**
+     * Returns the directory that message JSON files are stored in.
+     * @return The data directory.
+     */
+    public static File getDataDirectory() {
+        return dataDirectory;
+    }
+
+    /**
+     * Replaces the in-memory message store, e.g. to benchmark a particular shard count.
+     * @param messageStore The store to use from now on.
+     */
+    static void useStore(MessageStore messageStore) {
+        MessageFeature.store = messageStore;
+    }
+
+    /**
+     * Routes sent messages through an outbound dispatcher, or stops doing so when given null.
+     * @param dispatcher The dispatcher that delivers sent messages, or null for none.
+     */
+    public static void setOutboundDispatcher(OutboundDispatcher dispatcher) {
+        MessageFeature.outboundDispatcher = dispatcher;
+    }
+
+    /**
+     * Returns the publisher of message lifecycle events (sent, stored, disregarded, deleted, loaded).
+     * Subscribe to it to react to messages instead of polling the message lists.
+     * @return The event publisher.
+     */
+    public static MessageEventPublisher getEventPublisher() {
+        return eventPublisher;
+    }
+
+    /**
+     * Replaces the publisher of message lifecycle events, e.g. to use a different buffer size.
+     * The previous publisher is not closed.
+     * @param publisher The publisher to use from now on.
+     */
+    public static void setEventPublisher(MessageEventPublisher publisher) {
+        if (publisher == null) {
+            throw new IllegalArgumentException("Event publisher cannot be null");
+        }
+        MessageFeature.eventPublisher = publisher;
+    }
+
+    /**
+     * Replaces the generator used to assign IDs to newly constructed messages. Messages
+     * created with an ID they already had, e.g. when they are loaded, tell the generator about
+     * it, so it should be set before messages are loaded.
+     * @param generator The ID generator to use, e.g. MessageIdGenerator.timeOrdered().
+     */
+    public static void setIdGenerator(MessageIdGenerator generator) {
+        if (generator == null) {
+            throw new IllegalArgumentException("ID generator cannot be null");
+        }
+        MessageFeature.idGenerator = generator;
+    }
+
+    /**
+     * Keeps the payloads of messages created from now on outside the Java heap, in a
+     * PayloadArena, or stops doing so. Messages that already exist are not moved. Off-heap
+     * payloads shorten GC pauses for very large histories, at the cost of building a new String
+     * each time a payload is read. It defaults to the quickchat.payload.offheap system property.
+     * @param offHeap true to keep new payloads off the heap.
+     */
+    public static void setOffHeapPayloads(boolean offHeap) {
+        MessageFeature.offHeapPayloads = offHeap;
+    }
+
+    /** @return Whether new messages keep their payloads off the heap. */
+    public static boolean isOffHeapPayloads() {
+        return offHeapPayloads;
+    }
+
+    /**
+     * Makes loadAllMessagesFromJsonFiles() keep only each message's metadata (ID, recipient,
+     * index, hash and status) and leave its payload in its file, or stops doing so. A payload is
+     * read back the first time it is asked for, through a small cache, so startup is quicker and
+     * a large history takes far less heap. It defaults to the quickchat.payload.lazy system property.
+     * @param lazy true to load payloads lazily.
+     */
+    public static void setLazyPayloadLoading(boolean lazy) {
+        MessageFeature.lazyPayloadLoading = lazy;
+    }
+
+    /** @return Whether loading leaves payloads in their files until they are read. */
+    public static boolean isLazyPayloadLoading() {
+        return lazyPayloadLoading;
+    }
+
+    /**
+     * Turns the Flight Recorder events for store, load, search, delete and report on or off.
+     * While off, the event classes are never loaded, so Flight Recorder is not started by them.
+     * It defaults to on unless the quickchat.jfr.disabled system property is true.
+     * @param enabled true to emit the events.
+     */
+    public static void setFlightRecorderEvents(boolean enabled) {
+        MessageFeature.flightRecorderEvents = enabled;
+    }
+
     /**
      * Constructs a new Message.
      *
@@ -64,23 +211,106 @@ public class MessageFeature {
      * @param payload   The content of the message.
      */
     public MessageFeature(final String recipient, final String payload) {
-        // Generate a 10-digit random number string for MESSAGE_ID
-        // Using Math.abs and "% 10000000000L" ensures a non-negative 10-digit number
-        this.MESSAGE_ID = String.format("%010d", Math.abs(idGeneratorRandom.nextLong() % 10000000000L));
-        this.MESSAGE_RECIPIENT = recipient;
-        this.MESSAGE_PAYLOAD = payload;
+        // Generate a zero-padded 10-digit ID string for MESSAGE_ID
+        this.MESSAGE_ID = idGenerator.nextMessageId();
+        this.MESSAGE_RECIPIENT = RecipientTable.canonical(recipient); // Shared with other messages to the same number
+        this.payloadAddress = offHeapAddress(payload);
+        this.MESSAGE_PAYLOAD = payloadAddress < 0 ? payload : null;
         this.MESSAGE_INDEX = 0; // Initial index for a new (unsent) message
-        this.MESSAGE_HASH = "";   // Initial hash is empty
-        this.messageStatus = "New"; // Default status
+        this.messageStatus = MessageStatus.NEW; // Default status; there is no hash yet
+    }
+
+    // Reconstructs a message loaded from a JSON file, keeping the ID it was saved with
+    private MessageFeature(final String id, final String recipient, final String payload) {
+        this.MESSAGE_ID = inUse(id);
+        this.MESSAGE_RECIPIENT = RecipientTable.canonical(recipient);
+        this.payloadAddress = offHeapAddress(payload);
+        this.MESSAGE_PAYLOAD = payloadAddress < 0 ? payload : null;
+        this.MESSAGE_INDEX = 0;
+        this.messageStatus = MessageStatus.NEW;
+    }
+
+    // Reconstructs a message loaded from a JSON file without its payload, which stays in the file
+    private MessageFeature(final String id, final String recipient, int index, int payloadLength) {
+        this.MESSAGE_ID = inUse(id);
+        this.MESSAGE_RECIPIENT = RecipientTable.canonical(recipient);
+        this.payloadAddress = IN_FILE | ((long) payloadLength << 32) | index;
+        this.MESSAGE_PAYLOAD = null;
+        this.MESSAGE_INDEX = index;
+        this.messageStatus = MessageStatus.NEW;
+    }
+
+    // Tells the ID generator that an ID is taken, so that it is not handed out again
+    private static String inUse(String id) {
+        if (ValidationEngine.isValidMessageId(id)) {
+            idGenerator.observe(Long.parseLong(id));
+        }
+        return id;
     }
 
     // --- Getters ---
     public String getMessageID() { return MESSAGE_ID; }
     public String getMessageRecipient() { return MESSAGE_RECIPIENT; }
-    public String getMessagePayload() { return MESSAGE_PAYLOAD; }
+    public String getMessagePayload() {
+        long address = payloadAddress;
+        if (address == ON_HEAP) {
+            return MESSAGE_PAYLOAD;
+        }
+        return address >= 0 ? PayloadArena.shared().get(address) : LazyPayloads.get(this, MESSAGE_ID, (int) address);
+    }
     public int getMessageIndex() { return MESSAGE_INDEX; }
-    public String getMessageHash() { return MESSAGE_HASH; }
-    public String getMessageStatus() { return messageStatus; }
+    public String getMessageHash() {
+        if (MESSAGE_HASH != null) {
+            return MESSAGE_HASH;
+        }
+        return hashed ? createMessageHash(MESSAGE_ID, MESSAGE_INDEX, getMessagePayload()) : "";
+    }
+    public String getMessageStatus() { return messageStatus.label(); }
+    public MessageStatus getStatus() { return messageStatus; }
+
+    // Copies a payload into the arena when payloads are kept off the heap; -1 means keep it here
+    private static long offHeapAddress(String payload) {
+        return offHeapPayloads && payload != null ? PayloadArena.shared().add(payload) : -1;
+    }
+
+    // The payload's length without building the payload, or -1 for none
+    int payloadLength() {
+        long address = payloadAddress;
+        if (address == ON_HEAP) {
+            return MESSAGE_PAYLOAD == null ? -1 : MESSAGE_PAYLOAD.length();
+        }
+        return address >= 0 ? PayloadArena.shared().length(address) : (int) ((address & ~IN_FILE) >>> 32);
+    }
+
+    // Brings a payload that was left in its file onto the heap, before the file goes away. The
+    // payload is written before the address, so a reader that sees ON_HEAP also sees the payload
+    private void keepPayload() {
+        if (payloadAddress != ON_HEAP && payloadAddress < 0) {
+            this.MESSAGE_PAYLOAD = getMessagePayload();
+            this.payloadAddress = ON_HEAP;
+            LazyPayloads.forget(this);
+        }
+    }
+
+    // Gives the message the hash that goes with its current ID, index and payload
+    private void deriveHash() {
+        this.hashed = true;
+        this.MESSAGE_HASH = null;
+    }
+
+    // Takes a hash from a file, only keeping the string if it cannot be rebuilt
+    private void adoptHash(String hash) {
+        this.hashed = hash != null && !hash.isEmpty();
+        this.MESSAGE_HASH = hashed && !hash.equals(createMessageHash(MESSAGE_ID, MESSAGE_INDEX, getMessagePayload())) ? hash : null;
+    }
+
+    // The hash as a snapshot needs it: null if it is rebuilt from the index, else the hash itself
+    String fixedHash() {
+        if (MESSAGE_HASH != null) {
+            return MESSAGE_HASH;
+        }
+        return hashed ? null : "";
+    }
 
     /**
      * Validates the format of a given message ID (10 digits).
@@ -89,10 +319,20 @@ public class MessageFeature {
      * @return true if valid, false otherwise.
      */
     public boolean checkMessageID(final String id) {
-        if (id == null) {
-            return false;
+        return ValidationEngine.isValidMessageId(id);
+    }
+
+    /**
+     * Checks the message payload length without building a status sentence.
+     *
+     * @param payload The message content.
+     * @return PAYLOAD_READY, or PAYLOAD_TOO_LONG if the payload is missing or too long.
+     */
+    public MessageOutcome checkPayloadLength(final String payload) {
+        if (payload == null || payload.length() > ValidationEngine.MAX_PAYLOAD_LENGTH) {
+            return MessageOutcome.PAYLOAD_TOO_LONG;
         }
-        return id.matches("\\d{10}");
+        return MessageOutcome.PAYLOAD_READY;
     }
 
     /**
@@ -102,16 +342,25 @@ public class MessageFeature {
      * @return A status string: "Message ready to send." or an error message with details.
      */
     public String validatePayloadLength(final String payload) {
-        if (payload == null) {
-            // Null payload is treated as exceeding length by the max length itself
-            return "Message exceeds " + MAX_PAYLOAD_LENGTH + " characters by " + (0 - MAX_PAYLOAD_LENGTH) + ", please reduce size.";
-        }
-        if (payload.length() <= MAX_PAYLOAD_LENGTH) {
-            return "Message ready to send.";
-        } else {
-            int excess = payload.length() - MAX_PAYLOAD_LENGTH;
-            return "Message exceeds " + MAX_PAYLOAD_LENGTH + " characters by " + excess + ", please reduce size.";
+        if (checkPayloadLength(payload) == MessageOutcome.PAYLOAD_READY) {
+            return MessageOutcome.PAYLOAD_READY.describe();
         }
+        // Null payload is treated as exceeding length by the max length itself
+        int excess = (payload == null ? 0 : payload.length()) - ValidationEngine.MAX_PAYLOAD_LENGTH;
+        return "Message exceeds " + ValidationEngine.MAX_PAYLOAD_LENGTH + " characters by " + excess + ", please reduce size.";
+    }
+
+    /**
+     * Checks the recipient's cellphone number format (+27 followed by 9 digits)
+     * without building a status sentence.
+     *
+     * @param recipient The cellphone number.
+     * @return RECIPIENT_CAPTURED or RECIPIENT_INVALID.
+     */
+    public MessageOutcome checkRecipientNumber(final String recipient) {
+        // +27 followed by 9 digits; null and blank numbers fail the same check
+        return ValidationEngine.isValidCellNumber(recipient)
+                ? MessageOutcome.RECIPIENT_CAPTURED : MessageOutcome.RECIPIENT_INVALID;
     }
 
     /**
@@ -121,15 +370,7 @@ public class MessageFeature {
      * @return A status string: "Cell phone number successfully captured." or an error message.
      */
     public String validateRecipientNumber(final String recipient) {
-        if (recipient == null || recipient.isBlank()) {
-            return "Cell phone number is incorrectly formatted or does not contain an international code. Please correct the number and try again.";
-        }
-        String regexSA = "^\\+27[0-9]{9}$"; // Regex for +27 followed by 9 digits
-        if (Pattern.matches(regexSA, recipient)) {
-            return "Cell phone number successfully captured.";
-        } else {
-            return "Cell phone number is incorrectly formatted or does not contain an international code. Please correct the number and try again.";
-        }
+        return checkRecipientNumber(recipient).describe();
     }
 
     /**
@@ -143,82 +384,214 @@ public class MessageFeature {
      * @return The uppercase hash string, or empty if inputs are invalid.
      */
     public String createMessageHash(final String id, int index, final String payload) {
-        if (id == null || id.length() < 2 || payload == null) {
-            return ""; // Cannot generate hash with invalid inputs
-        }
-
-        String idStart = id.substring(0, 2);
-        String content = payload.trim(); // Trim whitespace from payload
-
-        if (content.isEmpty()) {
-            return (idStart + ":" + index + ":").toUpperCase(); // Handle empty payload gracefully
-        }
-
-        String[] words = content.split("\\s+"); // Split by one or more whitespace characters
-        String firstWord = words[0];
-        String lastWord = words.length > 1 ? words[words.length - 1] : firstWord;
-
-        // Remove non-alphanumeric characters from words as per POE example "HITONIGHT"
-        firstWord = firstWord.replaceAll("[^a-zA-Z0-9]", "");
-        lastWord = lastWord.replaceAll("[^a-zA-Z0-9]", "");
-
-        return (idStart + ":" + index + ":" + firstWord + lastWord).toUpperCase();
+        // Scans the payload for its first and last words without trim, split or regexes
+        return MessageHashBuilder.build(id, index, payload);
     }
 
     /**
      * Processes the message for sending: validates, assigns index, generates hash,
-     * and adds to the list of sent messages.
+     * and adds to the list of sent messages. When an outbound dispatcher is set, the message
+     * is also queued for delivery and is only marked as sent if the queue accepts it.
      *
      * @return A status string: "Message successfully sent." or an error message.
      */
     public String sentMessage() {
+        return send().describe();
+    }
+
+    /**
+     * Sends the message as sentMessage() does, returning the outcome instead of a sentence.
+     *
+     * @return SENT, or the reason the message could not be sent.
+     */
+    public MessageOutcome send() {
+        long start = QuickChatMetrics.start(QuickChatMetrics.Operation.SEND);
+        MessageOutcome outcome = validateAndDispatch();
+        QuickChatMetrics.record(QuickChatMetrics.Operation.SEND, start, outcome.isSuccess());
+        return outcome;
+    }
+
+    private MessageOutcome validateAndDispatch() {
+        MessageOutcome rejection = validateForSend();
+        if (rejection != null) {
+            return rejection;
+        }
+
+        // Without an outbound stage the message counts as sent straight away
+        OutboundDispatcher dispatcher = outboundDispatcher;
+        if (dispatcher == null) {
+            markSent();
+            return MessageOutcome.SENT;
+        }
+
+        // Otherwise it is only marked as sent once the outbound queue has accepted it
+        switch (dispatcher.submit(this, this::markSent)) {
+            case QUEUED:
+                return MessageOutcome.SENT;
+            case RATE_LIMITED:
+                return MessageOutcome.SEND_RATE_LIMITED;
+            case QUEUE_FULL:
+                return MessageOutcome.SEND_QUEUE_FULL;
+            default:
+                return MessageOutcome.SEND_STOPPED;
+        }
+    }
+
+    // Returns the reason the message cannot be sent, or null if it can
+    MessageOutcome validateForSend() {
+        String payload = getMessagePayload();
         // Check for empty or whitespace-only payload
-        if (this.MESSAGE_PAYLOAD == null || this.MESSAGE_PAYLOAD.trim().isEmpty()) {
-            return "Failed to send message: Message content cannot be empty";
+        if (payload == null || payload.trim().isEmpty()) {
+            return MessageOutcome.SEND_EMPTY_PAYLOAD;
         }
-        
+
         // Validate payload length
-        String payloadValMsg = validatePayloadLength(this.MESSAGE_PAYLOAD);
-        if (!payloadValMsg.equals("Message ready to send.")) {
-            if (this.MESSAGE_PAYLOAD.length() > MAX_PAYLOAD_LENGTH) {
-                 return "Failed to send message: Payload too long";
-            }
-            return payloadValMsg; // Return specific error from validation
+        if (checkPayloadLength(payload) != MessageOutcome.PAYLOAD_READY) {
+            return MessageOutcome.SEND_PAYLOAD_TOO_LONG;
         }
 
         // Validate recipient number
-        String recipientValMsg = validateRecipientNumber(this.MESSAGE_RECIPIENT);
-        if (!recipientValMsg.equals("Cell phone number successfully captured.")) {
-            return "Failed to send message: Invalid recipient";
+        if (checkRecipientNumber(this.MESSAGE_RECIPIENT) != MessageOutcome.RECIPIENT_CAPTURED) {
+            return MessageOutcome.SEND_INVALID_RECIPIENT;
         }
 
         // Check message ID validity (should always be valid due to generation logic)
         if (!checkMessageID(this.MESSAGE_ID)) {
-            return "Failed to send message: Invalid message ID (system error)";
+            return MessageOutcome.SEND_INVALID_ID;
         }
+        return null;
+    }
 
-        messageDispatchCounter++;
-        this.MESSAGE_INDEX = messageDispatchCounter;
-        // Generate message hash
-        this.MESSAGE_HASH = createMessageHash(this.MESSAGE_ID, this.MESSAGE_INDEX, this.MESSAGE_PAYLOAD);
-        this.messageStatus = "Sent"; // Update message status to Sent
+    /**
+     * Sends several messages at once. Each message is validated as send() validates it; the valid
+     * ones are given one contiguous range of indexes in a single step, hashed in one pass, and
+     * added to the store with each shard locked once for the whole batch.
+     *
+     * With an outbound dispatcher set, each message is queued on its own exactly as send() does,
+     * since indexes are only handed out as the queue accepts messages.
+     *
+     * @param messages The messages, in the order their indexes should follow.
+     * @return The outcome for each message, in the same order.
+     */
+    public static List<MessageOutcome> sendAll(Collection<MessageFeature> messages) {
+        long start = QuickChatMetrics.start(QuickChatMetrics.Operation.SEND_ALL);
+        List<MessageOutcome> outcomes = new ArrayList<>(messages.size());
+        List<MessageFeature> valid = new ArrayList<>(messages.size());
+
+        if (outboundDispatcher != null) {
+            for (MessageFeature msg : messages) {
+                MessageOutcome outcome = msg.send();
+                outcomes.add(outcome);
+                if (outcome.isSuccess()) {
+                    valid.add(msg);
+                }
+            }
+        } else {
+            for (MessageFeature msg : messages) {
+                MessageOutcome rejection = msg.validateForSend();
+                outcomes.add(rejection != null ? rejection : MessageOutcome.SENT);
+                if (rejection == null) {
+                    valid.add(msg);
+                }
+            }
+            if (!valid.isEmpty()) {
+                // Rejected messages do not use up an index, just as with send()
+                int index = reserveMessageIndexes(valid.size());
+                for (MessageFeature msg : valid) {
+                    msg.assignSentIndex(++index);
+                }
+                addAllSent(valid);
+            }
+        }
+        QuickChatMetrics.record(QuickChatMetrics.Operation.SEND_ALL, start, valid.size() == outcomes.size());
+        return outcomes;
+    }
+
+    // --- Batch steps, shared by sendAll() and BulkImporter ---
+
+    // Reserves count consecutive indexes and returns the one before the first
+    static int reserveMessageIndexes(int count) {
+        return messageDispatchCounter.getAndAdd(count);
+    }
+
+    // Gives a validated message its reserved index and the hash that goes with it
+    void assignSentIndex(int index) {
+        this.MESSAGE_INDEX = index;
+        deriveHash();
+        this.messageStatus = MessageStatus.SENT;
+    }
+
+    // Adds messages that already have their indexes to the store as sent
+    static void addAllSent(List<MessageFeature> messages) {
+        store.addAllSent(messages);
+        for (MessageFeature msg : messages) {
+            eventPublisher.publish(MessageEvent.Type.SENT, msg);
+        }
+    }
+
+    // Adds messages to the store as stored without writing their files, as loading does
+    static void addAllStoredInMemory(List<MessageFeature> messages) {
+        for (MessageFeature msg : messages) {
+            msg.markStored();
+        }
+        store.addAllStored(messages);
+        for (MessageFeature msg : messages) {
+            eventPublisher.publish(MessageEvent.Type.LOADED, msg);
+        }
+    }
+
+    // Adds messages to the store as disregarded, as disregardMessage() does for each
+    static void addAllDisregarded(List<MessageFeature> messages) {
+        for (MessageFeature msg : messages) {
+            msg.messageStatus = MessageStatus.DISREGARDED;
+        }
+        store.addAllDisregarded(messages);
+        for (MessageFeature msg : messages) {
+            eventPublisher.publish(MessageEvent.Type.DISREGARDED, msg);
+        }
+    }
+
+    // Creates a message that keeps an ID it was given elsewhere, if the ID is valid
+    static MessageFeature withId(String id, String recipient, String payload) {
+        return ValidationEngine.isValidMessageId(id)
+                ? new MessageFeature(id, recipient, payload)
+                : new MessageFeature(recipient, payload);
+    }
+
+    // Rebuilds a message exactly as it was encoded elsewhere, without adding it to the store;
+    // a null hash is rebuilt from the ID, index and payload
+    static MessageFeature restore(String id, String recipient, String payload, int index, String hash, MessageStatus status) {
+        MessageFeature msg = new MessageFeature(id, recipient, payload);
+        msg.MESSAGE_INDEX = index;
+        if (hash == null) {
+            msg.deriveHash();
+        } else {
+            msg.adoptHash(hash);
+        }
+        msg.messageStatus = status;
+        return msg;
+    }
 
-        // Add to global lists for reporting
-        allSentMessages.add(this); // Add this message object to the list of sent messages
-        allMessageIDs.add(this.MESSAGE_ID); // Add its ID
-        allMessageHashes.add(this.MESSAGE_HASH); // Add its hash
+    // Assigns the next index and the hash, marks the message as sent and adds it to the store
+    private void markSent() {
+        this.MESSAGE_INDEX = messageDispatchCounter.incrementAndGet();
+        deriveHash(); // The hash now goes with the new index
+        this.messageStatus = MessageStatus.SENT; // Update message status to Sent
 
-        return "Message successfully sent.";
+        // Add to the store for reporting; its ID and hash become part of the global lists
+        store.addSent(this);
+        eventPublisher.publish(MessageEvent.Type.SENT, this);
     }
     
     /**
      * Marks the current message as disregarded and adds it to the disregarded messages list.
      */
     public void disregardMessage() {
-        this.messageStatus = "Disregarded"; // Set status for disregarded message
-        allDisregardedMessages.add(this); // Add to the list of disregarded messages
+        this.messageStatus = MessageStatus.DISREGARDED; // Set status for disregarded message
+        store.addDisregarded(this); // Add to the list of disregarded messages
+        eventPublisher.publish(MessageEvent.Type.DISREGARDED, this);
         // IDs and Hashes for disregarded messages are not explicitly required by POE,
-        // so not adding to global allMessageIDs/allMessageHashes here.
+        // so they are left out of getAllMessageIDs/getAllMessageHashes.
     }
 
     /**
@@ -229,56 +602,173 @@ public class MessageFeature {
      * @return Status string: "Message successfully stored." or an error message.
      */
     public String storeMessage() {
+        return store().describe();
+    }
+
+    /**
+     * Stores the message as storeMessage() does, returning the outcome instead of a sentence.
+     *
+     * @return STORED, or STORE_FAILED if the JSON file could not be written.
+     */
+    public MessageOutcome store() {
+        long start = QuickChatMetrics.start(QuickChatMetrics.Operation.STORE);
+        MessageOutcome outcome = writeToFile();
+        QuickChatMetrics.record(QuickChatMetrics.Operation.STORE, start, outcome.isSuccess());
+        return outcome;
+    }
+
+    private MessageOutcome writeToFile() {
+        StoreMessageEvent event = flightRecorderEvents ? new StoreMessageEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        String json = prepareForStore();
+        File target = new File(dataDirectory, storeFileName());
+
+        // Add to the stored messages if not already there (the store prevents duplicates),
+        // which also makes its ID and hash part of the global lists
+        store.addStored(this);
+
+        MessageOutcome outcome;
+        try (FileWriter file = new FileWriter(target)) {
+            file.write(json);
+            outcome = MessageOutcome.STORED;
+        } catch (IOException e) {
+            // No console output as per user's request
+            outcome = MessageOutcome.STORE_FAILED;
+        }
+        commitStoreEvent(event, target, outcome);
+        if (outcome.isSuccess()) {
+            eventPublisher.publish(MessageEvent.Type.STORED, this);
+        }
+        return outcome;
+    }
+
+    // Gives the message its hash and stored status if it needs them, and returns its JSON document
+    private String prepareForStore() {
+        String statusToSaveInJson = markStored();
         JSONObject msgJson = new JSONObject();
         msgJson.put("MESSAGE_ID", this.MESSAGE_ID);
         msgJson.put("MESSAGE_RECIPIENT", this.MESSAGE_RECIPIENT);
-        msgJson.put("MESSAGE_PAYLOAD", this.MESSAGE_PAYLOAD);
+        msgJson.put("MESSAGE_PAYLOAD", getMessagePayload());
         msgJson.put("MESSAGE_INDEX", this.MESSAGE_INDEX); // Will be 0 for drafts, >0 for sent
+        msgJson.put("MESSAGE_HASH", getMessageHash());
+        msgJson.put("MESSAGE_STATUS", statusToSaveInJson);
+        return msgJson.toJSONString();
+    }
 
+    // Gives the message its hash and stored status if it needs them, and returns the status to save
+    String markStored() {
         // Generate hash for stored messages if not already generated (e.g., for drafts)
-        if (this.MESSAGE_HASH.isEmpty()) {
-            this.MESSAGE_HASH = createMessageHash(this.MESSAGE_ID, this.MESSAGE_INDEX, this.MESSAGE_PAYLOAD);
+        if (!this.hashed) {
+            deriveHash();
         }
-        msgJson.put("MESSAGE_HASH", this.MESSAGE_HASH);
-
-        // Determine the status to save in JSON based on current internal status
-        String statusToSaveInJson = this.messageStatus;
-        if (this.messageStatus.equals("New")) {
+        if (this.messageStatus == MessageStatus.NEW) {
             // If it's a new message being explicitly stored, its status becomes "Stored"
-            this.messageStatus = "Stored"; // Update internal object state
-            statusToSaveInJson = "Stored"; // This is the status that goes into JSON
+            this.messageStatus = MessageStatus.STORED;
         }
         // If it was already "Sent" or "Disregarded", its status remains unchanged,
         // and that's what's saved in JSON.
-        msgJson.put("MESSAGE_STATUS", statusToSaveInJson);
+        return this.messageStatus.label();
+    }
 
-        String fileName;
+    private String storeFileName() {
         // For drafts (MESSAGE_INDEX == 0), use a unique name to avoid overwriting "message_0.json"
         if (this.MESSAGE_INDEX == 0) {
-            fileName = "message_draft_" + this.MESSAGE_ID + ".json";
-        } else {
-            // For sent messages, use their unique index for file naming
-            fileName = "message_" + this.MESSAGE_INDEX + ".json";
+            return "message_draft_" + this.MESSAGE_ID + ".json";
         }
-        
-        // Add to allStoredMessages if not already in the list (prevents duplicates)
-        if (!allStoredMessages.contains(this)) {
-            allStoredMessages.add(this);
+        // For sent messages, use their unique index for file naming
+        return "message_" + this.MESSAGE_INDEX + ".json";
+    }
+
+    private static void commitStoreEvent(StoreMessageEvent event, File target, MessageOutcome outcome) {
+        if (event == null) {
+            return;
         }
-        // Ensure IDs and Hashes are in global lists, especially for stored-only messages
-        if (!allMessageIDs.contains(this.MESSAGE_ID)) {
-            allMessageIDs.add(this.MESSAGE_ID);
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = target.getPath();
+            event.bytes = target.length();
+            event.success = outcome.isSuccess();
+            event.commit();
         }
-        if (!this.MESSAGE_HASH.isEmpty() && !allMessageHashes.contains(this.MESSAGE_HASH)) {
-            allMessageHashes.add(this.MESSAGE_HASH);
+    }
+
+    /**
+     * Stores several messages at once, each to the same file storeMessage() would write.
+     * Every message is prepared first, the whole batch is added to the store with each shard
+     * locked once, and the files are then written in one pass through a single reused buffer.
+     *
+     * @param messages The messages to store.
+     * @return The outcome for each message, in the same order.
+     */
+    public static List<MessageOutcome> storeAll(Collection<MessageFeature> messages) {
+        long start = QuickChatMetrics.start(QuickChatMetrics.Operation.STORE_ALL);
+        List<MessageFeature> batch = new ArrayList<>(messages);
+        String[] documents = new String[batch.size()];
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = batch.get(i).prepareForStore();
+        }
+        store.addAllStored(batch);
+
+        List<MessageOutcome> outcomes = new ArrayList<>(batch.size());
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        boolean allStored = true;
+        for (int i = 0; i < documents.length; i++) {
+            MessageFeature msg = batch.get(i);
+            StoreMessageEvent event = flightRecorderEvents ? new StoreMessageEvent() : null;
+            if (event != null) {
+                event.begin();
+            }
+            File target = new File(dataDirectory, msg.storeFileName());
+            MessageOutcome outcome;
+            try {
+                writeDocument(target, documents[i], encoder, buffer);
+                outcome = MessageOutcome.STORED;
+            } catch (IOException e) {
+                outcome = MessageOutcome.STORE_FAILED; // No console output
+                allStored = false;
+            }
+            commitStoreEvent(event, target, outcome);
+            outcomes.add(outcome);
+        }
+        for (int i = 0; i < documents.length; i++) {
+            if (outcomes.get(i).isSuccess()) {
+                eventPublisher.publish(MessageEvent.Type.STORED, batch.get(i));
+            }
+        }
+        QuickChatMetrics.record(QuickChatMetrics.Operation.STORE_ALL, start, allStored);
+        return outcomes;
+    }
+
+    // Writes a document as UTF-8, as FileWriter would, through the caller's encoder and buffer
+    private static void writeDocument(File target, String document, CharsetEncoder encoder, ByteBuffer buffer) throws IOException {
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CharBuffer chars = CharBuffer.wrap(document);
+            encoder.reset();
+            CoderResult result;
+            do {
+                buffer.clear();
+                result = encoder.encode(chars, buffer, true);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                drain(channel, buffer);
+            } while (result.isOverflow());
+            do {
+                buffer.clear();
+                result = encoder.flush(buffer);
+                drain(channel, buffer);
+            } while (result.isOverflow());
         }
+    }
 
-        try (FileWriter file = new FileWriter(fileName)) {
-            file.write(msgJson.toJSONString());
-            return "Message successfully stored.";
-        } catch (IOException e) {
-            // No console output as per user's request
-            return "Failed to store message: IO Exception.";
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
         }
     }
 
@@ -297,7 +787,7 @@ public class MessageFeature {
      * @return Total sent messages count.
      */
     public static int returnTotalMessages() {
-        return messageDispatchCounter;
+        return messageDispatchCounter.get();
     }
 
     /**
@@ -305,16 +795,11 @@ public class MessageFeature {
      * Ensures test independence by clearing in-memory data and deleting generated JSON files.
      */
     public static void resetMessageCounterForTesting() {
-        messageDispatchCounter = 0;
-        allSentMessages.clear();
-        allDisregardedMessages.clear();
-        allStoredMessages.clear();
-        allMessageHashes.clear();
-        allMessageIDs.clear();
+        messageDispatchCounter.set(0);
+        store.clear();
         loggedInUsername = ""; // Clear logged in user for tests
         // Also clear any message JSON files generated during tests
-        File currentDir = new File(".");
-        File[] files = currentDir.listFiles((dir, name) -> name.matches("message_.*\\.json|message_draft_.*\\.json"));
+        File[] files = dataDirectory.listFiles((dir, name) -> isMessageFileName(name));
         if (files != null) {
             for (File file : files) {
                 file.delete();
@@ -324,78 +809,143 @@ public class MessageFeature {
     
     // --- New Methods for Part 3 Reports and Data Management ---
 
+    // Same as matching "message_.*\\.json|message_draft_.*\\.json" without compiling a regex per file
+    private static boolean isMessageFileName(String name) {
+        if (name.length() < "message_.json".length() || !name.startsWith("message_") || !name.endsWith(".json")) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (ValidationEngine.isLineTerminator(name.charAt(i))) {
+                return false; // '.' does not match line terminators
+            }
+        }
+        return true;
+    }
+
     /**
-     * Loads all message data from JSON files in the current directory into the static lists.
+     * Loads all message data from JSON files in the data directory into the static lists.
      * This method is crucial for persisting and retrieving messages between application runs.
      * It parses each JSON file and reconstructs MessageFeature objects, populating
-     * the appropriate static lists (allStoredMessages, allSentMessages, etc.) based on their status.
+     * the message store (sent, stored or disregarded) based on their status.
      * This method attempts to load *all* message JSON files and categorize them.
+     * With lazy payload loading on, each payload is left in its file until it is first read.
      */
     public static void loadAllMessagesFromJsonFiles() {
-        // Clear existing static lists to prevent duplicates on successive loads (e.g., during testing or re-initialization)
-        allSentMessages.clear();
-        allDisregardedMessages.clear();
-        allStoredMessages.clear();
-        allMessageHashes.clear();
-        allMessageIDs.clear();
-        messageDispatchCounter = 0; // Reset counter, will be updated by loaded sent messages
-
-        File currentDir = new File(".");
+        long start = QuickChatMetrics.start(QuickChatMetrics.Operation.LOAD);
+        LoadMessagesEvent loadEvent = flightRecorderEvents ? new LoadMessagesEvent() : null;
+        if (loadEvent != null) {
+            loadEvent.begin();
+        }
+        int failed = 0;
+        // Clear the store to prevent duplicates on successive loads (e.g., during testing or re-initialization)
+        store.clear();
+        messageDispatchCounter.set(0); // Reset counter, will be updated by loaded sent messages
+
         // Filter for files starting with "message_" or "message_draft_" and ending with ".json"
-        File[] files = currentDir.listFiles((dir, name) -> name.matches("message_.*\\.json|message_draft_.*\\.json"));
+        File[] files = dataDirectory.listFiles((dir, name) -> isMessageFileName(name));
 
         if (files == null) {
+            QuickChatMetrics.record(QuickChatMetrics.Operation.LOAD, start, false);
+            commitLoadEvent(loadEvent, 0, 0);
             return; // No console output
         }
 
         JSONParser parser = new JSONParser();
+        boolean lazy = lazyPayloadLoading;
+        if (lazy) {
+            LazyPayloads.loadingFrom(dataDirectory);
+        }
 
         for (File file : files) {
-            try (FileReader reader = new FileReader(file)) {
-                Object obj = parser.parse(reader);
-                JSONObject jsonObject = (JSONObject) obj;
-
-                // Extract data from JSON object
-                String id = (String) jsonObject.get("MESSAGE_ID");
-                String recipient = (String) jsonObject.get("MESSAGE_RECIPIENT");
-                String payload = (String) jsonObject.get("MESSAGE_PAYLOAD");
-                Long indexLong = (Long) jsonObject.get("MESSAGE_INDEX");
-                int index = (indexLong != null) ? indexLong.intValue() : 0;
-                String hash = (String) jsonObject.get("MESSAGE_HASH");
-                String status = (String) jsonObject.get("MESSAGE_STATUS");
-
-                // Reconstruct MessageFeature object
-                MessageFeature loadedMessage = new MessageFeature(recipient, payload);
-                loadedMessage.MESSAGE_INDEX = index;
-                loadedMessage.MESSAGE_HASH = (hash != null) ? hash : ""; // Ensure hash is not null
-                loadedMessage.messageStatus = (status != null) ? status : (index == 0 ? "Stored" : "Sent"); // Default for old files
-
-                // Add to appropriate lists based on status
-                if (loadedMessage.getMessageStatus().equals("Sent")) {
-                    allSentMessages.add(loadedMessage);
-                    // Update messageDispatchCounter to reflect the highest index loaded for sent messages
-                    if (loadedMessage.MESSAGE_INDEX > messageDispatchCounter) {
-                        messageDispatchCounter = loadedMessage.MESSAGE_INDEX;
+            LoadMessageFileEvent fileEvent = flightRecorderEvents ? new LoadMessageFileEvent() : null;
+            if (fileEvent != null) {
+                fileEvent.begin();
+            }
+            String loadedStatus = null;
+            try {
+                // A lazy load only scans the file for the metadata and steps over the payload
+                MessageMetadata metadata = lazy ? MessageMetadata.read(file) : null;
+                MessageFeature loadedMessage;
+                int index;
+                String status;
+                if (metadata != null && metadata.payloadLength >= 0 && ValidationEngine.isValidMessageId(metadata.id)
+                        && file.getName().equals(LazyPayloads.fileName(metadata.id, metadata.index))) {
+                    // The payload is read back from this file when it is needed, so the hash is kept as it is
+                    index = metadata.index;
+                    status = metadata.status;
+                    loadedMessage = new MessageFeature(metadata.id, metadata.recipient, index, metadata.payloadLength);
+                    loadedMessage.hashed = metadata.hash != null && !metadata.hash.isEmpty();
+                    loadedMessage.MESSAGE_HASH = loadedMessage.hashed ? metadata.hash : null;
+                } else {
+                    JSONObject jsonObject;
+                    try (FileReader reader = new FileReader(file)) {
+                        jsonObject = (JSONObject) parser.parse(reader);
                     }
-                } else if (loadedMessage.getMessageStatus().equals("Stored")) {
-                    allStoredMessages.add(loadedMessage);
-                } else if (loadedMessage.getMessageStatus().equals("Disregarded")) {
-                    allDisregardedMessages.add(loadedMessage);
-                }
-                
-                // Add to global ID and Hash lists if not already present
-                if (!allMessageIDs.contains(loadedMessage.MESSAGE_ID)) {
-                    allMessageIDs.add(loadedMessage.MESSAGE_ID);
+
+                    // Extract data from JSON object
+                    String id = (String) jsonObject.get("MESSAGE_ID");
+                    String recipient = (String) jsonObject.get("MESSAGE_RECIPIENT");
+                    String payload = (String) jsonObject.get("MESSAGE_PAYLOAD");
+                    Long indexLong = (Long) jsonObject.get("MESSAGE_INDEX");
+                    index = (indexLong != null) ? indexLong.intValue() : 0;
+                    String hash = (String) jsonObject.get("MESSAGE_HASH");
+                    status = (String) jsonObject.get("MESSAGE_STATUS");
+
+                    // Reconstruct MessageFeature object with its saved ID, so that its draft file can still
+                    // be found and deleted; files without a valid ID are given a new one
+                    loadedMessage = ValidationEngine.isValidMessageId(id)
+                            ? new MessageFeature(id, recipient, payload)
+                            : new MessageFeature(recipient, payload);
+                    loadedMessage.MESSAGE_INDEX = index;
+                    loadedMessage.adoptHash(hash); // A missing hash stays empty
                 }
-                if (!loadedMessage.MESSAGE_HASH.isEmpty() && !allMessageHashes.contains(loadedMessage.MESSAGE_HASH)) {
-                    allMessageHashes.add(loadedMessage.MESSAGE_HASH);
+                loadedStatus = (status != null) ? status : (index == 0 ? "Stored" : "Sent"); // Default for old files
+                MessageStatus loaded = MessageStatus.of(loadedStatus);
+
+                // Add to appropriate lists based on status; a file with any other status is skipped
+                if (loaded == MessageStatus.SENT || loaded == MessageStatus.STORED || loaded == MessageStatus.DISREGARDED) {
+                    loadedMessage.messageStatus = loaded;
+                    if (loaded == MessageStatus.SENT) {
+                        store.addSent(loadedMessage);
+                        // Update messageDispatchCounter to reflect the highest index loaded for sent messages
+                        messageDispatchCounter.accumulateAndGet(loadedMessage.MESSAGE_INDEX, Math::max);
+                    } else if (loaded == MessageStatus.STORED) {
+                        store.addStored(loadedMessage);
+                    } else {
+                        store.addDisregarded(loadedMessage);
+                    }
+                    eventPublisher.publish(MessageEvent.Type.LOADED, loadedMessage);
                 }
 
             } catch (IOException | ParseException e) {
-                // No console output
+                failed++; // No console output
+            }
+            if (fileEvent != null) {
+                fileEvent.end();
+                if (fileEvent.shouldCommit()) {
+                    fileEvent.file = file.getPath();
+                    fileEvent.bytes = file.length();
+                    fileEvent.status = loadedStatus;
+                    fileEvent.commit();
+                }
             }
         }
-        // No console output
+        QuickChatMetrics.record(QuickChatMetrics.Operation.LOAD, start, failed == 0);
+        commitLoadEvent(loadEvent, files.length, failed);
+    }
+
+    private static void commitLoadEvent(LoadMessagesEvent event, int files, int failed) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.directory = dataDirectory.getPath();
+            event.files = files;
+            event.loaded = files - failed;
+            event.failed = failed;
+            event.commit();
+        }
     }
 
     /**
@@ -404,16 +954,44 @@ public class MessageFeature {
      * @return A formatted string listing sender and recipient of all sent messages.
      */
     public static String displayAllSentMessagesInfo() {
-        if (allSentMessages.isEmpty()) {
-            return "No messages have been sent yet.";
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeAllSentMessagesInfo(sb, ReportFormat.TEXT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // A StringBuilder never throws
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Streams the sender and recipient of all sent messages, one message at a time.
+     * @param out    Where to write the report.
+     * @param format The report format.
+     * @return The number of messages written.
+     * @throws IOException If the output cannot be written.
+     */
+    public static long writeAllSentMessagesInfo(Appendable out, ReportFormat format) throws IOException {
+        ReportEvent event = flightRecorderEvents ? new ReportEvent() : null;
+        if (event != null) {
+            event.begin();
         }
+        String sender = loggedInUsername.isEmpty() ? "Unknown" : loggedInUsername;
+        long written = new ReportWriter(out, format).writeSentMessagesInfo(store.sentIterator(), sender);
+        commitReportEvent(event, "sentMessagesInfo", format, written);
+        return written;
+    }
 
-        StringBuilder sb = new StringBuilder("--- All Sent Messages ---\n");
-        for (MessageFeature msg : allSentMessages) {
-            sb.append("Sender: ").append(loggedInUsername.isEmpty() ? "Unknown" : loggedInUsername)
-              .append(", Recipient: ").append(msg.getMessageRecipient()).append("\n");
+    private static void commitReportEvent(ReportEvent event, String report, Enum<?> format, long messages) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.report = report;
+            event.format = format.name();
+            event.messages = messages;
+            event.commit();
         }
-        return sb.toString();
     }
 
     /**
@@ -423,38 +1001,37 @@ public class MessageFeature {
      * @return The payload string of the longest message, or a message if no messages are found.
      */
     public static String findLongestSentMessage() {
-        // Collect all relevant messages (sent and stored)
-        ArrayList<MessageFeature> allRelevantMessages = new ArrayList<>();
-        allRelevantMessages.addAll(allSentMessages);
-        
-        // Add messages from allStoredMessages, but avoid duplicates if a message is already in allSentMessages
-        for (MessageFeature storedMsg : allStoredMessages) {
-            boolean isDuplicate = false;
-            for (MessageFeature sentMsg : allSentMessages) {
-                if (storedMsg.getMessageID().equals(sentMsg.getMessageID())) {
-                    isDuplicate = true;
-                    break;
-                }
-            }
-            if (!isDuplicate) {
-                allRelevantMessages.add(storedMsg);
-            }
+        long start = QuickChatMetrics.start(QuickChatMetrics.Operation.FIND_LONGEST);
+        SearchMessagesEvent event = flightRecorderEvents ? new SearchMessagesEvent() : null;
+        if (event != null) {
+            event.begin();
         }
+        // Each sent or stored message is measured once, in place; off-heap payloads are only built for the winner
+        MessageStore.Entry longest = store.maxSentOrStored(MessageFeature::payloadLength);
 
-        if (allRelevantMessages.isEmpty()) {
+        if (longest == null) {
+            QuickChatMetrics.record(QuickChatMetrics.Operation.FIND_LONGEST, start, false);
+            commitSearchEvent(event, SearchMessagesEvent.LONGEST, null, 0);
             return "No messages have been sent or stored to determine the longest.";
         }
 
-        String longestMessagePayload = "";
-        int maxLength = 0;
+        String longestMessagePayload = longest.message.payloadLength() > 0 ? longest.message.getMessagePayload() : "";
+        QuickChatMetrics.record(QuickChatMetrics.Operation.FIND_LONGEST, start, true);
+        commitSearchEvent(event, SearchMessagesEvent.LONGEST, null, 1);
+        return longestMessagePayload;
+    }
 
-        for (MessageFeature msg : allRelevantMessages) {
-            if (msg.MESSAGE_PAYLOAD != null && msg.MESSAGE_PAYLOAD.length() > maxLength) {
-                maxLength = msg.MESSAGE_PAYLOAD.length();
-                longestMessagePayload = msg.MESSAGE_PAYLOAD;
-            }
+    private static void commitSearchEvent(SearchMessagesEvent event, String kind, String key, int hits) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.kind = kind;
+            event.key = key;
+            event.hits = hits;
+            event.commit();
         }
-        return longestMessagePayload;
     }
 
     /**
@@ -467,22 +1044,20 @@ public class MessageFeature {
             return "Please provide a message ID to search.";
         }
         
-        // Search in sent messages
-        for (MessageFeature msg : allSentMessages) {
-            if (msg.getMessageID().equals(searchID)) {
-                return "Message Found (Sent):\n" +
-                       "Recipient: " + msg.getMessageRecipient() + "\n" +
-                       "Message: \"" + msg.getMessagePayload() + "\"";
-            }
+        // Sent messages take precedence over stored ones with the same ID
+        long start = QuickChatMetrics.start(QuickChatMetrics.Operation.SEARCH_BY_ID);
+        SearchMessagesEvent event = flightRecorderEvents ? new SearchMessagesEvent() : null;
+        if (event != null) {
+            event.begin();
         }
-
-        // Search in stored messages
-        for (MessageFeature msg : allStoredMessages) {
-            if (msg.getMessageID().equals(searchID)) {
-                return "Message Found (Stored):\n" +
-                       "Recipient: " + msg.getMessageRecipient() + "\n" +
-                       "Message: \"" + msg.getMessagePayload() + "\"";
-            }
+        MessageStore.Entry found = store.findById(searchID);
+        QuickChatMetrics.record(QuickChatMetrics.Operation.SEARCH_BY_ID, start, found != null);
+        commitSearchEvent(event, SearchMessagesEvent.BY_ID, searchID, found != null ? 1 : 0);
+        if (found != null) {
+            MessageFeature msg = found.message;
+            return "Message Found (" + (found.sent ? "Sent" : "Stored") + "):\n" +
+                   "Recipient: " + msg.getMessageRecipient() + "\n" +
+                   "Message: \"" + msg.getMessagePayload() + "\"";
         }
 
         return "No message found with ID: " + searchID;
@@ -498,43 +1073,24 @@ public class MessageFeature {
             return "Please provide a recipient number to search.";
         }
 
-        StringBuilder sb = new StringBuilder("--- Messages for Recipient: ").append(searchRecipient).append(" ---\n");
-        boolean found = false;
-
-        // Collect messages to avoid concurrent modification if items were removed
-        ArrayList<MessageFeature> messagesForRecipient = new ArrayList<>();
-
-        // Search in sent messages
-        for (MessageFeature msg : allSentMessages) {
-            if (msg.getMessageRecipient().equals(searchRecipient)) {
-                messagesForRecipient.add(msg);
-                found = true;
-            }
-        }
-
-        // Search in stored messages, avoiding duplicates that are already in sent list (if a message was sent AND stored)
-        for (MessageFeature msg : allStoredMessages) {
-            if (msg.getMessageRecipient().equals(searchRecipient)) {
-                boolean isDuplicate = false;
-                for (MessageFeature existingMsg : messagesForRecipient) {
-                    if (existingMsg.getMessageID().equals(msg.getMessageID())) {
-                        isDuplicate = true;
-                        break;
-                    }
-                }
-                if (!isDuplicate) {
-                    messagesForRecipient.add(msg);
-                    found = true;
-                }
-            }
+        // Only the recipient's shard is searched; sent messages come first, then stored drafts
+        long start = QuickChatMetrics.start(QuickChatMetrics.Operation.SEARCH_BY_RECIPIENT);
+        SearchMessagesEvent event = flightRecorderEvents ? new SearchMessagesEvent() : null;
+        if (event != null) {
+            event.begin();
         }
-        
-        if (!found) {
+        List<MessageStore.Entry> messagesForRecipient = store.findByRecipient(searchRecipient);
+        QuickChatMetrics.record(QuickChatMetrics.Operation.SEARCH_BY_RECIPIENT, start, !messagesForRecipient.isEmpty());
+        commitSearchEvent(event, SearchMessagesEvent.BY_RECIPIENT, searchRecipient, messagesForRecipient.size());
+        if (messagesForRecipient.isEmpty()) {
             return "No messages found for recipient: " + searchRecipient;
         }
-        
+
+        StringBuilder sb = new StringBuilder("--- Messages for Recipient: ").append(searchRecipient).append(" ---\n");
+
         // Append collected messages to StringBuilder for output, using their actual status
-        for (MessageFeature msg : messagesForRecipient) {
+        for (MessageStore.Entry entry : messagesForRecipient) {
+            MessageFeature msg = entry.message;
             sb.append(msg.getMessageStatus()).append(": \"").append(msg.getMessagePayload()).append("\"\n");
         }
 
@@ -552,71 +1108,68 @@ public class MessageFeature {
             return "Please provide a message hash to delete.";
         }
 
-        boolean foundAndDeleted = false;
-        String deletedMessagePayload = "";
-        String deletedMessageID = "";
-        File fileToDelete = null;
-
-        // Iterate and remove from all lists where the message might exist
-        // Check sent messages
-        Iterator<MessageFeature> sentIt = allSentMessages.iterator();
-        while (sentIt.hasNext()) {
-            MessageFeature msg = sentIt.next();
-            if (msg.getMessageHash().equals(hashToDelete)) {
-                deletedMessagePayload = msg.getMessagePayload();
-                deletedMessageID = msg.getMessageID();
-                sentIt.remove();
-                foundAndDeleted = true;
-                break; 
-            }
+        MessageFeature msg = removeMessageByHash(hashToDelete);
+        if (msg == null) {
+            return "Message with hash " + hashToDelete + " not found.";
         }
+        return "Message \"" + msg.getMessagePayload() + "\" successfully deleted.";
+    }
 
-        // Check stored messages
-        Iterator<MessageFeature> storedIt = allStoredMessages.iterator();
-        while (storedIt.hasNext()) {
-            MessageFeature msg = storedIt.next();
-            if (msg.getMessageHash().equals(hashToDelete)) {
-                deletedMessagePayload = msg.getMessagePayload();
-                deletedMessageID = msg.getMessageID();
-                storedIt.remove();
-                foundAndDeleted = true;
-                // Identify the file to delete
-                String fileName;
-                if (msg.MESSAGE_INDEX == 0) { // Drafts
-                    fileName = "message_draft_" + msg.MESSAGE_ID + ".json";
-                } else { // Sent and then stored
-                    fileName = "message_" + msg.MESSAGE_INDEX + ".json";
-                }
-                fileToDelete = new File(fileName);
-                break;
-            }
-        }
-        
-        // Check disregarded messages
-        Iterator<MessageFeature> disregardedIt = allDisregardedMessages.iterator();
-        while (disregardedIt.hasNext()) {
-            MessageFeature msg = disregardedIt.next();
-            if (msg.getMessageHash().equals(hashToDelete)) {
-                deletedMessagePayload = msg.getMessagePayload();
-                deletedMessageID = msg.getMessageID();
-                disregardedIt.remove();
-                foundAndDeleted = true;
-                break;
-            }
+    /**
+     * Deletes a message as deleteMessageByHash does, returning the message instead of a sentence.
+     * @param hashToDelete The message hash to search and delete.
+     * @return The deleted message, or null if no message has that hash.
+     */
+    public static MessageFeature removeMessageByHash(String hashToDelete) {
+        if (hashToDelete == null) {
+            return null;
         }
 
-        // Also remove from global ID and Hash lists if it was found
-        if (foundAndDeleted) {
-            allMessageIDs.remove(deletedMessageID);
-            allMessageHashes.remove(hashToDelete);
+        // Remove it from every list it belongs to (sent, stored, disregarded and the ID/hash lists)
+        long start = QuickChatMetrics.start(QuickChatMetrics.Operation.DELETE);
+        DeleteMessageEvent event = flightRecorderEvents ? new DeleteMessageEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        MessageStore.Entry deleted = store.removeByHash(hashToDelete);
+        if (deleted == null) {
+            QuickChatMetrics.record(QuickChatMetrics.Operation.DELETE, start, false);
+            commitDeleteEvent(event, hashToDelete, false, null);
+            return null;
+        }
 
-            // If a file was identified for deletion (from stored messages), attempt to delete it
-            if (fileToDelete != null && fileToDelete.exists()) {
-                fileToDelete.delete(); // No console output
+        MessageFeature msg = deleted.message;
+        msg.keepPayload(); // Its file may be deleted below
+        eventPublisher.publish(MessageEvent.Type.DELETED, msg);
+        // Stored messages also have a JSON file to delete
+        String deletedFile = null;
+        if (deleted.stored) {
+            String fileName;
+            if (msg.MESSAGE_INDEX == 0) { // Drafts
+                fileName = "message_draft_" + msg.MESSAGE_ID + ".json";
+            } else { // Sent and then stored
+                fileName = "message_" + msg.MESSAGE_INDEX + ".json";
             }
-            return "Message \"" + deletedMessagePayload + "\" successfully deleted.";
-        } else {
-            return "Message with hash " + hashToDelete + " not found.";
+            File fileToDelete = new File(dataDirectory, fileName);
+            if (fileToDelete.exists() && fileToDelete.delete()) { // No console output
+                deletedFile = fileToDelete.getPath();
+            }
+        }
+        QuickChatMetrics.record(QuickChatMetrics.Operation.DELETE, start, true);
+        commitDeleteEvent(event, hashToDelete, true, deletedFile);
+        return msg;
+    }
+
+    private static void commitDeleteEvent(DeleteMessageEvent event, String hash, boolean found, String file) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.hash = hash;
+            event.found = found;
+            event.file = file;
+            event.commit();
         }
     }
 
@@ -626,27 +1179,77 @@ public class MessageFeature {
      * @return A formatted string report.
      */
     public static String generateSentMessagesReport() {
-        if (allSentMessages.isEmpty()) {
-            return "No sent messages to report.";
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeSentMessagesReport(sb, ReportFormat.TEXT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // A StringBuilder never throws
         }
+        return sb.toString();
+    }
 
-        StringBuilder sb = new StringBuilder("--- QuickChat Sent Messages Report ---\n\n");
-        for (int i = 0; i < allSentMessages.size(); i++) {
-            MessageFeature msg = allSentMessages.get(i);
-            sb.append("Message #").append(i + 1).append(":\n");
-            sb.append("  Hash: ").append(msg.getMessageHash()).append("\n");
-            sb.append("  Recipient: ").append(msg.getMessageRecipient()).append("\n");
-            sb.append("  Message: \"").append(msg.getMessagePayload()).append("\"\n\n");
+    /**
+     * Streams the report of all sent messages, one message at a time, so that large reports
+     * can go straight to a file or socket instead of being built in memory. The messages are
+     * read from the store a chunk at a time, in MESSAGE_INDEX order, rather than copied out.
+     * @param out    Where to write the report, e.g. a BufferedWriter.
+     * @param format The report format.
+     * @return The number of messages written.
+     * @throws IOException If the output cannot be written.
+     */
+    public static long writeSentMessagesReport(Appendable out, ReportFormat format) throws IOException {
+        ReportEvent event = flightRecorderEvents ? new ReportEvent() : null;
+        if (event != null) {
+            event.begin();
         }
-        return sb.toString();
+        long written = new ReportWriter(out, format).writeSentMessagesReport(store.sentIterator());
+        commitReportEvent(event, "sentMessages", format, written);
+        return written;
     }
-    
+
+    /**
+     * Streams every sent, stored and disregarded message to a channel. The messages are taken
+     * from one consistent snapshot of the store, so sends, stores and deletes can carry on while
+     * the export is written.
+     * @param out    Where to write; it is not closed.
+     * @param format The export format.
+     * @return The number of messages written.
+     * @throws IOException If the output cannot be written.
+     */
+    public static long exportAllMessages(WritableByteChannel out, ExportFormat format) throws IOException {
+        ReportEvent event = flightRecorderEvents ? new ReportEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long written = new MessageExporter(out, format).export(store.snapshot());
+        commitReportEvent(event, "export", format, written);
+        return written;
+    }
+
+    /**
+     * Streams every sent, stored and disregarded message to a file, replacing it if it exists.
+     * @param file   The file to write.
+     * @param format The export format.
+     * @return The number of messages written.
+     * @throws IOException If the file cannot be written.
+     */
+    public static long exportAllMessages(Path file, ExportFormat format) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            return exportAllMessages(channel, format);
+        }
+    }
+
     /**
      * Returns a list of all message IDs stored or sent.
      * @return An ArrayList of strings containing all unique message IDs.
      */
     public static ArrayList<String> getAllMessageIDs() {
-        return new ArrayList<>(allMessageIDs); // Return a copy to prevent external modification
+        ArrayList<String> ids = new ArrayList<>();
+        for (MessageFeature msg : store.sentOrStoredMessages()) {
+            ids.add(msg.MESSAGE_ID);
+        }
+        return ids; // A fresh list, so callers cannot modify the store
     }
 
     /**
@@ -654,30 +1257,101 @@ public class MessageFeature {
      * @return An ArrayList of strings containing all unique message hashes.
      */
     public static ArrayList<String> getAllMessageHashes() {
-        return new ArrayList<>(allMessageHashes); // Return a copy
+        ArrayList<String> hashes = new ArrayList<>();
+        for (MessageFeature msg : store.sentOrStoredMessages()) {
+            String hash = msg.getMessageHash();
+            if (!hash.isEmpty()) {
+                hashes.add(hash);
+            }
+        }
+        return hashes; // A fresh list
     }
     
+    /**
+     * Returns the number of sent, stored and disregarded messages, counting each message once.
+     * @return The number of messages in the store.
+     */
+    static int countAllMessages() {
+        return store.size();
+    }
+
+    /**
+     * Copies a page of every sent, stored and disregarded message, for the message browser.
+     * Messages are listed once each, grouped by the store's shards rather than in a global order.
+     * @param from The position of the first message to copy.
+     * @param page Where to copy the messages.
+     * @return The number of messages copied.
+     */
+    static int pageAllMessages(int from, MessageFeature[] page) {
+        return store.page(from, page);
+    }
+
+    /**
+     * Returns the sent messages given an index above this one, e.g. those a bulk import just added.
+     * @param index The highest index to leave out.
+     * @return The messages, in index order.
+     */
+    static List<MessageFeature> sentMessagesAfter(int index) {
+        List<MessageFeature> sent = store.sentMessages();
+        int from = sent.size();
+        while (from > 0 && sent.get(from - 1).MESSAGE_INDEX > index) {
+            from--;
+        }
+        return new ArrayList<>(sent.subList(from, sent.size()));
+    }
+
+    /**
+     * @param id A message ID.
+     * @return Whether searchMessageByID would find a message with this ID.
+     */
+    static boolean hasMessageWithId(String id) {
+        return store.findById(id) != null;
+    }
+
+    /**
+     * @param recipient A recipient's cell number.
+     * @return Whether searchMessagesByRecipient would find any messages for this recipient.
+     */
+    static boolean hasMessagesFor(String recipient) {
+        return !store.findByRecipient(recipient).isEmpty();
+    }
+
+    /** @return The number of sent messages, for QuickChatMetrics. */
+    static int sentMessageCount() {
+        return store.sentCount();
+    }
+
+    /** @return The number of stored messages, for QuickChatMetrics. */
+    static int storedMessageCount() {
+        return store.storedCount();
+    }
+
+    /** @return The number of disregarded messages, for QuickChatMetrics. */
+    static int disregardedMessageCount() {
+        return store.disregardedCount();
+    }
+
     /**
      * Returns the list of all sent messages (for testing/internal use).
-     * @return The ArrayList of MessageFeature objects that were sent.
+     * @return A snapshot ArrayList of the MessageFeature objects that were sent, in index order.
      */
     public static ArrayList<MessageFeature> getSentMessagesForTesting() {
-        return allSentMessages;
+        return new ArrayList<>(store.sentMessages());
     }
 
      /**
      * Returns the list of all stored messages (for testing/internal use).
-     * @return The ArrayList of MessageFeature objects that were stored.
+     * @return A snapshot ArrayList of the MessageFeature objects that were stored.
      */
     public static ArrayList<MessageFeature> getStoredMessagesForTesting() {
-        return allStoredMessages;
+        return new ArrayList<>(store.storedMessages());
     }
     
      /**
      * Returns the list of all disregarded messages (for testing/internal use).
-     * @return The ArrayList of MessageFeature objects that were disregarded.
+     * @return A snapshot ArrayList of the MessageFeature objects that were disregarded.
      */
     public static ArrayList<MessageFeature> getDisregardedMessagesForTesting() {
-        return allDisregardedMessages;
+        return new ArrayList<>(store.disregardedMessages());
     }
 }
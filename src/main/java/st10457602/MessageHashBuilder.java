@@ -0,0 +1,151 @@
+package st10457602;
+
+import java.util.Locale;
+
+/**
+ * Builds message hashes (FirstTwoCharsOfID:Index:FIRSTWORDLASTWORD) without the temporary
+ * strings and regular expressions that trim, split, replaceAll and toUpperCase needed.
+ *
+ * The first and last words are found by scanning inward from both ends of the payload, and
+ * the hash is written into a per-thread buffer that is reused from one hash to the next, so
+ * the only allocation is the returned String. The result is identical to the original method:
+ * <ul>
+ *   <li>trimming removes every character up to and including a space, as String.trim does;</li>
+ *   <li>words are separated by the regex {@code \s} characters, i.e. space, tab, newline,
+ *       vertical tab, form feed and carriage return;</li>
+ *   <li>a payload of one word uses that word twice;</li>
+ *   <li>only ASCII letters and digits are kept from the words.</li>
+ * </ul>
+ * The original upper-cased with the default locale. Where that is not plain ASCII upper-casing
+ * (a non-ASCII ID, or a Turkish or Azerbaijani locale where 'i' becomes a dotted capital I),
+ * the hash is still built in the buffer but is upper-cased with String.toUpperCase.
+ *
+ * @author Angela
+ */
+final class MessageHashBuilder {
+
+    private static final ThreadLocal<MessageHashBuilder> BUILDERS = ThreadLocal.withInitial(MessageHashBuilder::new);
+
+    // Enough for most payloads; grown on demand and then kept for the thread
+    private char[] buffer = new char[64];
+    private int length;
+
+    private MessageHashBuilder() {
+    }
+
+    /**
+     * Builds the hash for a message.
+     * @param id      The message ID; at least two characters.
+     * @param index   The message index.
+     * @param payload The message content.
+     * @return The uppercase hash, or empty if the ID or payload is invalid.
+     */
+    static String build(String id, int index, String payload) {
+        if (id == null || id.length() < 2 || payload == null) {
+            return ""; // Cannot generate hash with invalid inputs
+        }
+        return BUILDERS.get().hash(id, index, payload);
+    }
+
+    private String hash(String id, int index, String payload) {
+        length = 0;
+        ensureCapacity(2 + 1 + 11 + 1 + 2 * payload.length());
+
+        char id0 = id.charAt(0);
+        char id1 = id.charAt(1);
+        boolean asciiUppercase = id0 < 0x80 && id1 < 0x80 && !hasSpecialUppercase(Locale.getDefault());
+        buffer[length++] = id0;
+        buffer[length++] = id1;
+        buffer[length++] = ':';
+        appendInt(index);
+        buffer[length++] = ':';
+
+        // Bounds of the trimmed payload, as String.trim would give them
+        int start = 0;
+        int end = payload.length();
+        while (start < end && payload.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && payload.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        if (start < end) {
+            // The first word runs to the first whitespace, the last word back to the last one
+            int firstEnd = start;
+            while (firstEnd < end && !isRegexWhitespace(payload.charAt(firstEnd))) {
+                firstEnd++;
+            }
+            int lastStart = end;
+            while (lastStart > start && !isRegexWhitespace(payload.charAt(lastStart - 1))) {
+                lastStart--;
+            }
+            appendAlphanumerics(payload, start, firstEnd);
+            if (firstEnd == end) {
+                appendAlphanumerics(payload, start, firstEnd); // A single word is used twice
+            } else {
+                appendAlphanumerics(payload, lastStart, end);
+            }
+        }
+
+        if (asciiUppercase) {
+            for (int i = 0; i < length; i++) {
+                char c = buffer[i];
+                if (c >= 'a' && c <= 'z') {
+                    buffer[i] = (char) (c - ('a' - 'A'));
+                }
+            }
+            return new String(buffer, 0, length);
+        }
+        return new String(buffer, 0, length).toUpperCase();
+    }
+
+    private void appendAlphanumerics(String payload, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = payload.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+                buffer[length++] = c;
+            }
+        }
+    }
+
+    private void appendInt(int value) {
+        if (value == Integer.MIN_VALUE) {
+            for (char c : "-2147483648".toCharArray()) {
+                buffer[length++] = c;
+            }
+            return;
+        }
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int pos = length + digits;
+        length = pos;
+        do {
+            buffer[--pos] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (buffer.length < capacity) {
+            buffer = new char[Math.max(capacity, buffer.length * 2)];
+        }
+    }
+
+    // The characters matched by \s without UNICODE_CHARACTER_CLASS
+    private static boolean isRegexWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    // Locales whose upper-casing of ASCII letters differs from plain ASCII
+    private static boolean hasSpecialUppercase(Locale locale) {
+        String language = locale.getLanguage();
+        return language.equals("tr") || language.equals("az");
+    }
+}
@@ -0,0 +1,69 @@
+package st10457602;
+
+/**
+ * Produces the 10-digit message IDs assigned by the MessageFeature constructor.
+ * Every generated value lies between 0 and {@link #MAX_ID} so that the formatted
+ * ID always passes MessageFeature.checkMessageID.
+ *
+ * @author Angela
+ */
+public interface MessageIdGenerator {
+
+    /** Largest value that still fits in a 10-digit message ID. */
+    long MAX_ID = 9_999_999_999L;
+
+    /**
+     * Returns the next raw ID value, between 0 and {@link #MAX_ID} inclusive.
+     * @return The next ID value.
+     */
+    long nextId();
+
+    /**
+     * Tells the generator about an ID already in use, e.g. one loaded from a file, so that it
+     * does not hand the same ID out again. Generators that draw IDs at random ignore it.
+     * @param id The ID value, between 0 and {@link #MAX_ID}.
+     */
+    default void observe(long id) {
+    }
+
+    /**
+     * Returns the next ID formatted as a zero-padded 10-digit string.
+     * @return The next message ID string.
+     */
+    default String nextMessageId() {
+        return format(nextId());
+    }
+
+    /**
+     * Formats an ID value as a zero-padded 10-digit string without going through String.format.
+     * @param id The ID value, between 0 and {@link #MAX_ID}.
+     * @return The 10-digit ID string.
+     */
+    static String format(long id) {
+        if (id < 0 || id > MAX_ID) {
+            throw new IllegalArgumentException("Message ID out of range: " + id);
+        }
+        char[] digits = new char[10];
+        for (int i = 9; i >= 0; i--) {
+            digits[i] = (char) ('0' + (id % 10));
+            id /= 10;
+        }
+        return new String(digits);
+    }
+
+    /**
+     * Returns a generator that draws uniformly random IDs from a per-thread random source.
+     * @return The per-thread random generator.
+     */
+    static MessageIdGenerator threadLocalRandom() {
+        return RandomMessageIdGenerator.INSTANCE;
+    }
+
+    /**
+     * Returns a Snowflake-style generator whose IDs are ordered by creation time.
+     * @return The time-ordered generator.
+     */
+    static MessageIdGenerator timeOrdered() {
+        return new TimeOrderedMessageIdGenerator();
+    }
+}
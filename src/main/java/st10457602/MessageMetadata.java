@@ -0,0 +1,262 @@
+package st10457602;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+/**
+ * The metadata of a message file, read without building its payload. A lazy load only needs a
+ * message's ID, recipient, index, hash, status and payload length, so this scans the flat JSON
+ * object storeMessage() writes and steps over the payload string, counting its chars, instead
+ * of parsing the whole document into a JSONObject.
+ *
+ * Only a flat object of strings, integers, booleans and nulls is understood; for anything else
+ * {@link #read} returns null and the file is left to the full JSON parser.
+ *
+ * @author Angela
+ */
+final class MessageMetadata {
+
+    final String id;
+    final String recipient;
+    final int index;
+    final String hash;
+    final String status;
+    /** The payload's length in chars, or -1 if the file has no payload. */
+    final int payloadLength;
+
+    private MessageMetadata(String id, String recipient, int index, String hash, String status, int payloadLength) {
+        this.id = id;
+        this.recipient = recipient;
+        this.index = index;
+        this.hash = hash;
+        this.status = status;
+        this.payloadLength = payloadLength;
+    }
+
+    /**
+     * Reads the metadata of a message file.
+     * @param file The message file.
+     * @return The metadata, or null if the file is not a flat JSON object this can scan.
+     * @throws IOException If the file cannot be read.
+     */
+    static MessageMetadata read(File file) throws IOException {
+        // Decoded as FileReader would decode it; the payload's chars are stepped over, never copied
+        String json = new String(Files.readAllBytes(file.toPath()), Charset.defaultCharset());
+        try {
+            return new Scanner(json).message();
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    // A single pass over one file's text; throws IllegalArgumentException where it gives up, or
+    // IndexOutOfBoundsException where the text ends early
+    private static final class Scanner {
+        private final String json;
+        private int position;
+
+        Scanner(String json) {
+            this.json = json;
+        }
+
+        MessageMetadata message() {
+            String id = null;
+            String recipient = null;
+            String hash = null;
+            String status = null;
+            long index = 0;
+            int payloadLength = -1;
+            expect('{');
+            char c = skipWhitespace();
+            if (c == '}') {
+                position++;
+                c = 0;
+            }
+            while (c != 0) {
+                String key = string();
+                expect(':');
+                c = skipWhitespace();
+                switch (key) {
+                    case "MESSAGE_PAYLOAD":
+                        payloadLength = c == '"' ? skipString() : nullValue(-1);
+                        break;
+                    case "MESSAGE_ID":
+                        id = c == '"' ? string() : nullValue(null);
+                        break;
+                    case "MESSAGE_RECIPIENT":
+                        recipient = c == '"' ? string() : nullValue(null);
+                        break;
+                    case "MESSAGE_HASH":
+                        hash = c == '"' ? string() : nullValue(null);
+                        break;
+                    case "MESSAGE_STATUS":
+                        status = c == '"' ? string() : nullValue(null);
+                        break;
+                    case "MESSAGE_INDEX":
+                        index = c == 'n' ? nullValue(0L) : integer();
+                        break;
+                    default:
+                        skipValue(c);
+                }
+                c = skipWhitespace();
+                position++;
+                if (c == '}') {
+                    c = 0;
+                } else if (c == ',') {
+                    c = skipWhitespace();
+                } else {
+                    throw new IllegalArgumentException("Expected , or }");
+                }
+            }
+            if (skipWhitespace() != 0 || index < Integer.MIN_VALUE || index > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Not a single message");
+            }
+            return new MessageMetadata(id, recipient, (int) index, hash, status, payloadLength);
+        }
+
+        // The next char that is not whitespace, left unread; 0 at the end of the text
+        private char skipWhitespace() {
+            while (position < json.length()) {
+                char c = json.charAt(position);
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                    return c;
+                }
+                position++;
+            }
+            return 0;
+        }
+
+        private void expect(char expected) {
+            if (skipWhitespace() != expected) {
+                throw new IllegalArgumentException("Expected " + expected);
+            }
+            position++;
+        }
+
+        private String string() {
+            expect('"');
+            int start = position;
+            int end = json.indexOf('"', start);
+            if (end >= 0 && json.lastIndexOf('\\', end) < start) {
+                position = end + 1;
+                return json.substring(start, end); // Nothing escaped, the usual case for metadata
+            }
+            StringBuilder text = new StringBuilder();
+            position = start;
+            scanString(text);
+            return text.toString();
+        }
+
+        // Steps over a string, returning the number of chars it decodes to
+        private int skipString() {
+            expect('"');
+            return scanString(null);
+        }
+
+        private int scanString(StringBuilder text) {
+            int length = 0;
+            while (true) {
+                char c = json.charAt(position++);
+                if (c == '"') {
+                    return length;
+                }
+                if (c == '\\') {
+                    c = unescape(json.charAt(position++));
+                } else if (c < ' ') {
+                    throw new IllegalArgumentException("Control char in string");
+                }
+                if (text != null) {
+                    text.append(c);
+                }
+                length++;
+            }
+        }
+
+        private char unescape(char escape) {
+            switch (escape) {
+                case '"':
+                case '\\':
+                case '/':
+                    return escape;
+                case 'b':
+                    return '\b';
+                case 'f':
+                    return '\f';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 't':
+                    return '\t';
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(json.charAt(position++), 16);
+                        if (digit < 0) {
+                            throw new IllegalArgumentException("Bad \\u escape");
+                        }
+                        code = code << 4 | digit;
+                    }
+                    return (char) code;
+                default:
+                    throw new IllegalArgumentException("Bad escape");
+            }
+        }
+
+        private long integer() {
+            boolean negative = skipWhitespace() == '-';
+            if (negative) {
+                position++;
+            }
+            long value = 0;
+            int digits = 0;
+            while (position < json.length()) {
+                char c = json.charAt(position);
+                if (c < '0' || c > '9') {
+                    if (c == '.' || c == 'e' || c == 'E') {
+                        throw new IllegalArgumentException("Not an integer");
+                    }
+                    break;
+                }
+                if (++digits > 18) {
+                    throw new IllegalArgumentException("Integer too long");
+                }
+                value = value * 10 + (c - '0');
+                position++;
+            }
+            if (digits == 0) {
+                throw new IllegalArgumentException("Expected a value");
+            }
+            return negative ? -value : value;
+        }
+
+        // Reads a literal null and returns what stands for it
+        private <T> T nullValue(T absent) {
+            literal("null");
+            return absent;
+        }
+
+        private void literal(String word) {
+            if (!json.startsWith(word, position)) {
+                throw new IllegalArgumentException("Expected " + word);
+            }
+            position += word.length();
+        }
+
+        private void skipValue(char c) {
+            if (c == '"') {
+                skipString();
+            } else if (c == 't') {
+                literal("true");
+            } else if (c == 'f') {
+                literal("false");
+            } else if (c == 'n') {
+                literal("null");
+            } else {
+                integer();
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package st10457602;
+
+/**
+ * The result of validating, sending or storing a message.
+ *
+ * Callers decide what to do by comparing outcomes rather than the English sentences the
+ * String methods return; the sentence is only built when {@link #describe()} is called,
+ * typically by the UI. Each outcome's description is exactly the text the corresponding
+ * String method has always returned.
+ *
+ * @author Angela
+ */
+public enum MessageOutcome {
+
+    // --- Validation ---
+    /** The recipient is +27 followed by nine digits. */
+    RECIPIENT_CAPTURED(true, "Cell phone number successfully captured."),
+    /** The recipient is missing or incorrectly formatted. */
+    RECIPIENT_INVALID(false, "Cell phone number is incorrectly formatted or does not contain an international code. Please correct the number and try again."),
+    /** The payload is within the length limit. */
+    PAYLOAD_READY(true, "Message ready to send."),
+    /**
+     * The payload is missing or over the length limit. MessageFeature.validatePayloadLength
+     * also says by how many characters.
+     */
+    PAYLOAD_TOO_LONG(false, "Message exceeds " + ValidationEngine.MAX_PAYLOAD_LENGTH + " characters, please reduce size."),
+
+    // --- Sending ---
+    /** The message was sent, or accepted by the outbound queue. */
+    SENT(true, "Message successfully sent."),
+    /** The payload is empty or only whitespace. */
+    SEND_EMPTY_PAYLOAD(false, "Failed to send message: Message content cannot be empty"),
+    /** The payload is over the length limit. */
+    SEND_PAYLOAD_TOO_LONG(false, "Failed to send message: Payload too long"),
+    /** The recipient is incorrectly formatted. */
+    SEND_INVALID_RECIPIENT(false, "Failed to send message: Invalid recipient"),
+    /** The generated message ID is malformed. */
+    SEND_INVALID_ID(false, "Failed to send message: Invalid message ID (system error)"),
+    /** The recipient's rate limit was exceeded. */
+    SEND_RATE_LIMITED(false, "Failed to send message: Too many messages to this recipient, please try again later"),
+    /** The outbound queue was full. */
+    SEND_QUEUE_FULL(false, "Failed to send message: Outbound queue is full, please try again later"),
+    /** The outbound dispatcher has been shut down. */
+    SEND_STOPPED(false, "Failed to send message: Outbound delivery has stopped"),
+
+    // --- Storing ---
+    /** The message was written to its JSON file. */
+    STORED(true, "Message successfully stored."),
+    /** The JSON file could not be written. */
+    STORE_FAILED(false, "Failed to store message: IO Exception."),
+
+    // --- Importing ---
+    /** An imported row could not be parsed, or its status is not Sent, Stored or Disregarded. */
+    IMPORT_MALFORMED(false, "Failed to import message: Row is malformed or has an unknown status");
+
+    private final boolean success;
+    private final String description;
+
+    MessageOutcome(boolean success, String description) {
+        this.success = success;
+        this.description = description;
+    }
+
+    /**
+     * Returns true if the operation succeeded or the input is valid.
+     * @return Whether this is a successful outcome.
+     */
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * Returns the user-facing text for this outcome.
+     * @return The description shown to the user.
+     */
+    public String describe() {
+        return description;
+    }
+}
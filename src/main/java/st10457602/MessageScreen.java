@@ -5,6 +5,7 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Handles the user interface for messaging features using a JFrame.
@@ -29,6 +30,7 @@ public class MessageScreen extends JFrame {
     private JButton searchRecipientButton;
     private JButton deleteMessageButton;
     private JButton generateReportButton;
+    private JButton browseMessagesButton;
     private JButton logoutButton;
 
     /**
@@ -44,7 +46,8 @@ public class MessageScreen extends JFrame {
         setupLayout();
         addListeners();
         // Display initial welcome message
-        displayMessage("Welcome to QuickChat v2, " + registrationFeature.getFirstName() + "!");
+        UserAccount account = loginFeature.getLoggedInAccount();
+        displayMessage("Welcome to QuickChat v2, " + (account != null ? account.getFirstName() : registrationFeature.getFirstName()) + "!");
         // Load any existing messages from JSON files on startup
         MessageFeature.loadAllMessagesFromJsonFiles();
     }
@@ -79,7 +82,8 @@ public class MessageScreen extends JFrame {
         searchRecipientButton = new JButton("5. Search Messages by Recipient");
         deleteMessageButton = new JButton("6. Delete Message by Hash");
         generateReportButton = new JButton("7. Generate Full Sent Report");
-        logoutButton = new JButton("8. Logout");
+        browseMessagesButton = new JButton("8. Browse Messages");
+        logoutButton = new JButton("9. Logout");
 
         // Set button styles
         styleButton(sendMessageButton, Color.GREEN.darker());
@@ -89,6 +93,7 @@ public class MessageScreen extends JFrame {
         styleButton(searchRecipientButton, Color.BLUE.darker());
         styleButton(deleteMessageButton, Color.ORANGE.darker());
         styleButton(generateReportButton, Color.BLUE.darker());
+        styleButton(browseMessagesButton, Color.BLUE.darker());
         styleButton(logoutButton, Color.RED.darker());
     }
 
@@ -99,7 +104,7 @@ public class MessageScreen extends JFrame {
         // Panel for buttons
         JPanel buttonPanel = new JPanel();
         buttonPanel.setBackground(new Color(237, 192, 207));
-        buttonPanel.setLayout(new GridLayout(8, 1, 10, 10)); // 8 rows, 1 column, 10px gaps
+        buttonPanel.setLayout(new GridLayout(9, 1, 10, 10)); // 9 rows, 1 column, 10px gaps
         buttonPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10)); // Padding
 
         buttonPanel.add(sendMessageButton);
@@ -109,6 +114,7 @@ public class MessageScreen extends JFrame {
         buttonPanel.add(searchRecipientButton);
         buttonPanel.add(deleteMessageButton);
         buttonPanel.add(generateReportButton);
+        buttonPanel.add(browseMessagesButton);
         buttonPanel.add(logoutButton);
 
         mainPanel.add(scrollPane, BorderLayout.CENTER);
@@ -128,6 +134,7 @@ public class MessageScreen extends JFrame {
         searchRecipientButton.addActionListener(e -> handleSearchMessagesByRecipient());
         deleteMessageButton.addActionListener(e -> handleDeleteMessageByHash());
         generateReportButton.addActionListener(e -> displayMessage(MessageFeature.generateSentMessagesReport()));
+        browseMessagesButton.addActionListener(e -> new MessageBrowserScreen().setVisible(true));
         logoutButton.addActionListener(e -> handleLogout());
     }
 
@@ -189,34 +196,44 @@ public class MessageScreen extends JFrame {
         StringBuilder batchSummary = new StringBuilder("--- Message Batch Processing ---\n");
         int sentCount = 0;
 
+        // Messages to send or store are collected first and handed over as one batch each, with
+        // each message's summary section completed once its outcome is known
+        List<StringBuilder> sections = new ArrayList<>(numMessages);
+        List<MessageFeature> toSend = new ArrayList<>();
+        List<StringBuilder> sendSections = new ArrayList<>();
+        List<MessageFeature> toStore = new ArrayList<>();
+        List<StringBuilder> storeSections = new ArrayList<>();
+
         for (int i = 0; i < numMessages; i++) {
-            batchSummary.append("Processing Message ").append(i + 1).append(" of ").append(numMessages).append("...\n");
+            StringBuilder section = new StringBuilder();
+            sections.add(section);
+            section.append("Processing Message ").append(i + 1).append(" of ").append(numMessages).append("...\n");
 
             String recipient = JOptionPane.showInputDialog(this, "Enter recipient's cell number (e.g., +27718693002):", "Message " + (i + 1) + " - Recipient", JOptionPane.PLAIN_MESSAGE);
             if (recipient == null) {
-                batchSummary.append("Recipient input cancelled for Message ").append(i + 1).append(". Skipping.\n");
+                section.append("Recipient input cancelled for Message ").append(i + 1).append(". Skipping.\n");
                 continue;
             }
 
             String payload = JOptionPane.showInputDialog(this, "Enter message payload:", "Message " + (i + 1) + " - Payload", JOptionPane.PLAIN_MESSAGE);
             if (payload == null) {
-                batchSummary.append("Payload input cancelled for Message ").append(i + 1).append(". Skipping.\n");
+                section.append("Payload input cancelled for Message ").append(i + 1).append(". Skipping.\n");
                 continue;
             }
 
             MessageFeature currentMessage = new MessageFeature(recipient, payload);
-            batchSummary.append(currentMessage.getGeneratedIdNotification()).append("\n");
+            section.append(currentMessage.getGeneratedIdNotification()).append("\n");
 
-            // Perform validations
-            String recipientValidationMsg = currentMessage.validateRecipientNumber(currentMessage.getMessageRecipient());
-            if (!recipientValidationMsg.equals("Cell phone number successfully captured.")) {
-                batchSummary.append("Validation Failed for Message ").append(i + 1).append(":\n").append(recipientValidationMsg).append("\n");
+            // Perform validations; the failure text is only built when there is a failure to show
+            MessageOutcome recipientCheck = currentMessage.checkRecipientNumber(currentMessage.getMessageRecipient());
+            if (recipientCheck != MessageOutcome.RECIPIENT_CAPTURED) {
+                section.append("Validation Failed for Message ").append(i + 1).append(":\n").append(recipientCheck.describe()).append("\n");
                 continue; // Skip to next message
             }
 
-            String payloadValidationMsg = currentMessage.validatePayloadLength(currentMessage.getMessagePayload());
-            if (!payloadValidationMsg.equals("Message ready to send.")) {
-                batchSummary.append("Validation Failed for Message ").append(i + 1).append(":\n").append(payloadValidationMsg).append("\n");
+            if (currentMessage.checkPayloadLength(currentMessage.getMessagePayload()) != MessageOutcome.PAYLOAD_READY) {
+                String payloadValidationMsg = currentMessage.validatePayloadLength(currentMessage.getMessagePayload());
+                section.append("Validation Failed for Message ").append(i + 1).append(":\n").append(payloadValidationMsg).append("\n");
                 continue; // Skip to next message
             }
 
@@ -226,31 +243,52 @@ public class MessageScreen extends JFrame {
                     "Message " + (i + 1) + " - Action",
                     JOptionPane.DEFAULT_OPTION, JOptionPane.INFORMATION_MESSAGE, null, options, options[0]);
 
-            String resultMessage;
             switch (actionChoice) {
                 case 0: // Send Message
-                    resultMessage = currentMessage.sentMessage();
-                    batchSummary.append("Send Status: ").append(resultMessage).append("\n");
-                    if (resultMessage.equals("Message successfully sent.")) {
-                        sentCount++;
-                        // Storing the sent message to file is part of the original logic when sent
-                        String storeSentResult = currentMessage.storeMessage(); // Also store sent message
-                        batchSummary.append("  (Stored to file as part of sending: ").append(storeSentResult).append(")\n");
-                    }
+                    toSend.add(currentMessage);
+                    sendSections.add(section);
                     break;
                 case 1: // Store Message
-                    resultMessage = currentMessage.storeMessage();
-                    batchSummary.append("Store Status: ").append(resultMessage).append("\n");
+                    toStore.add(currentMessage);
+                    storeSections.add(section);
                     break;
                 case 2: // Disregard Message
                     currentMessage.disregardMessage(); // Mark as disregarded and add to list
-                    batchSummary.append("Message disregarded by user.\n");
+                    section.append("Message disregarded by user.\n\n");
                     break;
                 default:
-                    batchSummary.append("No action selected for message ").append(i + 1).append(".\n");
+                    section.append("No action selected for message ").append(i + 1).append(".\n\n");
                     break;
             }
-            batchSummary.append("\n"); // Add a blank line for readability between messages
+        }
+
+        List<MessageOutcome> sendResults = MessageFeature.sendAll(toSend);
+        // Storing the sent messages to file is part of the original logic when sent
+        List<MessageFeature> sentToStore = new ArrayList<>();
+        for (int i = 0; i < toSend.size(); i++) {
+            sendSections.get(i).append("Send Status: ").append(sendResults.get(i).describe()).append("\n");
+            if (sendResults.get(i) == MessageOutcome.SENT) {
+                sentCount++;
+                sentToStore.add(toSend.get(i));
+            }
+        }
+        List<MessageFeature> storeBatch = new ArrayList<>(sentToStore);
+        storeBatch.addAll(toStore);
+        List<MessageOutcome> storeResults = MessageFeature.storeAll(storeBatch);
+
+        int stored = 0;
+        for (int i = 0; i < toSend.size(); i++) {
+            StringBuilder section = sendSections.get(i);
+            if (sendResults.get(i) == MessageOutcome.SENT) {
+                section.append("  (Stored to file as part of sending: ").append(storeResults.get(stored++).describe()).append(")\n");
+            }
+            section.append("\n"); // Add a blank line for readability between messages
+        }
+        for (int i = 0; i < toStore.size(); i++) {
+            storeSections.get(i).append("Store Status: ").append(storeResults.get(stored++).describe()).append("\n\n");
+        }
+        for (StringBuilder section : sections) {
+            batchSummary.append(section);
         }
         batchSummary.append("--- Batch Processing Complete ---\n");
         batchSummary.append("Total messages successfully sent in this session: ").append(sentCount).append("\n");
@@ -317,10 +355,13 @@ public class MessageScreen extends JFrame {
                 "Are you sure you want to logout?", "Confirm Logout", JOptionPane.YES_NO_OPTION);
         if (confirm == JOptionPane.YES_OPTION) {
             // Clear any session-specific data if necessary
+            loginFeature.logout(); // Its session token stops working straight away
             MessageFeature.resetMessageCounterForTesting(); // Resets static data for a clean start next time
             
             // Create a new registration screen and make it visible
-            RegistrationScreen registrationScreen = new RegistrationScreen(new RegistrationFeature(), new LoginFeature(new RegistrationFeature()));
+            // Keep the same user directory so previously registered users can log straight back in
+            RegistrationFeature freshRegistration = new RegistrationFeature(registrationFeature.getUserDirectory());
+            RegistrationScreen registrationScreen = new RegistrationScreen(freshRegistration, new LoginFeature(freshRegistration));
             registrationScreen.setVisible(true);
             registrationScreen.setLocationRelativeTo(null);
             
@@ -0,0 +1,43 @@
+package st10457602;
+
+/**
+ * Where a message is in its life. Each status has the label that getMessageStatus() returns
+ * and that storeMessage() writes to MESSAGE_STATUS.
+ *
+ * @author Angela
+ */
+public enum MessageStatus {
+    /** Created but not yet sent, stored or disregarded. */
+    NEW("New"),
+    /** Sent, with an index and a hash. */
+    SENT("Sent"),
+    /** Stored as a draft, with a hash. */
+    STORED("Stored"),
+    /** Disregarded by the user. */
+    DISREGARDED("Disregarded");
+
+    private final String label;
+
+    MessageStatus(String label) {
+        this.label = label;
+    }
+
+    /** @return The label, for example "Sent". */
+    public String label() {
+        return label;
+    }
+
+    /**
+     * Finds the status with a label.
+     * @param label The label, as written to a message file.
+     * @return The status, or null if no status has that label.
+     */
+    public static MessageStatus of(String label) {
+        for (MessageStatus status : values()) {
+            if (status.label.equals(label)) {
+                return status;
+            }
+        }
+        return null;
+    }
+}
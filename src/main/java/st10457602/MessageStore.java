@@ -0,0 +1,1062 @@
+package st10457602;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * In-memory home of every sent, stored and disregarded MessageFeature.
+ * Messages are partitioned into shards by a hash of their recipient. Each shard has its
+ * own lock and its own ID, hash and recipient indexes, so sends to different recipients
+ * proceed in parallel and a recipient search only ever touches one shard. Whole-store
+ * views fan out over the shards in parallel and merge the results back into order.
+ *
+ * Each shard holds every message once, in a dense array of slots in the order they arrived,
+ * with one bitmap per status marking the slots in that status. A message may have more than
+ * one status at once (a sent message that is also stored), exactly as it could be with the
+ * original static lists, yet it is still visited once by a view over several statuses.
+ * Changing or clearing a status only flips a bit.
+ *
+ * @author Angela
+ */
+final class MessageStore {
+
+    /** Orders messages the way the sent list always has: by MESSAGE_INDEX. */
+    static final Comparator<Entry> BY_INDEX =
+            Comparator.<Entry>comparingInt(e -> e.message.getMessageIndex()).thenComparingLong(e -> e.sequence);
+
+    /** Orders messages by the time they first entered the store. */
+    static final Comparator<Entry> BY_SEQUENCE = Comparator.comparingLong(e -> e.sequence);
+
+    /** Orders sent messages first, by index, then the rest in the order they entered the store. */
+    static final Comparator<Entry> SENT_FIRST = (a, b) -> a.sent != b.sent ? (a.sent ? -1 : 1)
+            : a.sent ? BY_INDEX.compare(a, b) : BY_SEQUENCE.compare(a, b);
+
+    private final Shard[] shards;
+    private final int shardMask;
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    /**
+     * Creates a store with the given number of shards, rounded up to a power of two.
+     * @param shardCount The requested number of shards.
+     */
+    MessageStore(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        }
+        int size = Integer.highestOneBit(shardCount);
+        if (size < shardCount) {
+            size <<= 1;
+        }
+        this.shards = new Shard[size];
+        for (int i = 0; i < size; i++) {
+            shards[i] = new Shard();
+        }
+        this.shardMask = size - 1;
+    }
+
+    /**
+     * Returns the shard count used by default: the quickchat.store.shards system property,
+     * or four shards per available processor.
+     * @return The default shard count.
+     */
+    static int defaultShardCount() {
+        Integer configured = Integer.getInteger("quickchat.store.shards");
+        if (configured != null && configured > 0) {
+            return configured;
+        }
+        return Runtime.getRuntime().availableProcessors() * 4;
+    }
+
+    int shardCount() {
+        return shards.length;
+    }
+
+    private Shard shardFor(String recipient) {
+        return shards[shardIndexFor(recipient)];
+    }
+
+    private int shardIndexFor(String recipient) {
+        int h = recipient == null ? 0 : recipient.hashCode();
+        h ^= (h >>> 16); // Spread the high bits, as HashMap does
+        return h & shardMask;
+    }
+
+    // --- Status changes ---
+
+    /**
+     * Adds a message to the sent list of its recipient's shard.
+     * @param message The sent message.
+     */
+    void addSent(MessageFeature message) {
+        add(message, Shard::markSent);
+    }
+
+    /**
+     * Adds a message to the stored list of its recipient's shard, unless it is already there.
+     * @param message The stored message.
+     */
+    void addStored(MessageFeature message) {
+        add(message, Shard::markStored);
+    }
+
+    /**
+     * Adds a message to the disregarded list of its recipient's shard.
+     * @param message The disregarded message.
+     */
+    void addDisregarded(MessageFeature message) {
+        add(message, Shard::markDisregarded);
+    }
+
+    /**
+     * Adds several messages to the sent lists, as addSent does for each in turn.
+     * @param messages The sent messages.
+     */
+    void addAllSent(List<MessageFeature> messages) {
+        addAll(messages, Shard::markSent);
+    }
+
+    /**
+     * Adds several messages to the stored lists, as addStored does for each in turn.
+     * @param messages The stored messages.
+     */
+    void addAllStored(List<MessageFeature> messages) {
+        addAll(messages, Shard::markStored);
+    }
+
+    /**
+     * Adds several messages to the disregarded lists, as addDisregarded does for each in turn.
+     * @param messages The disregarded messages.
+     */
+    void addAllDisregarded(List<MessageFeature> messages) {
+        addAll(messages, Shard::markDisregarded);
+    }
+
+    private void add(MessageFeature message, StatusChange change) {
+        Shard shard = shardFor(message.getMessageRecipient());
+        // Built before locking, as a lazy or off-heap payload is read to build it
+        String hash = message.getMessageHash();
+        shard.lock.writeLock().lock();
+        try {
+            change.apply(shard, shard.entryFor(message, nextSequence), hash);
+        } finally {
+            shard.lock.writeLock().unlock();
+        }
+    }
+
+    // Groups the messages by shard so that each shard is locked once for the whole batch
+    private void addAll(List<MessageFeature> messages, StatusChange change) {
+        int size = messages.size();
+        if (size <= 1) {
+            if (size == 1) {
+                add(messages.get(0), change); // Not worth sorting
+            }
+            return;
+        }
+        // Sequence numbers are reserved up front so new entries keep the batch's order across shards
+        long firstSequence = nextSequence.getAndAdd(size);
+
+        // A stable counting sort of the batch positions by shard
+        int[] shardOf = new int[size];
+        int[] shardStart = new int[shards.length + 1];
+        String[] hashes = new String[size];
+        for (int i = 0; i < size; i++) {
+            shardOf[i] = shardIndexFor(messages.get(i).getMessageRecipient());
+            hashes[i] = messages.get(i).getMessageHash();
+            shardStart[shardOf[i] + 1]++;
+        }
+        for (int s = 0; s < shards.length; s++) {
+            shardStart[s + 1] += shardStart[s];
+        }
+        int[] order = new int[size];
+        int[] fill = Arrays.copyOf(shardStart, shards.length);
+        for (int i = 0; i < size; i++) {
+            order[fill[shardOf[i]]++] = i;
+        }
+
+        for (int s = 0; s < shards.length; s++) {
+            if (shardStart[s] == shardStart[s + 1]) {
+                continue;
+            }
+            Shard shard = shards[s];
+            shard.lock.writeLock().lock();
+            try {
+                for (int k = shardStart[s]; k < shardStart[s + 1]; k++) {
+                    int i = order[k];
+                    change.apply(shard, shard.entryFor(messages.get(i), firstSequence + i), hashes[i]);
+                }
+            } finally {
+                shard.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes the message with the given hash from every list. When several messages share
+     * the hash, a sent one is preferred, then a stored one, then a disregarded one.
+     *
+     * @param hash The message hash.
+     * @return The removed entry (with its status flags as they were), or null if none matched.
+     */
+    Entry removeByHash(String hash) {
+        while (true) {
+            Entry best = null;
+            Shard bestShard = null;
+            for (Shard shard : shards) {
+                shard.lock.readLock().lock();
+                try {
+                    Entry candidate = shard.byHash.get(hash);
+                    if (candidate != null && (best == null || rank(candidate) < rank(best)
+                            || (rank(candidate) == rank(best) && candidate.sequence < best.sequence))) {
+                        best = candidate;
+                        bestShard = shard;
+                    }
+                } finally {
+                    shard.lock.readLock().unlock();
+                }
+            }
+            if (best == null) {
+                return null;
+            }
+            bestShard.lock.writeLock().lock();
+            try {
+                // Another thread may have removed it between the read and write locks; if so, look again
+                if (bestShard.entries.get(best.message) == best) {
+                    return bestShard.remove(best);
+                }
+            } finally {
+                bestShard.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static int rank(Entry entry) {
+        return entry.sent ? 0 : entry.stored ? 1 : 2;
+    }
+
+    /**
+     * Empties every shard.
+     */
+    void clear() {
+        for (Shard shard : shards) {
+            shard.lock.writeLock().lock();
+            try {
+                shard.clear();
+            } finally {
+                shard.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // --- Lookups ---
+
+    /**
+     * Finds a sent or stored message by ID, preferring a sent match.
+     * @param id The message ID.
+     * @return The matching entry, or null if there is none.
+     */
+    Entry findById(String id) {
+        Entry found = null;
+        for (Shard shard : shards) {
+            shard.lock.readLock().lock();
+            try {
+                Entry candidate = shard.byId.get(id);
+                if (candidate != null && (candidate.sent || candidate.stored)) {
+                    if (candidate.sent) {
+                        return candidate;
+                    }
+                    if (found == null) {
+                        found = candidate;
+                    }
+                }
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns every sent or stored message for one recipient: sent messages in index order
+     * followed by stored messages that were never sent. Only the recipient's shard is read.
+     *
+     * @param recipient The recipient's cell number.
+     * @return The recipient's messages; empty if there are none.
+     */
+    List<Entry> findByRecipient(String recipient) {
+        Shard shard = shardFor(recipient);
+        ArrayList<Entry> found = new ArrayList<>();
+        shard.lock.readLock().lock();
+        try {
+            List<Entry> all = shard.byRecipient.get(recipient);
+            if (all == null) {
+                return found;
+            }
+            for (Entry entry : all) {
+                if (entry.sent || entry.stored) {
+                    found.add(entry);
+                }
+            }
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+        found.sort(SENT_FIRST);
+        return found;
+    }
+
+    /**
+     * Finds the sent or stored message that is greatest by some measure, without copying the
+     * store. Of several equally great messages, the one SENT_FIRST puts first is returned.
+     *
+     * @param measure The measure, read under the shard's read lock; must not call the store.
+     * @return The greatest entry, or null if nothing is sent or stored.
+     */
+    Entry maxSentOrStored(ToIntFunction<MessageFeature> measure) {
+        Entry best = null;
+        int bestValue = 0;
+        for (Shard shard : shards) {
+            shard.lock.readLock().lock();
+            try {
+                for (int i = shard.nextSentOrStored(0); i >= 0; i = shard.nextSentOrStored(i + 1)) {
+                    Entry entry = shard.slots[i];
+                    int value = measure.applyAsInt(entry.message);
+                    if (best == null || value > bestValue || (value == bestValue && SENT_FIRST.compare(entry, best) < 0)) {
+                        best = entry;
+                        bestValue = value;
+                    }
+                }
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Visits every message with a status, shard by shard under each shard's read lock, without
+     * copying. Messages come in the order they entered their shard, not in a global order.
+     *
+     * @param status SENT, STORED or DISREGARDED.
+     * @param action What to do with each entry; must be quick and must not call the store.
+     */
+    void forEach(MessageStatus status, Consumer<Entry> action) {
+        for (Shard shard : shards) {
+            shard.lock.readLock().lock();
+            try {
+                BitSet members = shard.members(status);
+                for (int i = members.nextSetBit(0); i >= 0; i = members.nextSetBit(i + 1)) {
+                    action.accept(shard.slots[i]);
+                }
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+    }
+
+    // --- Whole-store views ---
+
+    /** @return Every sent message, merged across shards by MESSAGE_INDEX. */
+    List<MessageFeature> sentMessages() {
+        return collect(shard -> shard.copy(shard.sent), BY_INDEX);
+    }
+
+    /**
+     * Iterates over the sent messages in MESSAGE_INDEX order without copying the store, for
+     * reports. Each shard is read a chunk at a time under its read lock and the chunks are
+     * merged, so the iterator holds a chunk per shard however many messages there are. Messages
+     * sent while it runs may or may not be seen, but none that stay sent is skipped or repeated.
+     *
+     * @return The iterator.
+     */
+    Iterator<MessageFeature> sentIterator() {
+        return new SentIterator(shards);
+    }
+
+    /** @return Every stored message, merged across shards in the order they were first added. */
+    List<MessageFeature> storedMessages() {
+        return collect(shard -> shard.copy(shard.stored), BY_SEQUENCE);
+    }
+
+    /** @return Every disregarded message, merged across shards in the order they were first added. */
+    List<MessageFeature> disregardedMessages() {
+        return collect(shard -> shard.copy(shard.disregarded), BY_SEQUENCE);
+    }
+
+    /** @return Every message that is sent or stored, in the order they were first added. */
+    List<MessageFeature> sentOrStoredMessages() {
+        return collect(shard -> {
+            ArrayList<Entry> both = new ArrayList<>(shard.sentCount + shard.storedCount);
+            for (int i = shard.nextSentOrStored(0); i >= 0; i = shard.nextSentOrStored(i + 1)) {
+                both.add(shard.slots[i]);
+            }
+            return both;
+        }, BY_SEQUENCE);
+    }
+
+    /** @return The number of sent messages across all shards. */
+    int sentCount() {
+        return count(shard -> shard.sentCount);
+    }
+
+    /** @return The number of stored messages across all shards. */
+    int storedCount() {
+        return count(shard -> shard.storedCount);
+    }
+
+    /** @return The number of disregarded messages across all shards. */
+    int disregardedCount() {
+        return count(shard -> shard.disregardedCount);
+    }
+
+    /** @return The number of messages across all shards, whatever their status. */
+    int size() {
+        return count(shard -> shard.entries.size());
+    }
+
+    private int count(ToIntFunction<Shard> counter) {
+        int total = 0;
+        for (Shard shard : shards) {
+            shard.lock.readLock().lock();
+            try {
+                total += counter.applyAsInt(shard);
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Copies a page of messages in store order: shard by shard, and within a shard in the order
+     * messages entered it. Only the shards the page spans are read, each under its read lock in
+     * turn, so a page costs the same wherever it starts but is not a view of a single moment.
+     *
+     * @param from The position of the first message to copy.
+     * @param page Where to copy the messages; its length is the page size.
+     * @return The number of messages copied, fewer than the page holds at the end of the store.
+     */
+    int page(int from, MessageFeature[] page) {
+        int copied = 0;
+        for (Shard shard : shards) {
+            if (copied == page.length) {
+                break;
+            }
+            shard.lock.readLock().lock();
+            try {
+                int live = shard.entries.size();
+                if (from >= live) {
+                    from -= live;
+                    continue;
+                }
+                for (int s = shard.slotOf(from); s < shard.slotCount && copied < page.length; s++) {
+                    Entry entry = shard.slots[s];
+                    if (entry != null) {
+                        page[copied++] = entry.message;
+                    }
+                }
+                from = 0;
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+        return copied;
+    }
+
+    /**
+     * Takes a consistent snapshot of every message for an export. Every shard's read lock is
+     * held at once while the snapshot is copied, so it reflects a single moment; writers wait
+     * only for the copy, not for the export. Only what can still change about a message (its
+     * index, hash and status) is copied, a few dozen bytes per message.
+     *
+     * @return The snapshot, in the order messages first entered the store.
+     */
+    Snapshot snapshot() {
+        Snapshot.Row[] rows;
+        int locked = 0;
+        try {
+            // Shards are always locked in the same order, and no writer holds two shard locks
+            for (; locked < shards.length; locked++) {
+                shards[locked].lock.readLock().lock();
+            }
+            int total = 0;
+            for (Shard shard : shards) {
+                total += shard.entries.size();
+            }
+            rows = new Snapshot.Row[total];
+            int i = 0;
+            for (Shard shard : shards) {
+                // The slots are already close to sequence order, unlike the entry map
+                for (int s = 0; s < shard.slotCount; s++) {
+                    Entry entry = shard.slots[s];
+                    if (entry != null) {
+                        MessageFeature msg = entry.message;
+                        rows[i++] = new Snapshot.Row(msg, entry.sequence, msg.getMessageIndex(), msg.fixedHash(), msg.getStatus());
+                    }
+                }
+            }
+        } finally {
+            for (int s = locked - 1; s >= 0; s--) {
+                shards[s].lock.readLock().unlock();
+            }
+        }
+        // Merges the nearly sorted runs, so this is close to linear
+        Arrays.sort(rows, Snapshot.Row.BY_SEQUENCE);
+        return new Snapshot(rows);
+    }
+
+    /**
+     * A point-in-time copy of the store, in the order messages first entered it.
+     */
+    static final class Snapshot implements Iterable<Snapshot.Row> {
+
+        /**
+         * A message and the index, hash and status it had when the snapshot was taken. Its ID,
+         * recipient and payload never change, so they are read from the message itself. The
+         * fixed hash is null when the hash is rebuilt from the index, as most are.
+         */
+        record Row(MessageFeature message, long sequence, int index, String fixedHash, MessageStatus status) {
+            static final Comparator<Row> BY_SEQUENCE = (a, b) -> Long.compare(a.sequence, b.sequence);
+
+            /** @return The message's hash as it was when the snapshot was taken. */
+            String hash() {
+                return fixedHash != null ? fixedHash : MessageHashBuilder.build(message.getMessageID(), index, message.getMessagePayload());
+            }
+        }
+
+        private final Row[] rows;
+
+        private Snapshot(Row[] rows) {
+            this.rows = rows;
+        }
+
+        /** @return The number of messages in the snapshot. */
+        int size() {
+            return rows.length;
+        }
+
+        @Override
+        public Iterator<Row> iterator() {
+            return Arrays.asList(rows).iterator();
+        }
+    }
+
+    private List<MessageFeature> collect(Function<Shard, ArrayList<Entry>> copier, Comparator<Entry> order) {
+        @SuppressWarnings("unchecked")
+        List<Entry>[] perShard = Arrays.stream(shards).parallel().map(shard -> {
+            ArrayList<Entry> copy;
+            shard.lock.readLock().lock();
+            try {
+                copy = copier.apply(shard);
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+            copy.sort(order); // Nearly sorted already, so this is close to linear
+            return copy;
+        }).toArray(List[]::new);
+        return merge(perShard, order);
+    }
+
+    private static List<MessageFeature> merge(List<Entry>[] runs, Comparator<Entry> order) {
+        int total = 0;
+        for (List<Entry> run : runs) {
+            total += run.size();
+        }
+        ArrayList<MessageFeature> merged = new ArrayList<>(total);
+        // Heap of {run, position} cursors ordered by the entry each one points at
+        PriorityQueue<int[]> heap = new PriorityQueue<>(Math.max(1, runs.length),
+                (a, b) -> order.compare(runs[a[0]].get(a[1]), runs[b[0]].get(b[1])));
+        for (int r = 0; r < runs.length; r++) {
+            if (!runs[r].isEmpty()) {
+                heap.add(new int[]{r, 0});
+            }
+        }
+        while (!heap.isEmpty()) {
+            int[] cursor = heap.poll();
+            merged.add(runs[cursor[0]].get(cursor[1]).message);
+            if (++cursor[1] < runs[cursor[0]].size()) {
+                heap.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    // Merges the shards' cursors by the message each one is at
+    private static final class SentIterator implements Iterator<MessageFeature> {
+        private final SentCursor[] cursors;
+        private PriorityQueue<SentCursor> heads;
+
+        SentIterator(Shard[] shards) {
+            cursors = new SentCursor[shards.length];
+            for (int i = 0; i < shards.length; i++) {
+                cursors[i] = new SentCursor(shards[i]);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (heads == null) {
+                // The shards are first read here rather than on creation
+                heads = new PriorityQueue<>(cursors.length, (a, b) -> BY_INDEX.compare(a.head(), b.head()));
+                for (SentCursor cursor : cursors) {
+                    if (cursor.head() != null) {
+                        heads.add(cursor);
+                    }
+                }
+            }
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public MessageFeature next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            SentCursor cursor = heads.poll();
+            Entry entry = cursor.head();
+            if (cursor.advance() != null) {
+                heads.add(cursor);
+            }
+            return entry.message;
+        }
+    }
+
+    /**
+     * Reads one shard's sent messages in BY_INDEX order, a chunk at a time. A chunk is the
+     * smallest sent entries after the last one returned, found by a scan of the shard. While
+     * the shard is unchanged and its sent messages lie in its slots in index order, as they do
+     * unless drafts were sent late or messages were loaded out of order, the next chunk is
+     * simply the next sent slots; otherwise every chunk rescans the shard, and chunks grow with
+     * the shard so that it is scanned at most about MAX_SCANS times.
+     */
+    private static final class SentCursor {
+        private static final int MIN_CHUNK = 1024;
+        private static final int MAX_SCANS = 64;
+
+        private final Shard shard;
+        private Entry[] chunk = new Entry[0];
+        private int position;
+        private int length;
+        private Entry last; // The last entry returned, or null before the first
+        private boolean exhausted;
+        // Where the next chunk starts, while the shard is unchanged since modCount; -1 if unknown
+        private int resumeSlot = -1;
+        private int resumeModCount;
+
+        SentCursor(Shard shard) {
+            this.shard = shard;
+        }
+
+        Entry head() {
+            if (position == length && !exhausted) {
+                fill();
+            }
+            return position < length ? chunk[position] : null;
+        }
+
+        Entry advance() {
+            last = chunk[position];
+            chunk[position++] = null;
+            return head();
+        }
+
+        private void fill() {
+            position = 0;
+            length = 0;
+            shard.lock.readLock().lock();
+            try {
+                int capacity = Math.max(MIN_CHUNK, shard.sentCount / MAX_SCANS);
+                if (chunk.length < capacity) {
+                    chunk = new Entry[capacity];
+                }
+                if (resumeSlot >= 0 && resumeModCount == shard.modCount) {
+                    fillInSlotOrder(capacity);
+                } else {
+                    fillByScan(capacity);
+                }
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+            exhausted = length == 0;
+        }
+
+        private void fillInSlotOrder(int capacity) {
+            int i = shard.sent.nextSetBit(resumeSlot);
+            for (; i >= 0 && length < capacity; i = shard.sent.nextSetBit(i + 1)) {
+                chunk[length++] = shard.slots[i];
+            }
+            resumeSlot = i < 0 ? shard.slotCount : i;
+        }
+
+        // Keeps the smallest entries after last in a heap with the greatest on top
+        private void fillByScan(int capacity) {
+            PriorityQueue<Entry> smallest = new PriorityQueue<>(capacity, BY_INDEX.reversed());
+            boolean inOrder = true;
+            Entry previous = null;
+            int endSlot = shard.slotCount;
+            for (int i = shard.sent.nextSetBit(0); i >= 0; i = shard.sent.nextSetBit(i + 1)) {
+                Entry entry = shard.slots[i];
+                if (last != null && BY_INDEX.compare(entry, last) <= 0) {
+                    continue;
+                }
+                if (previous != null && BY_INDEX.compare(entry, previous) < 0) {
+                    inOrder = false;
+                }
+                previous = entry;
+                if (smallest.size() < capacity) {
+                    smallest.add(entry);
+                    if (smallest.size() == capacity && inOrder) {
+                        endSlot = i + 1; // Later entries can only be greater while the order holds
+                    }
+                } else if (BY_INDEX.compare(entry, smallest.peek()) < 0) {
+                    smallest.poll();
+                    smallest.add(entry);
+                }
+            }
+            length = smallest.size();
+            for (int k = length - 1; k >= 0; k--) {
+                chunk[k] = smallest.poll();
+            }
+            resumeSlot = inOrder ? endSlot : -1;
+            resumeModCount = shard.modCount;
+        }
+    }
+
+    /**
+     * A message, its slot in its shard and the statuses it has.
+     * Fields are only changed while holding the owning shard's write lock.
+     */
+    static final class Entry {
+        final MessageFeature message;
+        final long sequence;
+        boolean sent;
+        boolean stored;
+        boolean disregarded;
+        // Its position in the shard's slots and status bitmaps
+        private int slot;
+        // The hash this entry is indexed under, or null if it has none; kept so that lookups
+        // never rebuild a hash, which may read the payload, while holding the shard lock
+        private String indexedHash;
+
+        private Entry(MessageFeature message, long sequence) {
+            this.message = message;
+            this.sequence = sequence;
+        }
+    }
+
+    // A status change made to an entry under its shard's write lock, given the message's current hash
+    @FunctionalInterface
+    private interface StatusChange {
+        void apply(Shard shard, Entry entry, String hash);
+    }
+
+    // One partition of the store, guarded by its own read-write lock
+    private static final class Shard {
+        private static final int INITIAL_SLOTS = 16;
+
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        final IdentityHashMap<MessageFeature, Entry> entries = new IdentityHashMap<>();
+        // Every entry in the order it arrived; removed entries leave a null until the next compaction
+        Entry[] slots = new Entry[INITIAL_SLOTS];
+        int slotCount;
+        final BitSet sent = new BitSet();
+        final BitSet stored = new BitSet();
+        final BitSet disregarded = new BitSet();
+        int sentCount;
+        int storedCount;
+        int disregardedCount;
+        // Bumped whenever the sent bitmap or the slots change, for the cursors of sentIterator()
+        int modCount;
+        final HashMap<String, Entry> byId = new HashMap<>();
+        final HashIndex byHash = new HashIndex();
+        final HashMap<String, ArrayList<Entry>> byRecipient = new HashMap<>();
+
+        Entry entryFor(MessageFeature message, AtomicLong nextSequence) {
+            Entry entry = entries.get(message);
+            return entry != null ? entry : newEntry(message, nextSequence.getAndIncrement());
+        }
+
+        // As above, with a sequence number reserved in advance for a new entry
+        Entry entryFor(MessageFeature message, long sequence) {
+            Entry entry = entries.get(message);
+            return entry != null ? entry : newEntry(message, sequence);
+        }
+
+        private Entry newEntry(MessageFeature message, long sequence) {
+            Entry entry = new Entry(message, sequence);
+            if (slotCount == slots.length) {
+                slots = Arrays.copyOf(slots, slotCount * 2);
+            }
+            entry.slot = slotCount;
+            slots[slotCount++] = entry;
+            entries.put(message, entry);
+            byId.putIfAbsent(message.getMessageID(), entry);
+            byRecipient.computeIfAbsent(message.getMessageRecipient(), r -> new ArrayList<>()).add(entry);
+            return entry;
+        }
+
+        void markSent(Entry entry, String hash) {
+            if (!entry.sent) {
+                entry.sent = true;
+                sent.set(entry.slot);
+                sentCount++;
+                modCount++;
+            }
+            reindexHash(entry, hash);
+        }
+
+        void markStored(Entry entry, String hash) {
+            if (!entry.stored) {
+                entry.stored = true;
+                stored.set(entry.slot);
+                storedCount++;
+            }
+            reindexHash(entry, hash);
+        }
+
+        void markDisregarded(Entry entry, String hash) {
+            if (!entry.disregarded) {
+                entry.disregarded = true;
+                disregarded.set(entry.slot);
+                disregardedCount++;
+            }
+            reindexHash(entry, hash);
+        }
+
+        BitSet members(MessageStatus status) {
+            switch (status) {
+                case SENT:
+                    return sent;
+                case STORED:
+                    return stored;
+                case DISREGARDED:
+                    return disregarded;
+                default:
+                    throw new IllegalArgumentException("No messages are kept with status " + status);
+            }
+        }
+
+        // The slot of the message at a position among the live ones
+        int slotOf(int position) {
+            if (slotCount == entries.size()) {
+                return position; // No gaps since the last compaction
+            }
+            for (int s = 0; ; s++) {
+                if (slots[s] != null && position-- == 0) {
+                    return s;
+                }
+            }
+        }
+
+        // The first slot at or after from that is sent or stored, or -1
+        int nextSentOrStored(int from) {
+            int nextSent = sent.nextSetBit(from);
+            int nextStored = stored.nextSetBit(from);
+            return nextSent < 0 ? nextStored : nextStored < 0 ? nextSent : Math.min(nextSent, nextStored);
+        }
+
+        ArrayList<Entry> copy(BitSet members) {
+            ArrayList<Entry> copy = new ArrayList<>();
+            for (int i = members.nextSetBit(0); i >= 0; i = members.nextSetBit(i + 1)) {
+                copy.add(slots[i]);
+            }
+            return copy;
+        }
+
+        // Keeps the hash index in step when a message gains or changes its hash
+        void reindexHash(Entry entry, String hash) {
+            String indexed = hash.isEmpty() ? null : hash;
+            if (Objects.equals(indexed, entry.indexedHash)) {
+                return;
+            }
+            if (entry.indexedHash != null) {
+                byHash.remove(entry.indexedHash.hashCode(), entry);
+            }
+            entry.indexedHash = indexed;
+            if (indexed != null) {
+                byHash.add(indexed.hashCode(), entry);
+            }
+        }
+
+        Entry remove(Entry entry) {
+            modCount++;
+            entries.remove(entry.message);
+            slots[entry.slot] = null;
+            if (entry.sent) {
+                sent.clear(entry.slot);
+                sentCount--;
+            }
+            if (entry.stored) {
+                stored.clear(entry.slot);
+                storedCount--;
+            }
+            if (entry.disregarded) {
+                disregarded.clear(entry.slot);
+                disregardedCount--;
+            }
+            byId.remove(entry.message.getMessageID(), entry);
+            if (entry.indexedHash != null) {
+                byHash.remove(entry.indexedHash.hashCode(), entry);
+            }
+            ArrayList<Entry> forRecipient = byRecipient.get(entry.message.getMessageRecipient());
+            if (forRecipient != null) {
+                forRecipient.remove(entry);
+                if (forRecipient.isEmpty()) {
+                    byRecipient.remove(entry.message.getMessageRecipient());
+                }
+            }
+            if (slotCount > INITIAL_SLOTS && entries.size() * 2 < slotCount) {
+                compact();
+            }
+            return entry;
+        }
+
+        // Closes the gaps removals left, keeping the order; runs after as many removals as there
+        // are entries left, so each removal pays for a constant share of it
+        private void compact() {
+            modCount++;
+            sent.clear();
+            stored.clear();
+            disregarded.clear();
+            int live = 0;
+            for (int i = 0; i < slotCount; i++) {
+                Entry entry = slots[i];
+                if (entry == null) {
+                    continue;
+                }
+                entry.slot = live;
+                slots[live++] = entry;
+                sent.set(entry.slot, entry.sent);
+                stored.set(entry.slot, entry.stored);
+                disregarded.set(entry.slot, entry.disregarded);
+            }
+            Arrays.fill(slots, live, slotCount, null);
+            slotCount = live;
+            if (slots.length > INITIAL_SLOTS && live * 4 < slots.length) {
+                slots = Arrays.copyOf(slots, Math.max(INITIAL_SLOTS, live * 2));
+            }
+        }
+
+        void clear() {
+            modCount++;
+            entries.clear();
+            slots = new Entry[INITIAL_SLOTS];
+            slotCount = 0;
+            sent.clear();
+            stored.clear();
+            disregarded.clear();
+            sentCount = 0;
+            storedCount = 0;
+            disregardedCount = 0;
+            byId.clear();
+            byHash.clear();
+            byRecipient.clear();
+        }
+    }
+
+    /**
+     * The hash index of one shard: each indexed hash's String.hashCode and its entry, in an open
+     * addressing table with linear probing. A lookup compares the hash kept on each entry whose
+     * code matches, which is almost always just the one it is looking for. Every entry is kept, so
+     * when messages share a hash (as drafts easily do) removing one leaves the others findable.
+     */
+    private static final class HashIndex {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private int[] codes = new int[INITIAL_CAPACITY];
+        private Entry[] entries = new Entry[INITIAL_CAPACITY];
+        private int size;
+
+        // Of the entries with the hash, the one removeByHash prefers: sent, then stored, then
+        // disregarded, and the earliest of those
+        Entry get(String hash) {
+            int code = hash.hashCode();
+            int mask = entries.length - 1;
+            Entry best = null;
+            for (int i = slotFor(code, mask); entries[i] != null; i = (i + 1) & mask) {
+                Entry candidate = entries[i];
+                if (codes[i] == code && candidate.indexedHash.equals(hash) && (best == null
+                        || rank(candidate) < rank(best) || (rank(candidate) == rank(best) && candidate.sequence < best.sequence))) {
+                    best = candidate;
+                }
+            }
+            return best;
+        }
+
+        void add(int code, Entry entry) {
+            int mask = entries.length - 1;
+            int i = slotFor(code, mask);
+            while (entries[i] != null) {
+                i = (i + 1) & mask;
+            }
+            codes[i] = code;
+            entries[i] = entry;
+            if (++size * 4 > entries.length * 3) {
+                resize(entries.length * 2);
+            }
+        }
+
+        // Removes the entry if it is indexed under the code, shifting later slots of its run back
+        void remove(int code, Entry entry) {
+            int mask = entries.length - 1;
+            int i = slotFor(code, mask);
+            while (entries[i] != entry) {
+                if (entries[i] == null) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            for (int j = (i + 1) & mask; entries[j] != null; j = (j + 1) & mask) {
+                int home = slotFor(codes[j], mask);
+                // Move j into the gap at i unless its home slot lies cyclically in (i, j]
+                if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                    codes[i] = codes[j];
+                    entries[i] = entries[j];
+                    i = j;
+                }
+            }
+            entries[i] = null;
+            size--;
+        }
+
+        void clear() {
+            codes = new int[INITIAL_CAPACITY];
+            entries = new Entry[INITIAL_CAPACITY];
+            size = 0;
+        }
+
+        private void resize(int capacity) {
+            int[] oldCodes = codes;
+            Entry[] oldEntries = entries;
+            codes = new int[capacity];
+            entries = new Entry[capacity];
+            int mask = capacity - 1;
+            for (int k = 0; k < oldEntries.length; k++) {
+                if (oldEntries[k] != null) {
+                    int i = slotFor(oldCodes[k], mask);
+                    while (entries[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    codes[i] = oldCodes[k];
+                    entries[i] = oldEntries[k];
+                }
+            }
+        }
+
+        private static int slotFor(int code, int mask) {
+            return (code ^ (code >>> 16)) * 0x9E3779B9 & mask; // Spreads codes that differ only in the low bits
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package st10457602;
+
+import javax.swing.SwingWorker;
+import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+import java.util.function.IntSupplier;
+
+/**
+ * A table model over every message in the store, for the message browser.
+ *
+ * In store order the model holds no copy of the store: rows are read a page at a time, for the
+ * rows the table asks about, which a JTable does only for the rows on screen. The row count is
+ * taken when the model is created or refreshed, so rows shift if the store changes in between;
+ * rows past its end are shown blank until the next refresh.
+ *
+ * Sorting needs every row, so it runs on a SwingWorker: the rows are gathered and sorted off the
+ * event dispatch thread into one array of references, which replaces the shown rows when it is
+ * done. The sort column and direction change at once; the rows follow when the sort completes.
+ *
+ * @author Angela
+ */
+public class MessageTableModel extends AbstractTableModel {
+
+    /** Column holding the message index (0 for drafts). */
+    public static final int INDEX_COLUMN = 0;
+    /** Column holding the recipient's cell number. */
+    public static final int RECIPIENT_COLUMN = 1;
+    /** Column holding the payload length. */
+    public static final int LENGTH_COLUMN = 2;
+    /** Column holding the status (Sent, Stored or Disregarded). */
+    public static final int STATUS_COLUMN = 3;
+    /** Column holding the message hash. */
+    public static final int HASH_COLUMN = 4;
+    /** Column holding the payload. */
+    public static final int MESSAGE_COLUMN = 5;
+
+    private static final String[] COLUMN_NAMES = {"Index", "Recipient", "Length", "Status", "Hash", "Message"};
+    private static final Class<?>[] COLUMN_CLASSES = {Integer.class, String.class, Integer.class, String.class, String.class, String.class};
+
+    private static final Comparator<MessageFeature> BY_INDEX = Comparator.comparingInt(MessageFeature::getMessageIndex);
+    private static final Comparator<MessageFeature> BY_RECIPIENT =
+            Comparator.comparing(MessageFeature::getMessageRecipient, Comparator.nullsFirst(Comparator.naturalOrder()));
+    private static final Comparator<MessageFeature> BY_LENGTH = Comparator.comparingInt(MessageTableModel::payloadLength);
+    private static final Comparator<MessageFeature> BY_STATUS = Comparator.comparing(MessageFeature::getMessageStatus);
+
+    // Rows read from the source at a time; a few screens' worth
+    static final int PAGE_SIZE = 256;
+
+    /** Where the rows come from: a page of them at a time, in the source's own order. */
+    interface RowSource {
+        /**
+         * Copies rows into a page.
+         * @param from The position of the first row to copy.
+         * @param page Where to copy the rows.
+         * @return The number of rows copied.
+         */
+        int page(int from, MessageFeature[] page);
+    }
+
+    private final RowSource source;
+    private final IntSupplier size;
+    private int rowCount;
+    private final MessageFeature[] page = new MessageFeature[PAGE_SIZE];
+    private int pageStart;
+    private int pageLength;
+    // Every row in sort order, once a sort has completed; null in source order
+    private MessageFeature[] sorted;
+    private SwingWorker<MessageFeature[], Void> sorter;
+    private int sortColumn = -1;
+    private boolean ascending = true;
+
+    /**
+     * Creates a model over the given source.
+     * @param source The rows.
+     * @param size   The number of rows the source currently holds.
+     */
+    MessageTableModel(RowSource source, IntSupplier size) {
+        this.source = source;
+        this.size = size;
+        this.rowCount = size.getAsInt();
+    }
+
+    /**
+     * Creates a model over the given messages.
+     * @param messages The rows, in their initial order.
+     */
+    MessageTableModel(MessageFeature[] messages) {
+        this((from, into) -> {
+            int length = Math.max(0, Math.min(into.length, messages.length - from));
+            System.arraycopy(messages, from, into, 0, length);
+            return length;
+        }, () -> messages.length);
+    }
+
+    /**
+     * Creates a model over every sent, stored and disregarded message in the store.
+     * @return The model.
+     */
+    public static MessageTableModel fromStore() {
+        return new MessageTableModel(MessageFeature::pageAllMessages, MessageFeature::countAllMessages);
+    }
+
+    /**
+     * Picks up changes to the store, keeping the current sort. A sorted model is sorted again
+     * in the background and keeps showing its old rows until that is done.
+     */
+    public void refresh() {
+        rowCount = size.getAsInt();
+        pageLength = 0;
+        if (sortColumn >= 0) {
+            sort();
+        }
+        fireTableDataChanged();
+    }
+
+    /**
+     * Returns true if the column can be sorted: index, recipient, length or status.
+     * @param column The model column.
+     * @return Whether sortBy accepts the column.
+     */
+    public boolean isSortable(int column) {
+        return column >= INDEX_COLUMN && column <= STATUS_COLUMN;
+    }
+
+    /**
+     * Sorts by a column in the background; sorting by the same column again reverses the order.
+     * The table is told to repaint once the sorted rows are in place.
+     * @param column The model column, one of the sortable columns.
+     */
+    public void sortBy(int column) {
+        if (!isSortable(column)) {
+            throw new IllegalArgumentException("Column " + column + " cannot be sorted");
+        }
+        ascending = column != sortColumn || !ascending;
+        sortColumn = column;
+        sort();
+    }
+
+    private void sort() {
+        if (sorter != null) {
+            sorter.cancel(false); // Its rows would be replaced by these anyway
+        }
+        Comparator<MessageFeature> comparator;
+        switch (sortColumn) {
+            case INDEX_COLUMN: comparator = BY_INDEX; break;
+            case RECIPIENT_COLUMN: comparator = BY_RECIPIENT; break;
+            case LENGTH_COLUMN: comparator = BY_LENGTH; break;
+            default: comparator = BY_STATUS; break;
+        }
+        Comparator<MessageFeature> order = ascending ? comparator : comparator.reversed();
+        sorter = new SwingWorker<MessageFeature[], Void>() {
+            @Override
+            protected MessageFeature[] doInBackground() {
+                MessageFeature[] rows = new MessageFeature[size.getAsInt()];
+                int length = source.page(0, rows);
+                rows = length < rows.length ? Arrays.copyOf(rows, length) : rows;
+                Arrays.parallelSort(rows, order);
+                return rows;
+            }
+
+            @Override
+            protected void done() {
+                if (sorter != this || isCancelled()) {
+                    return;
+                }
+                sorter = null;
+                try {
+                    sorted = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    return; // Keep showing the rows as they were
+                }
+                fireTableDataChanged();
+            }
+        };
+        sorter.execute();
+    }
+
+    /** @return The sorted column, or -1 if the rows are in store order. */
+    public int getSortColumn() { return sortColumn; }
+
+    /** @return true if the sort is ascending. */
+    public boolean isAscending() { return ascending; }
+
+    /**
+     * Returns the message shown in a row.
+     * @param row The model row.
+     * @return The message, or null if the store has shrunk below the row since the last refresh.
+     */
+    public MessageFeature getMessageAt(int row) {
+        if (sorted != null) {
+            return sorted[row];
+        }
+        if (row < pageStart || row >= pageStart + pageLength) {
+            pageStart = row - row % PAGE_SIZE;
+            pageLength = source.page(pageStart, page);
+            Arrays.fill(page, pageLength, PAGE_SIZE, null);
+        }
+        return row - pageStart < pageLength ? page[row - pageStart] : null;
+    }
+
+    /** @return The number of rows held by the model: a page in store order, every row once sorted. */
+    int heldRowCount() {
+        return sorted != null ? sorted.length : pageLength;
+    }
+
+    @Override
+    public int getRowCount() {
+        return sorted != null ? sorted.length : rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return COLUMN_CLASSES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        MessageFeature msg = getMessageAt(row);
+        if (msg == null) {
+            return null;
+        }
+        switch (column) {
+            case INDEX_COLUMN: return msg.getMessageIndex();
+            case RECIPIENT_COLUMN: return msg.getMessageRecipient();
+            case LENGTH_COLUMN: return payloadLength(msg);
+            case STATUS_COLUMN: return msg.getMessageStatus();
+            case HASH_COLUMN: return msg.getMessageHash();
+            default: return msg.getMessagePayload();
+        }
+    }
+
+    // Known without reading the payload back from the arena or its file, so sorting stays cheap
+    private static int payloadLength(MessageFeature msg) {
+        return Math.max(0, msg.payloadLength());
+    }
+}
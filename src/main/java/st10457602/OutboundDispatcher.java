@@ -0,0 +1,316 @@
+package st10457602;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The outbound stage between MessageFeature.sentMessage() and the SMS provider.
+ *
+ * Sent messages wait in a bounded queue and are delivered by worker threads, which pace
+ * themselves with a global token bucket so the provider never sees more than its limit.
+ * Each recipient also has a token bucket, checked when the message is submitted, so one
+ * recipient cannot be flooded. When the queue is full a submitter either waits for space
+ * ({@link OverflowPolicy#BLOCK}) or is turned away at once ({@link OverflowPolicy#FAIL_FAST}).
+ *
+ * @author Angela
+ */
+public class OutboundDispatcher implements AutoCloseable {
+
+    /** What submit does when the queue has no free slot. */
+    public enum OverflowPolicy {
+        /** Wait until a worker frees a slot. */
+        BLOCK,
+        /** Reject the message immediately. */
+        FAIL_FAST
+    }
+
+    /** The outcome of submitting a message. */
+    public enum Admission {
+        /** The message is queued for delivery. */
+        QUEUED,
+        /** The queue was full and the policy is FAIL_FAST. */
+        QUEUE_FULL,
+        /** The recipient has been sent too many messages recently. */
+        RATE_LIMITED,
+        /** The dispatcher has been closed. */
+        CLOSED
+    }
+
+    // Buckets for recipients are forgotten once they refill, but at most once a second
+    private static final int DEFAULT_MAX_TRACKED_RECIPIENTS = 100_000;
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final SmsGateway gateway;
+    private final OverflowPolicy overflowPolicy;
+    private final ArrayBlockingQueue<MessageFeature> queue;
+    private final Semaphore freeSlots;
+    private final TokenBucket globalBucket;
+    private final double recipientRatePerSecond;
+    private final ConcurrentHashMap<String, TokenBucket> recipientBuckets = new ConcurrentHashMap<>();
+    private final int maxTrackedRecipients;
+    private final AtomicLong lastSweepNanos = new AtomicLong(System.nanoTime());
+    private final Thread[] workers;
+    private final long startNanos = System.nanoTime();
+    private volatile boolean closed;
+    // Admissions hold the read lock from their last look at closed until the message is queued,
+    // and shutdown takes the write lock to close, so no message is queued after the workers stop
+    private final ReentrantReadWriteLock closing = new ReentrantReadWriteLock();
+    // Messages queued and not yet delivered or failed, including those a worker has taken off
+    // the queue and is still pacing or delivering
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder droppedQueueFull = new LongAdder();
+    private final LongAdder droppedRateLimited = new LongAdder();
+
+    /**
+     * Creates and starts a dispatcher.
+     *
+     * @param gateway                The provider to deliver to.
+     * @param queueCapacity          The most messages that may wait for delivery.
+     * @param workerCount            The number of delivery threads.
+     * @param globalRatePerSecond    The provider's limit across all recipients.
+     * @param recipientRatePerSecond The limit for any single recipient.
+     * @param overflowPolicy         What to do when the queue is full.
+     */
+    public OutboundDispatcher(SmsGateway gateway, int queueCapacity, int workerCount,
+                              double globalRatePerSecond, double recipientRatePerSecond,
+                              OverflowPolicy overflowPolicy) {
+        this(gateway, queueCapacity, workerCount, globalRatePerSecond, recipientRatePerSecond,
+                overflowPolicy, DEFAULT_MAX_TRACKED_RECIPIENTS);
+    }
+
+    OutboundDispatcher(SmsGateway gateway, int queueCapacity, int workerCount,
+                       double globalRatePerSecond, double recipientRatePerSecond,
+                       OverflowPolicy overflowPolicy, int maxTrackedRecipients) {
+        if (gateway == null || overflowPolicy == null) {
+            throw new IllegalArgumentException("Gateway and overflow policy are required");
+        }
+        if (queueCapacity < 1 || workerCount < 1) {
+            throw new IllegalArgumentException("Queue capacity and worker count must be positive");
+        }
+        this.gateway = gateway;
+        this.overflowPolicy = overflowPolicy;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.freeSlots = new Semaphore(queueCapacity);
+        // One second's worth of tokens lets short bursts through without exceeding the rate
+        this.globalBucket = new TokenBucket(globalRatePerSecond, Math.max(1, globalRatePerSecond));
+        this.recipientRatePerSecond = recipientRatePerSecond;
+        this.maxTrackedRecipients = maxTrackedRecipients;
+        this.workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(this::deliverLoop, "quickchat-outbound-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Submits a message for delivery. {@code onAdmitted} runs once the message has passed the
+     * recipient limit and holds a queue slot, just before it is queued; MessageFeature uses it
+     * to assign the index and hash so that rejected messages never consume an index.
+     *
+     * @param message    The message to deliver.
+     * @param onAdmitted Work to do once the message is certain to be queued.
+     * @return The admission outcome.
+     */
+    public Admission submit(MessageFeature message, Runnable onAdmitted) {
+        if (closed) {
+            return Admission.CLOSED;
+        }
+        TokenBucket bucket = recipientBucket(message.getMessageRecipient());
+        if (!bucket.tryAcquire()) {
+            droppedRateLimited.increment();
+            return Admission.RATE_LIMITED;
+        }
+        if (!reserveSlot()) {
+            bucket.release(); // The recipient was not sent anything
+            droppedQueueFull.increment();
+            return Admission.QUEUE_FULL;
+        }
+        closing.readLock().lock();
+        try {
+            if (closed) {
+                // Closed while this caller was waiting for a slot
+                freeSlots.release();
+                bucket.release();
+                return Admission.CLOSED;
+            }
+            onAdmitted.run();
+            inFlight.incrementAndGet();
+            // Cannot fail: the slot was reserved above
+            queue.add(message);
+        } finally {
+            closing.readLock().unlock();
+        }
+        queued.increment();
+        return Admission.QUEUED;
+    }
+
+    private boolean reserveSlot() {
+        if (overflowPolicy == OverflowPolicy.FAIL_FAST) {
+            return freeSlots.tryAcquire();
+        }
+        try {
+            freeSlots.acquire();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private TokenBucket recipientBucket(String recipient) {
+        String key = recipient == null ? "" : recipient;
+        TokenBucket bucket = recipientBuckets.get(key);
+        if (bucket == null) {
+            sweepIdleBuckets();
+            bucket = recipientBuckets.computeIfAbsent(key,
+                    r -> new TokenBucket(recipientRatePerSecond, Math.max(1, recipientRatePerSecond)));
+        }
+        return bucket;
+    }
+
+    // Forgets full buckets so the map does not grow with every recipient ever seen
+    private void sweepIdleBuckets() {
+        long last = lastSweepNanos.get();
+        long now = System.nanoTime();
+        if (recipientBuckets.size() < maxTrackedRecipients || now - last < SWEEP_INTERVAL_NANOS
+                || !lastSweepNanos.compareAndSet(last, now)) {
+            return;
+        }
+        recipientBuckets.values().removeIf(TokenBucket::isFull);
+    }
+
+    private void deliverLoop() {
+        while (!closed || !queue.isEmpty()) {
+            MessageFeature message;
+            try {
+                message = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (message == null) {
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            freeSlots.release();
+            try {
+                globalBucket.acquire();
+            } catch (InterruptedException e) {
+                // Shutdown gave up waiting; the message will never be delivered
+                failed.increment();
+                inFlight.decrementAndGet();
+                return;
+            }
+            try {
+                gateway.deliver(message.getMessageRecipient(), message.getMessagePayload());
+                delivered.increment();
+            } catch (IOException | RuntimeException e) {
+                failed.increment();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    // --- Statistics ---
+
+    /** @return The number of messages waiting for delivery. */
+    public int getQueueDepth() { return queue.size(); }
+
+    /** @return The number of messages accepted into the queue. */
+    public long getQueuedCount() { return queued.sum(); }
+
+    /** @return The number of messages the gateway accepted. */
+    public long getDeliveredCount() { return delivered.sum(); }
+
+    /** @return The number of messages the gateway rejected, or that shutdown gave up on. */
+    public long getFailedCount() { return failed.sum(); }
+
+    /** @return The number of messages turned away because the queue was full. */
+    public long getDroppedQueueFullCount() { return droppedQueueFull.sum(); }
+
+    /** @return The number of messages turned away by a recipient's rate limit. */
+    public long getDroppedRateLimitedCount() { return droppedRateLimited.sum(); }
+
+    /** @return The number of recipients whose rate limit is currently being tracked. */
+    public int getTrackedRecipientCount() { return recipientBuckets.size(); }
+
+    /** @return Deliveries per second since the dispatcher started. */
+    public double getThroughputPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000d;
+        return seconds > 0 ? delivered.sum() / seconds : 0;
+    }
+
+    /**
+     * Summarises the dispatcher's counters for display.
+     * @return A one-line statistics string.
+     */
+    public String describeStats() {
+        return "Queue depth: " + getQueueDepth()
+                + ", queued: " + getQueuedCount()
+                + ", delivered: " + getDeliveredCount()
+                + ", failed: " + getFailedCount()
+                + ", dropped (queue full): " + getDroppedQueueFullCount()
+                + ", dropped (rate limited): " + getDroppedRateLimitedCount()
+                + ", throughput: " + Math.round(getThroughputPerSecond()) + "/s";
+    }
+
+    /**
+     * Stops accepting messages and waits up to the given time for the queue to drain. Messages
+     * still queued, or still waiting on the global rate limit, when the time is up are never
+     * delivered and are counted as failed.
+     * @param timeout The longest time to wait.
+     * @param unit    The unit of the timeout.
+     * @return true if every queued message was handed to the gateway in time.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        closing.writeLock().lock();
+        try {
+            closed = true; // Every admission already past its check has queued its message
+        } finally {
+            closing.writeLock().unlock();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread worker : workers) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0) {
+                TimeUnit.NANOSECONDS.timedJoin(worker, remaining);
+            }
+        }
+        boolean drained = queue.isEmpty() && inFlight.get() == 0;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        // No worker takes another message once interrupted, so whatever is left is dropped
+        MessageFeature message;
+        while ((message = queue.poll()) != null) {
+            freeSlots.release();
+            failed.increment();
+            inFlight.decrementAndGet();
+        }
+        return drained;
+    }
+
+    /**
+     * Stops the dispatcher, giving queued messages up to five seconds to be delivered.
+     */
+    @Override
+    public void close() {
+        try {
+            shutdown(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package st10457602;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Holds message payloads outside the Java heap, so a very large history does not give the
+ * garbage collector tens of millions of payload strings to trace. Payloads are appended to
+ * direct ByteBuffer chunks and read back as new Strings when asked for. A payload whose chars
+ * all fit in one byte is kept as Latin-1, as the JVM keeps such strings itself; any other
+ * payload is kept as UTF-16, so every payload comes back exactly as it went in.
+ *
+ * Each payload is a 4-byte header (its length in chars, shifted left one, plus 1 for UTF-16)
+ * followed by its bytes. An address is the chunk number in the high 32 bits and the offset in
+ * the low 32. The arena only grows: the space of a deleted message is not reused. Chunks count
+ * against {@code -XX:MaxDirectMemorySize}, which defaults to the maximum heap size.
+ *
+ * Appends from several threads are safe. A payload can be read by any thread that has seen the
+ * message holding its address through the store's locks.
+ *
+ * @author Angela
+ */
+final class PayloadArena {
+
+    /** The size of each direct buffer; payloads that would not fit in one stay on the heap. */
+    static final int CHUNK_SIZE = Integer.getInteger("quickchat.payload.chunk", 16 << 20);
+
+    private static final int HEADER = Integer.BYTES;
+    private static final int UTF16 = 1;
+
+    private static volatile PayloadArena shared;
+
+    private final int chunkSize;
+    // Replaced, never changed in place, when a chunk is added, so readers need no lock
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private int used;
+    private long usedBytes;
+
+    private final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[512]);
+
+    PayloadArena(int chunkSize) {
+        if (chunkSize < 1024) {
+            throw new IllegalArgumentException("Chunk size is too small: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /** @return The arena every off-heap message payload is kept in. */
+    static PayloadArena shared() {
+        PayloadArena arena = shared;
+        if (arena == null) {
+            synchronized (PayloadArena.class) {
+                arena = shared;
+                if (arena == null) {
+                    shared = arena = new PayloadArena(CHUNK_SIZE);
+                }
+            }
+        }
+        return arena;
+    }
+
+    /**
+     * Copies a payload into the arena.
+     * @param payload The payload; must not be null.
+     * @return Its address, or -1 if it is too long for a chunk and should stay on the heap.
+     */
+    long add(String payload) {
+        int length = payload.length();
+        boolean latin1 = isLatin1(payload);
+        long bytes = HEADER + (latin1 ? (long) length : 2L * length);
+        if (bytes > chunkSize) {
+            return -1;
+        }
+        byte[] encoded = scratch.get();
+        if (encoded.length < bytes) {
+            encoded = new byte[(int) bytes];
+            scratch.set(encoded);
+        }
+        int header = (length << 1) | (latin1 ? 0 : UTF16);
+        encoded[0] = (byte) (header >>> 24);
+        encoded[1] = (byte) (header >>> 16);
+        encoded[2] = (byte) (header >>> 8);
+        encoded[3] = (byte) header;
+        int at = HEADER;
+        for (int i = 0; i < length; i++) {
+            char c = payload.charAt(i);
+            if (!latin1) {
+                encoded[at++] = (byte) (c >>> 8);
+            }
+            encoded[at++] = (byte) c;
+        }
+
+        ByteBuffer chunk;
+        int offset;
+        int index;
+        synchronized (this) {
+            if (chunks.length == 0 || chunkSize - used < bytes) {
+                ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+                grown[chunks.length] = ByteBuffer.allocateDirect(chunkSize);
+                chunks = grown;
+                used = 0;
+            }
+            index = chunks.length - 1;
+            chunk = chunks[index];
+            offset = used;
+            used += (int) bytes;
+            usedBytes += bytes;
+        }
+        // Copied outside the lock; no other append can be given the same range
+        chunk.put(offset, encoded, 0, (int) bytes);
+        return ((long) index << 32) | offset;
+    }
+
+    /**
+     * Reads a payload back.
+     * @param address An address add() returned.
+     * @return A new String equal to the payload that was added.
+     */
+    String get(long address) {
+        ByteBuffer chunk = chunk(address);
+        int offset = (int) address;
+        int header = chunk.getInt(offset);
+        int length = header >>> 1;
+        boolean utf16 = (header & UTF16) != 0;
+        int bytes = utf16 ? 2 * length : length;
+        byte[] encoded = scratch.get();
+        if (encoded.length < bytes) {
+            encoded = new byte[bytes];
+            scratch.set(encoded);
+        }
+        chunk.get(offset + HEADER, encoded, 0, bytes);
+        if (!utf16) {
+            return new String(encoded, 0, bytes, StandardCharsets.ISO_8859_1);
+        }
+        // Rebuilt by hand, since the UTF-16 decoder would replace an unpaired surrogate
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (((encoded[2 * i] & 0xFF) << 8) | (encoded[2 * i + 1] & 0xFF));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * The length of a payload in chars, without reading it.
+     * @param address An address add() returned.
+     * @return What get(address).length() would return.
+     */
+    int length(long address) {
+        return chunk(address).getInt((int) address) >>> 1;
+    }
+
+    /** @return The number of bytes taken by payloads so far, headers included. */
+    synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    /** @return The number of bytes reserved in direct buffers. */
+    synchronized long reservedBytes() {
+        return (long) chunks.length * chunkSize;
+    }
+
+    private ByteBuffer chunk(long address) {
+        return chunks[(int) (address >>> 32)];
+    }
+
+    private static boolean isLatin1(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
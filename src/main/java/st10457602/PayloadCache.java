@@ -0,0 +1,465 @@
+package st10457602;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * A concurrent cache bounded by the bytes its values take, with W-TinyLFU admission and eviction.
+ *
+ * The cache is split into segments by key hash, each with its own lock, so lookups on different
+ * threads rarely wait for one another. Within a segment a new entry goes into a small LRU window
+ * (1% of the segment's bytes). An entry pushed out of the window is only let into the main space,
+ * a segmented LRU of probation and protected queues, if it has been looked up more often recently
+ * than the entry it would push out; the counts come from a 4-bit count-min sketch that is halved
+ * every so often so that old popularity fades. This keeps a one-off scan of the history from
+ * flushing out the messages that are read again and again. An entry read while on probation moves
+ * to the protected queue, which holds up to 80% of the main space.
+ *
+ * Every lookup counts as a hit or a miss, and every entry dropped to make room, or not let in,
+ * counts as an eviction. A value heavier than a whole segment is returned but not cached.
+ *
+ * @param <K> The key type; keys are compared with equals().
+ * @param <V> The value type.
+ * @author Angela
+ */
+final class PayloadCache<K, V> {
+
+    // Segments are not made smaller than this, so a small cache is not spread too thin
+    private static final long MIN_SEGMENT_BYTES = 64 << 10;
+
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+    private final ToLongFunction<? super V> weigher;
+    private final long maximumBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Makes an empty cache.
+     * @param maximumBytes The most bytes the cached values may weigh together.
+     * @param weigher      How many bytes a value takes; at least 1.
+     */
+    @SuppressWarnings("unchecked")
+    PayloadCache(long maximumBytes, ToLongFunction<? super V> weigher) {
+        if (maximumBytes <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive: " + maximumBytes);
+        }
+        this.maximumBytes = maximumBytes;
+        this.weigher = weigher;
+        int count = 1;
+        int wanted = Runtime.getRuntime().availableProcessors() * 2;
+        while (count < wanted && maximumBytes / (count * 2L) >= MIN_SEGMENT_BYTES) {
+            count <<= 1;
+        }
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>(maximumBytes / count, this);
+        }
+        segmentMask = count - 1;
+    }
+
+    /**
+     * Returns a cached value, or loads and caches it. The loader runs without any lock held, so
+     * two threads missing on the same key at once may both load it. A value loaded while a key
+     * of the same segment was invalidated, or the cache cleared, is returned but not cached, as
+     * it may be the stale value the invalidation was meant to drop.
+     * @param key    The key.
+     * @param loader Loads the value on a miss; may return null, which is not cached.
+     * @return The value, or null if it is not cached and the loader returned null.
+     */
+    V get(K key, Function<? super K, ? extends V> loader) {
+        int hash = spread(key.hashCode());
+        Segment<K, V> segment = segmentFor(hash);
+        long invalidations = segment.invalidations;
+        V value = segment.get(key, hash);
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        value = loader.apply(key);
+        if (value != null) {
+            segment.putUnlessInvalidated(key, hash, value, Math.max(1, weigher.applyAsLong(value)), invalidations);
+        }
+        return value;
+    }
+
+    /**
+     * Returns a cached value, counting the lookup as a hit or a miss.
+     * @param key The key.
+     * @return The value, or null if it is not cached.
+     */
+    V getIfPresent(K key) {
+        int hash = spread(key.hashCode());
+        V value = segmentFor(hash).get(key, hash);
+        (value != null ? hits : misses).increment();
+        return value;
+    }
+
+    /**
+     * Caches a value, replacing any value cached for the key.
+     * @param key   The key.
+     * @param value The value; must not be null.
+     */
+    void put(K key, V value) {
+        int hash = spread(key.hashCode());
+        segmentFor(hash).put(key, hash, value, Math.max(1, weigher.applyAsLong(value)));
+    }
+
+    /**
+     * Drops a key's value, if it is cached; this is not counted as an eviction.
+     * @param key The key.
+     */
+    void invalidate(K key) {
+        int hash = spread(key.hashCode());
+        segmentFor(hash).remove(key);
+    }
+
+    /** Drops every value and forgets how often each key was looked up; the counters are kept. */
+    void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /** @return The number of cached values. */
+    int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /** @return The bytes the cached values weigh together. */
+    long weightedSize() {
+        long bytes = 0;
+        for (Segment<K, V> segment : segments) {
+            bytes += segment.weightedSize();
+        }
+        return bytes;
+    }
+
+    /** @return The most bytes the cached values may weigh together. */
+    long maximumBytes() {
+        return maximumBytes;
+    }
+
+    /** @return The number of lookups that found a value. */
+    long hitCount() {
+        return hits.sum();
+    }
+
+    /** @return The number of lookups that found nothing. */
+    long missCount() {
+        return misses.sum();
+    }
+
+    /** @return The number of values dropped, or not let in, to keep the cache within its size. */
+    long evictionCount() {
+        return evictions.sum();
+    }
+
+    /** Sets the hit, miss and eviction counts back to zero. */
+    void resetCounts() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    private Segment<K, V> segmentFor(int hash) {
+        return segments[(hash >>> 16) & segmentMask];
+    }
+
+    // Mixes the bits of a hash code, as identity and small integer hashes are poorly spread
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x45d9f3b;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private static final class Node<K, V> {
+        final K key;
+        final int hash;
+        V value;
+        long weight;
+        int queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, int hash, V value, long weight) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /** An LRU queue threaded through its nodes; the head is the most recently used. */
+    private static final class Queue<K, V> {
+        Node<K, V> head;
+        Node<K, V> tail;
+        long bytes;
+
+        void addFirst(Node<K, V> node) {
+            node.prev = null;
+            node.next = head;
+            if (head != null) {
+                head.prev = node;
+            } else {
+                tail = node;
+            }
+            head = node;
+            bytes += node.weight;
+        }
+
+        void unlink(Node<K, V> node) {
+            if (node.prev != null) {
+                node.prev.next = node.next;
+            } else {
+                head = node.next;
+            }
+            if (node.next != null) {
+                node.next.prev = node.prev;
+            } else {
+                tail = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            bytes -= node.weight;
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+            bytes = 0;
+        }
+    }
+
+    private static final class Segment<K, V> {
+        private final PayloadCache<K, V> cache;
+        private final long maximum;
+        private final long maxWindow;
+        private final long maxProtected;
+        private final Map<K, Node<K, V>> nodes = new HashMap<>();
+        @SuppressWarnings("unchecked")
+        private final Queue<K, V>[] queues = new Queue[] {new Queue<>(), new Queue<>(), new Queue<>()};
+        private final FrequencySketch sketch;
+        // Counts removals and clears, so a load that began before one can tell; written under the lock
+        private volatile long invalidations;
+
+        Segment(long maximum, PayloadCache<K, V> cache) {
+            this.cache = cache;
+            this.maximum = maximum;
+            this.maxWindow = Math.max(1, maximum / 100);
+            this.maxProtected = (maximum - maxWindow) * 4 / 5;
+            // Sized for values of around 128 bytes; more keys than that only makes the counts coarser
+            this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(16, maximum / 128)));
+        }
+
+        synchronized V get(K key, int hash) {
+            sketch.increment(hash);
+            Node<K, V> node = nodes.get(key);
+            if (node == null) {
+                return null;
+            }
+            touch(node);
+            return node.value;
+        }
+
+        synchronized void put(K key, int hash, V value, long weight) {
+            Node<K, V> node = nodes.get(key);
+            if (node != null) {
+                queues[node.queue].unlink(node);
+                node.value = value;
+                node.weight = weight;
+                if (weight > maximum) {
+                    nodes.remove(key);
+                    return;
+                }
+                queues[node.queue].addFirst(node);
+                touch(node);
+            } else {
+                if (weight > maximum) {
+                    return;
+                }
+                node = new Node<>(key, hash, value, weight);
+                node.queue = WINDOW;
+                nodes.put(key, node);
+                queues[WINDOW].addFirst(node);
+            }
+            evict();
+        }
+
+        synchronized void putUnlessInvalidated(K key, int hash, V value, long weight, long invalidationsBefore) {
+            if (invalidations == invalidationsBefore) {
+                put(key, hash, value, weight);
+            }
+        }
+
+        synchronized void remove(K key) {
+            invalidations++;
+            Node<K, V> node = nodes.remove(key);
+            if (node != null) {
+                queues[node.queue].unlink(node);
+            }
+        }
+
+        synchronized void clear() {
+            invalidations++;
+            nodes.clear();
+            for (Queue<K, V> queue : queues) {
+                queue.clear();
+            }
+            sketch.clear();
+        }
+
+        synchronized int size() {
+            return nodes.size();
+        }
+
+        synchronized long weightedSize() {
+            return queues[WINDOW].bytes + queues[PROBATION].bytes + queues[PROTECTED].bytes;
+        }
+
+        // Moves a node that was just read to the head of its queue, promoting it out of probation
+        private void touch(Node<K, V> node) {
+            Queue<K, V> queue = queues[node.queue];
+            queue.unlink(node);
+            if (node.queue == PROBATION) {
+                node.queue = PROTECTED;
+                queues[PROTECTED].addFirst(node);
+                // The protected queue's least recently used nodes go back on probation
+                while (queues[PROTECTED].bytes > maxProtected && queues[PROTECTED].tail != node) {
+                    Node<K, V> demoted = queues[PROTECTED].tail;
+                    queues[PROTECTED].unlink(demoted);
+                    demoted.queue = PROBATION;
+                    queues[PROBATION].addFirst(demoted);
+                }
+            } else {
+                queue.addFirst(node);
+            }
+        }
+
+        // Moves whatever overflows the window into the main space if it is popular enough, then
+        // evicts until the segment is within its size
+        private void evict() {
+            Queue<K, V> window = queues[WINDOW];
+            while (window.bytes > maxWindow && window.tail != null) {
+                Node<K, V> candidate = window.tail;
+                window.unlink(candidate);
+                admit(candidate);
+            }
+            // Only a value that grew when it was replaced can still leave the segment too full
+            while (weightedSize() > maximum) {
+                Node<K, V> victim = victim();
+                drop(victim != null ? victim : window.tail);
+            }
+        }
+
+        private void admit(Node<K, V> candidate) {
+            long room = maximum - maxWindow;
+            int candidateFrequency = sketch.frequency(candidate.hash);
+            while (queues[PROBATION].bytes + queues[PROTECTED].bytes + candidate.weight > room) {
+                Node<K, V> victim = victim();
+                if (victim == null || sketch.frequency(victim.hash) >= candidateFrequency) {
+                    // Not looked up more often than what it would replace, so it is not let in
+                    nodes.remove(candidate.key);
+                    cache.evictions.increment();
+                    return;
+                }
+                drop(victim);
+            }
+            candidate.queue = PROBATION;
+            queues[PROBATION].addFirst(candidate);
+        }
+
+        // The least recently used node of the main space, taken from probation first
+        private Node<K, V> victim() {
+            Node<K, V> victim = queues[PROBATION].tail;
+            return victim != null ? victim : queues[PROTECTED].tail;
+        }
+
+        private void drop(Node<K, V> node) {
+            queues[node.queue].unlink(node);
+            nodes.remove(node.key);
+            cache.evictions.increment();
+        }
+    }
+
+    /**
+     * Estimates how often each hash was seen recently, with four 4-bit counters per hash in a
+     * table of longs. Once it has counted ten times as many lookups as it has slots, every count
+     * is halved.
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+        };
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedKeys) {
+            int length = Integer.highestOneBit(Math.max(16, expectedKeys) - 1) << 1;
+            table = new long[length];
+            mask = length - 1;
+            sampleSize = 10 * length;
+        }
+
+        int frequency(int hash) {
+            int frequency = 15;
+            for (int i = 0; i < SEEDS.length; i++) {
+                long h = index(hash, i);
+                int shift = (int) (h >>> 32) << 2;
+                frequency = Math.min(frequency, (int) (table[(int) h & mask] >>> shift) & 15);
+            }
+            return frequency;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                long h = index(hash, i);
+                int slot = (int) h & mask;
+                int shift = (int) (h >>> 32) << 2;
+                if (((table[slot] >>> shift) & 15) != 15) {
+                    table[slot] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                for (int slot = 0; slot < table.length; slot++) {
+                    table[slot] = (table[slot] >>> 1) & RESET_MASK;
+                }
+                additions = sampleSize / 2;
+            }
+        }
+
+        void clear() {
+            Arrays.fill(table, 0);
+            additions = 0;
+        }
+
+        // The slot in the low 32 bits and the counter within it, 0 to 15, in the high 32
+        private static long index(int hash, int depth) {
+            long h = (hash + SEEDS[depth]) * SEEDS[depth];
+            h ^= h >>> 29;
+            return ((h >>> 60) << 32) | (h & 0xffffffffL);
+        }
+    }
+}
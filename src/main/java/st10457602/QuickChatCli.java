@@ -0,0 +1,330 @@
+package st10457602;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The headless command-line mode of QuickChat, for scripts and batch jobs. It never touches
+ * Swing or AWT, and does not start the JMX server or Flight Recorder unless {@code --jfr} asks
+ * for its events, so a command runs in milliseconds. Each run
+ * loads the messages in the data directory, runs one command and exits; sent and stored
+ * messages are written to their JSON files, as the message screen writes them, so the next
+ * run sees them.
+ *
+ * Results go to standard output and errors to standard error. A message payload given as "-",
+ * or left out, is read from standard input, and import reads from standard input when its file
+ * is "-", so commands can be piped together. The exit status is 0 on success, 1 if the command
+ * failed or found nothing, and 2 if it was used incorrectly.
+ *
+ * Run with: {@code AngelaPOE [--data-dir <dir>] [--lazy] [--time] [--jfr] <command> [arguments]}.
+ * {@code --time} reports the time from parsing the command line to finishing the command,
+ * including loading the messages, on standard error.
+ *
+ * @author Angela
+ */
+public final class QuickChatCli {
+
+    /** The command succeeded. */
+    public static final int OK = 0;
+    /** The command failed, e.g. the message was rejected or nothing was found. */
+    public static final int FAILED = 1;
+    /** The command line was not understood. */
+    public static final int USAGE = 2;
+
+    private static final String USAGE_TEXT = String.join("\n",
+            "Usage: AngelaPOE [--data-dir <dir>] [--lazy] [--time] [--jfr] <command> [arguments]",
+            "  --data-dir <dir>  Where message files are kept (the working directory by default)",
+            "  --lazy            Load payloads only when they are read",
+            "  --time            Print how long the command took to standard error",
+            "  --jfr             Emit Flight Recorder events, which makes startup slower",
+            "Commands:",
+            "  send <recipient> [<message> | -]        Send a message and store it",
+            "  store <recipient> [<message> | -]       Store a message as a draft",
+            "  search-id <id>                          Show the message with this ID",
+            "  search-recipient <recipient>            Show every message for this recipient",
+            "  delete <hash>                           Delete the message with this hash",
+            "  report [--format text|csv|ndjson]       Report every sent message",
+            "  import <file | -> [--format csv|ndjson] Import messages from CSV or NDJSON",
+            "A message left out or given as - is read from standard input.",
+            "");
+
+    private final InputStream in;
+    private final PrintStream out;
+    private final PrintStream err;
+    private boolean timed;
+
+    private QuickChatCli(InputStream in, PrintStream out, PrintStream err) {
+        this.in = in;
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Runs one command with the process's standard streams and exits with its status.
+     * @param args The command line.
+     */
+    public static void main(String[] args) {
+        // Set before anything can load AWT or the metrics, so that neither starts more than it must;
+        // run() leaves them alone, as it may share its JVM with the GUI or with tests
+        System.setProperty("java.awt.headless", "true");
+        if (System.getProperty("quickchat.metrics.jmx") == null) {
+            System.setProperty("quickchat.metrics.jmx", "false");
+        }
+        if (!Arrays.asList(args).contains("--jfr")) {
+            MessageFeature.setFlightRecorderEvents(false);
+        }
+        System.exit(run(args, System.in, System.out, System.err));
+    }
+
+    /**
+     * Runs one command.
+     * @param args The command line: options, the command and its arguments.
+     * @param in   Where payloads and imports given as "-" are read from.
+     * @param out  Where results are written.
+     * @param err  Where errors and usage are written.
+     * @return The exit status: OK, FAILED or USAGE.
+     */
+    public static int run(String[] args, InputStream in, PrintStream out, PrintStream err) {
+        long start = System.nanoTime();
+        QuickChatCli cli = new QuickChatCli(in, out, err);
+        try {
+            return cli.dispatch(args);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.print(USAGE_TEXT);
+            return USAGE;
+        } catch (IOException e) {
+            err.println("Error: " + e.getMessage());
+            return FAILED;
+        } finally {
+            out.flush();
+            if (cli.timed) {
+                err.printf(Locale.ROOT, "Took %.1f ms%n", (System.nanoTime() - start) / 1e6);
+            }
+        }
+    }
+
+    private int dispatch(String[] args) throws IOException {
+        int i = 0;
+        while (i < args.length && args[i].startsWith("--")) {
+            switch (args[i]) {
+                case "--data-dir":
+                    MessageFeature.setDataDirectory(new File(value(args, i++, "--data-dir")));
+                    break;
+                case "--lazy":
+                    MessageFeature.setLazyPayloadLoading(true);
+                    break;
+                case "--jfr":
+                    break; // Seen by main() before anything is loaded
+                case "--time":
+                    timed = true;
+                    break;
+                case "--help":
+                    out.print(USAGE_TEXT);
+                    return OK;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+            i++;
+        }
+        if (i == args.length) {
+            throw new IllegalArgumentException("No command given");
+        }
+        String command = args[i];
+        List<String> rest = new ArrayList<>(Arrays.asList(args).subList(i + 1, args.length));
+
+        MessageFeature.loadAllMessagesFromJsonFiles();
+        switch (command) {
+            case "send":
+                return send(rest, true);
+            case "store":
+                return send(rest, false);
+            case "search-id":
+                return searchById(single(rest, "a message ID"));
+            case "search-recipient":
+                return searchByRecipient(single(rest, "a recipient"));
+            case "delete":
+                return delete(single(rest, "a message hash"));
+            case "report":
+                return report(rest);
+            case "import":
+                return importMessages(rest);
+            default:
+                throw new IllegalArgumentException("Unknown command: " + command);
+        }
+    }
+
+    private int send(List<String> args, boolean send) throws IOException {
+        if (args.isEmpty() || args.size() > 2) {
+            throw new IllegalArgumentException("Expected a recipient and optionally a message");
+        }
+        String payload = args.size() == 1 || args.get(1).equals("-") ? readPayload() : args.get(1);
+        MessageFeature message = new MessageFeature(args.get(0), payload);
+
+        if (send) {
+            MessageOutcome sent = message.send();
+            if (!sent.isSuccess()) {
+                err.println(sent.describe());
+                return FAILED;
+            }
+            out.println(sent.describe());
+        } else {
+            // A draft is checked as the message screen checks it before offering to store it
+            MessageOutcome recipient = message.checkRecipientNumber(message.getMessageRecipient());
+            if (!recipient.isSuccess()) {
+                err.println(recipient.describe());
+                return FAILED;
+            }
+            if (!message.checkPayloadLength(payload).isSuccess()) {
+                err.println(message.validatePayloadLength(payload));
+                return FAILED;
+            }
+        }
+        MessageOutcome stored = message.store();
+        if (!stored.isSuccess()) {
+            err.println(stored.describe());
+            return FAILED;
+        }
+        if (!send) {
+            out.println(stored.describe());
+        }
+        out.println("Message ID: " + message.getMessageID());
+        out.println("Message Hash: " + message.getMessageHash());
+        return OK;
+    }
+
+    private int searchById(String id) {
+        boolean found = MessageFeature.hasMessageWithId(id);
+        (found ? out : err).println(MessageFeature.searchMessageByID(id));
+        return found ? OK : FAILED;
+    }
+
+    private int searchByRecipient(String recipient) {
+        boolean found = MessageFeature.hasMessagesFor(recipient);
+        String result = MessageFeature.searchMessagesByRecipient(recipient);
+        if (!found) {
+            err.println(result);
+            return FAILED;
+        }
+        out.print(result); // Already ends with a line break
+        return OK;
+    }
+
+    private int delete(String hash) {
+        MessageFeature deleted = MessageFeature.removeMessageByHash(hash);
+        if (deleted == null) {
+            err.println("Message with hash " + hash + " not found.");
+            return FAILED;
+        }
+        out.println("Message \"" + deleted.getMessagePayload() + "\" successfully deleted.");
+        return OK;
+    }
+
+    private int report(List<String> args) throws IOException {
+        ReportFormat format = parse(ReportFormat.class, format(args, ReportFormat.TEXT.name()));
+        if (!args.isEmpty()) {
+            throw new IllegalArgumentException("Unexpected argument: " + args.get(0));
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        MessageFeature.writeSentMessagesReport(writer, format);
+        writer.flush();
+        return OK;
+    }
+
+    private int importMessages(List<String> args) throws IOException {
+        String formatName = format(args, null);
+        String file = single(args, "a file, or - for standard input");
+        int lastIndex = MessageFeature.returnTotalMessages();
+
+        BulkImporter.Summary summary;
+        if (file.equals("-")) {
+            if (formatName == null) {
+                throw new IllegalArgumentException("Give the --format of standard input");
+            }
+            Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            summary = new BulkImporter().importFrom(reader, parse(BulkImporter.Format.class, formatName));
+        } else if (formatName == null) {
+            summary = new BulkImporter().importFile(Path.of(file));
+        } else {
+            try (Reader reader = Files.newBufferedReader(Path.of(file), StandardCharsets.UTF_8)) {
+                summary = new BulkImporter().importFrom(reader, parse(BulkImporter.Format.class, formatName));
+            }
+        }
+        // The importer only writes stored rows; sent rows are written too, so later runs load them
+        int storeFailures = summary.storeFailures();
+        for (MessageOutcome outcome : MessageFeature.storeAll(MessageFeature.sentMessagesAfter(lastIndex))) {
+            if (!outcome.isSuccess()) {
+                storeFailures++;
+            }
+        }
+
+        out.printf(Locale.ROOT, "Imported %d rows in %.1f s: %d sent, %d stored, %d disregarded, %d rejected%n",
+                summary.rows(), summary.elapsedNanos() / 1e9, summary.sent(), summary.stored(),
+                summary.disregarded(), summary.rejected());
+        for (BulkImporter.Rejection rejection : summary.firstRejections()) {
+            err.println("line " + rejection.line() + ": " + rejection.reason().describe());
+        }
+        if (storeFailures > 0) {
+            err.println(storeFailures + " messages could not be written to their files.");
+        }
+        return summary.rejected() == 0 && storeFailures == 0 ? OK : FAILED;
+    }
+
+    // Reads the whole of standard input as one payload, without its final line break
+    private String readPayload() throws IOException {
+        String payload = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        if (payload.endsWith("\n")) {
+            payload = payload.substring(0, payload.length() - (payload.endsWith("\r\n") ? 2 : 1));
+        }
+        return payload;
+    }
+
+    // Takes a --format option out of the arguments, upper-cased to match the enum constants
+    private static String format(List<String> args, String fallback) {
+        int at = args.indexOf("--format");
+        if (at < 0) {
+            return fallback;
+        }
+        String format = value(args.toArray(new String[0]), at, "--format").toUpperCase(Locale.ROOT);
+        args.remove(at + 1);
+        args.remove(at);
+        return format;
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String name) {
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown format: " + name.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static String value(String[] args, int option, String name) {
+        if (option + 1 >= args.length) {
+            throw new IllegalArgumentException(name + " needs a value");
+        }
+        return args[option + 1];
+    }
+
+    private static String single(List<String> args, String what) {
+        if (args.size() != 1) {
+            throw new IllegalArgumentException("Expected " + what);
+        }
+        return args.get(0);
+    }
+}
@@ -0,0 +1,291 @@
+package st10457602;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Call counts, failure counts and latency histograms for QuickChat's main operations, plus gauges
+ * for the message lists and the payload cache, exported over JMX through {@link QuickChatMetricsMXBean}.
+ *
+ * Instrumented code brackets an operation with {@link #start} and {@link #record}. Reading the
+ * clock costs more than the cheapest operations themselves, so those are timed for a random
+ * sample of calls only, e.g. one search by ID in 64; slow operations such as store and load are
+ * timed on every call. Threads are spread over 64 stripes of plain counters, and an unsampled
+ * call only counts down to the next sample on its stripe, with no ThreadLocal lookup, random
+ * number or atomic. Calls are still counted exactly, as the lengths of the countdowns that have
+ * run; failures are counted on the samples, each standing for the calls around it, so for
+ * sampled operations the failure count is an estimate. Recording never allocates, and while
+ * metrics are disabled it does nothing at all.
+ *
+ * @author Angela
+ */
+public final class QuickChatMetrics implements QuickChatMetricsMXBean {
+
+    /** The instrumented operations. */
+    public enum Operation {
+        /** MessageFeature.send(); fails if the message was rejected. */
+        SEND("send", 256),
+        /** MessageFeature.store(); fails if the file could not be written. */
+        STORE("store", 1),
+        /** MessageFeature.sendAll(); fails if any message in the batch was rejected. */
+        SEND_ALL("sendAll", 1),
+        /** MessageFeature.storeAll(); fails if any file in the batch could not be written. */
+        STORE_ALL("storeAll", 1),
+        /** Loading every message file; fails if any file could not be read. */
+        LOAD("load", 1),
+        /** A BulkImporter run; fails if any row was rejected or any file could not be written. */
+        IMPORT("import", 1),
+        /** Searching by message ID; fails if nothing was found. */
+        SEARCH_BY_ID("searchById", 64),
+        /** Searching by recipient; fails if nothing was found. */
+        SEARCH_BY_RECIPIENT("searchByRecipient", 16),
+        /** Finding the longest message; fails if there are no messages. */
+        FIND_LONGEST("findLongest", 1),
+        /** Deleting by hash; fails if no message has the hash. */
+        DELETE("delete", 64),
+        /** Logging in; fails if the credentials were wrong. */
+        LOGIN("login", 16);
+
+        private final String metricName;
+        private final int sampleMask;
+
+        Operation(String metricName, int sampleEvery) {
+            this.metricName = metricName;
+            this.sampleMask = sampleEvery - 1; // A power of two
+        }
+
+        /** @return The name this operation is reported under. */
+        public String metricName() {
+            return metricName;
+        }
+    }
+
+    /** The name the metrics are registered under with the platform MBean server. */
+    public static final String OBJECT_NAME = "st10457602:type=QuickChatMetrics";
+
+    private static final QuickChatMetrics INSTANCE = new QuickChatMetrics();
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final LatencyHistogram[] LATENCIES = new LatencyHistogram[OPERATIONS.length];
+
+    // start() results that are not clock readings
+    private static final long NOT_RECORDED = Long.MIN_VALUE;
+    private static final long NOT_TIMED = Long.MIN_VALUE + 1;
+
+    // Each thread counts in the stripe its ID picks, four slots per operation: the calls left until
+    // the next sample, the length of that countdown, the calls in countdowns already run, and the
+    // estimated failures. Threads sharing a stripe may race, which only rarely loses a count.
+    // Stripes are padded apart so that threads on different stripes never share a cache line
+    private static final int STRIPES = 64;
+    private static final int COUNTDOWN = 0;
+    private static final int INTERVAL = 1;
+    private static final int CALLS = 2;
+    private static final int FAILURES = 3;
+    private static final int STRIPE_LENGTH = 4 * OPERATIONS.length + 8;
+    private static final long[] COUNTS = new long[STRIPES * STRIPE_LENGTH + 8];
+    // What the call and failure counts were at the last reset
+    private static volatile long[] baseline = new long[OPERATIONS.length * 2];
+
+    private static volatile boolean enabled = !Boolean.getBoolean("quickchat.metrics.disabled");
+    private static volatile boolean timeEveryCall = Boolean.getBoolean("quickchat.metrics.timeEveryCall");
+
+    static {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            LATENCIES[i] = new LatencyHistogram();
+        }
+        // The command-line mode turns this off, as starting the MBean server takes longer than most commands
+        if (!"false".equals(System.getProperty("quickchat.metrics.jmx"))) {
+            register();
+        }
+    }
+
+    private static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException | SecurityException e) {
+            // Metrics are still recorded and readable through getInstance(), just not over JMX
+        }
+    }
+
+    private QuickChatMetrics() {
+    }
+
+    /**
+     * Returns the metrics, registering them with the platform MBean server on first use unless
+     * the quickchat.metrics.jmx system property is false.
+     * @return The metrics.
+     */
+    public static QuickChatMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts an operation, reading the clock if this call is one of the timed samples.
+     * @param operation The operation.
+     * @return The value to pass to record.
+     */
+    static long start(Operation operation) {
+        if (!enabled) {
+            return NOT_RECORDED;
+        }
+        int slot = slot(operation);
+        if (--COUNTS[slot + COUNTDOWN] > 0) {
+            return NOT_TIMED;
+        }
+        // The countdown has run out: bank it and start the next, which has a random length
+        // averaging one sample interval so that a workload that repeats is not sampled in step
+        long next = timeEveryCall || operation.sampleMask == 0
+                ? 1 : 1 + ThreadLocalRandom.current().nextInt(2 * operation.sampleMask + 1);
+        COUNTS[slot + CALLS] += COUNTS[slot + INTERVAL] - COUNTS[slot + COUNTDOWN];
+        COUNTS[slot + INTERVAL] = next;
+        COUNTS[slot + COUNTDOWN] = next;
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the latency of an operation start() timed, and counts it if it failed.
+     * @param operation The operation.
+     * @param start     The value start() returned.
+     * @param success   false if the operation failed or found nothing.
+     */
+    static void record(Operation operation, long start, boolean success) {
+        if (start == NOT_RECORDED || start == NOT_TIMED) {
+            return;
+        }
+        int i = operation.ordinal();
+        if (!success) {
+            // The sample stands for as many calls as a countdown averages
+            COUNTS[slot(operation) + FAILURES] += timeEveryCall ? 1 : operation.sampleMask + 1;
+        }
+        LATENCIES[i].record(System.nanoTime() - start);
+    }
+
+    private static int slot(Operation operation) {
+        int stripe = (int) Thread.currentThread().threadId() & (STRIPES - 1);
+        return 8 + stripe * STRIPE_LENGTH + 4 * operation.ordinal();
+    }
+
+    /**
+     * Times every call instead of a sample, e.g. to see single calls in a test.
+     * @param everyCall Whether to time every call.
+     */
+    static void setTimeEveryCall(boolean everyCall) {
+        timeEveryCall = everyCall;
+        // Ends every countdown, so the next call of each operation is timed and sees the change
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            for (int i = 0; i < OPERATIONS.length; i++) {
+                int slot = 8 + stripe * STRIPE_LENGTH + 4 * i;
+                COUNTS[slot + CALLS] += COUNTS[slot + INTERVAL] - COUNTS[slot + COUNTDOWN];
+                COUNTS[slot + INTERVAL] = 0;
+                COUNTS[slot + COUNTDOWN] = 0;
+            }
+        }
+    }
+
+    // The calls (failures false) or failures of an operation across every stripe since the last
+    // reset; reads may trail the counting threads' latest changes
+    private static long sum(int operation, boolean failures) {
+        return total(operation, failures) - baseline[2 * operation + (failures ? 1 : 0)];
+    }
+
+    private static long total(int operation, boolean failures) {
+        long total = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            int slot = 8 + stripe * STRIPE_LENGTH + 4 * operation;
+            total += failures ? COUNTS[slot + FAILURES]
+                    : COUNTS[slot + CALLS] + COUNTS[slot + INTERVAL] - COUNTS[slot + COUNTDOWN];
+        }
+        return total;
+    }
+
+    /**
+     * Returns a snapshot of one operation.
+     * @param operation The operation.
+     * @return Its count, failures and latency percentiles.
+     */
+    public LatencySnapshot getLatency(Operation operation) {
+        int i = operation.ordinal();
+        return LATENCIES[i].snapshot(sum(i, false), sum(i, true));
+    }
+
+    @Override
+    public Map<String, LatencySnapshot> getLatencies() {
+        Map<String, LatencySnapshot> latencies = new LinkedHashMap<>();
+        for (Operation operation : OPERATIONS) {
+            latencies.put(operation.metricName(), getLatency(operation));
+        }
+        return latencies;
+    }
+
+    @Override
+    public int getSentMessages() {
+        return MessageFeature.sentMessageCount();
+    }
+
+    @Override
+    public int getStoredMessages() {
+        return MessageFeature.storedMessageCount();
+    }
+
+    @Override
+    public int getDisregardedMessages() {
+        return MessageFeature.disregardedMessageCount();
+    }
+
+    @Override
+    public int getMessageDispatchCounter() {
+        return MessageFeature.returnTotalMessages();
+    }
+
+    @Override
+    public long getPayloadCacheHits() {
+        return LazyPayloads.cache().hitCount();
+    }
+
+    @Override
+    public long getPayloadCacheMisses() {
+        return LazyPayloads.cache().missCount();
+    }
+
+    @Override
+    public long getPayloadCacheEvictions() {
+        return LazyPayloads.cache().evictionCount();
+    }
+
+    @Override
+    public long getPayloadCacheBytes() {
+        return LazyPayloads.cache().weightedSize();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        QuickChatMetrics.enabled = enabled;
+    }
+
+    @Override
+    public void reset() {
+        long[] totals = new long[OPERATIONS.length * 2];
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            totals[2 * i] = total(i, false);
+            totals[2 * i + 1] = total(i, true);
+        }
+        baseline = totals;
+        for (LatencyHistogram histogram : LATENCIES) {
+            histogram.reset();
+        }
+        LazyPayloads.cache().resetCounts();
+    }
+}
@@ -0,0 +1,56 @@
+package st10457602;
+
+import java.util.Map;
+
+/**
+ * The management interface of QuickChatMetrics, registered with the platform MBean server as
+ * {@code st10457602:type=QuickChatMetrics} so that JConsole, VisualVM or any JMX client can read it.
+ *
+ * @author Angela
+ */
+public interface QuickChatMetricsMXBean {
+
+    /**
+     * Returns the count, failures and latency percentiles of each instrumented operation.
+     * @return Snapshots keyed by operation name, e.g. "send" or "searchById".
+     */
+    Map<String, LatencySnapshot> getLatencies();
+
+    /** @return The number of messages sent and not deleted. */
+    int getSentMessages();
+
+    /** @return The number of messages stored and not deleted, including sent messages that were stored. */
+    int getStoredMessages();
+
+    /** @return The number of disregarded messages. */
+    int getDisregardedMessages();
+
+    /** @return The highest message index handed out so far. */
+    int getMessageDispatchCounter();
+
+    /** @return The number of lazily loaded payloads found in the payload cache. */
+    long getPayloadCacheHits();
+
+    /** @return The number of lazily loaded payloads that had to be read from their files. */
+    long getPayloadCacheMisses();
+
+    /** @return The number of payloads dropped from, or not let into, the payload cache. */
+    long getPayloadCacheEvictions();
+
+    /** @return The bytes the payloads in the payload cache take. */
+    long getPayloadCacheBytes();
+
+    /** @return true if operations are being counted and timed. */
+    boolean isEnabled();
+
+    /**
+     * Turns the metrics on or off; while off, instrumented operations are neither counted nor timed.
+     * @param enabled Whether to record operations.
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Sets every count back to zero and clears every histogram.
+     */
+    void reset();
+}
@@ -0,0 +1,23 @@
+package st10457602;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates uniformly random 10-digit message IDs.
+ * Each thread draws from its own ThreadLocalRandom, so concurrent message construction
+ * never competes for a shared seed the way a single java.util.Random does.
+ *
+ * @author Angela
+ */
+final class RandomMessageIdGenerator implements MessageIdGenerator {
+
+    static final RandomMessageIdGenerator INSTANCE = new RandomMessageIdGenerator();
+
+    private RandomMessageIdGenerator() {
+    }
+
+    @Override
+    public long nextId() {
+        return ThreadLocalRandom.current().nextLong(MAX_ID + 1);
+    }
+}
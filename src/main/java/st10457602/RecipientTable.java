@@ -0,0 +1,51 @@
+package st10457602;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A flyweight table of recipient numbers. Most messages go to a few numbers, but each one
+ * arrives as a fresh string from the screen, a file or an import; every message to the same
+ * number shares one string through this table instead. Only valid numbers are shared: an invalid
+ * one is rejected before it can be sent, so keeping it here would only let typing mistakes and
+ * bad imports fill the table.
+ *
+ * The table only grows, so it stops taking new numbers once it holds
+ * {@code quickchat.recipients.max} of them (1,000,000 by default); later numbers are simply
+ * kept as they are.
+ *
+ * @author Angela
+ */
+final class RecipientTable {
+
+    private static final int MAX_RECIPIENTS = Integer.getInteger("quickchat.recipients.max", 1_000_000);
+    private static final ConcurrentHashMap<String, String> RECIPIENTS = new ConcurrentHashMap<>();
+
+    private RecipientTable() {
+    }
+
+    /**
+     * Returns the shared string for a recipient number.
+     * @param recipient The number; may be null.
+     * @return An equal string, shared with every other message to the same number if the number
+     *         is valid; otherwise the number itself.
+     */
+    static String canonical(String recipient) {
+        if (!ValidationEngine.isValidCellNumber(recipient)) {
+            return recipient;
+        }
+        String shared = RECIPIENTS.get(recipient);
+        if (shared != null) {
+            return shared;
+        }
+        if (RECIPIENTS.size() >= MAX_RECIPIENTS) {
+            return recipient;
+        }
+        shared = RECIPIENTS.putIfAbsent(recipient, recipient);
+        return shared != null ? shared : recipient;
+    }
+
+    /** @return The number of distinct recipients in the table. */
+    static int size() {
+        return RECIPIENTS.size();
+    }
+}
@@ -1,6 +1,6 @@
 package st10457602;
 
-import java.util.regex.Pattern;
+import java.io.IOException;
 
 /**
  *
@@ -15,6 +15,24 @@ public class RegistrationFeature
             firstName, 
             lastName;
 
+    // Every registered account; the fields above hold the most recent successful registration
+    private final UserDirectory userDirectory;
+
+    // Creates a registration feature backed by its own in-memory directory
+    public RegistrationFeature()
+    {
+        this(new UserDirectory());
+    }
+
+    // Creates a registration feature that registers users into a shared directory
+    public RegistrationFeature(UserDirectory userDirectory)
+    {
+        if (userDirectory == null) {
+            throw new IllegalArgumentException("User directory cannot be null");
+        }
+        this.userDirectory = userDirectory;
+    }
+
     // Super method to register a user
     public String registerUser(String username, String password, String cellphone, String firstName, String lastName) {
         String messages = ""; // Build our feedback here
@@ -60,9 +78,23 @@ public class RegistrationFeature
             qualityTest = false;
         }
 
+        // Usernames must be unique across the directory
+        if (qualityTest && userDirectory.contains(username)) {
+            messages += "Username is already taken, please choose a different username.\n";
+            qualityTest = false;
+        }
+
         // If all checks pass, save the details
         if (qualityTest) 
         {
+            try {
+                if (!userDirectory.add(UserAccount.create(username, password, cellphone, firstName, lastName))) {
+                    // Another registration claimed the username between the check and the add
+                    return messages + "Username is already taken, please choose a different username.\nPlease try again.";
+                }
+            } catch (IOException e) {
+                return messages + "Registration could not be saved, please try again.";
+            }
             this.username = username;
             this.password = password;
             this.cellphone = cellphone;
@@ -77,6 +109,12 @@ public class RegistrationFeature
         return messages;
     }
 
+    // The directory of all registered users, used by LoginFeature
+    public UserDirectory getUserDirectory()
+    {
+        return userDirectory;
+    }
+
     // Getters so LoginLogic can check stuff
     public String getUsername() 
     {
@@ -103,24 +141,22 @@ public class RegistrationFeature
         return lastName;
     }
 
-    // Validation helpers
+    // Validation helpers, all single-pass checks in ValidationEngine
     private boolean checkUserName(String username) {
-        return username != null && username.contains("_") && username.length() <= 5;
+        return ValidationEngine.isValidUsername(username);
     }
 
     private boolean checkPasswordComplexity(String password) {
-        if (password == null || password.length() < 8) return false;
-        return password.matches(".*[A-Z].*") && // Capital letter
-               password.matches(".*[0-9].*") && // Number
-               password.matches(".*[!@#$%^&*()].*"); // Special char
+        // Capital letter, number and special char
+        return ValidationEngine.isValidPassword(password);
     }
 
     private boolean checkCellPhoneNumber(String cellphone) {
-        return cellphone != null && Pattern.matches("^\\+27[0-9]{9}$", cellphone);
+        return ValidationEngine.isValidCellNumber(cellphone);
     }
 
     private boolean checkName(String name) {
-        return name != null && !name.trim().isEmpty() && name.matches("^[a-zA-Z]+$");
+        return ValidationEngine.isValidName(name);
     }
     
 }
@@ -0,0 +1,31 @@
+package st10457602;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for a report or export that took longer than its threshold to write.
+ *
+ * @author Angela
+ */
+@Name("st10457602.Report")
+@Label("Report")
+@Category({"QuickChat", "Reports"})
+@Description("A sent messages report, sender/recipient listing or full export")
+@Threshold("10 ms")
+final class ReportEvent extends Event {
+
+    @Label("Report")
+    @Description("sentMessages, sentMessagesInfo or export")
+    String report;
+
+    @Label("Format")
+    String format;
+
+    @Label("Messages")
+    long messages;
+}
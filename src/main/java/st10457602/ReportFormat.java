@@ -0,0 +1,15 @@
+package st10457602;
+
+/**
+ * The output formats ReportWriter can stream a report in.
+ *
+ * @author Angela
+ */
+public enum ReportFormat {
+    /** The human-readable layout shown in the message screen. */
+    TEXT,
+    /** Comma-separated values with a header row, quoted as in RFC 4180. */
+    CSV,
+    /** One JSON object per line. */
+    NDJSON
+}
@@ -0,0 +1,210 @@
+package st10457602;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * Streams message reports to an Appendable (a Writer, a StringBuilder, or a channel via
+ * {@link #toChannel}) one message at a time, so the memory a report needs does not grow
+ * with the number of messages in it.
+ *
+ * The TEXT format is exactly the text MessageFeature.generateSentMessagesReport() and
+ * displayAllSentMessagesInfo() have always returned; those methods are built on this class.
+ *
+ * @author Angela
+ */
+public final class ReportWriter {
+
+    private static final int CHANNEL_BUFFER_SIZE = 64 * 1024;
+
+    private final Appendable out;
+    private final ReportFormat format;
+
+    /**
+     * Creates a report writer.
+     * @param out    Where to write; a Writer should be buffered.
+     * @param format The output format.
+     */
+    public ReportWriter(Appendable out, ReportFormat format) {
+        if (out == null || format == null) {
+            throw new IllegalArgumentException("Output and format are required");
+        }
+        this.out = out;
+        this.format = format;
+    }
+
+    /**
+     * Creates a report writer that encodes UTF-8 into a byte channel through a fixed buffer.
+     * The channel is not closed by the writer.
+     * @param channel Where to write.
+     * @param format  The output format.
+     * @return The report writer.
+     */
+    public static ReportWriter toChannel(WritableByteChannel channel, ReportFormat format) {
+        Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), CHANNEL_BUFFER_SIZE);
+        return new ReportWriter(writer, format);
+    }
+
+    /**
+     * Writes the sent messages report: number, hash, recipient and message for each message.
+     * @param messages The sent messages, in report order.
+     * @return The number of messages written.
+     * @throws IOException If the output cannot be written.
+     */
+    public long writeSentMessagesReport(Iterator<MessageFeature> messages) throws IOException {
+        long count = 0;
+        if (format == ReportFormat.CSV) {
+            out.append("number,index,hash,recipient,message\n");
+        }
+        while (messages.hasNext()) {
+            MessageFeature msg = messages.next();
+            count++;
+            switch (format) {
+                case TEXT:
+                    if (count == 1) {
+                        out.append("--- QuickChat Sent Messages Report ---\n\n");
+                    }
+                    out.append("Message #").append(Long.toString(count)).append(":\n");
+                    out.append("  Hash: ").append(msg.getMessageHash()).append("\n");
+                    out.append("  Recipient: ").append(msg.getMessageRecipient()).append("\n");
+                    out.append("  Message: \"").append(msg.getMessagePayload()).append("\"\n\n");
+                    break;
+                case CSV:
+                    out.append(Long.toString(count)).append(',').append(Integer.toString(msg.getMessageIndex())).append(',');
+                    appendCsv(out, msg.getMessageHash());
+                    out.append(',');
+                    appendCsv(out, msg.getMessageRecipient());
+                    out.append(',');
+                    appendCsv(out, msg.getMessagePayload());
+                    out.append('\n');
+                    break;
+                default:
+                    out.append("{\"number\":").append(Long.toString(count))
+                       .append(",\"index\":").append(Integer.toString(msg.getMessageIndex()))
+                       .append(",\"hash\":");
+                    appendJson(out, msg.getMessageHash());
+                    out.append(",\"recipient\":");
+                    appendJson(out, msg.getMessageRecipient());
+                    out.append(",\"message\":");
+                    appendJson(out, msg.getMessagePayload());
+                    out.append("}\n");
+                    break;
+            }
+        }
+        if (count == 0 && format == ReportFormat.TEXT) {
+            out.append("No sent messages to report.");
+        }
+        flush();
+        return count;
+    }
+
+    /**
+     * Writes the sender and recipient of each sent message.
+     * @param messages The sent messages, in report order.
+     * @param sender   The sender shown for every message.
+     * @return The number of messages written.
+     * @throws IOException If the output cannot be written.
+     */
+    public long writeSentMessagesInfo(Iterator<MessageFeature> messages, String sender) throws IOException {
+        long count = 0;
+        if (format == ReportFormat.CSV) {
+            out.append("sender,recipient\n");
+        }
+        while (messages.hasNext()) {
+            MessageFeature msg = messages.next();
+            count++;
+            switch (format) {
+                case TEXT:
+                    if (count == 1) {
+                        out.append("--- All Sent Messages ---\n");
+                    }
+                    out.append("Sender: ").append(sender).append(", Recipient: ").append(msg.getMessageRecipient()).append("\n");
+                    break;
+                case CSV:
+                    appendCsv(out, sender);
+                    out.append(',');
+                    appendCsv(out, msg.getMessageRecipient());
+                    out.append('\n');
+                    break;
+                default:
+                    out.append("{\"sender\":");
+                    appendJson(out, sender);
+                    out.append(",\"recipient\":");
+                    appendJson(out, msg.getMessageRecipient());
+                    out.append("}\n");
+                    break;
+            }
+        }
+        if (count == 0 && format == ReportFormat.TEXT) {
+            out.append("No messages have been sent yet.");
+        }
+        flush();
+        return count;
+    }
+
+    private void flush() throws IOException {
+        if (out instanceof Flushable) {
+            ((Flushable) out).flush();
+        }
+    }
+
+    // Quotes a field only if it contains a comma, quote or line break
+    static void appendCsv(Appendable out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        int from = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '"') {
+                out.append(value, from, i + 1).append('"');
+                from = i + 1;
+            }
+        }
+        out.append(value, from, value.length()).append('"');
+    }
+
+    static void appendJson(Appendable out, String value) throws IOException {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        int from = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            out.append(value, from, i);
+            from = i + 1;
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                case '\b': out.append("\\b"); break;
+                case '\f': out.append("\\f"); break;
+                default:
+                    out.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+                    break;
+            }
+        }
+        out.append(value, from, value.length()).append('"');
+    }
+}
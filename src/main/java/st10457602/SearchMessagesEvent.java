@@ -0,0 +1,39 @@
+package st10457602;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for a search that took longer than its threshold.
+ *
+ * @author Angela
+ */
+@Name("st10457602.SearchMessages")
+@Label("Search Messages")
+@Category({"QuickChat", "Search"})
+@Description("A search by message ID or recipient, or for the longest message")
+@Threshold("1 ms")
+@StackTrace(false)
+final class SearchMessagesEvent extends Event {
+
+    // Values of the kind field
+    static final String BY_ID = "id";
+    static final String BY_RECIPIENT = "recipient";
+    static final String LONGEST = "longest";
+
+    @Label("Kind")
+    @Description("id, recipient or longest")
+    String kind;
+
+    @Label("Key")
+    @Description("The message ID or recipient searched for")
+    String key;
+
+    @Label("Hits")
+    int hits;
+}
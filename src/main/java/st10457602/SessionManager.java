@@ -0,0 +1,219 @@
+package st10457602;
+
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Issues and checks opaque session tokens for logged-in accounts, so that a caller only has to
+ * present its credentials once. A token is 128 random bits from SecureRandom, encoded as 22
+ * URL-safe Base64 characters, and says nothing about the account it belongs to.
+ *
+ * Live sessions are kept in a ConcurrentHashMap keyed by token, so validation is one hash
+ * lookup and one clock read, and allocates nothing. Each session lasts a fixed time from when
+ * it was issued. Expired sessions are never accepted, and are removed by a hashed timer wheel:
+ * each session is filed in the slot of the tick it expires in, and the wheel is advanced by
+ * whichever call first notices that a tick has passed, so only the slots that have come due
+ * are looked at. A session expiring more than one turn of the wheel ahead stays in its slot
+ * until the turn it is due.
+ *
+ * @author Angela
+ */
+public final class SessionManager {
+
+    /** The session lifetime the shared manager uses unless quickchat.session.ttl sets it, in seconds. */
+    public static final long DEFAULT_TTL_SECONDS = 30 * 60;
+
+    static final int TOKEN_LENGTH = 22;
+
+    private static final int WHEEL_SLOTS = 512;
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static volatile SessionManager shared;
+
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, Session> sessions;
+    private final SecureRandom random = new SecureRandom();
+    private final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+
+    // Each slot holds the sessions expiring in ticks congruent to it, and is locked on its own
+    private final ArrayDeque<Session>[] wheel;
+    private final AtomicBoolean advancing = new AtomicBoolean();
+    // The last tick whose slot has been swept; only ticks that have fully passed are swept
+    private volatile long sweptTick;
+
+    private static final class Session {
+        final String token;
+        final UserAccount account;
+        final long expiresAt;
+
+        Session(String token, UserAccount account, long expiresAt) {
+            this.token = token;
+            this.account = account;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Makes a session manager.
+     * @param ttl  How long each session lasts after it is issued.
+     * @param unit The unit of ttl.
+     */
+    public SessionManager(long ttl, TimeUnit unit) {
+        this(unit.toNanos(ttl), 1024, System::nanoTime);
+    }
+
+    /**
+     * Makes a session manager sized for a number of live sessions.
+     * @param ttl              How long each session lasts after it is issued.
+     * @param unit             The unit of ttl.
+     * @param expectedSessions About how many sessions will be live at once.
+     */
+    public SessionManager(long ttl, TimeUnit unit, int expectedSessions) {
+        this(unit.toNanos(ttl), expectedSessions, System::nanoTime);
+    }
+
+    @SuppressWarnings("unchecked")
+    SessionManager(long ttlNanos, int expectedSessions, LongSupplier clock) {
+        if (ttlNanos <= 0) {
+            throw new IllegalArgumentException("Session lifetime must be positive");
+        }
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+        this.sessions = new ConcurrentHashMap<>(Math.max(16, expectedSessions));
+        this.wheel = new ArrayDeque[WHEEL_SLOTS];
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        this.sweptTick = Math.floorDiv(clock.getAsLong(), TICK_NANOS) - 1;
+    }
+
+    /**
+     * Returns the manager LoginFeature uses unless it is given another, so that every login
+     * screen shares one set of sessions.
+     * @return The shared session manager.
+     */
+    public static SessionManager shared() {
+        SessionManager manager = shared;
+        if (manager == null) {
+            synchronized (SessionManager.class) {
+                manager = shared;
+                if (manager == null) {
+                    long ttl = Long.getLong("quickchat.session.ttl", DEFAULT_TTL_SECONDS);
+                    shared = manager = new SessionManager(ttl, TimeUnit.SECONDS);
+                }
+            }
+        }
+        return manager;
+    }
+
+    /**
+     * Starts a session for an account that has just logged in.
+     * @param account The authenticated account.
+     * @return The session's token.
+     */
+    public String issue(UserAccount account) {
+        if (account == null) {
+            throw new IllegalArgumentException("Account cannot be null");
+        }
+        byte[] bits = new byte[16];
+        random.nextBytes(bits);
+        String token = encoder.encodeToString(bits);
+        long now = clock.getAsLong();
+        Session session = new Session(token, account, now + ttlNanos);
+        sessions.put(token, session);
+
+        ArrayDeque<Session> slot = wheel[slotOf(Math.floorDiv(session.expiresAt, TICK_NANOS))];
+        synchronized (slot) {
+            slot.add(session);
+        }
+        advance(now);
+        return token;
+    }
+
+    /**
+     * Checks a token.
+     * @param token The token a caller presented; may be null or malformed.
+     * @return The account the session belongs to, or null if the token is unknown, revoked or expired.
+     */
+    public UserAccount validate(String token) {
+        if (token == null || token.length() != TOKEN_LENGTH) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        long now = clock.getAsLong();
+        advance(now);
+        return session != null && now - session.expiresAt < 0 ? session.account : null;
+    }
+
+    /**
+     * Ends a session before it expires.
+     * @param token The session's token.
+     * @return true if the session was live.
+     */
+    public boolean logout(String token) {
+        if (token == null) {
+            return false;
+        }
+        Session session = sessions.remove(token);
+        // Its slot in the wheel is left alone; the sweep skips sessions no longer in the map
+        return session != null && clock.getAsLong() - session.expiresAt < 0;
+    }
+
+    /** @return The number of sessions not yet removed, including expired ones the wheel has not reached. */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Removes the sessions that expired before the current one-second tick began. Issuing and
+     * validating tokens does this as they go; this is for a caller that wants the memory back
+     * while neither is happening.
+     */
+    public void expire() {
+        advance(clock.getAsLong());
+    }
+
+    // Sweeps the slots of every tick that has passed since the last sweep, unless another
+    // thread is already doing so. Every session filed under a past tick has expired, unless it
+    // is due on a later turn of the wheel
+    private void advance(long now) {
+        long tick = Math.floorDiv(now, TICK_NANOS) - 1;
+        if (tick <= sweptTick || !advancing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long from = sweptTick + 1;
+            // After a full turn every slot has come due at least once
+            long to = Math.min(tick, from + WHEEL_SLOTS - 1);
+            for (long t = from; t <= to; t++) {
+                sweep(wheel[slotOf(t)], now);
+            }
+            sweptTick = tick;
+        } finally {
+            advancing.set(false);
+        }
+    }
+
+    private void sweep(ArrayDeque<Session> slot, long now) {
+        synchronized (slot) {
+            for (int n = slot.size(); n > 0; n--) {
+                Session session = slot.poll();
+                if (now - session.expiresAt >= 0) {
+                    sessions.remove(session.token, session);
+                } else if (sessions.get(session.token) == session) {
+                    slot.add(session); // Due on a later turn of the wheel
+                }
+            }
+        }
+    }
+
+    private static int slotOf(long tick) {
+        return (int) (tick & (WHEEL_SLOTS - 1));
+    }
+}
@@ -0,0 +1,19 @@
+package st10457602;
+
+import java.io.IOException;
+
+/**
+ * The SMS provider that OutboundDispatcher hands sent messages to.
+ *
+ * @author Angela
+ */
+public interface SmsGateway {
+
+    /**
+     * Delivers one message to its recipient.
+     * @param recipient The recipient's cell number.
+     * @param payload   The message content.
+     * @throws IOException If the provider rejected or could not be reached.
+     */
+    void deliver(String recipient, String payload) throws IOException;
+}
@@ -0,0 +1,32 @@
+package st10457602;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for a storeMessage() call that took longer than its threshold.
+ *
+ * @author Angela
+ */
+@Name("st10457602.StoreMessage")
+@Label("Store Message")
+@Category({"QuickChat", "Persistence"})
+@Description("A message written to its JSON file")
+@Threshold("5 ms")
+final class StoreMessageEvent extends Event {
+
+    @Label("File")
+    String file;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Success")
+    boolean success;
+}
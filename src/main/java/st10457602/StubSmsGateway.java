@@ -0,0 +1,46 @@
+package st10457602;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A local stand-in for the real SMS provider. It accepts every message, optionally
+ * pausing for a fixed latency per delivery, and only counts what it was given.
+ *
+ * @author Angela
+ */
+public class StubSmsGateway implements SmsGateway {
+    private final long latencyNanos;
+    private final LongAdder delivered = new LongAdder();
+
+    /**
+     * Creates a stub that delivers instantly.
+     */
+    public StubSmsGateway() {
+        this(0);
+    }
+
+    /**
+     * Creates a stub that simulates provider latency.
+     * @param latencyMicros The time each delivery takes, in microseconds.
+     */
+    public StubSmsGateway(long latencyMicros) {
+        this.latencyNanos = latencyMicros * 1_000;
+    }
+
+    @Override
+    public void deliver(String recipient, String payload) {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        delivered.increment();
+    }
+
+    /**
+     * Returns how many messages this stub has accepted.
+     * @return The delivered count.
+     */
+    public long getDeliveredCount() {
+        return delivered.sum();
+    }
+}
@@ -0,0 +1,245 @@
+package st10457602;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Snowflake-style generator that packs a timestamp, a worker number and a sequence
+ * into the 10 digits of a message ID:
+ * <pre>
+ *   [ minutes since EPOCH | 4 bits worker | 7 bits sequence ]
+ * </pre>
+ * Ten digits leave room for {@link #MAX_TICK} + 1 minutes, which runs out in April 2034.
+ * The time field never wraps: once it would pass MAX_TICK, nextId throws an
+ * IllegalStateException rather than hand out IDs that were already used.
+ *
+ * Each thread leases a worker number the first time it generates an ID and then keeps
+ * its own clock and sequence, so generation needs no shared state after that point.
+ * Worker numbers are shared by every generator in the JVM, and the lease of a thread that
+ * has died is handed on, together with its clock and sequence, to the next thread that
+ * needs one. While every number is leased to a live thread, further threads share the last
+ * worker number under a lock instead of reusing a number that is still in use.
+ * When a worker uses up its sequence within one minute it borrows the next minute,
+ * which keeps the IDs from one worker strictly increasing. A worker may run at most
+ * {@link #MAX_AHEAD_TICKS} minutes ahead of the clock that way; beyond that it waits for the
+ * clock, so a sustained load gets 128 IDs a minute per worker number and a burst can use up
+ * at most an hour of the IDs' future.
+ *
+ * IDs observed from loaded messages (see {@link #observe}) move their worker's clock and
+ * sequence past them, so a restart after a burst that ran ahead of the clock does not hand
+ * the same IDs out again and overwrite the files saved under them.
+ *
+ * @author Angela
+ */
+final class TimeOrderedMessageIdGenerator implements MessageIdGenerator {
+
+    /** Custom epoch, 2025-01-01T00:00:00Z, in minutes. */
+    static final long EPOCH_MINUTES = 1_735_689_600L / 60;
+
+    static final int SEQUENCE_BITS = 7;
+    static final int WORKER_BITS = 4;
+
+    /** The last minute, counted from EPOCH_MINUTES, whose IDs still fit in 10 digits. */
+    static final long MAX_TICK = ((MessageIdGenerator.MAX_ID + 1) >> (WORKER_BITS + SEQUENCE_BITS)) - 1;
+
+    /** The most minutes a worker may borrow ahead of the clock before it waits. */
+    static final long MAX_AHEAD_TICKS = 60;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int WORKERS = 1 << WORKER_BITS;
+
+    // Every worker number but the last can be leased; the last is shared by the overflow
+    private static final WorkerState[] LEASABLE = new WorkerState[WORKERS - 1];
+    @SuppressWarnings("unchecked")
+    private static final WeakReference<Thread>[] OWNERS = new WeakReference[WORKERS - 1];
+    private static final WorkerState OVERFLOW = new WorkerState(WORKERS - 1, true);
+    private static final ThreadLocal<WorkerState> STATE = ThreadLocal.withInitial(TimeOrderedMessageIdGenerator::lease);
+    // Per worker number, the highest ID observed in use, without its worker bits; -1 if none
+    private static final AtomicLongArray OBSERVED = new AtomicLongArray(WORKERS);
+
+    /** The time source; replaced in tests to run through minutes without waiting for them. */
+    interface Clock {
+        /** @return The current time in milliseconds since 1970. */
+        long millis();
+
+        /**
+         * Waits for some time to pass.
+         * @param millis How long to wait.
+         * @throws InterruptedException If interrupted while waiting.
+         */
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    private static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long millis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void sleep(long millis) throws InterruptedException {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        }
+    };
+
+    private static volatile Clock clock = SYSTEM_CLOCK;
+
+    static {
+        for (int i = 0; i < LEASABLE.length; i++) {
+            LEASABLE[i] = new WorkerState(i, false);
+        }
+        for (int i = 0; i < WORKERS; i++) {
+            OBSERVED.set(i, -1);
+        }
+    }
+
+    /**
+     * Replaces the clock every time-ordered generator reads, or restores the system clock.
+     * @param replacement The clock, or null for the system clock.
+     */
+    static void setClock(Clock replacement) {
+        clock = replacement == null ? SYSTEM_CLOCK : replacement;
+    }
+
+    /**
+     * Forgets every worker's clock and sequence and every observed ID, so a test can start from
+     * a known clock. Only for use while no thread is generating IDs.
+     */
+    static synchronized void resetForTesting() {
+        for (WorkerState worker : LEASABLE) {
+            worker.reset();
+        }
+        synchronized (OVERFLOW) {
+            OVERFLOW.reset();
+        }
+        for (int i = 0; i < WORKERS; i++) {
+            OBSERVED.set(i, -1);
+        }
+    }
+
+    /**
+     * Records an ID already in use, so that its worker number carries on after it. IDs whose
+     * minute lies further ahead of the clock than a worker may run cannot have come from this
+     * generator, e.g. because they were drawn at random, and are ignored.
+     * @param id The ID value.
+     */
+    @Override
+    public void observe(long id) {
+        long tick = id >>> (WORKER_BITS + SEQUENCE_BITS);
+        if (id < 0 || tick > currentTick() + MAX_AHEAD_TICKS) {
+            return;
+        }
+        int workerId = (int) (id >>> SEQUENCE_BITS) & (WORKERS - 1);
+        OBSERVED.accumulateAndGet(workerId, tick << SEQUENCE_BITS | id & SEQUENCE_MASK, Math::max);
+    }
+
+    private static long currentTick() {
+        return clock.millis() / 60_000 - EPOCH_MINUTES;
+    }
+
+    @Override
+    public long nextId() {
+        WorkerState worker = STATE.get();
+        if (!worker.shared) {
+            return worker.next();
+        }
+        // A number may have come free since this thread joined the overflow
+        WorkerState leased = lease();
+        if (!leased.shared) {
+            STATE.set(leased);
+            return leased.next();
+        }
+        synchronized (OVERFLOW) {
+            return OVERFLOW.next();
+        }
+    }
+
+    // Leases the number of a thread that never had one or has died, or returns OVERFLOW
+    private static synchronized WorkerState lease() {
+        Thread current = Thread.currentThread();
+        for (int i = 0; i < OWNERS.length; i++) {
+            Thread owner = OWNERS[i] == null ? null : OWNERS[i].get();
+            // A dead owner's last writes to its state are visible once isAlive() returns false
+            if (owner == null || !owner.isAlive()) {
+                OWNERS[i] = new WeakReference<>(current);
+                return LEASABLE[i];
+            }
+        }
+        return OVERFLOW;
+    }
+
+    /**
+     * Packs a minute, worker number and sequence into an ID.
+     * @param tick     Minutes since EPOCH_MINUTES.
+     * @param workerId The worker number.
+     * @param sequence The sequence within the minute.
+     * @return The ID value.
+     * @throws IllegalStateException if the minute is before the epoch or after MAX_TICK.
+     */
+    static long compose(long tick, long workerId, long sequence) {
+        if (tick < 0 || tick > MAX_TICK) {
+            throw new IllegalStateException(tick < 0
+                    ? "The clock is before the time-ordered ID epoch of 2025-01-01"
+                    : "Time-ordered message IDs have run out; they only fit in 10 digits until minute " + MAX_TICK);
+        }
+        return (tick << (WORKER_BITS + SEQUENCE_BITS)) | (workerId << SEQUENCE_BITS) | sequence;
+    }
+
+    // Clock and sequence of one worker number; only touched by the thread leasing it, or under
+    // the OVERFLOW lock if shared
+    private static final class WorkerState {
+        private final long workerId;
+        private final boolean shared;
+        private long lastTick = Long.MIN_VALUE;
+        private long sequence;
+
+        private WorkerState(long workerId, boolean shared) {
+            this.workerId = workerId;
+            this.shared = shared;
+        }
+
+        void reset() {
+            lastTick = Long.MIN_VALUE;
+            sequence = 0;
+        }
+
+        long next() {
+            long observed = OBSERVED.get((int) workerId);
+            if (observed >= 0 && (lastTick == Long.MIN_VALUE || observed > (lastTick << SEQUENCE_BITS | sequence))) {
+                // Carry on after an ID that is already in use
+                lastTick = observed >>> SEQUENCE_BITS;
+                sequence = observed & SEQUENCE_MASK;
+            }
+            long now = currentTick();
+            if (now > lastTick) {
+                lastTick = now;
+                sequence = 0;
+            } else if (++sequence > SEQUENCE_MASK) {
+                // Sequence exhausted for this minute: borrow the next one, unless that would take
+                // this worker too far ahead of the clock
+                if (lastTick + 1 - now > MAX_AHEAD_TICKS) {
+                    now = awaitTick(lastTick + 1 - MAX_AHEAD_TICKS);
+                }
+                lastTick = Math.max(lastTick + 1, now);
+                sequence = 0;
+            }
+            return compose(lastTick, workerId, sequence);
+        }
+
+        // Waits until the clock reaches a minute and returns the minute it is then
+        private static long awaitTick(long tick) {
+            Clock source = clock;
+            long now;
+            while ((now = source.millis() / 60_000 - EPOCH_MINUTES) < tick) {
+                try {
+                    source.sleep((tick + EPOCH_MINUTES) * 60_000 - source.millis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for a time-ordered message ID", e);
+                }
+            }
+            return now;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package st10457602;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A token-bucket rate limiter. The bucket holds up to {@code capacity} tokens and refills
+ * continuously at {@code ratePerSecond}; each permitted operation takes one token.
+ *
+ * @author Angela
+ */
+final class TokenBucket {
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * Creates a full bucket.
+     * @param ratePerSecond The sustained number of operations per second.
+     * @param capacity      The largest burst allowed after an idle period.
+     */
+    TokenBucket(double ratePerSecond, double capacity) {
+        if (ratePerSecond <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("Rate must be positive and capacity at least 1");
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = ratePerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes a token if one is available.
+     * @return true if a token was taken, false if the caller is over the limit.
+     */
+    synchronized boolean tryAcquire() {
+        refill(System.nanoTime());
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gives back a token taken by tryAcquire for an operation that did not go ahead after all.
+     */
+    synchronized void release() {
+        refill(System.nanoTime());
+        tokens = Math.min(capacity, tokens + 1);
+    }
+
+    /**
+     * Takes a token, parking the calling thread until one is available.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    void acquire() throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                refill(System.nanoTime());
+                if (tokens >= 1) {
+                    tokens -= 1;
+                    return;
+                }
+                waitNanos = (long) Math.ceil((1 - tokens) / tokensPerNano);
+            }
+            LockSupport.parkNanos(this, waitNanos);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Returns true if the bucket has refilled completely, meaning it has been idle long enough
+     * that forgetting it would not let anyone exceed the limit.
+     * @return true if the bucket is full.
+     */
+    synchronized boolean isFull() {
+        refill(System.nanoTime());
+        return tokens >= capacity;
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+            lastRefillNanos = now;
+        }
+    }
+}
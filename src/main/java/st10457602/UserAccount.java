@@ -0,0 +1,125 @@
+package st10457602;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * An immutable registered account held by the UserDirectory.
+ * The password itself is never kept; only a PBKDF2-HMAC-SHA256 hash of it, together with its
+ * salt and the number of iterations it was hashed with, so that the count can be raised later
+ * without locking anyone out. New accounts use {@code quickchat.password.iterations} iterations
+ * (600,000 by default); UserDirectory rehashes an account with fewer the next time its user
+ * logs in.
+ *
+ * @author Angela
+ */
+public final class UserAccount {
+    private final String username;
+    private final byte[] passwordSalt;
+    private final int passwordIterations;
+    private final byte[] passwordDigest;
+    private final String cellphone;
+    private final String firstName;
+    private final String lastName;
+
+    private static final int SALT_LENGTH = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom SALTS = new SecureRandom();
+
+    // The iterations new and rehashed passwords get
+    private static volatile int iterations = Integer.getInteger("quickchat.password.iterations", 600_000);
+
+    UserAccount(String username, byte[] passwordSalt, int passwordIterations, byte[] passwordDigest,
+                String cellphone, String firstName, String lastName) {
+        this.username = username;
+        this.passwordSalt = passwordSalt;
+        this.passwordIterations = passwordIterations;
+        this.passwordDigest = passwordDigest;
+        this.cellphone = cellphone;
+        this.firstName = firstName;
+        this.lastName = lastName;
+    }
+
+    /**
+     * Creates an account for a new registration, salting and hashing the password.
+     *
+     * @param username  The validated username.
+     * @param password  The validated plain-text password.
+     * @param cellphone The validated cellphone number.
+     * @param firstName The validated first name.
+     * @param lastName  The validated last name.
+     * @return The new account.
+     */
+    static UserAccount create(String username, String password, String cellphone, String firstName, String lastName) {
+        byte[] salt = new byte[SALT_LENGTH];
+        SALTS.nextBytes(salt);
+        int count = iterations;
+        return new UserAccount(username, salt, count, hash(salt, count, password), cellphone, firstName, lastName);
+    }
+
+    /**
+     * Sets the PBKDF2 iterations for passwords hashed from now on, e.g. to keep a benchmark of
+     * something else from spending its time hashing. It defaults to the
+     * quickchat.password.iterations system property.
+     * @param count The number of iterations; at least 1.
+     */
+    static void setHashIterations(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("PBKDF2 needs at least one iteration");
+        }
+        iterations = count;
+    }
+
+    /** @return The PBKDF2 iterations passwords hashed from now on get. */
+    static int getHashIterations() {
+        return iterations;
+    }
+
+    /**
+     * Checks a plain-text password against the stored hash in constant time.
+     * @param password The password to check.
+     * @return true if the password matches, false otherwise.
+     */
+    public boolean passwordMatches(String password) {
+        return password != null && MessageDigest.isEqual(passwordDigest, hash(passwordSalt, passwordIterations, password));
+    }
+
+    /** @return true if the password was hashed with fewer iterations than new passwords get. */
+    boolean needsRehash() {
+        return passwordIterations < iterations;
+    }
+
+    /**
+     * Returns this account with its password hashed again under a new salt and the current
+     * iteration count.
+     * @param password The password, already checked with passwordMatches().
+     * @return The rehashed account.
+     */
+    UserAccount rehash(String password) {
+        return create(username, password, cellphone, firstName, lastName);
+    }
+
+    private static byte[] hash(byte[] salt, int count, String password) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, count, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2WithHmacSHA256 is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    // --- Getters ---
+    public String getUsername() { return username; }
+    public String getCellphone() { return cellphone; }
+    public String getFirstName() { return firstName; }
+    public String getLastName() { return lastName; }
+
+    byte[] getPasswordSalt() { return passwordSalt; }
+    int getPasswordIterations() { return passwordIterations; }
+    byte[] getPasswordDigest() { return passwordDigest; }
+}
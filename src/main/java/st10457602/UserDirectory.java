@@ -0,0 +1,268 @@
+package st10457602;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds every registered account, keyed by username, for RegistrationFeature and LoginFeature.
+ * Lookups are a single concurrent hash map probe, so login stays O(1) with millions of users.
+ *
+ * A directory is either purely in-memory or backed by an append-only file. In the
+ * file-backed case each successful registration is appended as one binary record and the
+ * whole file is read back sequentially on {@link #open(Path)}. A record carries the number of
+ * PBKDF2 iterations its password was hashed with. An account hashed with fewer iterations than
+ * new passwords get is rehashed and appended again the next time its user logs in, and the
+ * last record for a username is the one that counts.
+ *
+ * @author Angela
+ */
+public class UserDirectory implements Closeable {
+
+    // File header: "QCU1"
+    private static final int FILE_MAGIC = 0x51435531;
+
+    private final ConcurrentHashMap<String, UserAccount> accounts;
+    private final Path file;
+    private DataOutputStream out; // Guarded by this; null for in-memory directories
+
+    /**
+     * Creates an empty, in-memory directory.
+     */
+    public UserDirectory() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty, in-memory directory sized for an expected number of users.
+     * @param expectedUsers The number of users the directory should hold without resizing.
+     */
+    public UserDirectory(int expectedUsers) {
+        this.accounts = new ConcurrentHashMap<>(Math.max(16, expectedUsers));
+        this.file = null;
+    }
+
+    private UserDirectory(ConcurrentHashMap<String, UserAccount> accounts, Path file, DataOutputStream out) {
+        this.accounts = accounts;
+        this.file = file;
+        this.out = out;
+    }
+
+    /**
+     * Opens a file-backed directory, loading every account already in the file.
+     * The file is created if it does not exist. A partially written last record
+     * (for example after a crash) is ignored.
+     *
+     * @param file The directory file.
+     * @return The loaded directory.
+     * @throws IOException If the file cannot be read or is not a directory file.
+     */
+    public static UserDirectory open(Path file) throws IOException {
+        ConcurrentHashMap<String, UserAccount> accounts = new ConcurrentHashMap<>();
+        long validLength = 0;
+        if (Files.exists(file) && Files.size(file) > 0) {
+            // Size the map up front from the file length to avoid rehashing during the load
+            accounts = new ConcurrentHashMap<>((int) Math.min(Integer.MAX_VALUE, Files.size(file) / 64 + 16));
+            validLength = readAccounts(file, accounts);
+        }
+
+        DataOutputStream out;
+        if (validLength == 0) {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)));
+            out.writeInt(FILE_MAGIC);
+            out.flush();
+        } else {
+            // Drop any torn record at the tail before appending new ones
+            try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND)));
+        }
+        return new UserDirectory(accounts, file, out);
+    }
+
+    // Returns the length of the file up to the end of the last complete record
+    private static long readAccounts(Path file, ConcurrentHashMap<String, UserAccount> accounts) throws IOException {
+        try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+             DataInputStream in = new DataInputStream(counter)) {
+            if (in.readInt() != FILE_MAGIC) {
+                throw new IOException("Not a user directory file: " + file);
+            }
+            long validLength = counter.count;
+            while (true) {
+                try {
+                    UserAccount account = readAccount(in);
+                    accounts.put(account.getUsername(), account);
+                    validLength = counter.count;
+                } catch (EOFException e) {
+                    return validLength;
+                }
+            }
+        }
+    }
+
+    private static UserAccount readAccount(DataInputStream in) throws IOException {
+        String username = in.readUTF();
+        byte[] salt = new byte[in.readUnsignedByte()];
+        in.readFully(salt);
+        int iterations = in.readInt();
+        byte[] digest = new byte[in.readUnsignedByte()];
+        in.readFully(digest);
+        String cellphone = in.readUTF();
+        String firstName = in.readUTF();
+        String lastName = in.readUTF();
+        return new UserAccount(username, salt, iterations, digest, cellphone, firstName, lastName);
+    }
+
+    private static void writeAccount(DataOutputStream out, UserAccount account) throws IOException {
+        out.writeUTF(account.getUsername());
+        out.writeByte(account.getPasswordSalt().length);
+        out.write(account.getPasswordSalt());
+        out.writeInt(account.getPasswordIterations());
+        out.writeByte(account.getPasswordDigest().length);
+        out.write(account.getPasswordDigest());
+        out.writeUTF(account.getCellphone());
+        out.writeUTF(account.getFirstName());
+        out.writeUTF(account.getLastName());
+    }
+
+    /**
+     * Adds an account if its username is not already taken.
+     * For file-backed directories the account is appended to the file before this returns.
+     *
+     * @param account The account to add.
+     * @return true if the account was added, false if the username already exists.
+     * @throws IOException If the account could not be written to the directory file.
+     */
+    public boolean add(UserAccount account) throws IOException {
+        if (accounts.putIfAbsent(account.getUsername(), account) != null) {
+            return false;
+        }
+        try {
+            append(account);
+        } catch (IOException e) {
+            accounts.remove(account.getUsername(), account);
+            throw e;
+        }
+        return true;
+    }
+
+    // Writes an account to the end of the file, if there is one
+    private void append(UserAccount account) throws IOException {
+        if (file != null) {
+            synchronized (this) {
+                if (out == null) {
+                    throw new IOException("User directory is closed: " + file);
+                }
+                writeAccount(out, account);
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Looks up an account by username.
+     * @param username The username.
+     * @return The account, or null if no such user is registered.
+     */
+    public UserAccount find(String username) {
+        return username == null ? null : accounts.get(username);
+    }
+
+    /**
+     * Returns true if the username is already registered.
+     * @param username The username.
+     * @return true if taken, false otherwise.
+     */
+    public boolean contains(String username) {
+        return username != null && accounts.containsKey(username);
+    }
+
+    /**
+     * Checks a username and password pair. An account whose password was hashed with fewer
+     * iterations than new passwords get is rehashed now that the password is known.
+     * @param username The username.
+     * @param password The plain-text password.
+     * @return The matching account, or null if the credentials are wrong.
+     */
+    public UserAccount authenticate(String username, String password) {
+        UserAccount account = find(username);
+        if (account == null || !account.passwordMatches(password)) {
+            return null;
+        }
+        if (!account.needsRehash()) {
+            return account;
+        }
+        UserAccount rehashed = account.rehash(password);
+        if (!accounts.replace(username, account, rehashed)) {
+            return account; // Another login rehashed it first
+        }
+        try {
+            append(rehashed);
+        } catch (IOException e) {
+            // The file keeps the old hash, which still matches; the login itself has succeeded
+            accounts.replace(username, rehashed, account);
+            return account;
+        }
+        return rehashed;
+    }
+
+    /**
+     * Returns the number of registered users.
+     * @return The user count.
+     */
+    public int size() {
+        return accounts.size();
+    }
+
+    /**
+     * Flushes and closes the directory file. In-memory directories are unaffected.
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    // Tracks how many bytes have been consumed so a torn tail record can be cut off
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package st10457602;
+
+/**
+ * The validation rules for messages and registration, each checked in a single pass over
+ * the input's characters without regular expressions.
+ *
+ * Every rule gives exactly the same answer as the regular expression it replaces, including
+ * the corner cases: only ASCII digits and letters count, and because the old password patterns
+ * were of the form {@code .*[X].*}, a password containing a line terminator never matched.
+ * The rules are static so that bulk imports can use them without creating a MessageFeature
+ * or RegistrationFeature.
+ *
+ * @author Angela
+ */
+public final class ValidationEngine {
+
+    /** Length of a message ID. */
+    public static final int MESSAGE_ID_LENGTH = 10;
+    /** Length of a South African number in international format, e.g. +27718693002. */
+    public static final int CELL_NUMBER_LENGTH = 12;
+    /** Minimum password length. */
+    public static final int MIN_PASSWORD_LENGTH = 8;
+    /** Maximum username length. */
+    public static final int MAX_USERNAME_LENGTH = 5;
+    /** Maximum message payload length. */
+    public static final int MAX_PAYLOAD_LENGTH = 250;
+
+    private ValidationEngine() {
+    }
+
+    /**
+     * Checks a message ID: exactly ten ASCII digits (was {@code \d{10}}).
+     * @param id The message ID.
+     * @return true if valid.
+     */
+    public static boolean isValidMessageId(String id) {
+        if (id == null || id.length() != MESSAGE_ID_LENGTH) {
+            return false;
+        }
+        return allDigits(id, 0);
+    }
+
+    /**
+     * Checks a cell number: +27 followed by nine ASCII digits (was {@code ^\+27[0-9]{9}$}).
+     * Used for both message recipients and registration.
+     * @param number The cell number.
+     * @return true if valid.
+     */
+    public static boolean isValidCellNumber(String number) {
+        if (number == null || number.length() != CELL_NUMBER_LENGTH) {
+            return false;
+        }
+        return number.charAt(0) == '+' && number.charAt(1) == '2' && number.charAt(2) == '7'
+                && allDigits(number, 3);
+    }
+
+    /**
+     * Checks a username: contains an underscore and is at most five characters long.
+     * @param username The username.
+     * @return true if valid.
+     */
+    public static boolean isValidUsername(String username) {
+        return username != null && username.length() <= MAX_USERNAME_LENGTH && username.indexOf('_') >= 0;
+    }
+
+    /**
+     * Checks password complexity: at least eight characters with a capital letter, a digit
+     * and one of {@code !@#$%^&*()} (was three {@code .*[X].*} patterns).
+     * @param password The password.
+     * @return true if valid.
+     */
+    public static boolean isValidPassword(String password) {
+        if (password == null || password.length() < MIN_PASSWORD_LENGTH) {
+            return false;
+        }
+        boolean capital = false;
+        boolean digit = false;
+        boolean special = false;
+        for (int i = 0; i < password.length(); i++) {
+            char c = password.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                capital = true;
+            } else if (c >= '0' && c <= '9') {
+                digit = true;
+            } else if (isSpecial(c)) {
+                special = true;
+            } else if (isLineTerminator(c)) {
+                // '.' does not match line terminators, so the old patterns never matched
+                return false;
+            }
+        }
+        return capital && digit && special;
+    }
+
+    /**
+     * Checks a first or last name: one or more ASCII letters only (was {@code ^[a-zA-Z]+$}).
+     * @param name The name.
+     * @return true if valid.
+     */
+    public static boolean isValidName(String name) {
+        if (name == null || name.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean allDigits(String s, int from) {
+        for (int i = from; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSpecial(char c) {
+        switch (c) {
+            case '!': case '@': case '#': case '$': case '%':
+            case '^': case '&': case '*': case '(': case ')':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // The characters java.util.regex treats as line terminators when '.' is not in DOTALL mode
+    static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -0,0 +1,250 @@
+package st10457602;
+
+import org.json.simple.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Writes synthetic message histories in exactly the format storeMessage() produces, so that
+ * production-sized datasets can be loaded, searched and reported on locally.
+ *
+ * Each message is sent, stored as a draft or disregarded according to the configured mix.
+ * Sent messages get consecutive indexes and a message_INDEX.json file; drafts and disregarded
+ * messages get a message_draft_ID.json file with index 0, as storeMessage() would write them.
+ * Recipients follow a Zipf distribution, so a few recipients receive most of the messages, and
+ * payload lengths follow an exponential distribution capped at 250 characters. The same seed
+ * always produces the same dataset.
+ *
+ * Run from the command line with: {@code WorkloadGenerator <messages> [directory] [seed]}.
+ *
+ * @author Angela
+ */
+public class WorkloadGenerator {
+
+    /** The number of messages of each kind a generate call wrote. */
+    public record Summary(int sent, int stored, int disregarded) {
+        /** @return The total number of messages written. */
+        public int total() {
+            return sent + stored + disregarded;
+        }
+    }
+
+    private static final int BATCH_SIZE = 10_000;
+    private static final String[] WORDS = {
+        "hi", "hello", "are", "you", "coming", "tonight", "dinner", "is", "ready", "where", "late",
+        "the", "meeting", "moved", "to", "tomorrow", "please", "call", "me", "back", "thanks", "ok",
+        "see", "at", "gate", "payment", "received", "did", "get", "cake", "leaving", "without",
+        "on", "time", "happy", "birthday", "congratulations", "traffic", "is", "bad", "running"
+    };
+    private static final String[] PUNCTUATION = {"", "", "", ",", ".", "!", "?"};
+
+    private final long seed;
+    private int recipientCount = 1_000;
+    private double recipientSkew = 1.0;
+    private int meanPayloadLength = 60;
+    private int maxPayloadLength = ValidationEngine.MAX_PAYLOAD_LENGTH;
+    private double sentFraction = 0.7;
+    private double storedFraction = 0.2;
+
+    /**
+     * Creates a generator with the default shape: 1,000 recipients with Zipf skew 1.0,
+     * payloads averaging 60 characters, and 70% sent, 20% stored and 10% disregarded.
+     * @param seed The random seed; the same seed gives the same dataset.
+     */
+    public WorkloadGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets how many distinct recipients there are and how skewed their traffic is.
+     * @param count The number of recipients.
+     * @param skew  The Zipf exponent: 0 is uniform, 1 is typical, higher is more skewed.
+     * @return This generator.
+     */
+    public WorkloadGenerator recipients(int count, double skew) {
+        if (count < 1 || count > 1_000_000_000 || skew < 0) {
+            throw new IllegalArgumentException("Recipient count must be positive and skew non-negative");
+        }
+        this.recipientCount = count;
+        this.recipientSkew = skew;
+        return this;
+    }
+
+    /**
+     * Sets the payload length distribution.
+     * @param mean The mean payload length.
+     * @param max  The longest payload, at most 250 characters.
+     * @return This generator.
+     */
+    public WorkloadGenerator payloadLength(int mean, int max) {
+        if (mean < 1 || max < mean || max > ValidationEngine.MAX_PAYLOAD_LENGTH) {
+            throw new IllegalArgumentException("Payload lengths must satisfy 1 <= mean <= max <= " + ValidationEngine.MAX_PAYLOAD_LENGTH);
+        }
+        this.meanPayloadLength = mean;
+        this.maxPayloadLength = max;
+        return this;
+    }
+
+    /**
+     * Sets the share of sent and stored messages; the rest are disregarded.
+     * @param sent   The fraction of messages that are sent.
+     * @param stored The fraction of messages stored as drafts.
+     * @return This generator.
+     */
+    public WorkloadGenerator mix(double sent, double stored) {
+        if (sent < 0 || stored < 0 || sent + stored > 1) {
+            throw new IllegalArgumentException("Fractions must be non-negative and add up to at most 1");
+        }
+        this.sentFraction = sent;
+        this.storedFraction = stored;
+        return this;
+    }
+
+    /**
+     * Writes {@code messageCount} message files into a directory.
+     * @param messageCount The number of messages.
+     * @param directory    The directory to write to; it is created if needed.
+     * @return How many messages of each kind were written.
+     * @throws IOException If a file cannot be written.
+     */
+    public Summary generate(int messageCount, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] recipientCdf = zipfCdf(recipientCount, recipientSkew);
+        Set<Long> usedIds = new HashSet<>(messageCount * 2);
+        int sent = 0;
+        int stored = 0;
+        int disregarded = 0;
+
+        // Messages are drawn in order so the dataset depends only on the seed; files are written in parallel
+        String[] fileNames = new String[Math.min(messageCount, BATCH_SIZE)];
+        String[] contents = new String[fileNames.length];
+        for (int start = 0; start < messageCount; start += BATCH_SIZE) {
+            int batch = Math.min(BATCH_SIZE, messageCount - start);
+            for (int i = 0; i < batch; i++) {
+                long idValue;
+                do {
+                    idValue = random.nextLong(MessageIdGenerator.MAX_ID + 1);
+                } while (!usedIds.add(idValue)); // Draft files are named by ID, so IDs must be unique
+                String id = MessageIdGenerator.format(idValue);
+                String recipient = "+27" + (600_000_000 + sample(recipientCdf, random.nextDouble()));
+                String payload = payload(random);
+
+                double kind = random.nextDouble();
+                String status;
+                int index;
+                if (kind < sentFraction) {
+                    status = "Sent";
+                    index = ++sent;
+                } else if (kind < sentFraction + storedFraction) {
+                    status = "Stored";
+                    index = 0;
+                    stored++;
+                } else {
+                    status = "Disregarded";
+                    index = 0;
+                    disregarded++;
+                }
+                fileNames[i] = index == 0 ? "message_draft_" + id + ".json" : "message_" + index + ".json";
+                contents[i] = toJson(id, recipient, payload, index, status);
+            }
+            writeBatch(directory, fileNames, contents, batch);
+        }
+        return new Summary(sent, stored, disregarded);
+    }
+
+    // The same JSON object storeMessage() writes
+    @SuppressWarnings("unchecked")
+    private static String toJson(String id, String recipient, String payload, int index, String status) {
+        JSONObject msgJson = new JSONObject();
+        msgJson.put("MESSAGE_ID", id);
+        msgJson.put("MESSAGE_RECIPIENT", recipient);
+        msgJson.put("MESSAGE_PAYLOAD", payload);
+        msgJson.put("MESSAGE_INDEX", index);
+        msgJson.put("MESSAGE_HASH", MessageHashBuilder.build(id, index, payload));
+        msgJson.put("MESSAGE_STATUS", status);
+        return msgJson.toJSONString();
+    }
+
+    private static void writeBatch(Path directory, String[] fileNames, String[] contents, int count) throws IOException {
+        try {
+            IntStream.range(0, count).parallel().forEach(i -> {
+                try (Writer writer = Files.newBufferedWriter(directory.resolve(fileNames[i]), StandardCharsets.UTF_8)) {
+                    writer.write(contents[i]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Words and punctuation up to a length drawn from an exponential distribution
+    private String payload(SplittableRandom random) {
+        double exponential = -Math.log(1 - random.nextDouble()) * meanPayloadLength;
+        int length = (int) Math.max(1, Math.min(maxPayloadLength, Math.round(exponential)));
+        StringBuilder sb = new StringBuilder(length + 20);
+        while (sb.length() < length) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            String word = WORDS[random.nextInt(WORDS.length)];
+            sb.append(sb.length() == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+            sb.append(PUNCTUATION[random.nextInt(PUNCTUATION.length)]);
+        }
+        sb.setLength(length);
+        // Never end on a space, so the payload keeps its length and is never blank
+        if (sb.charAt(length - 1) == ' ') {
+            sb.setCharAt(length - 1, '.');
+        }
+        return sb.toString();
+    }
+
+    private static double[] zipfCdf(int n, double skew) {
+        double[] cdf = new double[n];
+        double total = 0;
+        for (int k = 0; k < n; k++) {
+            total += 1 / Math.pow(k + 1, skew);
+            cdf[k] = total;
+        }
+        for (int k = 0; k < n; k++) {
+            cdf[k] /= total;
+        }
+        return cdf;
+    }
+
+    private static int sample(double[] cdf, double u) {
+        int i = Arrays.binarySearch(cdf, u);
+        return Math.min(cdf.length - 1, i >= 0 ? i : -i - 1);
+    }
+
+    /**
+     * Generates a dataset from the command line.
+     * @param args The message count, then optionally the directory (default: the data directory) and seed.
+     * @throws IOException If a file cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: WorkloadGenerator <messages> [directory] [seed]");
+            System.exit(2);
+        }
+        int messages = Integer.parseInt(args[0]);
+        Path directory = args.length > 1 ? Paths.get(args[1]) : MessageFeature.getDataDirectory().toPath();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        Summary summary = new WorkloadGenerator(seed).generate(messages, directory);
+        System.out.println("Wrote " + summary.total() + " messages to " + directory + ": " + summary.sent() + " sent, "
+                + summary.stored() + " stored, " + summary.disregarded() + " disregarded");
+    }
+}
@@ -0,0 +1,132 @@
+package st10457602;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the CSV and NDJSON bulk importer.
+ *
+ * @author Angela
+ */
+public class BulkImporterTest {
+
+    private File previousDataDirectory;
+    private Path dataDirectory;
+
+    @BeforeEach
+    public void setUp(@TempDir Path tempDir) {
+        previousDataDirectory = MessageFeature.getDataDirectory();
+        dataDirectory = tempDir;
+        MessageFeature.setDataDirectory(tempDir.toFile());
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MessageFeature.resetMessageCounterForTesting();
+        MessageFeature.setDataDirectory(previousDataDirectory);
+    }
+
+    @Test
+    void testImportCsv_QuotedFieldsValidationAndFiles() throws IOException {
+        String csv = "recipient,payload,status\n"
+                + "+27834557896,Did you get the cake?,Sent\n"
+                + "+27838884567,\"Where are you, \"\"friend\"\"?\nYou are late!\",Stored\n"
+                + "08575975889,Wrong number,Sent\n"
+                + "+27834484567,Yohoooo I am at your gate.,Disregarded\n"
+                + "+27838884567,\"" + "A".repeat(251) + "\"\n"
+                + "\n"
+                + "+27838884567,Unknown status,Archived\n"
+                + "+27838884567,No status column\n";
+        Path file = dataDirectory.resolve("history.csv");
+        Files.writeString(file, csv);
+
+        BulkImporter.Summary summary = new BulkImporter().importFile(file);
+
+        assertEquals(7, summary.rows(), "The header and blank lines are not rows.");
+        assertEquals(2, summary.sent());
+        assertEquals(1, summary.stored());
+        assertEquals(1, summary.disregarded());
+        assertEquals(3, summary.rejected());
+        assertEquals(List.of(
+                new BulkImporter.Rejection(5, MessageOutcome.SEND_INVALID_RECIPIENT),
+                new BulkImporter.Rejection(7, MessageOutcome.SEND_PAYLOAD_TOO_LONG),
+                new BulkImporter.Rejection(9, MessageOutcome.IMPORT_MALFORMED)), summary.firstRejections());
+
+        List<MessageFeature> sent = MessageFeature.getSentMessagesForTesting();
+        assertEquals("Did you get the cake?", sent.get(0).getMessagePayload());
+        assertEquals(1, sent.get(0).getMessageIndex());
+        assertEquals("No status column", sent.get(1).getMessagePayload());
+        assertEquals(2, sent.get(1).getMessageIndex());
+        assertEquals(2, MessageFeature.returnTotalMessages());
+
+        MessageFeature draft = MessageFeature.getStoredMessagesForTesting().get(0);
+        assertEquals("Where are you, \"friend\"?\nYou are late!", draft.getMessagePayload());
+        assertEquals("Stored", draft.getMessageStatus());
+        assertFalse(draft.getMessageHash().isEmpty());
+        assertTrue(Files.exists(dataDirectory.resolve("message_draft_" + draft.getMessageID() + ".json")));
+    }
+
+    @Test
+    void testImportNdjson_KeepsIdsAndSkipsMalformedRows() throws IOException {
+        String ndjson = "{\"MESSAGE_ID\":\"0012345678\",\"MESSAGE_RECIPIENT\":\"+27834557896\",\"MESSAGE_PAYLOAD\":\"Did you get the cake?\",\"MESSAGE_STATUS\":\"Sent\"}\n"
+                + "not json\n"
+                + "{\"MESSAGE_RECIPIENT\":\"+27838884567\",\"MESSAGE_PAYLOAD\":\"Draft\",\"MESSAGE_STATUS\":\"Stored\"}\n"
+                + "{\"MESSAGE_RECIPIENT\":\"+27838884567\"}\n";
+
+        BulkImporter.Summary summary = new BulkImporter().writeFiles(false)
+                .importFrom(new StringReader(ndjson), BulkImporter.Format.NDJSON);
+
+        assertEquals(4, summary.rows());
+        assertEquals(1, summary.sent());
+        assertEquals(1, summary.stored());
+        assertEquals(2, summary.rejected());
+        assertEquals("0012345678", MessageFeature.getSentMessagesForTesting().get(0).getMessageID(), "A valid ID should be kept.");
+        assertEquals("Stored", MessageFeature.getStoredMessagesForTesting().get(0).getMessageStatus());
+        try (var files = Files.list(dataDirectory)) {
+            assertEquals(0, files.count(), "Without writeFiles nothing should be written.");
+        }
+    }
+
+    @Test
+    void testImportInSmallParallelChunks_KeepsFileOrder() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        int rows = 1_000;
+        for (int i = 0; i < rows; i++) {
+            csv.append(String.format("+27%09d", i % 37)).append(",Message number ").append(i)
+                    .append(i % 10 == 0 ? ",Disregarded" : ",Sent").append('\n');
+        }
+        MessageFeature.useStore(new MessageStore(8));
+        try {
+            BulkImporter.Summary summary = new BulkImporter().chunkSize(7).parallelism(4)
+                    .importFrom(new StringReader(csv.toString()), BulkImporter.Format.CSV);
+            assertEquals(900, summary.sent());
+            assertEquals(100, summary.disregarded());
+
+            List<MessageFeature> sent = MessageFeature.getSentMessagesForTesting();
+            int expected = 0;
+            for (int i = 0; i < sent.size(); i++) {
+                if (expected % 10 == 0) {
+                    expected++;
+                }
+                assertEquals(i + 1, sent.get(i).getMessageIndex());
+                assertEquals("Message number " + expected, sent.get(i).getMessagePayload(), "Indexes should follow row order.");
+                expected++;
+            }
+        } finally {
+            MessageFeature.useStore(new MessageStore(MessageStore.defaultShardCount()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> BulkImporter.Format.of(Path.of("history.txt")));
+    }
+}
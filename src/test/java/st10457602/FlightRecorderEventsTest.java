@@ -0,0 +1,179 @@
+package st10457602;
+
+import jdk.jfr.EventType;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Captures Flight Recorder recordings around QuickChat operations and checks the custom
+ * events are in them, and that the default thresholds keep fast operations out.
+ *
+ * @author Angela
+ */
+public class FlightRecorderEventsTest {
+
+    private static final List<Class<? extends jdk.jfr.Event>> EVENTS = List.of(StoreMessageEvent.class,
+            LoadMessageFileEvent.class, LoadMessagesEvent.class, SearchMessagesEvent.class,
+            DeleteMessageEvent.class, ReportEvent.class);
+
+    private File previousDataDirectory;
+
+    @BeforeEach
+    public void setUp(@TempDir Path tempDir) {
+        previousDataDirectory = MessageFeature.getDataDirectory();
+        MessageFeature.setDataDirectory(tempDir.toFile());
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MessageFeature.resetMessageCounterForTesting();
+        MessageFeature.setDataDirectory(previousDataDirectory);
+    }
+
+    @Test
+    void testEvents_AreRecordedWithTheirFields(@TempDir Path recordingDir) throws IOException {
+        List<RecordedEvent> events;
+        MessageFeature sent;
+        MessageFeature draft;
+        try (Recording recording = new Recording()) {
+            for (Class<? extends jdk.jfr.Event> event : EVENTS) {
+                recording.enable(event).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+
+            sent = new MessageFeature("+27834557896", "Did you get the cake?");
+            sent.sentMessage();
+            sent.storeMessage();
+            draft = new MessageFeature("+27838884567", "Where are you? You are late!");
+            draft.storeMessage();
+            MessageFeature.loadAllMessagesFromJsonFiles();
+            MessageFeature.searchMessageByID(sent.getMessageID());
+            MessageFeature.searchMessagesByRecipient("+27834557896");
+            MessageFeature.findLongestSentMessage();
+            MessageFeature.writeSentMessagesReport(new StringWriter(), ReportFormat.CSV);
+            MessageFeature.deleteMessageByHash(draft.getMessageHash());
+
+            recording.stop();
+            Path file = recordingDir.resolve("quickchat.jfr");
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        }
+
+        RecordedEvent store = only(events, "st10457602.StoreMessage", 2).get(0);
+        assertTrue(store.getString("file").endsWith(".json"));
+        assertTrue(store.getLong("bytes") > 0);
+        assertTrue(store.getBoolean("success"));
+
+        List<RecordedEvent> files = only(events, "st10457602.LoadMessageFile", 2);
+        assertTrue(files.stream().anyMatch(e -> "Stored".equals(e.getString("status"))));
+        RecordedEvent load = only(events, "st10457602.LoadMessages", 1).get(0);
+        assertEquals(2, load.getInt("files"));
+        assertEquals(2, load.getInt("loaded"));
+        assertEquals(0, load.getInt("failed"));
+
+        List<RecordedEvent> searches = only(events, "st10457602.SearchMessages", 3);
+        RecordedEvent byId = searches.stream().filter(e -> "id".equals(e.getString("kind"))).findFirst().orElseThrow();
+        assertEquals(sent.getMessageID(), byId.getString("key"));
+        assertEquals(1, byId.getInt("hits"));
+        assertTrue(searches.stream().anyMatch(e -> "recipient".equals(e.getString("kind")) && e.getInt("hits") == 1));
+        assertTrue(searches.stream().anyMatch(e -> "longest".equals(e.getString("kind"))));
+
+        RecordedEvent report = only(events, "st10457602.Report", 1).get(0);
+        assertEquals("sentMessages", report.getString("report"));
+        assertEquals("CSV", report.getString("format"));
+        assertEquals(1, report.getLong("messages"));
+
+        RecordedEvent delete = only(events, "st10457602.DeleteMessage", 1).get(0);
+        assertTrue(delete.getBoolean("found"));
+        assertTrue(delete.getString("file").endsWith("message_draft_" + draft.getMessageID() + ".json"));
+        assertFalse(delete.getDuration().isNegative());
+    }
+
+    @Test
+    void testDefaultThresholds_KeepFastOperationsOut(@TempDir Path recordingDir) throws IOException {
+        Map<String, Duration> thresholds = new HashMap<>();
+        for (Class<? extends jdk.jfr.Event> event : EVENTS) {
+            EventType type = EventType.getEventType(event);
+            assertEquals("true", defaultSetting(type, "enabled"), type.getName() + " should be on by default");
+            assertNotEquals("0 ns", defaultSetting(type, "threshold"), type.getName() + " should have a threshold");
+            thresholds.put(type.getName(), duration(defaultSetting(type, "threshold")));
+        }
+
+        // Warm the search path up first so a cold first call cannot cross the threshold
+        MessageFeature msg = new MessageFeature("+27834557896", "Did you get the cake?");
+        msg.sentMessage();
+        for (int i = 0; i < 1000; i++) {
+            MessageFeature.searchMessageByID(msg.getMessageID());
+        }
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            for (Class<? extends jdk.jfr.Event> event : EVENTS) {
+                recording.enable(event); // Keeps the event's own threshold
+            }
+            recording.start();
+            for (int i = 0; i < 1000; i++) {
+                MessageFeature.searchMessageByID(msg.getMessageID());
+            }
+            recording.stop();
+            Path file = recordingDir.resolve("quiet.jfr");
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        }
+        // A pause in the JVM or the scheduler can still push the odd search over the threshold, but
+        // nothing faster than its event's threshold may be recorded
+        for (RecordedEvent event : events) {
+            String name = event.getEventType().getName();
+            if (name.startsWith("st10457602.")) {
+                Duration threshold = thresholds.get(name);
+                assertTrue(event.getDuration().compareTo(threshold) >= 0, name + " took " + event.getDuration()
+                        + ", under its threshold of " + threshold + ", so it should not have been recorded.");
+            }
+        }
+    }
+
+    private static String defaultSetting(EventType type, String name) {
+        return type.getSettingDescriptors().stream()
+                .filter(s -> s.getName().equals(name))
+                .findFirst().orElseThrow().getDefaultValue();
+    }
+
+    // Reads a threshold setting such as "1 ms"
+    private static Duration duration(String setting) {
+        String[] parts = setting.trim().split("\\s+");
+        long amount = Long.parseLong(parts[0]);
+        switch (parts[1]) {
+            case "ns": return Duration.ofNanos(amount);
+            case "us": return Duration.ofNanos(amount * 1_000);
+            case "ms": return Duration.ofMillis(amount);
+            case "s": return Duration.ofSeconds(amount);
+            default: throw new IllegalArgumentException("Unexpected threshold " + setting);
+        }
+    }
+
+    private static List<RecordedEvent> only(List<RecordedEvent> events, String name, int expected) {
+        List<RecordedEvent> matching = events.stream()
+                .filter(e -> e.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+        assertEquals(expected, matching.size(), "Number of " + name + " events");
+        return matching;
+    }
+}
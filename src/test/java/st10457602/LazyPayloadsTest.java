@@ -0,0 +1,136 @@
+package st10457602;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests loading messages with their payloads left in their files.
+ *
+ * @author Angela
+ */
+public class LazyPayloadsTest {
+
+    private File previousDataDirectory;
+    private Path dataDirectory;
+
+    @BeforeEach
+    public void setUp(@TempDir Path tempDir) {
+        previousDataDirectory = MessageFeature.getDataDirectory();
+        dataDirectory = tempDir;
+        MessageFeature.setDataDirectory(tempDir.toFile());
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MessageFeature.setLazyPayloadLoading(false);
+        MessageFeature.resetMessageCounterForTesting();
+        MessageFeature.setDataDirectory(previousDataDirectory);
+    }
+
+    @Test
+    void testLazyLoad_ReadsPayloadsOnlyWhenAsked() {
+        MessageFeature draft = new MessageFeature("+27838884567", "Where are you? You are late! I have asked you to be on time.");
+        draft.storeMessage();
+        MessageFeature sent = new MessageFeature("+27834557896", "Did you get the cake?");
+        sent.sentMessage();
+        sent.storeMessage();
+
+        MessageFeature.setLazyPayloadLoading(true);
+        MessageFeature.loadAllMessagesFromJsonFiles();
+        assertEquals(0, LazyPayloads.cachedCount());
+        MessageFeature loadedSent = MessageFeature.getSentMessagesForTesting().get(0);
+        assertEquals(sent.getMessageHash(), loadedSent.getMessageHash());
+        assertEquals(sent.getMessageIndex(), loadedSent.getMessageIndex());
+        assertEquals(MessageStatus.SENT, loadedSent.getStatus());
+        assertEquals(draft.getMessagePayload(), MessageFeature.findLongestSentMessage());
+        assertEquals(1, LazyPayloads.cachedCount(), "Only the longest payload should have been read.");
+
+        assertEquals("Did you get the cake?", loadedSent.getMessagePayload());
+        assertEquals(2, LazyPayloads.cachedCount());
+        assertTrue(MessageFeature.searchMessageByID(sent.getMessageID()).contains("Did you get the cake?"));
+    }
+
+    @Test
+    void testLazyLoad_DraftsCanBeSentAndDeleted() {
+        MessageFeature draft = new MessageFeature("+27838884567", "Yohoooo, I am at your gate.");
+        draft.storeMessage();
+        MessageFeature other = new MessageFeature("+27838884567", "It is dinner time !");
+        other.storeMessage();
+        File otherFile = dataDirectory.resolve(LazyPayloads.fileName(other.getMessageID(), 0)).toFile();
+
+        MessageFeature.setLazyPayloadLoading(true);
+        MessageFeature.loadAllMessagesFromJsonFiles();
+        List<MessageFeature> loaded = MessageFeature.getStoredMessagesForTesting();
+        MessageFeature loadedDraft = loaded.get(0).getMessageID().equals(draft.getMessageID()) ? loaded.get(0) : loaded.get(1);
+        MessageFeature loadedOther = loadedDraft == loaded.get(0) ? loaded.get(1) : loaded.get(0);
+
+        // Sending gives the draft a new index, yet its payload is still read from the draft file
+        assertEquals(MessageOutcome.SENT, loadedDraft.send());
+        assertEquals(loadedDraft.createMessageHash(loadedDraft.getMessageID(), 1, "Yohoooo, I am at your gate."),
+                loadedDraft.getMessageHash());
+
+        // A deleted message keeps its payload once its file is gone
+        assertEquals("Message \"It is dinner time !\" successfully deleted.",
+                MessageFeature.deleteMessageByHash(loadedOther.getMessageHash()));
+        assertFalse(otherFile.exists());
+        assertEquals("It is dinner time !", loadedOther.getMessagePayload());
+    }
+
+    @Test
+    void testLazyLoad_KeepsPayloadsOfFilesWithOtherNames() {
+        MessageFeature draft = new MessageFeature("+27838884567", "Hi Mike, can you join us for dinner tonight");
+        draft.storeMessage();
+        File draftFile = dataDirectory.resolve(LazyPayloads.fileName(draft.getMessageID(), 0)).toFile();
+        File renamed = dataDirectory.resolve("message_backup.json").toFile();
+        assertTrue(draftFile.renameTo(renamed));
+
+        MessageFeature.setLazyPayloadLoading(true);
+        MessageFeature.loadAllMessagesFromJsonFiles();
+        assertTrue(renamed.delete());
+        assertEquals("Hi Mike, can you join us for dinner tonight", MessageFeature.getStoredMessagesForTesting().get(0).getMessagePayload(),
+                "A file that cannot be found again by its name should be loaded in full.");
+    }
+
+    @Test
+    void testLazyLoad_ScansTheMetadataOfFilesWrittenByHand() throws IOException {
+        // As JSON writes it, with escapes
+        String payload = "Tab\\there, \\\"quoted\\\", caf\\u00e9 \\/ Yoh\\u00f4";
+        Files.writeString(dataDirectory.resolve("message_7.json"), "{\n  \"MESSAGE_PAYLOAD\" : \"" + payload + "\",\n"
+                + "  \"MESSAGE_ID\": \"0123456789\", \"MESSAGE_INDEX\": 7, \"MESSAGE_RECIPIENT\": \"+27718693002\",\n"
+                + "  \"EXTRA\": [1, 2], \"MESSAGE_HASH\": \"01:7:TABYOH\", \"MESSAGE_STATUS\": \"Sent\"\n}\n");
+        MessageMetadata metadata = MessageMetadata.read(dataDirectory.resolve("message_7.json").toFile());
+        assertNull(metadata, "A file with values other than strings, integers and literals is left to the full parser.");
+
+        Files.writeString(dataDirectory.resolve("message_7.json"), "{\n  \"MESSAGE_PAYLOAD\" : \"" + payload + "\",\n"
+                + "  \"MESSAGE_ID\": \"0123456789\", \"MESSAGE_INDEX\": 7, \"MESSAGE_RECIPIENT\": \"+27718693002\",\n"
+                + "  \"EXTRA\": true, \"MESSAGE_HASH\": \"01:7:TABYOH\", \"MESSAGE_STATUS\": \"Sent\"\n}\n");
+        String decoded = "Tab\there, \"quoted\", caf\u00e9 / Yoh\u00f4";
+        metadata = MessageMetadata.read(dataDirectory.resolve("message_7.json").toFile());
+        assertNotNull(metadata);
+        assertEquals("0123456789", metadata.id);
+        assertEquals("+27718693002", metadata.recipient);
+        assertEquals(7, metadata.index);
+        assertEquals("01:7:TABYOH", metadata.hash);
+        assertEquals("Sent", metadata.status);
+        assertEquals(decoded.length(), metadata.payloadLength);
+
+        MessageFeature.setLazyPayloadLoading(true);
+        MessageFeature.loadAllMessagesFromJsonFiles();
+        MessageFeature loaded = MessageFeature.getSentMessagesForTesting().get(0);
+        assertEquals(decoded.length(), loaded.payloadLength(), "The length should be known before the payload is read.");
+        assertEquals(0, LazyPayloads.cachedCount());
+        assertEquals(decoded, loaded.getMessagePayload());
+        assertEquals("01:7:TABYOH", loaded.getMessageHash());
+    }
+}
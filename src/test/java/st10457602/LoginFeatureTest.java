@@ -108,4 +108,54 @@ public class LoginFeatureTest {
         assertTrue(result2, "Login should succeed with valid credentials");
         assertEquals(SUCCESS_LOGIN_MESSAGE, loginQATest.returnLoginStatus(), "Success message should match");
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that any user in the shared directory can log in, not just the last one registered.
+     */
+    @Test
+    void testLoginWithEarlierRegisteredUser() {
+        RegistrationFeature second = new RegistrationFeature(registrationQATest.getUserDirectory());
+        second.registerUser("amy_2", "P@ssword12", VALID_CELL_PHONE_NUMBER, "Amy", "Jones");
+        LoginFeature login = new LoginFeature(second);
+
+        assertTrue(login.loginUser(VALID_USERNAME, VALID_PASSWORD), "Earlier user should still be able to log in");
+        assertEquals(SUCCESS_LOGIN_MESSAGE, login.returnLoginStatus(), "Success message should name the user who logged in");
+        assertTrue(login.loginUser("amy_2", "P@ssword12"), "Newer user should be able to log in");
+        assertEquals("Amy", login.getLoggedInAccount().getFirstName());
+    }
+
+    /**
+     * Tests that a successful login issues a session token that identifies the user until logout.
+     */
+    @Test
+    void testLoginIssuesSessionToken() {
+        assertNull(loginQATest.getSessionToken(), "No token before logging in");
+        assertTrue(loginQATest.loginUser(VALID_USERNAME, VALID_PASSWORD));
+        String token = loginQATest.getSessionToken();
+        assertNotNull(token, "A successful login should issue a token");
+        assertEquals(VALID_USERNAME, loginQATest.validateSession(token).getUsername());
+
+        // Logging in again replaces the earlier session
+        assertTrue(loginQATest.loginUser(VALID_USERNAME, VALID_PASSWORD));
+        assertNull(loginQATest.validateSession(token), "The earlier token should no longer work");
+        token = loginQATest.getSessionToken();
+
+        loginQATest.logout();
+        assertNull(loginQATest.validateSession(token), "A logged-out token should not work");
+        assertNull(loginQATest.getSessionToken());
+        assertNull(loginQATest.getLoggedInAccount());
+    }
+
+    /**
+     * Tests that a failed login issues no token and ends the previous session.
+     */
+    @Test
+    void testFailedLoginIssuesNoToken() {
+        assertTrue(loginQATest.loginUser(VALID_USERNAME, VALID_PASSWORD));
+        String token = loginQATest.getSessionToken();
+        assertFalse(loginQATest.loginUser(VALID_USERNAME, INVALID_PASSWORD));
+        assertNull(loginQATest.getSessionToken(), "A failed login should not leave a token");
+        assertNull(loginQATest.validateSession(token), "A failed login should end the previous session");
+        assertNull(loginQATest.validateSession("not a token"));
+    }
+}
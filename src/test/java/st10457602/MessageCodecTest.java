@@ -0,0 +1,207 @@
+package st10457602;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.management.ThreadMXBean;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Tests the binary message codec against the JSON that storeMessage() writes.
+ *
+ * @author Angela
+ */
+public class MessageCodecTest {
+
+    private static final String[] PIECES = {"a", "Z", "7", " ", "  ", "?", "!", ",", "\"", "\\", "\n", "\t", "/",
+            "\u00e9", "\u20ac", "\u4f60\u597d", "\uD83C\uDF89", "\uD83C", "\uDF89", "\u0000", "\u007f", "\u2028"};
+
+    private File previousDataDirectory;
+    private Path dataDirectory;
+    private final MessageCodec codec = new MessageCodec();
+
+    @BeforeEach
+    public void setUp(@TempDir Path tempDir) {
+        previousDataDirectory = MessageFeature.getDataDirectory();
+        dataDirectory = tempDir;
+        MessageFeature.setDataDirectory(tempDir.toFile());
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MessageFeature.resetMessageCounterForTesting();
+        MessageFeature.setDataDirectory(previousDataDirectory);
+    }
+
+    @Test
+    void testRoundTrip_MatchesStoredJsonForRandomMessages() throws IOException, ParseException {
+        SplittableRandom random = new SplittableRandom(20_241_019);
+        ByteBuffer heap = ByteBuffer.allocate(4096);
+        ByteBuffer direct = ByteBuffer.allocateDirect(4096);
+        long codecBytes = 0;
+        long jsonBytes = 0;
+        for (int i = 0; i < 2_000; i++) {
+            MessageFeature msg = new MessageFeature(randomRecipient(random), randomText(random, 1 + random.nextInt(250)));
+            int action = random.nextInt(3);
+            if (action == 0) {
+                msg.sentMessage();
+            } else if (action == 1) {
+                msg.disregardMessage();
+            }
+            msg.storeMessage();
+            Path file = dataDirectory.resolve(msg.getMessageIndex() == 0
+                    ? "message_draft_" + msg.getMessageID() + ".json" : "message_" + msg.getMessageIndex() + ".json");
+            JSONObject json;
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                json = (JSONObject) new JSONParser().parse(reader);
+            }
+            jsonBytes += Files.size(file);
+            Files.delete(file);
+
+            for (ByteBuffer buffer : new ByteBuffer[] {heap, direct}) {
+                buffer.clear();
+                int written = codec.encode(msg, buffer);
+                assertEquals(buffer.position(), written);
+                assertTrue(written <= MessageCodec.maxEncodedLength(msg));
+                buffer.flip();
+                MessageFeature decoded = codec.decode(buffer);
+                assertFalse(buffer.hasRemaining(), "decode() should read the whole record.");
+
+                String context = "Message " + i + " in a " + (buffer.isDirect() ? "direct" : "heap") + " buffer";
+                assertEquals(json.get("MESSAGE_ID"), decoded.getMessageID(), context);
+                assertEquals(json.get("MESSAGE_RECIPIENT"), decoded.getMessageRecipient(), context);
+                assertEquals(json.get("MESSAGE_PAYLOAD"), decoded.getMessagePayload(), context);
+                assertEquals(((Long) json.get("MESSAGE_INDEX")).intValue(), decoded.getMessageIndex(), context);
+                assertEquals(json.get("MESSAGE_HASH"), decoded.getMessageHash(), context);
+                assertEquals(json.get("MESSAGE_STATUS"), decoded.getMessageStatus(), context);
+            }
+            codecBytes += heap.limit();
+        }
+        assertTrue(codecBytes * 2 < jsonBytes, "Records took " + codecBytes + " bytes against " + jsonBytes + " of JSON.");
+    }
+
+    @Test
+    void testRoundTrip_KeepsUnusualIdsRecipientsAndNulls() {
+        String[][] cases = {
+                {"0000000000", "+27000000000"},
+                {"9999999999", "+27999999999"},
+                {"0012345678", "0834557896"},
+                {"12345", "+27834557896"},
+                {"", null},
+        };
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        for (String[] values : cases) {
+            MessageFeature msg = MessageFeature.restore(values[0], values[1], null, Integer.MAX_VALUE, "", MessageStatus.NEW);
+            buffer.clear();
+            codec.encode(msg, buffer);
+            buffer.flip();
+            MessageFeature decoded = codec.decode(buffer);
+            assertEquals(values[0], decoded.getMessageID());
+            assertEquals(values[1], decoded.getMessageRecipient());
+            assertNull(decoded.getMessagePayload());
+            assertEquals(Integer.MAX_VALUE, decoded.getMessageIndex());
+            assertEquals("New", decoded.getMessageStatus());
+        }
+
+        buffer.clear();
+        codec.encode(MessageFeature.restore("0012345678", "+27834557896", "Hi", 1, "00:1:HIHI", MessageStatus.SENT), buffer);
+        assertEquals(2 + 8 + 1 + 3, buffer.position(), "A valid ID and recipient should pack into one long, and a hash that can be rebuilt is left out.");
+        buffer.clear();
+        codec.encode(MessageFeature.restore("0012345678", "+27834557896", "Hi", 1, "OLD:HASH", MessageStatus.SENT), buffer);
+        buffer.flip();
+        assertEquals("OLD:HASH", codec.decode(buffer).getMessageHash(), "A hash that cannot be rebuilt should be kept.");
+    }
+
+    @Test
+    void testEncodeAndDecode_LeaveTheBufferAloneOnFailure() {
+        MessageFeature msg = MessageFeature.restore("0012345678", "+27834557896", "Did you get the cake?", 3, null, MessageStatus.SENT);
+        ByteBuffer small = ByteBuffer.allocate(10);
+        assertThrows(BufferOverflowException.class, () -> codec.encode(msg, small));
+        assertEquals(0, small.position(), "Nothing should be written when the record does not fit.");
+        assertThrows(IllegalArgumentException.class,
+                () -> codec.encode("0012345678", "+27834557896", "Hi", 0, "", null, small));
+
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        codec.encode(msg, buffer);
+        buffer.flip();
+        ByteBuffer truncated = buffer.duplicate().limit(buffer.limit() - 1);
+        assertThrows(BufferUnderflowException.class, () -> codec.decode(truncated));
+        assertEquals(0, truncated.position());
+
+        buffer.put(0, (byte) (MessageCodec.VERSION + 1));
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    void testEncodeUtf8_MatchesGetBytes() {
+        for (String value : new String[] {"", "Did you get the cake?", "Caf\u00e9 \u20ac5", "Party \uD83C\uDF89!", "Broken \uD83C end", "\uDF89\uD83C"}) {
+            byte[] out = new byte[value.length() * 3];
+            int end = MessageCodec.encodeUtf8(value, out, 0);
+            assertArrayEquals(value.getBytes(StandardCharsets.UTF_8), Arrays.copyOf(out, end), value);
+            assertEquals(end, MessageCodec.utf8Length(value), value);
+        }
+    }
+
+    @Test
+    void testEncode_DoesNotAllocateOnReuse() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+        ThreadMXBean allocations = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(allocations.isThreadAllocatedMemoryEnabled());
+        long threadId = Thread.currentThread().getId();
+        MessageFeature msg = MessageFeature.restore("0012345678", "+27834557896",
+                "Where are you? You are late! I have asked you to be on time \u20ac5 \uD83C\uDF89", 42, "00:42:WHERE\uD83C\uDF89", MessageStatus.SENT);
+
+        for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.allocate(256), ByteBuffer.allocateDirect(256)}) {
+            for (int i = 0; i < 200_000; i++) { // Warm up so the loop below is compiled
+                buffer.clear();
+                codec.encode(msg, buffer);
+            }
+            long before = allocations.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 1_000_000; i++) {
+                buffer.clear();
+                codec.encode(msg, buffer);
+            }
+            long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+            assertTrue(allocated < 4096, "Encoding a million records allocated " + allocated + " bytes.");
+        }
+    }
+
+    static String randomRecipient(SplittableRandom random) {
+        int kind = random.nextInt(10);
+        if (kind < 8) {
+            return String.format("+27%09d", random.nextInt(1_000_000_000));
+        }
+        return kind == 8 ? "0" + random.nextInt(1_000_000_000) : randomText(random, random.nextInt(15));
+    }
+
+    static String randomText(SplittableRandom random, int pieces) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < pieces; i++) {
+            text.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,150 @@
+package st10457602;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the lifecycle events MessageFeature publishes through MessageEventPublisher.
+ *
+ * @author Angela
+ */
+public class MessageEventPublisherTest {
+
+    private MessageEventPublisher publisher;
+
+    @BeforeEach
+    public void setUp() {
+        MessageFeature.resetMessageCounterForTesting();
+        publisher = new MessageEventPublisher();
+        MessageFeature.setEventPublisher(publisher);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        publisher.close();
+        MessageFeature.setEventPublisher(new MessageEventPublisher());
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @Test
+    void testEvents_CoverTheMessageLifecycle() throws InterruptedException {
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE, 5);
+        publisher.subscribe(subscriber);
+        subscriber.awaitSubscribed();
+
+        MessageFeature sent = new MessageFeature("+27718693002", "Hi Mike, can you join us for dinner tonight");
+        sent.sentMessage();
+        MessageFeature draft = new MessageFeature("+27838884567", "Where are you? You are late!");
+        draft.storeMessage();
+        new MessageFeature("+27834484567", "Yohoooo, I am at your gate.").disregardMessage();
+        MessageFeature.deleteMessageByHash(sent.getMessageHash());
+        MessageFeature.loadAllMessagesFromJsonFiles();
+
+        assertTrue(subscriber.received.await(5, TimeUnit.SECONDS), "Every event should reach the subscriber.");
+        List<MessageEvent> events = subscriber.events;
+        assertEquals(MessageEvent.Type.SENT, events.get(0).getType());
+        assertEquals(1, events.get(0).getMessageIndex());
+        assertEquals("Sent", events.get(0).getMessageStatus());
+        assertEquals(MessageEvent.Type.STORED, events.get(1).getType());
+        assertEquals(draft.getMessageID(), events.get(1).getMessageID());
+        assertEquals(MessageEvent.Type.DISREGARDED, events.get(2).getType());
+        assertEquals(MessageEvent.Type.DELETED, events.get(3).getType());
+        assertSame(sent, events.get(3).getMessage());
+        assertEquals(MessageEvent.Type.LOADED, events.get(4).getType());
+        assertEquals("Stored", events.get(4).getMessageStatus());
+    }
+
+    @Test
+    void testSubscriber_OnlyReceivesWhatItRequests() throws InterruptedException {
+        RecordingSubscriber subscriber = new RecordingSubscriber(1, 1);
+        publisher.subscribe(subscriber);
+        subscriber.awaitSubscribed();
+
+        new MessageFeature("+27718693002", "first").sentMessage();
+        new MessageFeature("+27718693002", "second").sentMessage();
+        assertTrue(subscriber.received.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(1, subscriber.events.size(), "Only the requested event should be delivered.");
+
+        subscriber.subscription.request(1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (subscriber.events.size() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals("second", subscriber.events.get(1).getMessage().getMessagePayload());
+    }
+
+    @Test
+    void testSlowSubscriber_DoesNotBlockSending() throws InterruptedException {
+        // Never requests anything, so its buffer of four fills and later events are dropped
+        publisher.close();
+        publisher = new MessageEventPublisher(4);
+        MessageFeature.setEventPublisher(publisher);
+        RecordingSubscriber stalled = new RecordingSubscriber(0, 0);
+        publisher.subscribe(stalled);
+        stalled.awaitSubscribed();
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals("Message successfully sent.", new MessageFeature("+27718693002", "message " + i).sentMessage());
+        }
+        assertEquals(50, MessageFeature.returnTotalMessages());
+        assertEquals(50, publisher.getPublishedCount());
+        assertTrue(publisher.getDroppedCount() >= 46, "Events beyond the buffer should be dropped and counted.");
+    }
+
+    @Test
+    void testNoSubscribers_PublishesNothing() {
+        new MessageFeature("+27718693002", "Hello").sentMessage();
+        assertEquals(0, publisher.getSubscriberCount());
+        assertEquals(0, publisher.getPublishedCount());
+    }
+
+    private static final class RecordingSubscriber implements Flow.Subscriber<MessageEvent> {
+        private final long initialRequest;
+        private final CountDownLatch subscribed = new CountDownLatch(1);
+        final CountDownLatch received;
+        final List<MessageEvent> events = new CopyOnWriteArrayList<>();
+        volatile Flow.Subscription subscription;
+
+        RecordingSubscriber(long initialRequest, int expectedEvents) {
+            this.initialRequest = initialRequest;
+            this.received = new CountDownLatch(expectedEvents);
+        }
+
+        void awaitSubscribed() throws InterruptedException {
+            assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+            subscribed.countDown();
+        }
+
+        @Override
+        public void onNext(MessageEvent item) {
+            events.add(item);
+            received.countDown();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package st10457602;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the full-history export in each format, and that it can run while messages are sent.
+ *
+ * @author Angela
+ */
+public class MessageExporterTest {
+
+    private File previousDataDirectory;
+    private MessageFeature sent;
+    private MessageFeature draft;
+    private MessageFeature disregarded;
+
+    @BeforeEach
+    public void setUp(@TempDir Path tempDir) {
+        previousDataDirectory = MessageFeature.getDataDirectory();
+        MessageFeature.setDataDirectory(tempDir.toFile());
+        MessageFeature.resetMessageCounterForTesting();
+
+        sent = new MessageFeature("+27834557896", "Did you get the cake?");
+        sent.sentMessage();
+        draft = new MessageFeature("+27838884567", "Where are you, \"friend\"?\nYou are late!");
+        draft.storeMessage();
+        disregarded = new MessageFeature("+27834484567", "Yohoooo, I am at your gate.");
+        disregarded.disregardMessage();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MessageFeature.resetMessageCounterForTesting();
+        MessageFeature.setDataDirectory(previousDataDirectory);
+    }
+
+    @Test
+    void testExportNdjson_RoundTripsThroughTheImporter(@TempDir Path exportDir) throws IOException {
+        Path file = exportDir.resolve("history.ndjson");
+        assertEquals(3, MessageFeature.exportAllMessages(file, ExportFormat.NDJSON));
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("\"MESSAGE_HASH\":\"" + sent.getMessageHash() + "\""));
+        assertTrue(lines.get(0).contains("\"MESSAGE_INDEX\":1"));
+        assertTrue(lines.get(1).contains("\"MESSAGE_PAYLOAD\":\"Where are you, \\\"friend\\\"?\\nYou are late!\""));
+        assertTrue(lines.get(2).contains("\"MESSAGE_STATUS\":\"Disregarded\""));
+
+        MessageFeature.resetMessageCounterForTesting();
+        BulkImporter.Summary summary = new BulkImporter().writeFiles(false).importFile(file);
+        assertEquals(1, summary.sent());
+        assertEquals(1, summary.stored());
+        assertEquals(1, summary.disregarded());
+        MessageFeature reimported = MessageFeature.getSentMessagesForTesting().get(0);
+        assertEquals(sent.getMessageID(), reimported.getMessageID());
+        assertEquals(sent.getMessageHash(), reimported.getMessageHash());
+        assertEquals(draft.getMessagePayload(), MessageFeature.getStoredMessagesForTesting().get(0).getMessagePayload());
+    }
+
+    @Test
+    void testExportCsv_QuotesFieldsAndRoundTrips(@TempDir Path exportDir) throws IOException {
+        Path file = exportDir.resolve("history.csv");
+        MessageFeature.exportAllMessages(file, ExportFormat.CSV);
+
+        String csv = Files.readString(file);
+        assertTrue(csv.startsWith("recipient,payload,status,id,index,hash\n"));
+        assertTrue(csv.contains("+27838884567,\"Where are you, \"\"friend\"\"?\nYou are late!\",Stored," + draft.getMessageID() + ",0,"));
+
+        MessageFeature.resetMessageCounterForTesting();
+        BulkImporter.Summary summary = new BulkImporter().writeFiles(false).importFile(file);
+        assertEquals(3, summary.rows());
+        assertEquals(0, summary.rejected());
+        assertEquals(draft.getMessageID(), MessageFeature.getStoredMessagesForTesting().get(0).getMessageID());
+    }
+
+    @Test
+    void testExportBinary_IsCodecRecordsAfterAHeader() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertEquals(3, MessageFeature.exportAllMessages(Channels.newChannel(bytes), ExportFormat.BINARY));
+
+        ByteBuffer in = ByteBuffer.wrap(bytes.toByteArray());
+        byte[] magic = new byte[4];
+        in.get(magic);
+        assertArrayEquals(MessageExporter.MAGIC, magic);
+        assertEquals(MessageExporter.VERSION, in.get());
+
+        MessageCodec codec = new MessageCodec();
+        for (MessageFeature expected : List.of(sent, draft, disregarded)) {
+            MessageFeature actual = codec.decode(in);
+            assertEquals(expected.getMessageID(), actual.getMessageID());
+            assertEquals(expected.getMessageRecipient(), actual.getMessageRecipient());
+            assertEquals(expected.getMessagePayload(), actual.getMessagePayload());
+            assertEquals(expected.getMessageIndex(), actual.getMessageIndex());
+            assertEquals(expected.getMessageHash(), actual.getMessageHash());
+            assertEquals(expected.getMessageStatus(), actual.getMessageStatus());
+        }
+        assertFalse(in.hasRemaining(), "Nothing should follow the last record.");
+    }
+
+    @Test
+    void testExport_IsConsistentWhileMessagesAreSent(@TempDir Path exportDir) throws Exception {
+        for (int i = 0; i < 20_000; i++) {
+            new MessageFeature(String.format("+27%09d", i % 101), "Before the export " + i).sentMessage();
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Throwable> failures = new ArrayList<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; running.get(); i++) {
+                    new MessageFeature(String.format("+27%09d", i % 101), "During the export " + i).sentMessage();
+                }
+            } catch (Throwable t) {
+                failures.add(t);
+            }
+        });
+        writer.start();
+        try {
+            for (int run = 0; run < 3; run++) {
+                Path file = exportDir.resolve("history" + run + ".ndjson");
+                long written = MessageFeature.exportAllMessages(file, ExportFormat.NDJSON);
+                assertTrue(written >= 20_003);
+                try (var lines = Files.lines(file, StandardCharsets.UTF_8)) {
+                    assertEquals(written, lines.count());
+                }
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+        assertTrue(failures.isEmpty(), failures.toString());
+    }
+}
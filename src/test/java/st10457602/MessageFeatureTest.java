@@ -11,6 +11,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths; // Added import for Paths
 import java.util.ArrayList;
 import java.util.Iterator; // Explicitly import Iterator
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import org.json.simple.JSONObject; // Added import for JSONObject
@@ -545,6 +546,132 @@ public class MessageFeatureTest {
         assertEquals("Message with hash NONEXISTENTHASH not found.", nonExistentHashResult, "Attempting to delete non-existent hash should return 'not found'.");
     }
 
+    /**
+     * Tests that the typed outcomes agree with the status strings and that
+     * removeMessageByHash returns the deleted message.
+     */
+    @Test
+    public void testTypedOutcomes() {
+        MessageFeature msg = new MessageFeature(validRecipient1, messagePayload1);
+        assertEquals(MessageOutcome.RECIPIENT_CAPTURED, msg.checkRecipientNumber(validRecipient1));
+        assertEquals(MessageOutcome.RECIPIENT_INVALID, msg.checkRecipientNumber(invalidRecipient2));
+        assertEquals(msg.validateRecipientNumber(invalidRecipient2), MessageOutcome.RECIPIENT_INVALID.describe());
+        assertEquals(MessageOutcome.PAYLOAD_READY, msg.checkPayloadLength(messagePayload1));
+        assertEquals(MessageOutcome.PAYLOAD_TOO_LONG, msg.checkPayloadLength("A".repeat(251)));
+        assertEquals(MessageOutcome.PAYLOAD_TOO_LONG, msg.checkPayloadLength(null));
+
+        assertEquals(MessageOutcome.SENT, msg.send());
+        assertTrue(MessageOutcome.SENT.isSuccess());
+        assertEquals(MessageOutcome.SEND_INVALID_RECIPIENT, new MessageFeature(invalidRecipient2, messagePayload2).send());
+        assertEquals(MessageOutcome.SEND_EMPTY_PAYLOAD, new MessageFeature(validRecipient1, "   ").send());
+        assertEquals(MessageOutcome.SEND_PAYLOAD_TOO_LONG, new MessageFeature(validRecipient1, "A".repeat(251)).send());
+        assertFalse(MessageOutcome.SEND_PAYLOAD_TOO_LONG.isSuccess());
+        assertEquals(MessageOutcome.STORED, msg.store());
+
+        assertSame(msg, MessageFeature.removeMessageByHash(msg.getMessageHash()));
+        assertNull(MessageFeature.removeMessageByHash(msg.getMessageHash()), "A deleted message cannot be deleted twice.");
+        assertNull(MessageFeature.removeMessageByHash(null));
+    }
+
+    /**
+     * Tests that loaded messages keep the IDs saved in their files, so a loaded draft can be deleted.
+     */
+    @Test
+    public void testLoadAllMessages_KeepsIdsAndDraftsStayDeletable(@TempDir Path tempDir) {
+        File previous = MessageFeature.getDataDirectory();
+        MessageFeature.setDataDirectory(tempDir.toFile());
+        try {
+            MessageFeature draft = new MessageFeature("+27838884567", "Where are you? You are late!");
+            draft.storeMessage();
+            File draftFile = tempDir.resolve("message_draft_" + draft.getMessageID() + ".json").toFile();
+            assertTrue(draftFile.exists());
+
+            MessageFeature.loadAllMessagesFromJsonFiles();
+            MessageFeature loaded = MessageFeature.getStoredMessagesForTesting().get(0);
+            assertEquals(draft.getMessageID(), loaded.getMessageID(), "A loaded message should keep its saved ID.");
+            assertEquals(draft.getMessageHash(), loaded.getMessageHash());
+
+            assertNotNull(MessageFeature.removeMessageByHash(loaded.getMessageHash()));
+            assertFalse(draftFile.exists(), "Deleting a loaded draft should delete its file.");
+        } finally {
+            MessageFeature.setDataDirectory(previous);
+        }
+        assertThrows(IllegalArgumentException.class, () -> MessageFeature.setDataDirectory(null));
+    }
+
+    /**
+     * Tests the compact representation: statuses, shared recipient strings, and hashes that
+     * are rebuilt unless a loaded one cannot be.
+     */
+    @Test
+    public void testCompactRepresentation() {
+        MessageFeature first = new MessageFeature(new String("+27838884567"), "Hi Mike, can you join us for dinner tonight");
+        MessageFeature second = new MessageFeature(new String("+27838884567"), "Where are you?");
+        assertSame(first.getMessageRecipient(), second.getMessageRecipient(), "Messages to one number should share its string.");
+        int recipients = RecipientTable.size();
+        MessageFeature invalid = new MessageFeature(new String("0838884567 typo"), "Hi");
+        assertEquals("0838884567 typo", invalid.getMessageRecipient());
+        assertEquals(recipients, RecipientTable.size(), "Invalid numbers should not be kept in the recipient table.");
+
+        assertEquals(MessageStatus.NEW, first.getStatus());
+        assertEquals("", first.getMessageHash());
+        first.sentMessage();
+        assertEquals(MessageStatus.SENT, first.getStatus());
+        assertEquals("Sent", first.getMessageStatus());
+        assertEquals(first.createMessageHash(first.getMessageID(), first.getMessageIndex(), first.getMessagePayload()), first.getMessageHash());
+        assertNull(first.fixedHash(), "A hash that can be rebuilt should not be kept.");
+
+        MessageFeature legacy = MessageFeature.restore("0012345678", "+27838884567", "Hi", 1, "00:1:OLDSTYLE", MessageStatus.SENT);
+        assertEquals("00:1:OLDSTYLE", legacy.getMessageHash(), "A loaded hash that cannot be rebuilt should be kept.");
+        assertEquals(MessageStatus.STORED, MessageStatus.of("Stored"));
+        assertNull(MessageStatus.of("Archived"));
+    }
+
+    /**
+     * Tests that sendAll gives the valid messages one contiguous run of indexes, skips rejected
+     * ones, and that storeAll writes the same files storeMessage would.
+     */
+    @Test
+    public void testSendAllAndStoreAll(@TempDir Path tempDir) throws IOException {
+        File previous = MessageFeature.getDataDirectory();
+        MessageFeature.setDataDirectory(tempDir.toFile());
+        try {
+            int before = MessageFeature.returnTotalMessages();
+            MessageFeature first = new MessageFeature("+27838884567", "Where are you? You are late!");
+            MessageFeature rejected = new MessageFeature(invalidRecipient2, messagePayload2);
+            MessageFeature second = new MessageFeature("+27834557896", "Ok, I am leaving without you.");
+            List<MessageOutcome> sent = MessageFeature.sendAll(List.of(first, rejected, second));
+
+            assertEquals(List.of(MessageOutcome.SENT, MessageOutcome.SEND_INVALID_RECIPIENT, MessageOutcome.SENT), sent);
+            assertEquals(before + 1, first.getMessageIndex());
+            assertEquals(before + 2, second.getMessageIndex(), "Rejected messages should not use up an index.");
+            assertEquals(0, rejected.getMessageIndex());
+            assertEquals(before + 2, MessageFeature.returnTotalMessages());
+            assertEquals(first.createMessageHash(first.getMessageID(), first.getMessageIndex(), first.getMessagePayload()),
+                    first.getMessageHash());
+            assertEquals("Sent", second.getMessageStatus());
+            assertSame(second, MessageFeature.removeMessageByHash(second.getMessageHash()));
+
+            MessageFeature draft = new MessageFeature("+27838884567", "Just a draft");
+            List<MessageOutcome> stored = MessageFeature.storeAll(List.of(first, draft));
+            assertEquals(List.of(MessageOutcome.STORED, MessageOutcome.STORED), stored);
+            assertEquals("Stored", draft.getMessageStatus());
+            Path firstFile = tempDir.resolve("message_" + first.getMessageIndex() + ".json");
+            Path draftFile = tempDir.resolve("message_draft_" + draft.getMessageID() + ".json");
+            assertTrue(Files.exists(firstFile));
+            assertTrue(Files.exists(draftFile));
+
+            // The batched write should produce exactly what a single store does
+            String batched = Files.readString(firstFile);
+            assertEquals(MessageOutcome.STORED, first.store());
+            assertEquals(batched, Files.readString(firstFile));
+            assertTrue(MessageFeature.getStoredMessagesForTesting().contains(draft));
+            assertTrue(MessageFeature.sendAll(List.of()).isEmpty());
+        } finally {
+            MessageFeature.setDataDirectory(previous);
+        }
+    }
+
     /**
      * Tests the generation of the full sent messages report.
      */
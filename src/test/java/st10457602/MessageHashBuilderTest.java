@@ -0,0 +1,95 @@
+package st10457602;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Property-based check that MessageHashBuilder gives exactly the hash the original
+ * trim/split/replaceAll implementation gave, for random IDs, indexes and payloads.
+ *
+ * @author Angela
+ */
+public class MessageHashBuilderTest {
+
+    // Whitespace of every kind, control characters, punctuation, non-ASCII letters and digits
+    private static final String ALPHABET = "abcXYZ019 \t\n\u000B\f\r\u0001\u001F\u00a0\u2003!?.,'-_"
+            + "\u00e9\u00df\u0130\u0131i\u0660\uff21";
+
+    // The implementation createMessageHash had before MessageHashBuilder
+    private static String legacyHash(String id, int index, String payload) {
+        if (id == null || id.length() < 2 || payload == null) {
+            return "";
+        }
+        String idStart = id.substring(0, 2);
+        String content = payload.trim();
+        if (content.isEmpty()) {
+            return (idStart + ":" + index + ":").toUpperCase();
+        }
+        String[] words = content.split("\\s+");
+        String firstWord = words[0];
+        String lastWord = words.length > 1 ? words[words.length - 1] : firstWord;
+        firstWord = firstWord.replaceAll("[^a-zA-Z0-9]", "");
+        lastWord = lastWord.replaceAll("[^a-zA-Z0-9]", "");
+        return (idStart + ":" + index + ":" + firstWord + lastWord).toUpperCase();
+    }
+
+    private static String randomString(Random random, int maxLength) {
+        int length = random.nextInt(maxLength + 1);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    private static void checkRandomCases(long seed, int cases) {
+        Random random = new Random(seed);
+        for (int n = 0; n < cases; n++) {
+            String id = random.nextInt(20) == 0 ? null
+                    : random.nextBoolean() ? MessageIdGenerator.format(random.nextLong(MessageIdGenerator.MAX_ID + 1))
+                    : randomString(random, 4);
+            int index = random.nextInt(10) == 0 ? random.nextInt() : random.nextInt(1_000);
+            String payload = random.nextInt(50) == 0 ? null : randomString(random, random.nextBoolean() ? 12 : 300);
+            assertEquals(legacyHash(id, index, payload), MessageHashBuilder.build(id, index, payload),
+                    () -> "id=" + id + " index=" + index + " payload=" + payload);
+        }
+    }
+
+    @Test
+    void testKnownHashes() {
+        assertEquals("00:0:HITONIGHT", MessageHashBuilder.build("0012345678", 0, "Hi Mike, can you join us for dinner tonight"));
+        assertEquals("12:7:HELLOHELLO", MessageHashBuilder.build("1234567890", 7, "  hello!  "));
+        assertEquals("12:7:", MessageHashBuilder.build("1234567890", 7, " \t\n "));
+        assertEquals("12:-2147483648:AB", MessageHashBuilder.build("1234567890", Integer.MIN_VALUE, "a b"));
+        assertEquals("", MessageHashBuilder.build("1", 1, "payload"));
+        assertEquals("", MessageHashBuilder.build("1234567890", 1, null));
+    }
+
+    @Test
+    void testRandomInputs_MatchLegacyHash() {
+        checkRandomCases(32, 200_000);
+    }
+
+    @Test
+    void testRandomInputs_MatchLegacyHashInTurkishLocale() {
+        Locale original = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+            assertEquals("00:1:\u0130T\u0130T", MessageHashBuilder.build("0012345678", 1, "it"));
+            checkRandomCases(33, 50_000);
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+
+    @Test
+    void testLongPayload_GrowsBuffer() {
+        String longWord = "w".repeat(5_000);
+        assertEquals(legacyHash("9876543210", 3, longWord), MessageHashBuilder.build("9876543210", 3, longWord));
+        assertEquals("98:3:AB", MessageHashBuilder.build("9876543210", 3, "a b"));
+    }
+}
@@ -0,0 +1,234 @@
+package st10457602;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the MessageIdGenerator implementations and the 10-digit ID formatting.
+ *
+ * @author Angela
+ */
+public class MessageIdGeneratorTest {
+
+    private final MessageFeature validator = new MessageFeature("+27718693002", "test");
+
+    // Minute 2026-01-01T00:00Z, after the epoch
+    private static final long FAKE_START_MILLIS = 1_767_225_600_000L;
+
+    // A clock that only moves when slept on, so workers that run out their sequence go on at once
+    private static final class FakeClock implements TimeOrderedMessageIdGenerator.Clock {
+        private long millis = FAKE_START_MILLIS;
+        private long sleptMillis;
+
+        @Override
+        public synchronized long millis() {
+            return millis;
+        }
+
+        @Override
+        public synchronized void sleep(long duration) {
+            millis += Math.max(1, duration);
+            sleptMillis += Math.max(1, duration);
+        }
+
+        synchronized long tick() {
+            return millis / 60_000 - TimeOrderedMessageIdGenerator.EPOCH_MINUTES;
+        }
+
+        synchronized long sleptMinutes() {
+            return sleptMillis / 60_000;
+        }
+    }
+
+    private final FakeClock clock = new FakeClock();
+
+    @BeforeEach
+    void useFakeClock() {
+        TimeOrderedMessageIdGenerator.resetForTesting();
+        TimeOrderedMessageIdGenerator.setClock(clock);
+    }
+
+    @AfterEach
+    void restoreClock() {
+        // Leave the generator as a fresh JVM would have it for the system clock
+        TimeOrderedMessageIdGenerator.setClock(null);
+        TimeOrderedMessageIdGenerator.resetForTesting();
+    }
+
+    private static long tickOf(long id) {
+        return id >>> (TimeOrderedMessageIdGenerator.WORKER_BITS + TimeOrderedMessageIdGenerator.SEQUENCE_BITS);
+    }
+
+    @Test
+    void testFormat_PadsToTenDigits() {
+        assertEquals("0000000000", MessageIdGenerator.format(0));
+        assertEquals("0000000042", MessageIdGenerator.format(42));
+        assertEquals("9999999999", MessageIdGenerator.format(MessageIdGenerator.MAX_ID));
+        assertEquals(String.format("%010d", 1234567L), MessageIdGenerator.format(1234567L));
+    }
+
+    @Test
+    void testFormat_RejectsOutOfRangeValues() {
+        assertThrows(IllegalArgumentException.class, () -> MessageIdGenerator.format(-1));
+        assertThrows(IllegalArgumentException.class, () -> MessageIdGenerator.format(MessageIdGenerator.MAX_ID + 1));
+    }
+
+    @Test
+    void testThreadLocalRandom_ProducesValidIds() {
+        MessageIdGenerator generator = MessageIdGenerator.threadLocalRandom();
+        for (int i = 0; i < 10_000; i++) {
+            String id = generator.nextMessageId();
+            assertTrue(validator.checkMessageID(id), "Generated ID should be 10 digits: " + id);
+        }
+    }
+
+    @Test
+    void testTimeOrdered_IdsIncreaseAndStayValidWithinThread() {
+        MessageIdGenerator generator = MessageIdGenerator.timeOrdered();
+        long previous = -1;
+        // Far more IDs than one minute's sequence allows, so the borrowing path is exercised
+        for (int i = 0; i < 10_000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous, "Time-ordered IDs should strictly increase within a thread.");
+            assertTrue(validator.checkMessageID(MessageIdGenerator.format(id)), "Generated ID should be 10 digits.");
+            previous = id;
+        }
+    }
+
+    @Test
+    void testTimeOrdered_WaitsForTheClockOnceTheSequenceRunsOutAnHourAhead() {
+        MessageIdGenerator generator = MessageIdGenerator.timeOrdered();
+        int minutes = 500; // The sequence runs out 500 times over within the first minute
+        long previous = -1;
+        for (int i = 0; i < minutes * 128; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous, "Time-ordered IDs should strictly increase within a thread.");
+            assertTrue(tickOf(id) - clock.tick() <= TimeOrderedMessageIdGenerator.MAX_AHEAD_TICKS,
+                    "A worker should never run more than MAX_AHEAD_TICKS minutes ahead of the clock.");
+            previous = id;
+        }
+        long waitedMinutes = clock.sleptMinutes();
+        assertTrue(waitedMinutes >= minutes - 1 - TimeOrderedMessageIdGenerator.MAX_AHEAD_TICKS,
+                "The worker should have waited for the minutes it could not borrow, waited " + waitedMinutes);
+    }
+
+    @Test
+    void testTimeOrdered_CarriesOnAfterLoadedIds() {
+        MessageIdGenerator generator = MessageIdGenerator.timeOrdered();
+        MessageFeature.setIdGenerator(generator);
+        try {
+            // IDs saved before a restart by a burst that ran half an hour ahead, for every worker number
+            long ahead = clock.tick() + 30;
+            for (int worker = 0; worker < 16; worker++) {
+                MessageFeature.withId(MessageIdGenerator.format(TimeOrderedMessageIdGenerator.compose(ahead, worker, 100)),
+                        "+27718693002", "Saved");
+            }
+            // An ID further ahead than any worker may run cannot be time-ordered, so it changes nothing
+            MessageFeature.withId(MessageIdGenerator.format(TimeOrderedMessageIdGenerator.compose(ahead + 60, 0, 0)),
+                    "+27718693002", "Random");
+
+            long id = Long.parseLong(new MessageFeature("+27718693002", "New").getMessageID());
+            assertEquals(ahead, tickOf(id), "A new ID should carry on in the minute of the loaded ones.");
+            assertEquals(101, id & 127, "A new ID should follow the highest loaded sequence.");
+            assertTrue(generator.nextId() > id);
+        } finally {
+            MessageFeature.setIdGenerator(MessageIdGenerator.threadLocalRandom());
+        }
+    }
+
+    @Test
+    void testTimeOrdered_ThreadsDoNotCollide() throws InterruptedException {
+        MessageIdGenerator generator = MessageIdGenerator.timeOrdered();
+        int threads = 4;
+        int perThread = 2_000;
+        long[][] results = new long[threads][perThread];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int slot = t;
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    results[slot][i] = generator.nextId();
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        Set<Long> unique = new HashSet<>();
+        for (long[] row : results) {
+            for (long id : row) {
+                unique.add(id);
+            }
+        }
+        assertEquals(threads * perThread, unique.size(), "IDs from different worker threads should not collide.");
+    }
+
+    @Test
+    void testTimeOrdered_MoreThreadsThanWorkerNumbersDoNotCollide() throws InterruptedException {
+        int perThread = 300;
+        Set<Long> unique = ConcurrentHashMap.newKeySet();
+        // Threads that come and go, as a new pool's threads do, then more live threads than numbers
+        for (int t = 0; t < 40; t++) {
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    unique.add(MessageIdGenerator.timeOrdered().nextId());
+                }
+            });
+            worker.start();
+            worker.join();
+        }
+        CountDownLatch allStarted = new CountDownLatch(40);
+        Thread[] workers = new Thread[40];
+        for (int t = 0; t < workers.length; t++) {
+            workers[t] = new Thread(() -> {
+                MessageIdGenerator generator = MessageIdGenerator.timeOrdered();
+                unique.add(generator.nextId());
+                allStarted.countDown();
+                try {
+                    allStarted.await(); // Every thread holds a lease or shares the overflow at once
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 1; i < perThread; i++) {
+                    unique.add(generator.nextId());
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(80 * perThread, unique.size(), "Worker numbers should never be shared by two live threads.");
+    }
+
+    @Test
+    void testTimeOrdered_RefusesToWrapAround() {
+        long last = TimeOrderedMessageIdGenerator.compose(TimeOrderedMessageIdGenerator.MAX_TICK, 15, 127);
+        assertTrue(last <= MessageIdGenerator.MAX_ID);
+        assertTrue(last + (1 << 11) > MessageIdGenerator.MAX_ID, "The time field should use the whole 10-digit range.");
+        long lastMinute = TimeOrderedMessageIdGenerator.EPOCH_MINUTES + TimeOrderedMessageIdGenerator.MAX_TICK;
+        assertTrue(lastMinute * 60 > 1_900_000_000L, "IDs should last well past 2030.");
+        assertThrows(IllegalStateException.class,
+                () -> TimeOrderedMessageIdGenerator.compose(TimeOrderedMessageIdGenerator.MAX_TICK + 1, 0, 0));
+        assertThrows(IllegalStateException.class, () -> TimeOrderedMessageIdGenerator.compose(-1, 0, 0));
+    }
+
+    @Test
+    void testSetIdGenerator_IsUsedByConstructor() {
+        try {
+            MessageFeature.setIdGenerator(() -> 7L);
+            assertEquals("0000000007", new MessageFeature("+27718693002", "Hi").getMessageID());
+        } finally {
+            MessageFeature.setIdGenerator(MessageIdGenerator.threadLocalRandom());
+        }
+    }
+}
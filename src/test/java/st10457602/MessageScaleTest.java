@@ -0,0 +1,146 @@
+package st10457602;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Loads, searches, deletes and reports on generated datasets of production size, failing if an
+ * operation goes over its time budget. Excluded from the default build; run with
+ * {@code mvn test -Dgroups=scale -DexcludedGroups=}.
+ *
+ * The sizes default to 10,000, 100,000 and 1,000,000 messages and can be set with
+ * {@code -Dquickchat.scale.sizes=10000,50000}; every budget is multiplied by
+ * {@code -Dquickchat.scale.budgetFactor} (default 1) for slower machines.
+ *
+ * @author Angela
+ */
+@Tag("scale")
+public class MessageScaleTest {
+
+    // Budgets, in microseconds
+    private static final double LOAD_PER_MESSAGE = 250;
+    private static final double SEARCH_BY_ID = 100;
+    private static final double SEARCH_BY_RECIPIENT_BASE = 200;
+    private static final double SEARCH_BY_RECIPIENT_PER_RESULT = 5;
+    private static final double DELETE = 500;
+    private static final double REPORT_PER_MESSAGE = 20; // Mostly JIT warm-up at 10,000 messages
+
+    private static final double BUDGET_FACTOR = Double.parseDouble(System.getProperty("quickchat.scale.budgetFactor", "1"));
+
+    private File previousDataDirectory;
+
+    static IntStream sizes() {
+        String sizes = System.getProperty("quickchat.scale.sizes", "10000,100000,1000000");
+        return Arrays.stream(sizes.split(",")).map(String::trim).mapToInt(Integer::parseInt);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (previousDataDirectory != null) {
+            MessageFeature.setDataDirectory(previousDataDirectory); // The generated files go with the temp directory
+        }
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @ParameterizedTest(name = "{0} messages")
+    @MethodSource("sizes")
+    void testLoadSearchDeleteReport(int size, @TempDir Path tempDir) throws IOException {
+        WorkloadGenerator.Summary summary = new WorkloadGenerator(size).generate(size, tempDir);
+        assertEquals(size, summary.total());
+        previousDataDirectory = MessageFeature.getDataDirectory();
+        MessageFeature.setDataDirectory(tempDir.toFile());
+
+        // Load
+        long start = System.nanoTime();
+        MessageFeature.loadAllMessagesFromJsonFiles();
+        check("load", start, size, LOAD_PER_MESSAGE);
+        assertEquals(summary.sent(), MessageFeature.returnTotalMessages());
+        assertEquals(summary.sent(), MessageFeature.getSentMessagesForTesting().size());
+        assertEquals(summary.stored(), MessageFeature.getStoredMessagesForTesting().size());
+        assertEquals(summary.disregarded(), MessageFeature.getDisregardedMessagesForTesting().size());
+        List<String> ids = MessageFeature.getAllMessageIDs();
+        assertEquals(ids.size(), new HashSet<>(ids).size(), "Loaded messages should keep their unique IDs.");
+
+        // Search by ID, half of them for IDs that do not exist
+        SplittableRandom random = new SplittableRandom(size);
+        int lookups = 10_000;
+        start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < lookups; i++) {
+            String id = i % 2 == 0 ? ids.get(random.nextInt(ids.size())) : "X" + i;
+            if (MessageFeature.searchMessageByID(id).startsWith("Message Found")) {
+                found++;
+            }
+        }
+        check("search by ID", start, lookups, SEARCH_BY_ID);
+        assertEquals(lookups / 2, found);
+
+        // Search by recipient, from the busiest recipient down
+        List<MessageFeature> sample = MessageFeature.getSentMessagesForTesting();
+        long results = 0;
+        int recipientLookups = 100;
+        start = System.nanoTime();
+        for (int i = 0; i < recipientLookups; i++) {
+            String recipient = i == 0 ? "+27600000000" : sample.get(random.nextInt(sample.size())).getMessageRecipient();
+            results += MessageFeature.searchMessagesByRecipient(recipient).split("\n", -1).length - 2;
+        }
+        check("search by recipient", start, recipientLookups,
+                SEARCH_BY_RECIPIENT_BASE + SEARCH_BY_RECIPIENT_PER_RESULT * results / recipientLookups);
+
+        // Delete distinct sent messages and drafts; the drafts' files go too
+        List<String> hashes = new ArrayList<>();
+        pickDistinct(MessageFeature.getSentMessagesForTesting(), 500, random, hashes);
+        pickDistinct(MessageFeature.getStoredMessagesForTesting(), 500, random, hashes);
+        int deleted = 0;
+        start = System.nanoTime();
+        for (String hash : hashes) {
+            if (MessageFeature.removeMessageByHash(hash) != null) {
+                deleted++;
+            }
+        }
+        check("delete", start, Math.max(1, hashes.size()), DELETE);
+        assertEquals(hashes.size(), deleted, "Every picked message should be deleted.");
+
+        // Report, streamed to a writer that discards it
+        int remaining = MessageFeature.getSentMessagesForTesting().size();
+        start = System.nanoTime();
+        long written = MessageFeature.writeSentMessagesReport(Writer.nullWriter(), ReportFormat.CSV);
+        check("report", start, Math.max(1, remaining), REPORT_PER_MESSAGE);
+        assertEquals(remaining, written);
+    }
+
+    // Adds the hashes of up to count different messages
+    private static void pickDistinct(List<MessageFeature> messages, int count, SplittableRandom random, List<String> hashes) {
+        HashSet<Integer> picked = new HashSet<>();
+        while (picked.size() < Math.min(count, messages.size())) {
+            int i = random.nextInt(messages.size());
+            if (picked.add(i)) {
+                hashes.add(messages.get(i).getMessageHash());
+            }
+        }
+    }
+
+    // Fails if the operations averaged more than their budget
+    private static void check(String operation, long startNanos, long operations, double budgetMicros) {
+        double micros = (System.nanoTime() - startNanos) / 1000.0 / operations;
+        double budget = budgetMicros * BUDGET_FACTOR;
+        System.out.printf("%-20s %,10d ops  %10.2f us/op  (budget %.2f)%n", operation, operations, micros, budget);
+        assertTrue(micros <= budget, operation + " took " + micros + " us per operation; the budget is " + budget);
+    }
+}
@@ -0,0 +1,349 @@
+package st10457602;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the recipient-sharded MessageStore, both directly and through MessageFeature.
+ *
+ * @author Angela
+ */
+public class MessageStoreTest {
+
+    private MessageStore store;
+
+    @BeforeEach
+    public void setUp() {
+        MessageFeature.resetMessageCounterForTesting();
+        store = new MessageStore(8);
+        MessageFeature.useStore(store);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MessageFeature.useStore(new MessageStore(MessageStore.defaultShardCount()));
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @Test
+    void testShardCount_RoundsUpToPowerOfTwo() {
+        assertEquals(1, new MessageStore(1).shardCount());
+        assertEquals(8, new MessageStore(5).shardCount());
+        assertEquals(16, new MessageStore(16).shardCount());
+        assertThrows(IllegalArgumentException.class, () -> new MessageStore(0));
+    }
+
+    @Test
+    void testSentMessages_MergedAcrossShardsInIndexOrder() {
+        for (int i = 0; i < 200; i++) {
+            new MessageFeature(String.format("+27%09d", i % 37), "Message number " + i).sentMessage();
+        }
+        List<MessageFeature> sent = store.sentMessages();
+        assertEquals(200, sent.size());
+        for (int i = 0; i < sent.size(); i++) {
+            assertEquals(i + 1, sent.get(i).getMessageIndex(), "Sent messages should be merged by MESSAGE_INDEX.");
+        }
+    }
+
+    @Test
+    void testSentIterator_ReadsShardsInChunksInIndexOrder() {
+        // Many chunks per shard, with every hundredth message added out of its index order,
+        // as drafts sent late or files loaded in any order are
+        int n = 30_000;
+        List<MessageFeature> added = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            int index = i % 100 == 0 ? n - i : i + 1;
+            MessageFeature msg = MessageFeature.restore(String.format("%010d", i), String.format("+27%09d", i % 61),
+                    "Chunked " + i, index, null, MessageStatus.SENT);
+            store.addSent(msg);
+            added.add(msg);
+        }
+        List<MessageFeature> iterated = new ArrayList<>();
+        store.sentIterator().forEachRemaining(iterated::add);
+        assertEquals(store.sentMessages(), iterated);
+
+        // Changes made while iterating: new sends may or may not be seen, but nothing that stays
+        // sent is skipped or repeated
+        Iterator<MessageFeature> iterator = store.sentIterator();
+        List<MessageFeature> seen = new ArrayList<>();
+        for (int i = 0; i < n / 2; i++) {
+            seen.add(iterator.next());
+        }
+        Set<MessageFeature> removed = new HashSet<>();
+        for (int i = 1; i < n; i += 7) {
+            if (store.removeByHash(added.get(i).getMessageHash()) != null) {
+                removed.add(added.get(i));
+            }
+        }
+        for (int i = 0; i < 500; i++) {
+            MessageFeature msg = MessageFeature.restore(String.format("9%09d", i), String.format("+27%09d", i % 61),
+                    "Late " + i, n + 1 + i, null, MessageStatus.SENT);
+            store.addSent(msg);
+        }
+        iterator.forEachRemaining(seen::add);
+        for (int i = 1; i < seen.size(); i++) {
+            assertTrue(seen.get(i - 1).getMessageIndex() <= seen.get(i).getMessageIndex(), "Messages should come in index order.");
+        }
+        Set<MessageFeature> unique = new HashSet<>(seen);
+        assertEquals(seen.size(), unique.size(), "No message should be returned twice.");
+        for (MessageFeature msg : added) {
+            assertTrue(removed.contains(msg) || unique.contains(msg), "A message that stayed sent should not be skipped.");
+        }
+        assertThrows(java.util.NoSuchElementException.class, iterator::next);
+    }
+
+    @Test
+    void testFindByRecipient_ReturnsSentThenStoredForOneRecipient() {
+        MessageFeature draft = new MessageFeature("+27838884567", "Draft first");
+        draft.storeMessage();
+        MessageFeature sent = new MessageFeature("+27838884567", "Sent second");
+        sent.sentMessage();
+        new MessageFeature("+27834557896", "Someone else").sentMessage();
+
+        List<MessageStore.Entry> found = store.findByRecipient("+27838884567");
+        assertEquals(2, found.size());
+        assertSame(sent, found.get(0).message, "Sent messages should be listed before stored drafts.");
+        assertSame(draft, found.get(1).message);
+        assertTrue(store.findByRecipient("+27111111111").isEmpty());
+    }
+
+    @Test
+    void testAddStored_IsIdempotentAndKeepsOneEntryPerMessage() {
+        MessageFeature msg = new MessageFeature("+27838884567", "Hello there");
+        msg.sentMessage();
+        msg.storeMessage();
+        msg.storeMessage();
+
+        assertEquals(1, store.sentMessages().size());
+        assertEquals(1, store.storedMessages().size());
+        assertEquals(1, store.sentOrStoredMessages().size(), "A sent and stored message should be counted once.");
+    }
+
+    @Test
+    void testRemoveByHash_RemovesFromEveryListAndIndex() {
+        MessageFeature msg = new MessageFeature("+27838884567", "Hello there");
+        msg.sentMessage();
+        msg.storeMessage();
+
+        MessageStore.Entry removed = store.removeByHash(msg.getMessageHash());
+        assertNotNull(removed);
+        assertTrue(removed.sent && removed.stored, "The removed entry should report the lists it was in.");
+        assertTrue(store.sentMessages().isEmpty());
+        assertTrue(store.storedMessages().isEmpty());
+        assertNull(store.findById(msg.getMessageID()));
+        assertTrue(store.findByRecipient("+27838884567").isEmpty());
+        assertNull(store.removeByHash(msg.getMessageHash()));
+    }
+
+    @Test
+    void testHashIndex_FindsCollidingHashesAndSurvivesRemovals() {
+        // "Aa" and "BB" have the same String.hashCode, so they share a probe run
+        MessageFeature aa = MessageFeature.restore("0012345678", "+27838884567", "First", 1, "Aa", MessageStatus.SENT);
+        MessageFeature bb = MessageFeature.restore("0012345679", "+27838884567", "Second", 2, "BB", MessageStatus.SENT);
+        store.addSent(aa);
+        store.addSent(bb);
+
+        List<MessageFeature> messages = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            MessageFeature msg = new MessageFeature("+27838884567", "Message number " + i);
+            msg.sentMessage();
+            messages.add(msg);
+        }
+        assertSame(bb, store.removeByHash("BB").message);
+        assertSame(aa, store.removeByHash("Aa").message);
+        for (int i = 0; i < messages.size(); i += 2) {
+            assertSame(messages.get(i), store.removeByHash(messages.get(i).getMessageHash()).message);
+        }
+        for (int i = 1; i < messages.size(); i += 2) {
+            assertSame(messages.get(i), store.removeByHash(messages.get(i).getMessageHash()).message,
+                    "Removals should not hide the hashes after them in the table.");
+        }
+        assertEquals(0, store.sentCount());
+    }
+
+    @Test
+    void testHashIndex_KeepsEveryMessageThatSharesAHash() {
+        // Drafts are hashed from the first two digits of the ID, index 0 and the payload's words
+        MessageFeature first = MessageFeature.restore("0012345678", "+27838884567", "Hi there", 0, null, MessageStatus.STORED);
+        MessageFeature second = MessageFeature.restore("0098765432", "+27838884567", "Hi there", 0, null, MessageStatus.STORED);
+        MessageFeature sent = MessageFeature.restore("0011111111", "+27838884567", "Hi there", 0, null, MessageStatus.SENT);
+        store.addStored(first);
+        store.addStored(second);
+        store.addDisregarded(sent);
+        store.addSent(sent);
+        String hash = first.getMessageHash();
+        assertEquals(hash, second.getMessageHash());
+        assertEquals(hash, sent.getMessageHash());
+
+        assertEquals("Message \"Hi there\" successfully deleted.", MessageFeature.deleteMessageByHash(hash));
+        assertTrue(store.sentMessages().isEmpty(), "The sent message should go first.");
+        assertEquals("Message \"Hi there\" successfully deleted.", MessageFeature.deleteMessageByHash(hash));
+        assertEquals(List.of(second), store.storedMessages(), "Then the stored ones, earliest first.");
+        assertEquals("Message \"Hi there\" successfully deleted.", MessageFeature.deleteMessageByHash(hash));
+        assertEquals(0, store.storedCount());
+        assertEquals("Message with hash " + hash + " not found.", MessageFeature.deleteMessageByHash(hash));
+    }
+
+    @Test
+    void testHashIndex_FollowsAStoredDraftWhenItIsSent() {
+        MessageFeature draft = new MessageFeature("+27838884567", "Hello there");
+        draft.storeMessage();
+        String draftHash = draft.getMessageHash();
+        draft.sentMessage();
+
+        assertNotEquals(draftHash, draft.getMessageHash(), "Sending gives the draft a new index and so a new hash.");
+        assertNull(store.removeByHash(draftHash));
+        assertSame(draft, store.removeByHash(draft.getMessageHash()).message);
+    }
+
+    @Test
+    void testStatusViews_StayCorrectThroughRemovalsAndCompaction() {
+        List<MessageFeature> messages = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            MessageFeature msg = new MessageFeature("+27838884567", "Message number " + i);
+            if (i % 3 == 0) {
+                msg.disregardMessage();
+            } else {
+                msg.sentMessage();
+            }
+            messages.add(msg);
+        }
+        // Removing most messages compacts the shard's slots; the survivors keep their order and statuses
+        List<MessageFeature> kept = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            MessageFeature msg = messages.get(i);
+            if (i % 10 == 0) {
+                kept.add(msg);
+            } else if (i % 3 != 0) {
+                assertSame(msg, store.removeByHash(msg.getMessageHash()).message);
+            }
+        }
+        for (int i = 0; i < messages.size(); i += 3) {
+            if (i % 10 != 0) {
+                store.removeByHash(messages.get(i).getMessageHash()); // Disregarded messages have no hash
+            }
+        }
+        MessageFeature draft = new MessageFeature("+27838884567", "A draft after the removals");
+        store.addStored(draft);
+        kept.add(draft);
+
+        List<MessageFeature> sentOrStored = new ArrayList<>();
+        for (MessageFeature msg : kept) {
+            if (msg == draft || msg.getStatus() == MessageStatus.SENT) {
+                sentOrStored.add(msg);
+            }
+        }
+        assertEquals(sentOrStored, store.sentOrStoredMessages());
+        assertEquals(sentOrStored.size() - 1, store.sentCount());
+        assertEquals(1, store.storedCount());
+        List<MessageFeature> visited = new ArrayList<>();
+        store.forEach(MessageStatus.SENT, entry -> visited.add(entry.message));
+        assertEquals(store.sentMessages(), visited);
+        assertThrows(IllegalArgumentException.class, () -> store.forEach(MessageStatus.NEW, entry -> { }));
+    }
+
+    @Test
+    void testMaxSentOrStored_VisitsEachMessageOnceAndBreaksTiesLikeTheSentList() {
+        assertNull(store.maxSentOrStored(msg -> 1));
+        MessageFeature draft = new MessageFeature("+27838884567", "Same length A");
+        draft.storeMessage();
+        MessageFeature first = new MessageFeature("+27834557896", "Same length B");
+        first.sentMessage();
+        first.storeMessage();
+        MessageFeature second = new MessageFeature("+27838884567", "Same length C");
+        second.sentMessage();
+
+        List<MessageFeature> visited = new ArrayList<>();
+        MessageStore.Entry longest = store.maxSentOrStored(msg -> {
+            visited.add(msg);
+            return msg.getMessagePayload().length();
+        });
+        assertEquals(3, visited.size(), "A sent and stored message should be measured once.");
+        assertSame(first, longest.message, "Ties should go to the first sent message by index.");
+        assertEquals("Same length B", MessageFeature.findLongestSentMessage());
+    }
+
+    @Test
+    void testAddAllSent_MatchesAddingOneAtATime(@TempDir Path tempDir) {
+        List<MessageFeature> batch = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            batch.add(new MessageFeature(String.format("+27%09d", i % 13), "Batched message " + i));
+        }
+        MessageFeature.sendAll(batch);
+
+        List<MessageFeature> sent = store.sentMessages();
+        assertEquals(batch, sent, "A batch should be listed in the order it was given.");
+        for (MessageFeature msg : batch) {
+            assertSame(msg, store.findById(msg.getMessageID()).message);
+        }
+        assertEquals(8, store.findByRecipient("+27000000000").size());
+
+        // Storing the batch keeps one entry per message, in the original order
+        MessageFeature draft = new MessageFeature("+27000000000", "Draft after the batch");
+        List<MessageFeature> toStore = new ArrayList<>(batch);
+        toStore.add(draft);
+        File previous = MessageFeature.getDataDirectory();
+        MessageFeature.setDataDirectory(tempDir.toFile());
+        try {
+            MessageFeature.storeAll(toStore);
+        } finally {
+            MessageFeature.setDataDirectory(previous);
+        }
+        assertEquals(100, store.sentCount());
+        assertEquals(101, store.storedCount());
+        assertEquals(toStore, store.sentOrStoredMessages());
+    }
+
+    @Test
+    void testFindById_PrefersSentMessage() {
+        MessageFeature draft = new MessageFeature("+27838884567", "Just a draft");
+        draft.storeMessage();
+        assertSame(draft, store.findById(draft.getMessageID()).message);
+        assertFalse(store.findById(draft.getMessageID()).sent);
+
+        MessageFeature disregarded = new MessageFeature("+27838884567", "Ignore me");
+        disregarded.disregardMessage();
+        assertNull(store.findById(disregarded.getMessageID()), "Disregarded messages are not searchable by ID.");
+    }
+
+    @Test
+    void testConcurrentSends_AssignUniqueIndexes() throws InterruptedException {
+        int threads = 4;
+        int perThread = 500;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    new MessageFeature(String.format("+27%09d", offset * 1000 + i % 50), "Parallel send " + i).sentMessage();
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        List<MessageFeature> sent = store.sentMessages();
+        assertEquals(threads * perThread, sent.size());
+        assertEquals(threads * perThread, MessageFeature.returnTotalMessages());
+        Set<Integer> indexes = new HashSet<>();
+        for (int i = 0; i < sent.size(); i++) {
+            indexes.add(sent.get(i).getMessageIndex());
+            assertEquals(i + 1, sent.get(i).getMessageIndex(), "Merged sent list should be in index order.");
+        }
+        assertEquals(threads * perThread, indexes.size());
+    }
+}
@@ -0,0 +1,181 @@
+package st10457602;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the message browser's table model: its pages of the store, its cell values and sorting.
+ *
+ * @author Angela
+ */
+public class MessageTableModelTest {
+
+    @BeforeEach
+    public void setUp() {
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @Test
+    void testFromStore_ListsEveryMessageOnce() {
+        MessageFeature sent = new MessageFeature("+27834557896", "Did you get the cake?");
+        sent.sentMessage();
+        sent.storeMessage(); // Sent and stored, but listed once
+        new MessageFeature("+27838884567", "Where are you? You are late! I have asked you to be on time.").storeMessage();
+        new MessageFeature("+27834484567", "Yohoooo, I am at your gate.").disregardMessage();
+
+        MessageTableModel model = MessageTableModel.fromStore();
+        assertEquals(3, model.getRowCount());
+        assertEquals(6, model.getColumnCount());
+        // Store order follows the shards, so find the rows rather than assume their positions
+        int row = rowOf(model, sent);
+        assertEquals(1, model.getValueAt(row, MessageTableModel.INDEX_COLUMN));
+        assertEquals("+27834557896", model.getValueAt(row, MessageTableModel.RECIPIENT_COLUMN));
+        assertEquals(21, model.getValueAt(row, MessageTableModel.LENGTH_COLUMN));
+        assertEquals("Sent", model.getValueAt(row, MessageTableModel.STATUS_COLUMN));
+        assertEquals(sent.getMessageHash(), model.getValueAt(row, MessageTableModel.HASH_COLUMN));
+        assertEquals("Did you get the cake?", model.getValueAt(row, MessageTableModel.MESSAGE_COLUMN));
+        Set<Object> statuses = new HashSet<>();
+        for (int r = 0; r < 3; r++) {
+            statuses.add(model.getValueAt(r, MessageTableModel.STATUS_COLUMN));
+        }
+        assertEquals(Set.of("Sent", "Stored", "Disregarded"), statuses);
+        assertNull(model.getValueAt(3, MessageTableModel.STATUS_COLUMN), "Rows past the end of the store should be blank.");
+    }
+
+    @Test
+    void testFromStore_ReadsOnlyAPageOfRowsAtATime() {
+        int n = MessageTableModel.PAGE_SIZE * 5 + 17;
+        Map<MessageFeature, Boolean> messages = new IdentityHashMap<>();
+        for (int i = 0; i < n; i++) {
+            MessageFeature msg = new MessageFeature("+27" + (100_000_000 + i * 7919), "message " + i);
+            msg.sentMessage();
+            messages.put(msg, Boolean.TRUE);
+        }
+        // Remove a few, leaving gaps in the shards' slots
+        for (int i = 0; i < n; i += 50) {
+            MessageFeature.removeMessageByHash(MessageFeature.getSentMessagesForTesting().get(i).getMessageHash());
+        }
+        MessageTableModel model = MessageTableModel.fromStore();
+        assertEquals(MessageFeature.countAllMessages(), model.getRowCount());
+        assertTrue(model.getRowCount() < n);
+
+        Map<MessageFeature, Boolean> seen = new IdentityHashMap<>();
+        for (int row = model.getRowCount() - 1; row >= 0; row--) {
+            MessageFeature msg = model.getMessageAt(row);
+            assertNotNull(msg);
+            assertTrue(messages.containsKey(msg));
+            assertNull(seen.put(msg, Boolean.TRUE), "Every message should be listed once.");
+            assertTrue(model.heldRowCount() <= MessageTableModel.PAGE_SIZE, "Only a page of rows should be held.");
+        }
+        assertEquals(model.getRowCount(), seen.size());
+    }
+
+    @Test
+    void testSortBy_TogglesDirectionAndNotifies() {
+        MessageFeature[] rows = {
+            new MessageFeature("+27000000003", "bb"),
+            new MessageFeature("+27000000001", "a"),
+            new MessageFeature("+27000000002", "cccc")
+        };
+        MessageTableModel model = new MessageTableModel(rows);
+        AtomicInteger changes = new AtomicInteger();
+        model.addTableModelListener(e -> {
+            if (e.getFirstRow() == 0 && e.getLastRow() == Integer.MAX_VALUE && e.getType() == TableModelEvent.UPDATE) {
+                changes.incrementAndGet();
+            }
+        });
+
+        sortAndWait(model, MessageTableModel.RECIPIENT_COLUMN);
+        assertEquals("+27000000001", model.getValueAt(0, MessageTableModel.RECIPIENT_COLUMN));
+        assertTrue(model.isAscending());
+        sortAndWait(model, MessageTableModel.RECIPIENT_COLUMN);
+        assertEquals("+27000000003", model.getValueAt(0, MessageTableModel.RECIPIENT_COLUMN));
+        assertFalse(model.isAscending());
+        sortAndWait(model, MessageTableModel.LENGTH_COLUMN);
+        assertEquals(1, model.getValueAt(0, MessageTableModel.LENGTH_COLUMN));
+        assertEquals(4, model.getValueAt(2, MessageTableModel.LENGTH_COLUMN));
+        assertEquals(3, changes.get(), "Every sort should tell the table to repaint.");
+
+        assertFalse(model.isSortable(MessageTableModel.MESSAGE_COLUMN));
+        assertThrows(IllegalArgumentException.class, () -> model.sortBy(MessageTableModel.MESSAGE_COLUMN));
+    }
+
+    @Test
+    void testRefresh_KeepsSortAndPicksUpNewMessages() throws Exception {
+        new MessageFeature("+27000000002", "first").sentMessage();
+        MessageTableModel model = MessageTableModel.fromStore();
+        sortAndWait(model, MessageTableModel.INDEX_COLUMN);
+        sortAndWait(model, MessageTableModel.INDEX_COLUMN); // Descending
+
+        new MessageFeature("+27000000001", "second").sentMessage();
+        CountDownLatch sorted = awaitChanges(model, 2); // The refresh itself, then the sort
+        SwingUtilities.invokeAndWait(model::refresh);
+        assertTrue(sorted.await(10, TimeUnit.SECONDS));
+        assertEquals(2, model.getRowCount());
+        assertEquals(2, model.getValueAt(0, MessageTableModel.INDEX_COLUMN), "The newest message should sort first.");
+    }
+
+    @Test
+    void testMillionRows_SortOffTheEventThread() {
+        int n = 1_000_000;
+        MessageFeature[] rows = new MessageFeature[n];
+        String[] payloads = {"short", "a little longer", "the longest payload of them all"};
+        for (int i = 0; i < n; i++) {
+            rows[i] = new MessageFeature("+27" + (100_000_000 + (int) ((i * 7919L) % n)), payloads[i % 3]);
+        }
+        MessageTableModel model = new MessageTableModel(rows);
+        sortAndWait(model, MessageTableModel.RECIPIENT_COLUMN);
+        assertEquals("+27100000000", model.getValueAt(0, MessageTableModel.RECIPIENT_COLUMN));
+        assertEquals("+27100999999", model.getValueAt(n - 1, MessageTableModel.RECIPIENT_COLUMN));
+        sortAndWait(model, MessageTableModel.LENGTH_COLUMN);
+        assertEquals(5, model.getValueAt(0, MessageTableModel.LENGTH_COLUMN));
+        assertEquals(31, model.getValueAt(n - 1, MessageTableModel.LENGTH_COLUMN));
+    }
+
+    private static int rowOf(MessageTableModel model, MessageFeature msg) {
+        for (int row = 0; row < model.getRowCount(); row++) {
+            if (model.getMessageAt(row) == msg) {
+                return row;
+            }
+        }
+        fail("The message should be listed.");
+        return -1;
+    }
+
+    // Sorts on the event dispatch thread, as a header click does, and waits for the sorted rows
+    private static void sortAndWait(MessageTableModel model, int column) {
+        CountDownLatch sorted = awaitChanges(model, 1);
+        try {
+            SwingUtilities.invokeAndWait(() -> model.sortBy(column));
+            assertTrue(sorted.await(30, TimeUnit.SECONDS), "The sort should complete.");
+            SwingUtilities.invokeAndWait(() -> { }); // Let the other listeners hear of it too
+        } catch (InterruptedException | InvocationTargetException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static CountDownLatch awaitChanges(MessageTableModel model, int changes) {
+        CountDownLatch latch = new CountDownLatch(changes);
+        model.addTableModelListener(e -> latch.countDown());
+        return latch;
+    }
+}
@@ -0,0 +1,105 @@
+package st10457602;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The cost of the metrics on the cheapest instrumented operations, timed with metrics on and off
+ * in alternating rounds. Every call made with metrics on must be counted, and the overhead must
+ * stay under the 2% target, or -Dquickchat.metrics.maxOverheadPercent if given. Every operation is
+ * measured before the benchmark fails, so a failure lists the gap for each operation that missed.
+ * The target is not met yet: across the last runs the metrics cost 10 to 20ns a call, 4-9% of a
+ * search by ID or a missed delete and up to 14% of a rejected send, though the rejected send also
+ * came in under the target on one run. Run it explicitly with {@code mvn test -Dtest=MetricsBenchmark}.
+ *
+ * @author Angela
+ */
+@Tag("benchmark")
+public class MetricsBenchmark {
+
+    private static final int MESSAGES = 10_000;
+    private static final int ITERATIONS = 2_000_000;
+    private static final int ROUNDS = 5;
+    private static final double TARGET_PERCENT = 2;
+    private static final double MAX_OVERHEAD_PERCENT =
+            Double.parseDouble(System.getProperty("quickchat.metrics.maxOverheadPercent", String.valueOf(TARGET_PERCENT)));
+
+    @AfterEach
+    public void tearDown() {
+        QuickChatMetrics.getInstance().setEnabled(true);
+        QuickChatMetrics.getInstance().reset();
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @Test
+    void benchmarkOverhead() {
+        MessageFeature.resetMessageCounterForTesting();
+        String[] ids = new String[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            MessageFeature msg = new MessageFeature("+27" + (800_000_000 + i % 500), "Benchmark message " + i);
+            msg.sentMessage();
+            ids[i] = msg.getMessageID();
+        }
+        ArrayList<String> hashes = MessageFeature.getAllMessageHashes();
+
+        List<String> missed = new ArrayList<>();
+        System.out.printf("%-16s %12s %12s %10s %8s%n", "operation", "off ns/op", "on ns/op", "overhead", "target");
+        compare(missed, "searchById", QuickChatMetrics.Operation.SEARCH_BY_ID, i -> MessageFeature.searchMessageByID(ids[i % MESSAGES]).length(), ITERATIONS);
+        compare(missed, "searchByRecipient", QuickChatMetrics.Operation.SEARCH_BY_RECIPIENT, i -> MessageFeature.searchMessagesByRecipient("+27" + (800_000_000 + i % 500)).length(), ITERATIONS / 100);
+        compare(missed, "delete (miss)", QuickChatMetrics.Operation.DELETE, i -> MessageFeature.removeMessageByHash(hashes.get(i % MESSAGES) + "x") == null ? 1 : 0, ITERATIONS);
+        compare(missed, "send (rejected)", QuickChatMetrics.Operation.SEND, i -> new MessageFeature("0800000000", "Rejected before it reaches the store").send().ordinal(), ITERATIONS);
+        assertTrue(missed.isEmpty(), "Metrics overhead above " + MAX_OVERHEAD_PERCENT + "%: " + missed);
+    }
+
+    // Times an operation with metrics on and off, adding it to missed if the overhead is too high
+    private static void compare(List<String> missed, String operation, QuickChatMetrics.Operation instrumented,
+                                Operation body, int iterations) {
+        QuickChatMetrics metrics = QuickChatMetrics.getInstance();
+        metrics.reset();
+        double off = Double.MAX_VALUE;
+        double on = Double.MAX_VALUE;
+        // Alternate which side goes first so that drift affects both; keep the best round of each
+        for (int round = 0; round < 2 * ROUNDS; round++) {
+            boolean enabled = (round & 1) == 0;
+            metrics.setEnabled(enabled);
+            double nanos = time(body, iterations);
+            if (enabled) {
+                on = Math.min(on, nanos);
+            } else {
+                off = Math.min(off, nanos);
+            }
+        }
+        double overhead = (on - off) / off * 100;
+        System.out.printf("%-16s %12.1f %12.1f %9.2f%% %8s%n", operation, off, on, overhead,
+                overhead < TARGET_PERCENT ? "met" : "missed");
+        assertEquals((long) ROUNDS * iterations, metrics.getLatency(instrumented).getCount(),
+                operation + ": every call made with metrics on should be counted");
+        if (overhead >= MAX_OVERHEAD_PERCENT) {
+            missed.add(String.format("%s %.2f%% (%.1f ns/op)", operation, overhead, on - off));
+        }
+    }
+
+    private static double time(Operation body, int iterations) {
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += body.run(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == Long.MIN_VALUE) {
+            throw new AssertionError(); // Keeps the result live
+        }
+        return (double) elapsed / iterations;
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        int run(int i);
+    }
+}
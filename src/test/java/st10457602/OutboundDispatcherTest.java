@@ -0,0 +1,266 @@
+package st10457602;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the OutboundDispatcher queue, its rate limits and its use by MessageFeature.sentMessage().
+ *
+ * @author Angela
+ */
+public class OutboundDispatcherTest {
+
+    private static final String RECIPIENT = "+27718693002";
+
+    @BeforeEach
+    public void setUp() {
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MessageFeature.setOutboundDispatcher(null);
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @Test
+    void testTokenBucket_AllowsBurstThenLimits() {
+        TokenBucket bucket = new TokenBucket(1, 3);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire(), "A drained bucket should refuse until it refills.");
+        assertFalse(bucket.isFull());
+    }
+
+    @Test
+    void testSubmit_DeliversThroughGateway() throws InterruptedException {
+        StubSmsGateway gateway = new StubSmsGateway();
+        OutboundDispatcher dispatcher = new OutboundDispatcher(gateway, 10, 1, 1_000, 1_000,
+                OutboundDispatcher.OverflowPolicy.FAIL_FAST);
+        MessageFeature.setOutboundDispatcher(dispatcher);
+
+        MessageFeature msg = new MessageFeature(RECIPIENT, "Hello World!");
+        assertEquals("Message successfully sent.", msg.sentMessage());
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(1, gateway.getDeliveredCount());
+        assertEquals(1, dispatcher.getDeliveredCount());
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+
+    @Test
+    void testFailFast_RejectsWhenQueueIsFullWithoutUsingAnIndex() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        SmsGateway stuck = (recipient, payload) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        OutboundDispatcher dispatcher = new OutboundDispatcher(stuck, 2, 1, 1_000, 1_000,
+                OutboundDispatcher.OverflowPolicy.FAIL_FAST);
+        MessageFeature.setOutboundDispatcher(dispatcher);
+
+        // One message is held by the stuck worker, two more fill the queue
+        assertEquals("Message successfully sent.", new MessageFeature(RECIPIENT, "one").sentMessage());
+        waitUntil(() -> dispatcher.getQueueDepth() == 0);
+        assertEquals("Message successfully sent.", new MessageFeature(RECIPIENT, "two").sentMessage());
+        assertEquals("Message successfully sent.", new MessageFeature(RECIPIENT, "three").sentMessage());
+
+        MessageFeature rejected = new MessageFeature(RECIPIENT, "four");
+        assertEquals("Failed to send message: Outbound queue is full, please try again later", rejected.sentMessage());
+        assertEquals(0, rejected.getMessageIndex(), "A rejected message should not be given an index.");
+        assertEquals("New", rejected.getMessageStatus());
+        assertEquals(3, MessageFeature.returnTotalMessages());
+        assertEquals(1, dispatcher.getDroppedQueueFullCount());
+
+        release.countDown();
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(3, dispatcher.getDeliveredCount());
+    }
+
+    @Test
+    void testRecipientRateLimit_RejectsFloodToOneRecipient() {
+        OutboundDispatcher dispatcher = new OutboundDispatcher(new StubSmsGateway(), 100, 1, 1_000, 2,
+                OutboundDispatcher.OverflowPolicy.FAIL_FAST);
+        MessageFeature.setOutboundDispatcher(dispatcher);
+
+        assertEquals("Message successfully sent.", new MessageFeature(RECIPIENT, "one").sentMessage());
+        assertEquals("Message successfully sent.", new MessageFeature(RECIPIENT, "two").sentMessage());
+        assertEquals("Failed to send message: Too many messages to this recipient, please try again later",
+                new MessageFeature(RECIPIENT, "three").sentMessage());
+        assertEquals("Message successfully sent.", new MessageFeature("+27834557896", "other").sentMessage(),
+                "Other recipients should not be affected by one recipient's limit.");
+        assertEquals(1, dispatcher.getDroppedRateLimitedCount());
+        dispatcher.close();
+    }
+
+    @Test
+    void testRejectedAdmissions_DoNotUseTheRecipientsToken() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        SmsGateway stuck = (recipient, payload) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        // One message per recipient per hundred seconds
+        OutboundDispatcher dispatcher = new OutboundDispatcher(stuck, 1, 1, 1_000, 0.01,
+                OutboundDispatcher.OverflowPolicy.FAIL_FAST);
+        assertEquals(OutboundDispatcher.Admission.QUEUED, dispatcher.submit(new MessageFeature("+27834557896", "one"), () -> { }));
+        waitUntil(() -> dispatcher.getQueueDepth() == 0);
+        assertEquals(OutboundDispatcher.Admission.QUEUED, dispatcher.submit(new MessageFeature("+27834557897", "two"), () -> { }));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(OutboundDispatcher.Admission.QUEUE_FULL, dispatcher.submit(new MessageFeature(RECIPIENT, "full"), () -> { }));
+        }
+
+        release.countDown();
+        waitUntil(() -> dispatcher.getQueueDepth() == 0);
+        assertEquals(OutboundDispatcher.Admission.QUEUED, dispatcher.submit(new MessageFeature(RECIPIENT, "at last"), () -> { }),
+                "Messages that were never queued should not count against the recipient.");
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(3, dispatcher.getDeliveredCount());
+    }
+
+    @Test
+    void testShutdown_DeliversAMessageAdmittedWhileClosing() throws InterruptedException {
+        StubSmsGateway gateway = new StubSmsGateway();
+        OutboundDispatcher dispatcher = new OutboundDispatcher(gateway, 10, 1, 1_000, 1_000,
+                OutboundDispatcher.OverflowPolicy.FAIL_FAST);
+        CountDownLatch admitted = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        Thread submitter = new Thread(() -> dispatcher.submit(new MessageFeature(RECIPIENT, "Last one"), () -> {
+            admitted.countDown();
+            try {
+                proceed.await(); // Paused between the closed check and the queue
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        submitter.start();
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+
+        AtomicBoolean drained = new AtomicBoolean();
+        Thread closer = new Thread(() -> {
+            try {
+                drained.set(dispatcher.shutdown(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        closer.start();
+        Thread.sleep(300); // Longer than a worker's poll, so it would have seen the queue empty and closed
+        proceed.countDown();
+        submitter.join();
+        closer.join();
+
+        assertTrue(drained.get(), "Shutdown should report the queue drained only once it has.");
+        assertEquals(1, dispatcher.getQueuedCount());
+        assertEquals(1, gateway.getDeliveredCount(), "A message admitted before the dispatcher closed should be delivered.");
+    }
+
+    @Test
+    void testShutdown_CountsMessagesHeldOnTheRateLimitAsFailed() throws InterruptedException {
+        StubSmsGateway gateway = new StubSmsGateway();
+        // One delivery every ten seconds: the first goes at once, the rest wait on the global limit
+        OutboundDispatcher dispatcher = new OutboundDispatcher(gateway, 10, 2, 0.1, 1_000,
+                OutboundDispatcher.OverflowPolicy.FAIL_FAST);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(OutboundDispatcher.Admission.QUEUED,
+                    dispatcher.submit(new MessageFeature("+2783455789" + i, "message " + i), () -> { }));
+        }
+        waitUntil(() -> dispatcher.getDeliveredCount() == 1 && dispatcher.getQueueDepth() == 1);
+
+        assertFalse(dispatcher.shutdown(200, TimeUnit.MILLISECONDS),
+                "Messages held by workers on the rate limit have not been delivered.");
+        waitUntil(() -> dispatcher.getFailedCount() == 3);
+        assertEquals(1, gateway.getDeliveredCount());
+        assertEquals(1, dispatcher.getDeliveredCount());
+        assertEquals(0, dispatcher.getQueueDepth());
+        assertEquals(dispatcher.getQueuedCount(), dispatcher.getDeliveredCount() + dispatcher.getFailedCount(),
+                "Every queued message should be either delivered or counted as failed.");
+    }
+
+    @Test
+    void testBlockingPolicy_WaitsForSpace() throws InterruptedException {
+        OutboundDispatcher dispatcher = new OutboundDispatcher(new StubSmsGateway(), 1, 1, 200, 1_000,
+                OutboundDispatcher.OverflowPolicy.BLOCK);
+        MessageFeature.setOutboundDispatcher(dispatcher);
+
+        // The global limit paces deliveries, so later submitters must wait for a slot rather than fail
+        for (int i = 0; i < 20; i++) {
+            assertEquals("Message successfully sent.", new MessageFeature(RECIPIENT, "message " + i).sentMessage());
+        }
+        assertEquals(0, dispatcher.getDroppedQueueFullCount());
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(20, dispatcher.getDeliveredCount());
+    }
+
+    /**
+     * Soak test: producers offer far more than the global limit for a sustained period.
+     * The queue, the per-recipient buckets and the store must all stay bounded while the
+     * excess is dropped and counted. The duration can be raised with -Dquickchat.soak.seconds.
+     */
+    @Test
+    void testSoak_SustainedOverloadStaysBounded() throws InterruptedException {
+        int queueCapacity = 500;
+        int maxTrackedRecipients = 5_000;
+        long seconds = Long.getLong("quickchat.soak.seconds", 2);
+        OutboundDispatcher dispatcher = new OutboundDispatcher(new StubSmsGateway(), queueCapacity, 2, 2_000, 5,
+                OutboundDispatcher.OverflowPolicy.FAIL_FAST, maxTrackedRecipients);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger maxDepth = new AtomicInteger();
+        Thread[] producers = new Thread[3];
+        for (int p = 0; p < producers.length; p++) {
+            producers[p] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    // Build the message without sending it, so the soak does not grow the store
+                    MessageFeature msg = new MessageFeature("+27" + (100_000_000 + random.nextInt(1_000_000)), "Soak");
+                    dispatcher.submit(msg, () -> { });
+                    maxDepth.accumulateAndGet(dispatcher.getQueueDepth(), Math::max);
+                }
+            });
+            producers[p].start();
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        running.set(false);
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        long offered = dispatcher.getQueuedCount() + dispatcher.getDroppedQueueFullCount() + dispatcher.getDroppedRateLimitedCount();
+        assertTrue(maxDepth.get() <= queueCapacity, "Queue depth should never exceed its capacity.");
+        assertTrue(dispatcher.getDroppedQueueFullCount() > 0, "Load above the limit should be dropped, not buffered.");
+        assertTrue(dispatcher.getDeliveredCount() <= dispatcher.getQueuedCount());
+        assertTrue(dispatcher.getDeliveredCount() <= 2_000 * (seconds + 6), "Deliveries should respect the global rate.");
+        assertTrue(offered > dispatcher.getDeliveredCount());
+
+        // Once the buckets have refilled, the next new recipient sweeps the idle ones away
+        Thread.sleep(1_100);
+        dispatcher.submit(new MessageFeature("+27999999999", "Sweep"), () -> { });
+        assertTrue(dispatcher.getTrackedRecipientCount() <= maxTrackedRecipients, "Recipient buckets should not grow without bound.");
+
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(dispatcher.getQueuedCount(), dispatcher.getDeliveredCount(), "Every queued message should be delivered.");
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for the dispatcher.");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package st10457602;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the off-heap payload arena, directly and through MessageFeature.
+ *
+ * @author Angela
+ */
+public class PayloadArenaTest {
+
+    @AfterEach
+    public void tearDown() {
+        MessageFeature.setOffHeapPayloads(false);
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @Test
+    void testAddAndGet_ReturnEveryPayloadExactly() {
+        PayloadArena arena = new PayloadArena(1024);
+        String[] payloads = {"", "Did you get the cake?", "Caf\u00e9 \u00ff", "Party \uD83C\uDF89!", "Broken \uD83C end \uDF89",
+                "x".repeat(1020), "\u20ac".repeat(300)};
+        long[] addresses = new long[payloads.length];
+        for (int i = 0; i < payloads.length; i++) {
+            addresses[i] = arena.add(payloads[i]);
+        }
+        for (int i = 0; i < payloads.length; i++) {
+            assertTrue(addresses[i] >= 0, payloads[i]);
+            assertEquals(payloads[i], arena.get(addresses[i]));
+            assertEquals(payloads[i].length(), arena.length(addresses[i]));
+        }
+        assertTrue(arena.reservedBytes() >= 3 * 1024, "Payloads that do not fit should start a new chunk.");
+        assertEquals(-1, arena.add("x".repeat(1021)), "A payload longer than a chunk should stay on the heap.");
+        assertEquals(-1, arena.add("\u20ac".repeat(511)));
+    }
+
+    @Test
+    void testConcurrentAdds_GetTheirOwnRanges() throws InterruptedException {
+        PayloadArena arena = new PayloadArena(4096);
+        Map<Long, String> added = new ConcurrentHashMap<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 5_000; i++) {
+                    String payload = "Thread " + thread + " message " + i + (i % 7 == 0 ? " \u20ac" : "");
+                    added.put(arena.add(payload), payload);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(20_000, added.size(), "Every payload should have its own address.");
+        added.forEach((address, payload) -> assertEquals(payload, arena.get(address)));
+    }
+
+    @Test
+    void testOffHeapMessages_BehaveLikeOnHeapOnes() {
+        MessageFeature.setOffHeapPayloads(true);
+        MessageFeature sent = new MessageFeature("+27834557896", "Did you get the cake?");
+        assertEquals(MessageOutcome.SENT, sent.send());
+        MessageFeature draft = new MessageFeature("+27838884567", "Where are you? You are late! I have asked you to be on time.");
+        MessageFeature.addAllStoredInMemory(List.of(draft));
+        MessageFeature empty = new MessageFeature("+27838884567", "   ");
+        assertEquals(MessageOutcome.SEND_EMPTY_PAYLOAD, empty.send());
+
+        assertEquals("Did you get the cake?", sent.getMessagePayload());
+        assertEquals(sent.createMessageHash(sent.getMessageID(), sent.getMessageIndex(), "Did you get the cake?"), sent.getMessageHash());
+        assertEquals(draft.getMessagePayload(), MessageFeature.findLongestSentMessage());
+        assertSame(sent, MessageFeature.removeMessageByHash(sent.getMessageHash()));
+    }
+}
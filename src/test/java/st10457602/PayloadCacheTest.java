@@ -0,0 +1,152 @@
+package st10457602;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the byte-bounded W-TinyLFU payload cache.
+ *
+ * @author Angela
+ */
+public class PayloadCacheTest {
+
+    private static PayloadCache<Integer, String> cache(long bytes) {
+        return new PayloadCache<>(bytes, String::length);
+    }
+
+    private static String payload(int chars) {
+        return "x".repeat(chars);
+    }
+
+    @Test
+    void testGet_LoadsOnceAndCountsHitsAndMisses() {
+        PayloadCache<Integer, String> cache = cache(1 << 20);
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("Did you get the cake?", cache.get(7, key -> {
+                loads.incrementAndGet();
+                return "Did you get the cake?";
+            }));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(2, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(21, cache.weightedSize());
+    }
+
+    @Test
+    void testGet_NullIsNotCached() {
+        PayloadCache<Integer, String> cache = cache(1 << 20);
+        assertNull(cache.get(1, key -> null));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    void testPut_StaysWithinItsBytesAndCountsEvictions() {
+        PayloadCache<Integer, String> cache = cache(64 << 10);
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(i, payload(100));
+            assertTrue(cache.weightedSize() <= cache.maximumBytes());
+        }
+        assertTrue(cache.size() <= (64 << 10) / 100);
+        assertEquals(10_000, cache.size() + cache.evictionCount());
+    }
+
+    @Test
+    void testPut_ValueHeavierThanTheCacheIsNotKept() {
+        PayloadCache<Integer, String> cache = cache(64 << 10);
+        cache.put(1, payload(100));
+        cache.put(2, payload(100 << 10));
+        assertNull(cache.getIfPresent(2));
+        cache.put(1, payload(100 << 10));
+        assertNull(cache.getIfPresent(1), "A value that outgrew the cache should be dropped.");
+        assertEquals(0, cache.weightedSize());
+    }
+
+    @Test
+    void testEviction_FrequentEntriesSurviveAScan() {
+        PayloadCache<Integer, String> cache = cache(64 << 10);
+        // 100 popular payloads, each read many times
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 100; i++) {
+                cache.get(i, key -> payload(100));
+            }
+        }
+        // A one-off scan of several times what fits
+        for (int i = 1_000; i < 6_000; i++) {
+            cache.get(i, key -> payload(100));
+        }
+        cache.resetCounts();
+        for (int i = 0; i < 100; i++) {
+            cache.get(i, key -> payload(100));
+        }
+        assertTrue(cache.hitCount() >= 95, "Popular payloads should not be flushed out: " + cache.hitCount() + " hits");
+    }
+
+    @Test
+    void testInvalidateAndClear() {
+        PayloadCache<Integer, String> cache = cache(1 << 20);
+        cache.put(1, "Where are you?");
+        cache.put(2, "It is dinner time !");
+        cache.invalidate(1);
+        assertNull(cache.getIfPresent(1));
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.evictionCount(), "Invalidation is not an eviction.");
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weightedSize());
+    }
+
+    @Test
+    void testGet_DoesNotCacheAValueInvalidatedWhileLoading() {
+        PayloadCache<Integer, String> cache = cache(1 << 20);
+        // The message keeps its payload, and forgets the cached one, while the old one is read
+        assertEquals("stale", cache.get(1, key -> {
+            cache.invalidate(key);
+            return "stale";
+        }));
+        assertNull(cache.getIfPresent(1), "A value loaded across an invalidation may be stale and should not be cached.");
+        assertEquals("stale", cache.get(2, key -> {
+            cache.clear();
+            return "stale";
+        }));
+        assertNull(cache.getIfPresent(2), "A value loaded across a clear should not be cached.");
+
+        assertEquals("fresh", cache.get(1, key -> "fresh"));
+        assertEquals("fresh", cache.getIfPresent(1), "Loads that nothing interrupts are still cached.");
+    }
+
+    @Test
+    void testConcurrentLookups_StayConsistent() throws Exception {
+        PayloadCache<Integer, String> cache = cache(256 << 10);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int seed = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 50_000; i++) {
+                        int key = (i * 31 + seed) % 5_000;
+                        assertEquals(String.valueOf(key), cache.get(key, String::valueOf));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(200_000, cache.hitCount() + cache.missCount());
+        assertTrue(cache.weightedSize() <= cache.maximumBytes());
+    }
+}
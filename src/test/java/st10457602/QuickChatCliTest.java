@@ -0,0 +1,143 @@
+package st10457602;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the headless command-line mode. Each run loads the data directory afresh, as a new
+ * process would.
+ *
+ * @author Angela
+ */
+public class QuickChatCliTest {
+
+    private File previousDataDirectory;
+    private Path dataDirectory;
+    private String out;
+    private String err;
+
+    @BeforeEach
+    public void setUp(@TempDir Path tempDir) {
+        previousDataDirectory = MessageFeature.getDataDirectory();
+        dataDirectory = tempDir;
+        MessageFeature.setDataDirectory(tempDir.toFile());
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MessageFeature.setLazyPayloadLoading(false);
+        MessageFeature.resetMessageCounterForTesting();
+        MessageFeature.setDataDirectory(previousDataDirectory);
+    }
+
+    private int run(String input, String... args) {
+        List<String> command = new ArrayList<>(List.of("--data-dir", dataDirectory.toString()));
+        command.addAll(List.of(args));
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        int status = QuickChatCli.run(command.toArray(new String[0]),
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+                new PrintStream(stdout, true, StandardCharsets.UTF_8), new PrintStream(stderr, true, StandardCharsets.UTF_8));
+        out = stdout.toString(StandardCharsets.UTF_8);
+        err = stderr.toString(StandardCharsets.UTF_8);
+        return status;
+    }
+
+    private String lineAfter(String prefix) {
+        for (String line : out.split("\n")) {
+            if (line.startsWith(prefix)) {
+                return line.substring(prefix.length());
+            }
+        }
+        return fail("No line starting with " + prefix + " in: " + out);
+    }
+
+    @Test
+    void testSend_IsSeenByLaterRuns() {
+        assertEquals(QuickChatCli.OK, run("", "send", "+27834557896", "Did you get the cake?"));
+        assertTrue(out.startsWith("Message successfully sent.\n"));
+        String id = lineAfter("Message ID: ");
+
+        assertEquals(QuickChatCli.OK, run("", "search-id", id));
+        assertEquals("Message Found (Sent):\nRecipient: +27834557896\nMessage: \"Did you get the cake?\"\n", out);
+
+        assertEquals(QuickChatCli.OK, run("", "report", "--format", "csv"));
+        assertTrue(out.contains("+27834557896"));
+        assertTrue(out.contains("Did you get the cake?"));
+        assertEquals("", err);
+    }
+
+    @Test
+    void testStore_ReadsPayloadFromStandardInputAndCanBeDeleted() {
+        assertEquals(QuickChatCli.OK, run("Where are you? You are late!\n", "--lazy", "store", "+27838884567"));
+        assertTrue(out.startsWith("Message successfully stored.\n"));
+        String hash = lineAfter("Message Hash: ");
+
+        assertEquals(QuickChatCli.OK, run("", "--lazy", "search-recipient", "+27838884567"));
+        assertEquals("--- Messages for Recipient: +27838884567 ---\nStored: \"Where are you? You are late!\"\n", out);
+
+        assertEquals(QuickChatCli.OK, run("", "delete", hash));
+        assertEquals("Message \"Where are you? You are late!\" successfully deleted.\n", out);
+        assertEquals(QuickChatCli.FAILED, run("", "search-recipient", "+27838884567"));
+        assertEquals("No messages found for recipient: +27838884567\n", err);
+    }
+
+    @Test
+    void testImport_FromStandardInputWritesSentAndStoredRows() {
+        String ndjson = "{\"MESSAGE_RECIPIENT\":\"+27834557896\",\"MESSAGE_PAYLOAD\":\"Did you get the cake?\",\"MESSAGE_STATUS\":\"Sent\"}\n"
+                + "{\"MESSAGE_RECIPIENT\":\"+27838884567\",\"MESSAGE_PAYLOAD\":\"It is dinner time !\",\"MESSAGE_STATUS\":\"Stored\"}\n"
+                + "{\"MESSAGE_RECIPIENT\":\"0838884567\",\"MESSAGE_PAYLOAD\":\"Wrong number\"}\n";
+        assertEquals(QuickChatCli.FAILED, run(ndjson, "import", "-", "--format", "ndjson"), "A rejected row fails the import.");
+        assertTrue(out.contains("1 sent, 1 stored, 0 disregarded, 1 rejected"));
+        assertTrue(err.contains("line 3: "));
+
+        assertEquals(QuickChatCli.OK, run("", "search-recipient", "+27834557896"));
+        assertTrue(out.contains("Sent: \"Did you get the cake?\""));
+        assertEquals(QuickChatCli.OK, run("", "search-recipient", "+27838884567"));
+        assertTrue(out.contains("Stored: \"It is dinner time !\""));
+    }
+
+    @Test
+    void testFailuresAndUsage() {
+        assertEquals(QuickChatCli.FAILED, run("", "send", "08575975889", "Hi"));
+        assertEquals(MessageOutcome.SEND_INVALID_RECIPIENT.describe() + "\n", err);
+        assertEquals(QuickChatCli.FAILED, run("", "search-id", "0000000000"));
+        assertEquals(QuickChatCli.FAILED, run("", "delete", "00:0:NOPE"));
+
+        assertEquals(QuickChatCli.USAGE, run("", "fly"));
+        assertTrue(err.startsWith("Unknown command: fly\nUsage: "));
+        assertEquals(QuickChatCli.USAGE, run("", "report", "--format", "pdf"));
+        assertTrue(err.startsWith("Unknown format: pdf\n"));
+        assertEquals(QuickChatCli.USAGE, run("", "import", "-"));
+        assertEquals(QuickChatCli.USAGE, run("", "search-id"));
+    }
+
+    @Test
+    void testCommandLine_NeverLoadsAwtOrFlightRecorder() throws Exception {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-verbose:class", "-cp", System.getProperty("java.class.path"),
+                AngelaPOE.class.getName(), "--data-dir", dataDirectory.toString(), "--time", "report")
+                .redirectErrorStream(true)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(QuickChatCli.OK, process.waitFor(), output);
+        assertTrue(output.contains("Took "), output);
+        assertFalse(output.contains("java.awt."), "AWT was loaded.");
+        assertFalse(output.contains("javax.swing."), "Swing was loaded.");
+        assertFalse(output.contains("jdk.jfr.Event "), "Flight Recorder was started.");
+    }
+}
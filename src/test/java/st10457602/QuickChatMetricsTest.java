@@ -0,0 +1,174 @@
+package st10457602;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.management.ThreadMXBean;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Tests the latency histogram, the instrumented operations, the JMX export, and that recording
+ * does not allocate.
+ *
+ * @author Angela
+ */
+public class QuickChatMetricsTest {
+
+    private final QuickChatMetrics metrics = QuickChatMetrics.getInstance();
+
+    @BeforeEach
+    public void setUp() {
+        MessageFeature.resetMessageCounterForTesting();
+        metrics.setEnabled(true);
+        metrics.reset();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MessageFeature.resetMessageCounterForTesting();
+        QuickChatMetrics.setTimeEveryCall(false);
+        metrics.setEnabled(true);
+        metrics.reset();
+    }
+
+    @Test
+    void testBuckets_AreContiguousAndWithinThreePercent() {
+        for (int bucket = 1; bucket < 1888; bucket++) {
+            assertEquals(LatencyHistogram.highestValueIn(bucket - 1) + 1, LatencyHistogram.lowestValueIn(bucket));
+        }
+        long[] values = {0, 1, 31, 32, 33, 63, 64, 1000, 123_456, 987_654_321L, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(LatencyHistogram.lowestValueIn(bucket) <= value && value <= LatencyHistogram.highestValueIn(bucket));
+            assertTrue(LatencyHistogram.highestValueIn(bucket) - LatencyHistogram.lowestValueIn(bucket) <= value / 32 + 1);
+        }
+    }
+
+    @Test
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L); // 1us to 1000us
+        }
+        LatencySnapshot snapshot = histogram.snapshot(4000, 3);
+        assertEquals(4000, snapshot.getCount());
+        assertEquals(1000, snapshot.getSamples());
+        assertEquals(3, snapshot.getFailures());
+        assertEquals(500.5, snapshot.getMeanMicros(), 0.01);
+        assertEquals(500, snapshot.getP50Micros(), 500 * 0.04);
+        assertEquals(990, snapshot.getP99Micros(), 990 * 0.04);
+        assertEquals(1000, snapshot.getMaxMicros(), 0.001);
+        assertTrue(snapshot.getP999Micros() <= snapshot.getMaxMicros());
+
+        histogram.reset();
+        assertEquals(0, histogram.snapshot(0, 0).getSamples());
+        assertEquals(0, histogram.snapshot(0, 0).getP99Micros());
+    }
+
+    @Test
+    void testOperations_AreCountedWithFailures() {
+        QuickChatMetrics.setTimeEveryCall(true); // Failures are otherwise estimated from samples
+        MessageFeature msg = new MessageFeature("+27834557896", "Did you get the cake?");
+        msg.send();
+        new MessageFeature("08575975889", "Bad recipient").send();
+        msg.store();
+        MessageFeature.searchMessageByID(msg.getMessageID());
+        MessageFeature.searchMessageByID("0000000000");
+        MessageFeature.searchMessagesByRecipient("+27834557896");
+        MessageFeature.findLongestSentMessage();
+        MessageFeature.removeMessageByHash(msg.getMessageHash());
+        MessageFeature.removeMessageByHash("missing");
+
+        assertCount(QuickChatMetrics.Operation.SEND, 2, 1);
+        assertCount(QuickChatMetrics.Operation.STORE, 1, 0);
+        assertCount(QuickChatMetrics.Operation.SEARCH_BY_ID, 2, 1);
+        assertCount(QuickChatMetrics.Operation.SEARCH_BY_RECIPIENT, 1, 0);
+        assertCount(QuickChatMetrics.Operation.FIND_LONGEST, 1, 0);
+        assertCount(QuickChatMetrics.Operation.DELETE, 2, 1);
+
+        LoginFeature login = new LoginFeature(new RegistrationFeature());
+        login.loginUser("nobody", "Wrong1!");
+        assertCount(QuickChatMetrics.Operation.LOGIN, 1, 1);
+
+        metrics.setEnabled(false);
+        MessageFeature.searchMessageByID("0000000000");
+        assertCount(QuickChatMetrics.Operation.SEARCH_BY_ID, 2, 1);
+    }
+
+    @Test
+    void testSampledOperations_CountCallsExactlyAndEstimateFailures() {
+        MessageFeature msg = new MessageFeature("+27834557896", "Did you get the cake?");
+        msg.send();
+        int calls = 100_000;
+        for (int i = 0; i < calls; i++) {
+            MessageFeature.searchMessageByID(i % 4 == 0 ? "0000000000" : msg.getMessageID());
+        }
+        LatencySnapshot snapshot = metrics.getLatency(QuickChatMetrics.Operation.SEARCH_BY_ID);
+        assertEquals(calls, snapshot.getCount(), "Calls should be counted exactly even when only some are timed.");
+        // About 1,600 samples, so a quarter failing should be estimated well within a fifth
+        assertEquals(calls / 4, snapshot.getFailures(), calls / 20);
+        assertTrue(snapshot.getSamples() < calls / 10, "Only a sample of the calls should be timed.");
+    }
+
+    @Test
+    void testMBean_ExportsLatenciesAndGauges() throws Exception {
+        QuickChatMetrics.setTimeEveryCall(true);
+        MessageFeature msg = new MessageFeature("+27834557896", "Did you get the cake?");
+        msg.send();
+        new MessageFeature("+27838884567", "Where are you?").storeMessage();
+        new MessageFeature("+27834484567", "Yohoooo, I am at your gate.").disregardMessage();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(QuickChatMetrics.OBJECT_NAME);
+        assertTrue(server.isRegistered(name));
+        assertEquals(1, server.getAttribute(name, "SentMessages"));
+        assertEquals(1, server.getAttribute(name, "StoredMessages"));
+        assertEquals(1, server.getAttribute(name, "DisregardedMessages"));
+        assertEquals(1, server.getAttribute(name, "MessageDispatchCounter"));
+        assertEquals(LazyPayloads.cache().hitCount(), server.getAttribute(name, "PayloadCacheHits"));
+        assertEquals(LazyPayloads.cache().weightedSize(), server.getAttribute(name, "PayloadCacheBytes"));
+
+        TabularData latencies = (TabularData) server.getAttribute(name, "Latencies");
+        CompositeData send = (CompositeData) latencies.get(new Object[] {"send"}).get("value");
+        assertEquals(1L, send.get("count"));
+        assertEquals(1L, send.get("samples"));
+        assertTrue((Double) send.get("p99Micros") > 0);
+
+        server.invoke(name, "reset", null, null);
+        assertEquals(0, metrics.getLatency(QuickChatMetrics.Operation.SEND).getCount());
+    }
+
+    @Test
+    void testRecord_DoesNotAllocate() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+        ThreadMXBean allocations = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(allocations.isThreadAllocatedMemoryEnabled());
+        long threadId = Thread.currentThread().getId();
+        QuickChatMetrics.Operation search = QuickChatMetrics.Operation.SEARCH_BY_ID;
+
+        for (int i = 0; i < 200_000; i++) { // Warm up so the loop below is compiled
+            QuickChatMetrics.record(search, QuickChatMetrics.start(search), (i & 1) == 0);
+        }
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1_000_000; i++) {
+            QuickChatMetrics.record(search, QuickChatMetrics.start(search), (i & 1) == 0);
+        }
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+        assertTrue(allocated < 4096, "Recording a million latencies allocated " + allocated + " bytes.");
+    }
+
+    private void assertCount(QuickChatMetrics.Operation operation, long count, long failures) {
+        LatencySnapshot snapshot = metrics.getLatency(operation);
+        assertEquals(count, snapshot.getCount(), operation + " count");
+        assertEquals(failures, snapshot.getFailures(), operation + " failures");
+    }
+}
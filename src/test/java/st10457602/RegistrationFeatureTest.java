@@ -268,4 +268,27 @@ public class RegistrationFeatureTest {
         assertTrue(result.contains(FAILED_REGISTRATION_MESSAGE));
         assertNull(registrationFeatureQA.getLastName());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testDuplicateUsernameRejected() {
+        registrationFeatureQA.registerUser(VALID_USERNAME, VALID_PASSWORD, VALID_CELL_PHONE_NUMBER, VALID_FIRST_NAME, VALID_LAST_NAME);
+        String result = registrationFeatureQA.registerUser(VALID_USERNAME, "Oth3r!pass", VALID_CELL_PHONE_NUMBER, "Other", "Person");
+
+        assertTrue(result.contains(USERNAME_SUCCESS_MESSAGE));
+        assertTrue(result.contains("Username is already taken"));
+        assertTrue(result.contains(FAILED_REGISTRATION_MESSAGE));
+        assertEquals(VALID_FIRST_NAME, registrationFeatureQA.getFirstName());
+        assertEquals(1, registrationFeatureQA.getUserDirectory().size());
+    }
+
+    @Test
+    void testSeveralUsersShareOneDirectory() {
+        UserDirectory directory = new UserDirectory();
+        new RegistrationFeature(directory).registerUser("ann_1", VALID_PASSWORD, VALID_CELL_PHONE_NUMBER, "Ann", "Lee");
+        new RegistrationFeature(directory).registerUser("bob_2", VALID_PASSWORD, VALID_CELL_PHONE_NUMBER, "Bob", "Ray");
+
+        assertEquals(2, directory.size());
+        assertEquals("Ann", directory.find("ann_1").getFirstName());
+        assertEquals("Bob", directory.find("bob_2").getFirstName());
+    }
+}
@@ -0,0 +1,172 @@
+package st10457602;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the streaming report formats, and that reports of a store filling a small heap can be
+ * written without building them in memory.
+ *
+ * @author Angela
+ */
+public class ReportWriterTest {
+
+    @BeforeEach
+    public void setUp() {
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        MessageFeature.resetMessageCounterForTesting();
+    }
+
+    @Test
+    void testTextFormat_MatchesStringReport() throws IOException {
+        new MessageFeature("+27834557896", "Did you get the cake?").sentMessage();
+        new MessageFeature("+27838884567", "It is dinner time!").sentMessage();
+
+        StringWriter writer = new StringWriter();
+        assertEquals(2, MessageFeature.writeSentMessagesReport(writer, ReportFormat.TEXT));
+        assertEquals(MessageFeature.generateSentMessagesReport(), writer.toString());
+        assertTrue(writer.toString().startsWith("--- QuickChat Sent Messages Report ---\n\nMessage #1:\n"));
+    }
+
+    @Test
+    void testCsvFormat_QuotesWhenNeeded() throws IOException {
+        MessageFeature msg = new MessageFeature("+27834557896", "Hi, \"Mike\"");
+        msg.sentMessage();
+
+        StringBuilder sb = new StringBuilder();
+        MessageFeature.writeSentMessagesReport(sb, ReportFormat.CSV);
+        assertEquals("number,index,hash,recipient,message\n"
+                + "1,1," + msg.getMessageHash() + ",+27834557896,\"Hi, \"\"Mike\"\"\"\n", sb.toString());
+    }
+
+    @Test
+    void testNdjsonFormat_EscapesStrings() throws IOException {
+        MessageFeature msg = new MessageFeature("+27834557896", "Line one\nsaid \"hi\"\\\u0001");
+        msg.sentMessage();
+
+        StringBuilder sb = new StringBuilder();
+        MessageFeature.writeSentMessagesReport(sb, ReportFormat.NDJSON);
+        assertEquals("{\"number\":1,\"index\":1,\"hash\":\"" + msg.getMessageHash() + "\",\"recipient\":\"+27834557896\","
+                + "\"message\":\"Line one\\nsaid \\\"hi\\\"\\\\\\u0001\"}\n", sb.toString());
+    }
+
+    @Test
+    void testInfoReport_AllFormats() throws IOException {
+        MessageFeature.setLoggedInUsername("Angela");
+        new MessageFeature("+27834557896", "Did you get the cake?").sentMessage();
+
+        StringBuilder text = new StringBuilder();
+        MessageFeature.writeAllSentMessagesInfo(text, ReportFormat.TEXT);
+        assertEquals(MessageFeature.displayAllSentMessagesInfo(), text.toString());
+        StringBuilder csv = new StringBuilder();
+        MessageFeature.writeAllSentMessagesInfo(csv, ReportFormat.CSV);
+        assertEquals("sender,recipient\nAngela,+27834557896\n", csv.toString());
+        StringBuilder json = new StringBuilder();
+        MessageFeature.writeAllSentMessagesInfo(json, ReportFormat.NDJSON);
+        assertEquals("{\"sender\":\"Angela\",\"recipient\":\"+27834557896\"}\n", json.toString());
+    }
+
+    @Test
+    void testEmptyReports() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        assertEquals(0, MessageFeature.writeSentMessagesReport(csv, ReportFormat.CSV));
+        assertEquals("number,index,hash,recipient,message\n", csv.toString());
+        assertEquals("No sent messages to report.", MessageFeature.generateSentMessagesReport());
+        assertEquals("No messages have been sent yet.", MessageFeature.displayAllSentMessagesInfo());
+    }
+
+    @Test
+    void testChannel_WritesUtf8() throws IOException {
+        CountingChannel channel = new CountingChannel();
+        ReportWriter writer = ReportWriter.toChannel(channel, ReportFormat.TEXT);
+        MessageFeature msg = new MessageFeature("+27834557896", "Caf\u00e9");
+        assertEquals(1, writer.writeSentMessagesReport(List.of(msg).iterator()));
+        String expected = "--- QuickChat Sent Messages Report ---\n\nMessage #1:\n  Hash: \n"
+                + "  Recipient: +27834557896\n  Message: \"Caf\u00e9\"\n\n";
+        assertEquals(expected.getBytes(StandardCharsets.UTF_8).length, channel.bytes);
+    }
+
+    /**
+     * Streams every report, in every format, from a store that fills most of a separate JVM's
+     * 64 MB heap. The reports read the store a chunk at a time, so they need next to nothing
+     * beyond the messages themselves.
+     */
+    @Test
+    void testFullStoreReports_SmallHeap() throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-Xmx64m", "-cp", System.getProperty("java.class.path"),
+                LargeReport.class.getName(), "100000")
+                .redirectErrorStream(true)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertTrue(process.waitFor(5, TimeUnit.MINUTES));
+        assertEquals(0, process.exitValue(), output);
+        for (ReportFormat format : ReportFormat.values()) {
+            assertTrue(output.contains("report " + format + " 100000"), output);
+            assertTrue(output.contains("info " + format + " 100000"), output);
+        }
+    }
+
+    /**
+     * Run in the forked JVM: sends the messages, then streams the reports through MessageFeature
+     * to a channel that only counts the bytes it is given.
+     */
+    public static final class LargeReport {
+        public static void main(String[] args) throws IOException {
+            int rows = Integer.parseInt(args[0]);
+            for (int i = 0; i < rows; i++) {
+                new MessageFeature("+27" + (100_000_000 + i % 10_000),
+                        "Report message number " + i + ", with a comma and \"quotes\"").sentMessage();
+            }
+            for (ReportFormat format : ReportFormat.values()) {
+                CountingChannel channel = new CountingChannel();
+                Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), 8192);
+                long written = MessageFeature.writeSentMessagesReport(writer, format);
+                writer.flush();
+                System.out.println("report " + format + " " + written + " rows, " + channel.bytes + " bytes");
+                written = MessageFeature.writeAllSentMessagesInfo(writer, format);
+                writer.flush();
+                System.out.println("info " + format + " " + written + " rows");
+            }
+        }
+    }
+
+    private static final class CountingChannel implements WritableByteChannel {
+        long bytes;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            bytes += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package st10457602;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Tests session tokens and their expiry through the timer wheel, on a clock the test moves.
+ *
+ * @author Angela
+ */
+public class SessionManagerTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong(1_000 * SECOND);
+    private final UserAccount kyle = UserAccount.create("kyl_1", "Ch&&sec@ke99!", "+27838968976", "Kyle", "Smith");
+    private final UserAccount amy = UserAccount.create("amy_2", "P@ssword12", "+27838968976", "Amy", "Jones");
+
+    private SessionManager sessions(long ttlSeconds) {
+        return new SessionManager(ttlSeconds * SECOND, 16, clock::get);
+    }
+
+    @Test
+    void testIssue_TokensAreOpaqueAndUnique() {
+        SessionManager sessions = sessions(60);
+        Set<String> tokens = new HashSet<>();
+        for (int i = 0; i < 1_000; i++) {
+            String token = sessions.issue(i % 2 == 0 ? kyle : amy);
+            assertEquals(SessionManager.TOKEN_LENGTH, token.length());
+            assertFalse(token.contains("kyl_1"));
+            assertTrue(tokens.add(token));
+        }
+        assertEquals(1_000, sessions.size());
+        assertThrows(IllegalArgumentException.class, () -> sessions.issue(null));
+    }
+
+    @Test
+    void testValidate_ReturnsTheAccountUntilLogout() {
+        SessionManager sessions = sessions(60);
+        String kyleToken = sessions.issue(kyle);
+        String amyToken = sessions.issue(amy);
+        assertSame(kyle, sessions.validate(kyleToken));
+        assertSame(amy, sessions.validate(amyToken));
+
+        assertTrue(sessions.logout(kyleToken));
+        assertFalse(sessions.logout(kyleToken), "A session can only be logged out once.");
+        assertNull(sessions.validate(kyleToken));
+        assertSame(amy, sessions.validate(amyToken));
+
+        assertNull(sessions.validate(null));
+        assertNull(sessions.validate("short"));
+        assertNull(sessions.validate("AAAAAAAAAAAAAAAAAAAAAA"));
+        assertFalse(sessions.logout(null));
+    }
+
+    @Test
+    void testExpiry_RejectedAtOnceAndRemovedByTheWheel() {
+        SessionManager sessions = sessions(30);
+        String token = sessions.issue(kyle);
+        clock.addAndGet(30 * SECOND - 1);
+        assertSame(kyle, sessions.validate(token), "Still live a nanosecond before it expires.");
+
+        clock.addAndGet(1);
+        assertNull(sessions.validate(token), "Expired sessions are never accepted.");
+        assertFalse(sessions.logout(token), "An expired session was not live.");
+
+        String later = sessions.issue(amy);
+        clock.addAndGet(2 * SECOND);
+        sessions.expire();
+        assertEquals(1, sessions.size(), "The first session's tick has passed, so the wheel removes it.");
+        assertSame(amy, sessions.validate(later));
+    }
+
+    @Test
+    void testExpiry_SessionsLongerThanOneTurnOfTheWheel() {
+        SessionManager sessions = sessions(2_000); // The wheel turns every 512 seconds
+        String token = sessions.issue(kyle);
+        for (int second = 0; second < 1_999; second++) {
+            clock.addAndGet(SECOND);
+            sessions.expire();
+        }
+        assertEquals(1, sessions.size());
+        assertSame(kyle, sessions.validate(token));
+
+        clock.addAndGet(2 * SECOND);
+        sessions.expire();
+        assertEquals(0, sessions.size());
+    }
+
+    @Test
+    void testExpiry_AfterALongIdlePeriod() {
+        SessionManager sessions = sessions(10);
+        for (int i = 0; i < 100; i++) {
+            sessions.issue(kyle);
+            clock.addAndGet(SECOND / 10);
+        }
+        String fresh = sessions.issue(amy);
+        clock.addAndGet(10_000 * SECOND);
+        String newest = sessions.issue(amy);
+        assertEquals(1, sessions.size(), "Every slot is swept after a gap longer than the wheel.");
+        assertNull(sessions.validate(fresh));
+        assertSame(amy, sessions.validate(newest));
+    }
+
+    @Test
+    void testValidate_DoesNotAllocate() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+        ThreadMXBean allocations = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(allocations.isThreadAllocatedMemoryEnabled());
+        long threadId = Thread.currentThread().getId();
+        SessionManager sessions = new SessionManager(1, TimeUnit.HOURS);
+        String[] tokens = new String[1_000];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = sessions.issue(kyle);
+        }
+
+        for (int i = 0; i < 200_000; i++) { // Warm up so the loop below is compiled
+            sessions.validate(tokens[i % tokens.length]);
+        }
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        int valid = 0;
+        for (int i = 0; i < 1_000_000; i++) {
+            if (sessions.validate(tokens[i % tokens.length]) != null) {
+                valid++;
+            }
+        }
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+        assertEquals(1_000_000, valid);
+        assertTrue(allocated < 4096, "Validating a million tokens allocated " + allocated + " bytes.");
+    }
+
+    @Test
+    void testConcurrentIssueValidateAndLogout() throws Exception {
+        SessionManager sessions = new SessionManager(1, TimeUnit.HOURS);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        String token = sessions.issue(kyle);
+                        assertSame(kyle, sessions.validate(token));
+                        if (i % 2 == 0) {
+                            assertTrue(sessions.logout(token));
+                            assertNull(sessions.validate(token));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(20_000, sessions.size());
+    }
+}
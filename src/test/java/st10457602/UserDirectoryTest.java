@@ -0,0 +1,143 @@
+package st10457602;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the UserDirectory lookups and its file persistence.
+ *
+ * @author Angela
+ */
+public class UserDirectoryTest {
+
+    private static final String PASSWORD = "Ch&&sec@ke99!";
+
+    @Test
+    void testAuthenticate_ChecksPasswordDigest() throws IOException {
+        UserDirectory directory = new UserDirectory();
+        assertTrue(directory.add(UserAccount.create("kyl_1", PASSWORD, "+27838968976", "Kyle", "Smith")));
+
+        assertNotNull(directory.authenticate("kyl_1", PASSWORD));
+        assertNull(directory.authenticate("kyl_1", "wrong"));
+        assertNull(directory.authenticate("nobody", PASSWORD));
+        assertNull(directory.authenticate(null, PASSWORD));
+    }
+
+    @Test
+    void testAdd_RejectsDuplicateUsername() throws IOException {
+        UserDirectory directory = new UserDirectory();
+        assertTrue(directory.add(UserAccount.create("kyl_1", PASSWORD, "+27838968976", "Kyle", "Smith")));
+        assertFalse(directory.add(UserAccount.create("kyl_1", "Other1!xx", "+27838968976", "Other", "Name")));
+        assertEquals("Kyle", directory.find("kyl_1").getFirstName());
+        assertEquals(1, directory.size());
+    }
+
+    @Test
+    void testOpen_ReloadsPersistedAccounts(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("users.dat");
+        try (UserDirectory directory = UserDirectory.open(file)) {
+            directory.add(UserAccount.create("kyl_1", PASSWORD, "+27838968976", "Kyle", "Smith"));
+            directory.add(UserAccount.create("amy_2", "P@ssword12", "+27831234567", "Amy", "Jones"));
+        }
+
+        try (UserDirectory reloaded = UserDirectory.open(file)) {
+            assertEquals(2, reloaded.size());
+            assertNotNull(reloaded.authenticate("kyl_1", PASSWORD));
+            UserAccount amy = reloaded.authenticate("amy_2", "P@ssword12");
+            assertNotNull(amy);
+            assertEquals("+27831234567", amy.getCellphone());
+            assertEquals("Jones", amy.getLastName());
+
+            // New registrations append after the reloaded ones
+            reloaded.add(UserAccount.create("bob_3", PASSWORD, "+27830000000", "Bob", "Ray"));
+        }
+
+        try (UserDirectory again = UserDirectory.open(file)) {
+            assertEquals(3, again.size());
+        }
+    }
+
+    @Test
+    void testOpen_IgnoresTornTailRecord(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("users.dat");
+        try (UserDirectory directory = UserDirectory.open(file)) {
+            directory.add(UserAccount.create("kyl_1", PASSWORD, "+27838968976", "Kyle", "Smith"));
+        }
+        // Simulate a crash half-way through writing the next record
+        Files.write(file, new byte[]{0, 5, 'a', 'm'}, StandardOpenOption.APPEND);
+
+        try (UserDirectory reloaded = UserDirectory.open(file)) {
+            assertEquals(1, reloaded.size());
+            reloaded.add(UserAccount.create("amy_2", "P@ssword12", "+27831234567", "Amy", "Jones"));
+        }
+        try (UserDirectory again = UserDirectory.open(file)) {
+            assertEquals(2, again.size());
+            assertNotNull(again.authenticate("amy_2", "P@ssword12"));
+        }
+    }
+
+    @Test
+    void testOpen_RejectsForeignFile(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("users.dat");
+        Files.writeString(file, "not a directory");
+        assertThrows(IOException.class, () -> UserDirectory.open(file));
+    }
+
+    @Test
+    void testAccounts_KeepTheirPbkdf2IterationCount(@TempDir Path tempDir) throws IOException {
+        int iterations = UserAccount.getHashIterations();
+        UserAccount kyle = UserAccount.create("kyl_1", PASSWORD, "+27838968976", "Kyle", "Smith");
+        assertEquals(iterations, kyle.getPasswordIterations());
+        assertEquals(32, kyle.getPasswordDigest().length, "PBKDF2-HMAC-SHA256 with a 256-bit key");
+        assertFalse(kyle.needsRehash());
+
+        Path file = tempDir.resolve("users.dat");
+        try (UserDirectory directory = UserDirectory.open(file)) {
+            directory.add(kyle);
+        }
+        try (UserDirectory reloaded = UserDirectory.open(file)) {
+            assertEquals(iterations, reloaded.find("kyl_1").getPasswordIterations());
+            assertNotNull(reloaded.authenticate("kyl_1", PASSWORD));
+            assertNull(reloaded.authenticate("kyl_1", "wrong"));
+        }
+    }
+
+    @Test
+    void testAuthenticate_RehashesAccountsWithFewerIterations(@TempDir Path tempDir) throws IOException {
+        int iterations = UserAccount.getHashIterations();
+        Path file = tempDir.resolve("users.dat");
+        UserAccount weak;
+        try (UserDirectory directory = UserDirectory.open(file)) {
+            UserAccount.setHashIterations(1_000);
+            try {
+                weak = UserAccount.create("kyl_1", PASSWORD, "+27838968976", "Kyle", "Smith");
+            } finally {
+                UserAccount.setHashIterations(iterations);
+            }
+            directory.add(weak);
+            assertTrue(weak.needsRehash());
+            assertNull(directory.authenticate("kyl_1", "wrong"));
+            assertSame(weak, directory.find("kyl_1"), "A failed login should not rehash the password.");
+
+            UserAccount upgraded = directory.authenticate("kyl_1", PASSWORD);
+            assertNotNull(upgraded);
+            assertEquals(iterations, upgraded.getPasswordIterations());
+            assertSame(upgraded, directory.find("kyl_1"));
+            assertEquals("Smith", upgraded.getLastName());
+        }
+
+        try (UserDirectory reloaded = UserDirectory.open(file)) {
+            assertEquals(1, reloaded.size());
+            assertEquals(iterations, reloaded.find("kyl_1").getPasswordIterations(),
+                    "The rehashed account should be the one kept in the file.");
+            assertNotNull(reloaded.authenticate("kyl_1", PASSWORD));
+        }
+    }
+}
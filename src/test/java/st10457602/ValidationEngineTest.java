@@ -0,0 +1,87 @@
+package st10457602;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that every ValidationEngine rule agrees with the regular expression it replaced,
+ * on hand-picked corner cases and on a large number of random strings.
+ *
+ * @author Angela
+ */
+public class ValidationEngineTest {
+
+    private static final Pattern MESSAGE_ID = Pattern.compile("\\d{10}");
+    private static final Pattern CELL_NUMBER = Pattern.compile("^\\+27[0-9]{9}$");
+    private static final Pattern NAME = Pattern.compile("^[a-zA-Z]+$");
+
+    // Characters the rules treat specially, plus some that only look similar
+    private static final String ALPHABET = "0123456789+27_aZAzQq!@#$%^&*()-. \t\n\r\u0085\u2028\u2029\u0660\u0661\uff11\u00e9";
+
+    private static boolean legacyPassword(String password) {
+        if (password == null || password.length() < 8) return false;
+        return password.matches(".*[A-Z].*")
+                && password.matches(".*[0-9].*")
+                && password.matches(".*[!@#$%^&*()].*");
+    }
+
+    private static boolean legacyName(String name) {
+        return name != null && !name.trim().isEmpty() && NAME.matcher(name).matches();
+    }
+
+    private static void assertSameAsRegex(String input) {
+        assertEquals(MESSAGE_ID.matcher(input).matches(), ValidationEngine.isValidMessageId(input), "message ID: " + input);
+        assertEquals(CELL_NUMBER.matcher(input).matches(), ValidationEngine.isValidCellNumber(input), "cell number: " + input);
+        assertEquals(legacyPassword(input), ValidationEngine.isValidPassword(input), "password: " + input);
+        assertEquals(legacyName(input), ValidationEngine.isValidName(input), "name: " + input);
+    }
+
+    @Test
+    void testCornerCases_MatchRegex() {
+        String[] cases = {
+            "", "0123456789", "012345678", "01234567890", "012345678a", "\u0660123456789",
+            "+27718693002", "+2771869300", "+277186930022", "+27718693002\n", "27718693002", "+28718693002",
+            "+2771869300\uff11", "Ch&&sec@ke99!", "password", "Password1", "Passw0rd!", "Passw0rd!\n",
+            "\nPassw0rd!", "Pass\u2028w0rd!", "Pass\u0085w0rd!", "Pa ss w0rd!", "Angela", "Angela Smith",
+            " Angela", "Angela\n", "\u00c9mile", "A", "a1"
+        };
+        for (String input : cases) {
+            assertSameAsRegex(input);
+        }
+        assertFalse(ValidationEngine.isValidMessageId(null));
+        assertFalse(ValidationEngine.isValidCellNumber(null));
+        assertFalse(ValidationEngine.isValidPassword(null));
+        assertFalse(ValidationEngine.isValidName(null));
+        assertFalse(ValidationEngine.isValidUsername(null));
+    }
+
+    @Test
+    void testRandomInputs_MatchRegex() {
+        Random random = new Random(31);
+        for (int n = 0; n < 200_000; n++) {
+            int length = random.nextInt(16);
+            StringBuilder sb = new StringBuilder(length);
+            // Half of the inputs start as plausible values so the accepting paths are exercised too
+            if (n % 2 == 0 && length >= 3) {
+                sb.append("+27");
+            }
+            while (sb.length() < length) {
+                sb.append(n % 3 == 0 ? (char) ('0' + random.nextInt(10)) : ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            assertSameAsRegex(sb.toString());
+        }
+    }
+
+    @Test
+    void testUsername_SameRuleAsBefore() {
+        assertTrue(ValidationEngine.isValidUsername("kyl_1"));
+        assertTrue(ValidationEngine.isValidUsername("_"));
+        assertFalse(ValidationEngine.isValidUsername("kyle!!!!!!!"));
+        assertFalse(ValidationEngine.isValidUsername("kyle1"));
+        assertFalse(ValidationEngine.isValidUsername("kyl_12"));
+    }
+}